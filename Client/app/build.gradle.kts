@@ -45,6 +45,7 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
+    androidTestImplementation(libs.mockwebserver)
     implementation(libs.okhttp)
     implementation(libs.permissionx)
     implementation("de.hdodenhof:circleimageview:3.1.0")
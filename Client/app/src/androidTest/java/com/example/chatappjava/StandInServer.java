@@ -0,0 +1,385 @@
+package com.example.chatappjava;
+
+import com.example.chatappjava.config.ServerConfig;
+import com.example.chatappjava.utils.DatabaseManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in for the Node server, so client code can be exercised offline.
+ *
+ * While running, the app's server overrides point at it. It answers the endpoints a test
+ * registers with {@link #on}; anything else gets a 404, like a server without that route.
+ * Built in, and replaceable with {@link #on}:
+ * <ul>
+ *   <li>POST /api/upload/lookup answers from {@link #addMedia}</li>
+ *   <li>POST /api/messages and POST /api/messages/batch accept messages with the server's
+ *       rules; batch items are acked, failed or held per clientNonce like on the server</li>
+ *   <li>/api/upload/sessions takes resumable uploads in {@link #UPLOAD_CHUNK_SIZE} chunks,
+ *       answering 409 with its own offset on a mismatch; finished files are in
+ *       {@link #uploaded}</li>
+ * </ul>
+ */
+public class StandInServer extends Dispatcher {
+    /** Chunk size handed out with upload sessions; small so a test file spans several chunks. */
+    public static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
+
+    /** Answers one request; runs on the server's thread. */
+    public interface Route {
+        MockResponse handle(RecordedRequest request) throws Exception;
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final List<RecordedRequest> received = new CopyOnWriteArrayList<>();
+    // kind|sha256 -> url
+    private final Map<String, String> media = new ConcurrentHashMap<>();
+    // Time-seeded so ids from separate runs do not collide in the app's database
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() << 20);
+    // uploadId -> session; url -> bytes of a finished upload
+    private final Map<String, UploadSession> uploads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> finishedUploads = new ConcurrentHashMap<>();
+    private DatabaseManager prefs;
+    // The device's own overrides, put back on shutdown
+    private String savedIp;
+    private int savedPort;
+    private Boolean savedUseHttps;
+    private Boolean savedUseWss;
+
+    public StandInServer() {
+        server.setDispatcher(this);
+        on("POST", "/api/upload/lookup", this::lookupMedia);
+        on("POST", "/api/messages", this::sendMessage);
+        on("POST", "/api/messages/batch", this::sendMessagesBatch);
+        on("POST", "/api/upload/sessions", this::createUploadSession);
+        on("GET", "/api/upload/sessions/*", this::getUploadSession);
+        on("PUT", "/api/upload/sessions/*", this::putUploadChunk);
+        on("DELETE", "/api/upload/sessions/*", request -> {
+            boolean found = uploads.remove(lastSegment(request)) != null;
+            return json(found ? 200 : 404, "{\"success\":" + found + "}");
+        });
+    }
+
+    /** Start listening and send the app's requests here. */
+    public void start() throws IOException {
+        server.start();
+        prefs = ChatApplication.getInstance().getSharedPrefsManager();
+        savedIp = prefs.getOverrideServerIp();
+        savedPort = prefs.getOverrideServerPort();
+        savedUseHttps = prefs.getOverrideUseHttps();
+        savedUseWss = prefs.getOverrideUseWss();
+        prefs.setOverrideServerIp(server.getHostName());
+        prefs.setOverrideServerPort(server.getPort());
+        prefs.setOverrideUseHttps(false);
+        prefs.setOverrideUseWss(false);
+        ServerConfig.invalidate();
+    }
+
+    /** Stop and restore the server overrides the device had before {@link #start}. */
+    public void shutdown() throws IOException {
+        if (prefs != null) {
+            prefs.clearServerOverrides();
+            if (savedIp != null) {
+                prefs.setOverrideServerIp(savedIp);
+            }
+            if (savedPort != -1) {
+                prefs.setOverrideServerPort(savedPort);
+            }
+            if (savedUseHttps != null) {
+                prefs.setOverrideUseHttps(savedUseHttps);
+            }
+            if (savedUseWss != null) {
+                prefs.setOverrideUseWss(savedUseWss);
+            }
+            ServerConfig.invalidate();
+        }
+        server.shutdown();
+    }
+
+    /** Answer method + path (query string ignored; a trailing "*" matches any suffix). */
+    public void on(String method, String path, Route route) {
+        routes.put(method + " " + path, route);
+    }
+
+    /** The route answering method + path, e.g. a built-in one to wrap with faults. */
+    public Route route(String method, String path) {
+        return routes.get(method + " " + path);
+    }
+
+    /** Make a lookup for this upload kind and hash find url. */
+    public void addMedia(String kind, String sha256, String url) {
+        media.put(kind + "|" + sha256, url);
+    }
+
+    /** Forget an added hash, as if the server had lost the file. */
+    public void removeMedia(String kind, String sha256) {
+        media.remove(kind + "|" + sha256);
+    }
+
+    /** Bytes of a finished resumable upload, by the URL it was answered with; null if none. */
+    public byte[] uploaded(String url) {
+        return finishedUploads.get(url);
+    }
+
+    /** Bytes the server already holds for a session, as if an earlier attempt had sent them. */
+    public void receiveUploadBytes(String uploadId, byte[] bytes) {
+        UploadSession session = uploads.get(uploadId);
+        session.received.write(bytes, 0, bytes.length);
+    }
+
+    /** Requests received so far whose path (without query) starts with prefix. */
+    public List<RecordedRequest> requests(String method, String prefix) {
+        List<RecordedRequest> matching = new ArrayList<>();
+        for (RecordedRequest request : received) {
+            if (request.getMethod().equals(method) && pathOf(request).startsWith(prefix)) {
+                matching.add(request);
+            }
+        }
+        return matching;
+    }
+
+    /** Wait up to timeoutMs for count matching requests; returns those received. */
+    public List<RecordedRequest> awaitRequests(String method, String prefix, int count, long timeoutMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        List<RecordedRequest> matching = requests(method, prefix);
+        while (matching.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            matching = requests(method, prefix);
+        }
+        return matching;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        received.add(request);
+        Route route = match(request.getMethod(), pathOf(request));
+        if (route == null) {
+            return json(404, "{\"success\":false,\"message\":\"Route not found\"}");
+        }
+        try {
+            return route.handle(request);
+        } catch (Exception e) {
+            return json(500, "{\"success\":false,\"message\":\"" + e + "\"}");
+        }
+    }
+
+    private Route match(String method, String path) {
+        Route exact = routes.get(method + " " + path);
+        if (exact != null) {
+            return exact;
+        }
+        for (Map.Entry<String, Route> entry : routes.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith("*") && (method + " " + path).startsWith(key.substring(0, key.length() - 1))) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private MockResponse lookupMedia(RecordedRequest request) throws JSONException {
+        JSONObject query = body(request);
+        String url = media.get(query.optString("kind") + "|" + query.optString("sha256"));
+        if (url == null) {
+            return json(404, "{\"success\":false,\"message\":\"Media not found\"}");
+        }
+        JSONObject found = new JSONObject();
+        found.put("success", true);
+        found.put("message", "Already uploaded");
+        found.put("deduplicated", true);
+        found.put("imageUrl", url);
+        found.put("fileName", url.substring(url.lastIndexOf('/') + 1));
+        return json(200, found.toString());
+    }
+
+    private MockResponse sendMessage(RecordedRequest request) throws JSONException {
+        JSONObject item = body(request);
+        String error = validateMessage(item);
+        if (error != null) {
+            return json(400, new JSONObject().put("success", false).put("message", error).toString());
+        }
+        JSONObject data = new JSONObject().put("message", storeMessage(item));
+        return json(201, new JSONObject().put("success", true).put("data", data).toString());
+    }
+
+    private MockResponse sendMessagesBatch(RecordedRequest request) throws JSONException {
+        JSONArray items = body(request).optJSONArray("messages");
+        if (items == null || items.length() == 0 || items.length() > 50) {
+            return json(400, "{\"success\":false,\"message\":\"Messages must be an array of 1-50 items\"}");
+        }
+        JSONArray results = new JSONArray();
+        Set<String> heldChats = new HashSet<>();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            if (item == null) {
+                item = new JSONObject();
+            }
+            String nonce = item.optString("clientNonce", "");
+            String chatId = item.optString("chatId", "");
+            JSONObject result = new JSONObject().put("clientNonce", nonce);
+            if (heldChats.contains(chatId)) {
+                results.put(result.put("status", "held"));
+                continue;
+            }
+            String error = nonce.isEmpty() ? "clientNonce is required" : validateMessage(item);
+            if (error != null) {
+                heldChats.add(chatId);
+                results.put(result.put("status", "failed").put("code", 400).put("error", error));
+                continue;
+            }
+            results.put(result.put("status", "ok").put("deduplicated", false).put("message", storeMessage(item)));
+        }
+        JSONObject data = new JSONObject().put("results", results);
+        return json(200, new JSONObject().put("success", true).put("data", data).toString());
+    }
+
+    private static final class UploadSession {
+        final String kind;
+        final String fileName;
+        final String mimeType;
+        final long size;
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        UploadSession(String kind, String fileName, String mimeType, long size) {
+            this.kind = kind;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.size = size;
+        }
+    }
+
+    private MockResponse createUploadSession(RecordedRequest request) throws JSONException {
+        JSONObject query = body(request);
+        String uploadId = newObjectId();
+        uploads.put(uploadId, new UploadSession(query.optString("kind"), query.optString("fileName"),
+                query.optString("mimeType"), query.optLong("size")));
+        JSONObject created = new JSONObject()
+                .put("success", true)
+                .put("uploadId", uploadId)
+                .put("offset", 0)
+                .put("size", query.optLong("size"))
+                .put("chunkSize", UPLOAD_CHUNK_SIZE);
+        return json(201, created.toString());
+    }
+
+    private MockResponse getUploadSession(RecordedRequest request) throws JSONException {
+        String uploadId = lastSegment(request);
+        UploadSession session = uploads.get(uploadId);
+        if (session == null) {
+            return json(404, "{\"success\":false,\"message\":\"Upload session not found\"}");
+        }
+        JSONObject status = new JSONObject()
+                .put("success", true)
+                .put("uploadId", uploadId)
+                .put("offset", session.received.size())
+                .put("size", session.size)
+                .put("chunkSize", UPLOAD_CHUNK_SIZE);
+        return json(200, status.toString());
+    }
+
+    private MockResponse putUploadChunk(RecordedRequest request) throws JSONException {
+        String uploadId = lastSegment(request);
+        UploadSession session = uploads.get(uploadId);
+        if (session == null) {
+            return json(404, "{\"success\":false,\"message\":\"Upload session not found\"}");
+        }
+        int offset = session.received.size();
+        if (!String.valueOf(offset).equals(request.getHeader("Upload-Offset"))) {
+            return json(409, new JSONObject().put("success", false).put("message", "Offset mismatch")
+                    .put("offset", offset).toString());
+        }
+        byte[] chunk = request.getBody().readByteArray();
+        session.received.write(chunk, 0, chunk.length);
+        if (session.received.size() < session.size) {
+            return json(200, new JSONObject().put("success", true).put("complete", false)
+                    .put("offset", session.received.size()).toString());
+        }
+        uploads.remove(uploadId);
+        String url = "/uploads/stand-in/" + uploadId + "-" + session.fileName;
+        finishedUploads.put(url, session.received.toByteArray());
+        JSONObject done = new JSONObject()
+                .put("success", true)
+                .put("message", "Upload completed")
+                .put("complete", true)
+                .put("offset", session.size)
+                .put("chat-file".equals(session.kind) ? "fileUrl" : "imageUrl", url)
+                .put("fileName", url.substring(url.lastIndexOf('/') + 1))
+                .put("originalName", session.fileName)
+                .put("fileSize", session.size)
+                .put("mimeType", session.mimeType);
+        return json(200, done.toString());
+    }
+
+    /** The single-send rules of routes/messages.js; null when the message is valid. */
+    private static String validateMessage(JSONObject item) {
+        if (!item.optString("chatId", "").matches("[a-f0-9]{24}")) {
+            return "Invalid chat ID format";
+        }
+        if (item.optString("content", "").length() > 5000) {
+            return "Message content cannot exceed 5000 characters";
+        }
+        String nonce = item.optString("clientNonce", "");
+        if (!nonce.isEmpty() && (nonce.trim().length() < 8 || nonce.trim().length() > 128)) {
+            return "clientNonce must be 8-128 characters";
+        }
+        return null;
+    }
+
+    private JSONObject storeMessage(JSONObject item) throws JSONException {
+        long now = System.currentTimeMillis();
+        return new JSONObject()
+                .put("_id", newObjectId())
+                .put("chat", item.optString("chatId"))
+                .put("content", item.optString("content", ""))
+                .put("type", item.optString("type", "text"))
+                .put("clientNonce", item.optString("clientNonce", ""))
+                .put("timestamp", item.optLong("timestamp", now))
+                .put("createdAt", now);
+    }
+
+    /** 24 hex characters, like a Mongo ObjectId. */
+    public String newObjectId() {
+        return String.format("%024x", nextId.getAndIncrement());
+    }
+
+    public static JSONObject body(RecordedRequest request) throws JSONException {
+        return new JSONObject(request.getBody().clone().readUtf8());
+    }
+
+    public static MockResponse json(int code, String body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(body);
+    }
+
+    private static String lastSegment(RecordedRequest request) {
+        String path = pathOf(request);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String pathOf(RecordedRequest request) {
+        String path = request.getPath();
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.chatappjava.adapters;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.models.Message;
+import com.example.chatappjava.utils.MessageRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Search snippets show message text literally, with only the matches in bold.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageSearchAdapterTest {
+    private MessageRepository repository;
+    private String chatId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repository = new MessageRepository(context);
+        chatId = "search-test-" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() {
+        repository.deleteAllMessagesForChat(chatId);
+    }
+
+    @Test
+    public void markupInMessagesIsNotInterpreted() {
+        Message message = new Message("<b>fake</b> <img src=x> & hello", "text", "sender1");
+        message.setId(chatId + "-m1");
+        message.setChatId(chatId);
+        message.setChatType("private");
+        message.setTimestamp(System.currentTimeMillis());
+        assertTrue(repository.saveMessagesBatch(Collections.singletonList(message)));
+
+        List<MessageRepository.SearchResult> hits = repository.search("hello", chatId);
+        assertEquals(1, hits.size());
+        String snippet = hits.get(0).snippet;
+        assertTrue(snippet.indexOf(MessageRepository.MATCH_START) >= 0);
+
+        CharSequence shown = MessageSearchAdapter.highlight(snippet);
+        assertEquals("<b>fake</b> <img src=x> & hello", shown.toString());
+        StyleSpan[] spans = ((Spanned) shown).getSpans(0, shown.length(), StyleSpan.class);
+        assertEquals(1, spans.length);
+        assertEquals(Typeface.BOLD, spans[0].getStyle());
+        assertEquals("hello", shown.subSequence(((Spanned) shown).getSpanStart(spans[0]),
+                ((Spanned) shown).getSpanEnd(spans[0])).toString());
+    }
+
+    @Test
+    public void unmatchedMarkersAreDropped() {
+        String snippet = "a " + MessageRepository.MATCH_START + "b" + MessageRepository.MATCH_END
+                + " " + MessageRepository.MATCH_END + "c";
+        CharSequence shown = MessageSearchAdapter.highlight(snippet);
+        assertEquals("a b c", shown.toString());
+        assertEquals(1, ((Spanned) shown).getSpans(0, shown.length(), StyleSpan.class).length);
+    }
+}
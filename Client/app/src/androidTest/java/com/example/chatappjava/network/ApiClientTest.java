@@ -0,0 +1,110 @@
+package com.example.chatappjava.network;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.chatappjava.StandInServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Coalesced GETs and per-facade cancellation against the stand-in server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ApiClientTest {
+    private static final String TOKEN = "test-token";
+    private static final String ENDPOINT = "/api/chats/slow";
+
+    private StandInServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        server.on("GET", ENDPOINT, request -> StandInServer.json(200, "{\"success\":true}")
+                .setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void cancellingOneFacadeKeepsJoinedCallersOfAnother() throws Exception {
+        ApiClient starter = new ApiClient();
+        ApiClient joiner = new ApiClient();
+        Outcome started = new Outcome();
+        Outcome joined = new Outcome();
+
+        starter.authenticatedGet(ENDPOINT, TOKEN, started);
+        joiner.authenticatedGet(ENDPOINT, TOKEN, joined);
+        starter.cancelAllRequests();
+
+        assertEquals("Canceled", started.await().getMessage());
+        assertNull(joined.await());
+        assertEquals("{\"success\":true}", joined.body.get());
+        assertEquals(1, server.requests("GET", ENDPOINT).size());
+    }
+
+    @Test
+    public void lastCallerCancellingStopsTheCall() throws Exception {
+        ApiClient first = new ApiClient();
+        ApiClient second = new ApiClient();
+        Outcome a = new Outcome();
+        Outcome b = new Outcome();
+
+        first.authenticatedGet(ENDPOINT, TOKEN, a);
+        second.authenticatedGet(ENDPOINT, TOKEN, b);
+        first.cancelAllRequests();
+        second.cancelAllRequests();
+
+        assertEquals("Canceled", a.await().getMessage());
+        assertEquals("Canceled", b.await().getMessage());
+        // The key is free again: the next identical GET starts its own call
+        Outcome c = new Outcome();
+        long before = ApiClient.getNetworkGetCount();
+        first.authenticatedGet(ENDPOINT, TOKEN, c);
+        assertNull(c.await());
+        assertEquals(before + 1, ApiClient.getNetworkGetCount());
+    }
+
+    /** Records a callback's result; await() returns the failure, or null on a response. */
+    private static final class Outcome implements Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        final AtomicReference<String> body = new AtomicReference<>();
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            failure.set(e);
+            done.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            try (Response ignored = response) {
+                body.set(response.body().string());
+            }
+            done.countDown();
+        }
+
+        IOException await() throws InterruptedException {
+            assertTrue("request timed out", done.await(10, TimeUnit.SECONDS));
+            return failure.get();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.chatappjava.network;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.StandInServer;
+import com.example.chatappjava.config.ServerConfig;
+import com.example.chatappjava.utils.ContentHasher;
+import com.example.chatappjava.utils.DatabaseExecutor;
+import com.example.chatappjava.utils.DatabaseHelper;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Uploads against the stand-in server: deduplication, and resuming chunked uploads.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResumableUploaderTest {
+    private static final String TOKEN = "test-token";
+    private static final String SESSIONS = "/api/upload/sessions";
+    private static final int CHUNK = StandInServer.UPLOAD_CHUNK_SIZE;
+    /** Three chunks, the last one short. */
+    private static final int FILE_SIZE = 2 * CHUNK + 20_000;
+
+    private Context context;
+    private StandInServer server;
+    private ResumableUploader uploader;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new StandInServer();
+        server.start();
+        uploader = ResumableUploader.getInstance(context);
+        baseUrl = ServerConfig.getBaseUrl();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        // Only rows for the stand-in's address and the files this test wrote
+        SQLiteDatabase db = DatabaseHelper.getInstance(context).getWritableDatabase();
+        db.delete(DatabaseHelper.TABLE_MEDIA_HASHES, DatabaseHelper.COL_MEDIA_SCOPE + " LIKE ?",
+                new String[]{baseUrl + "|%"});
+        db.delete(DatabaseHelper.TABLE_UPLOAD_SESSIONS, DatabaseHelper.COL_UPLOAD_SOURCE_KEY + " LIKE ?",
+                new String[]{"%" + Uri.fromFile(context.getCacheDir()) + "/%"});
+        server.shutdown();
+    }
+
+    @Test
+    public void knownImageIsNotUploadedAgain() throws Exception {
+        File image = randomFile("known.jpg", 200 * 1024);
+        String sha256 = ContentHasher.sha256(context.getContentResolver(), Uri.fromFile(image));
+        server.addMedia(ResumableUploader.KIND_POST_IMAGE, sha256, "/uploads/posts/known.jpg");
+
+        JSONObject first = upload(image, ResumableUploader.KIND_POST_IMAGE);
+        assertTrue(first.getBoolean("deduplicated"));
+        assertEquals("/uploads/posts/known.jpg", first.getString("imageUrl"));
+        assertEquals(1, server.requests("POST", "/api/upload/lookup").size());
+        assertTrue(server.requests("POST", "/api/upload/sessions").isEmpty());
+
+        // Confirmed a moment ago: answered from media_hashes without asking the server
+        JSONObject second = upload(image, ResumableUploader.KIND_POST_IMAGE);
+        assertTrue(second.getBoolean("deduplicated"));
+        assertEquals("/uploads/posts/known.jpg", second.getString("imageUrl"));
+        assertEquals(1, server.requests("POST", "/api/upload/lookup").size());
+        assertTrue(server.requests("POST", SESSIONS).isEmpty());
+    }
+
+    @Test
+    public void uploadedImageIsReusedFromAnotherSource() throws Exception {
+        File image = randomFile("original.jpg", 200 * 1024);
+        JSONObject first = upload(image, ResumableUploader.KIND_POST_IMAGE);
+        assertFalse(first.optBoolean("deduplicated", false));
+
+        // Same bytes under another name: found by hash, no lookup and no upload
+        File copy = new File(context.getCacheDir(), System.nanoTime() + "-copy.jpg");
+        Files.copy(image.toPath(), copy.toPath());
+        copy.deleteOnExit();
+        JSONObject second = upload(copy, ResumableUploader.KIND_POST_IMAGE);
+
+        assertTrue(second.getBoolean("deduplicated"));
+        assertEquals(first.getString("imageUrl"), second.getString("imageUrl"));
+        assertEquals(1, server.requests("POST", "/api/upload/lookup").size());
+        assertEquals(1, server.requests("POST", SESSIONS).size());
+    }
+
+    @Test
+    public void imageGoneFromServerIsUploadedAgain() throws Exception {
+        File image = randomFile("gone.jpg", 200 * 1024);
+        String sha256 = ContentHasher.sha256(context.getContentResolver(), Uri.fromFile(image));
+        server.addMedia(ResumableUploader.KIND_POST_IMAGE, sha256, "/uploads/posts/gone.jpg");
+        assertTrue(upload(image, ResumableUploader.KIND_POST_IMAGE).getBoolean("deduplicated"));
+
+        // Deleted on the server: once the entry is too old to trust, the lookup says so
+        server.removeMedia(ResumableUploader.KIND_POST_IMAGE, sha256);
+        ageKnownMedia();
+        JSONObject result = upload(image, ResumableUploader.KIND_POST_IMAGE);
+
+        assertFalse(result.optBoolean("deduplicated", false));
+        assertEquals(2, server.requests("POST", "/api/upload/lookup").size());
+        assertEquals(1, server.requests("POST", SESSIONS).size());
+        assertArrayEquals(Files.readAllBytes(image.toPath()), server.uploaded(result.getString("imageUrl")));
+    }
+
+    @Test
+    public void chatFilesAreNotLookedUp() throws Exception {
+        File file = randomFile("report.pdf", 10 * 1024);
+        // A server without resumable sessions takes the multipart request
+        server.on("POST", SESSIONS, request -> StandInServer.json(404, "{\"success\":false}"));
+        server.on("POST", "/api/upload/chat/*", request -> StandInServer.json(200,
+                "{\"success\":true,\"fileUrl\":\"/uploads/chat/report.pdf\"}"));
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+        assertEquals("/uploads/chat/report.pdf", result.getString("fileUrl"));
+        assertTrue(server.requests("POST", "/api/upload/lookup").isEmpty());
+    }
+
+    @Test
+    public void resumesAtTheOffsetTheServerReports() throws Exception {
+        File file = randomFile("video.mp4", FILE_SIZE);
+        // The second chunk is stored but its response never arrives
+        StandInServer.Route chunks = server.route("PUT", SESSIONS + "/*");
+        AtomicBoolean lost = new AtomicBoolean();
+        server.on("PUT", SESSIONS + "/*", request -> {
+            if (String.valueOf(CHUNK).equals(request.getHeader("Upload-Offset")) && lost.compareAndSet(false, true)) {
+                chunks.handle(request);
+                return StandInServer.json(500, "{\"success\":false}");
+            }
+            return chunks.handle(request);
+        });
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+
+        // Asked where to continue instead of sending the stored chunk again
+        assertEquals(1, server.requests("GET", SESSIONS + "/").size());
+        assertEquals(Arrays.asList("0", String.valueOf(CHUNK), String.valueOf(2 * CHUNK)), putOffsets());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), server.uploaded(result.getString("fileUrl")));
+    }
+
+    @Test
+    public void offsetMismatchContinuesWhereTheServerIs() throws Exception {
+        File file = randomFile("video.mp4", FILE_SIZE);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // The server already holds the first chunk, but the new session said offset 0
+        StandInServer.Route create = server.route("POST", SESSIONS);
+        server.on("POST", SESSIONS, request -> {
+            MockResponse created = create.handle(request);
+            String uploadId = new JSONObject(created.getBody().clone().readUtf8()).getString("uploadId");
+            server.receiveUploadBytes(uploadId, Arrays.copyOf(bytes, CHUNK));
+            return created;
+        });
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+
+        // 409 at 0 names the server's offset; no status request needed
+        assertTrue(server.requests("GET", SESSIONS + "/").isEmpty());
+        assertEquals(Arrays.asList("0", String.valueOf(CHUNK), String.valueOf(2 * CHUNK)), putOffsets());
+        assertArrayEquals(bytes, server.uploaded(result.getString("fileUrl")));
+    }
+
+    @Test
+    public void sameFileResumesItsStoredSession() throws Exception {
+        File file = randomFile("video.mp4", FILE_SIZE);
+        failAfterFirstChunk(file);
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+
+        assertEquals(1, server.requests("POST", SESSIONS).size());
+        List<String> offsets = putOffsets();
+        assertEquals(String.valueOf(2 * CHUNK), offsets.get(offsets.size() - 1));
+        assertEquals(String.valueOf(CHUNK), offsets.get(offsets.size() - 2));
+        assertFalse(offsets.subList(1, offsets.size()).contains("0"));
+        assertArrayEquals(Files.readAllBytes(file.toPath()), server.uploaded(result.getString("fileUrl")));
+    }
+
+    @Test
+    public void rewrittenFileStartsANewSession() throws Exception {
+        File file = randomFile("video.mp4", FILE_SIZE);
+        failAfterFirstChunk(file);
+        // Same URI and size, different content
+        byte[] rewritten = new byte[FILE_SIZE];
+        new Random().nextBytes(rewritten);
+        Files.write(file.toPath(), rewritten);
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+
+        assertEquals(2, server.requests("POST", SESSIONS).size());
+        assertArrayEquals(rewritten, server.uploaded(result.getString("fileUrl")));
+    }
+
+    @Test
+    public void fileChangedPastItsFirstChunkStartsANewSession() throws Exception {
+        File file = randomFile("report.pdf", FILE_SIZE);
+        long modified = file.lastModified();
+        failAfterFirstChunk(file);
+        // Same URI, size, first chunk and modification time; only the end differs
+        byte[] changed = Files.readAllBytes(file.toPath());
+        for (int i = changed.length - 100; i < changed.length; i++) {
+            changed[i] ^= 0x5a;
+        }
+        Files.write(file.toPath(), changed);
+        assertTrue(file.setLastModified(modified));
+
+        JSONObject result = upload(file, ResumableUploader.KIND_CHAT_FILE);
+
+        assertEquals(2, server.requests("POST", SESSIONS).size());
+        assertArrayEquals(changed, server.uploaded(result.getString("fileUrl")));
+    }
+
+    /** Make every media_hashes row for the stand-in old enough to be confirmed again. */
+    private void ageKnownMedia() throws Exception {
+        DatabaseExecutor.getInstance().submitWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MEDIA_UPDATED_AT, 0);
+            return DatabaseHelper.getInstance(context).getWritableDatabase().update(DatabaseHelper.TABLE_MEDIA_HASHES,
+                    values, DatabaseHelper.COL_MEDIA_SCOPE + " LIKE ?", new String[]{baseUrl + "|%"});
+        }).get();
+    }
+
+    /** Upload file until every attempt at its second chunk has failed, leaving the session stored. */
+    private void failAfterFirstChunk(File file) throws Exception {
+        StandInServer.Route chunks = server.route("PUT", SESSIONS + "/*");
+        server.on("PUT", SESSIONS + "/*", request -> String.valueOf(CHUNK).equals(request.getHeader("Upload-Offset"))
+                ? StandInServer.json(500, "{\"success\":false}") : chunks.handle(request));
+        assertTrue(attempt(file, ResumableUploader.KIND_CHAT_FILE) instanceof IOException);
+        server.on("PUT", SESSIONS + "/*", chunks);
+    }
+
+    private List<String> putOffsets() {
+        List<String> offsets = new ArrayList<>();
+        for (RecordedRequest request : server.requests("PUT", SESSIONS + "/")) {
+            offsets.add(request.getHeader("Upload-Offset"));
+        }
+        return offsets;
+    }
+
+    private JSONObject upload(File file, String kind) throws Exception {
+        Object outcome = attempt(file, kind);
+        if (outcome instanceof IOException) {
+            throw (IOException) outcome;
+        }
+        return new JSONObject((String) outcome);
+    }
+
+    /** The response body of an upload, or the IOException it failed with. */
+    private Object attempt(File file, String kind) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        String chatId = ResumableUploader.KIND_POST_IMAGE.equals(kind) ? null : "chat1";
+        uploader.upload(TOKEN, Uri.fromFile(file), kind, chatId, file.getName(), "application/octet-stream",
+                file.length(), null, new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        outcome.set(e);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        try (Response ignored = response) {
+                            outcome.set(response.isSuccessful() ? response.body().string()
+                                    : new IOException("HTTP " + response.code()));
+                        }
+                        done.countDown();
+                    }
+                });
+        assertTrue("upload timed out", done.await(30, TimeUnit.SECONDS));
+        return outcome.get();
+    }
+
+    private File randomFile(String name, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        File file = new File(context.getCacheDir(), System.nanoTime() + "-" + name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * 10k mixed reads and writes (one write in five) on ChatApp.db, the old way and through
+ * {@link DatabaseExecutor}. Timings go to logcat under this class's tag.
+ *
+ * Before: every call opened the database, ran one statement and closed it again, on the
+ * calling thread. After: one shared WAL connection pool, writes serialized on the writer
+ * thread and reads spread over the reader pool.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseExecutorBenchmark {
+    private static final String TAG = "DatabaseExecutorBench";
+    private static final int OPERATIONS = 10_000;
+    private static final int WRITE_EVERY = 5;
+    /** Distinct keys, so reads hit rows that writes keep replacing. */
+    private static final int KEYS = 500;
+    private static final String KEY_PREFIX = "bench_executor_";
+
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_APP_SETTINGS
+            + " (" + DatabaseHelper.COLUMN_KEY + ", " + DatabaseHelper.COLUMN_VALUE + ") VALUES (?, ?)";
+    private static final String SELECT_SQL = "SELECT " + DatabaseHelper.COLUMN_VALUE + " FROM "
+            + DatabaseHelper.TABLE_APP_SETTINGS + " WHERE " + DatabaseHelper.COLUMN_KEY + " = ?";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = DatabaseHelper.getInstance(context);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        for (int i = 0; i < KEYS; i++) {
+            db.execSQL(UPSERT_SQL, new Object[]{KEY_PREFIX + i, "0"});
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.getWritableDatabase().delete(DatabaseHelper.TABLE_APP_SETTINGS,
+                DatabaseHelper.COLUMN_KEY + " LIKE ?", new String[]{KEY_PREFIX + "%"});
+    }
+
+    @Test
+    public void openPerCallVersusSharedExecutor() throws Exception {
+        String path = context.getDatabasePath("ChatApp.db").getPath();
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int readsBefore = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                if (isWrite(i)) {
+                    db.execSQL(UPSERT_SQL, new Object[]{key(i), String.valueOf(i)});
+                } else {
+                    readsBefore += read(db, key(i)) != null ? 1 : 0;
+                }
+            } finally {
+                db.close();
+            }
+        }
+        long beforeMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        DatabaseExecutor executor = DatabaseExecutor.getInstance();
+        start = SystemClock.elapsedRealtimeNanos();
+        List<Future<String>> reads = new ArrayList<>();
+        List<Future<?>> writes = new ArrayList<>();
+        List<Integer> expectedOrder = new ArrayList<>();
+        List<Integer> writeOrder = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < OPERATIONS; i++) {
+            String key = key(i);
+            if (isWrite(i)) {
+                int op = i;
+                String value = String.valueOf(i);
+                expectedOrder.add(op);
+                writes.add(executor.submitWrite(() -> {
+                    // Recorded only when the write ran on the single writer thread
+                    if (executor.isWriterThread()) {
+                        writeOrder.add(op);
+                    }
+                    dbHelper.getWritableDatabase().execSQL(UPSERT_SQL, new Object[]{key, value});
+                    return null;
+                }));
+            } else {
+                reads.add(executor.submitRead(() -> read(dbHelper.getReadableDatabase(), key)));
+            }
+        }
+        int readsAfter = 0;
+        for (Future<String> read : reads) {
+            readsAfter += read.get() != null ? 1 : 0;
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        long afterMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        Log.i(TAG, OPERATIONS + " mixed ops: open per call " + beforeMs + " ms, shared executor " + afterMs + " ms");
+        // Every key exists, so every read finds a row either way
+        assertEquals(OPERATIONS - OPERATIONS / WRITE_EVERY, readsBefore);
+        assertEquals(readsBefore, readsAfter);
+        // Every write ran on the writer thread, one after another in submission order
+        assertEquals(expectedOrder, writeOrder);
+        // So each key holds the last value written to it
+        for (int i = OPERATIONS - KEYS; i < OPERATIONS; i++) {
+            if (isWrite(i) && lastWriteTo(i % KEYS) == i) {
+                assertEquals(String.valueOf(i), read(dbHelper.getReadableDatabase(), key(i)));
+            }
+        }
+    }
+
+    private static boolean isWrite(int op) {
+        return op % WRITE_EVERY == 0;
+    }
+
+    private static String key(int op) {
+        return KEY_PREFIX + (op % KEYS);
+    }
+
+    private static int lastWriteTo(int keyIndex) {
+        int last = -1;
+        for (int i = keyIndex; i < OPERATIONS; i += KEYS) {
+            if (isWrite(i)) {
+                last = i;
+            }
+        }
+        return last;
+    }
+
+    private static String read(SQLiteDatabase db, String key) {
+        try (Cursor cursor = db.rawQuery(SELECT_SQL, new String[]{key})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+}
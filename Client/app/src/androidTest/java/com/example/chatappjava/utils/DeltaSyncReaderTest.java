@@ -0,0 +1,70 @@
+package com.example.chatappjava.utils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checkpoints of delta pages whose rows share a timestamp.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DeltaSyncReaderTest {
+
+    @Test
+    public void checkpointKeepsIdOfLastRowInSameMillisecond() throws Exception {
+        String page = "{\"success\":true,\"data\":{\"messages\":["
+                + "{\"_id\":\"65a000000000000000000001\",\"updatedAt\":1000},"
+                + "{\"_id\":\"65a000000000000000000002\",\"updatedAt\":1000},"
+                + "{\"_id\":\"65a000000000000000000003\",\"updatedAt\":1000}"
+                + "],\"updated_at\":1000,\"since_id\":\"65a000000000000000000003\",\"has_more\":true}}";
+        List<DeltaSyncReader.Checkpoint> batches = new ArrayList<>();
+
+        DeltaSyncReader.Result result = DeltaSyncReader.read(new StringReader(page), "messages", 2,
+                (items, checkpoint) -> batches.add(checkpoint));
+
+        assertTrue(result.success);
+        assertTrue(result.hasMore);
+        assertEquals(3, result.itemCount);
+        assertEquals(2, batches.size());
+        // The first batch stops between rows of the same millisecond
+        assertEquals(1000, batches.get(0).timestamp);
+        assertEquals("65a000000000000000000002", batches.get(0).id);
+        assertEquals(1000, result.checkpoint.timestamp);
+        assertEquals("65a000000000000000000003", result.checkpoint.id);
+    }
+
+    @Test
+    public void checkpointOrder() {
+        DeltaSyncReader.Checkpoint early = new DeltaSyncReader.Checkpoint(1000, "65a000000000000000000002");
+        DeltaSyncReader.Checkpoint tied = new DeltaSyncReader.Checkpoint(1000, "65a000000000000000000009");
+        DeltaSyncReader.Checkpoint noId = new DeltaSyncReader.Checkpoint(1000, null);
+        DeltaSyncReader.Checkpoint later = new DeltaSyncReader.Checkpoint(1001, null);
+
+        assertTrue(tied.isAfter(early));
+        assertFalse(early.isAfter(tied));
+        assertTrue(early.isAfter(noId));
+        assertFalse(noId.isAfter(early));
+        assertTrue(later.isAfter(tied));
+        assertSame(tied, DeltaSyncReader.Checkpoint.later(early, tied));
+    }
+
+    @Test
+    public void olderServerWithoutCursorStillCheckpoints() throws Exception {
+        String page = "{\"success\":true,\"data\":{\"posts\":[{\"_id\":\"p1\",\"updatedAt\":5},"
+                + "{\"_id\":\"p2\",\"updatedAt\":7}],\"updated_at\":7,\"has_more\":false}}";
+
+        DeltaSyncReader.Result result = DeltaSyncReader.read(new StringReader(page), "posts", 100,
+                (items, checkpoint) -> assertEquals(2, items.size()));
+
+        assertFalse(result.hasMore);
+        assertEquals(7, result.checkpoint.timestamp);
+        assertEquals("p2", result.checkpoint.id);
+    }
+}
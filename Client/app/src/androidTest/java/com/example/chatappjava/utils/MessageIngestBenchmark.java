@@ -0,0 +1,121 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.models.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ingesting 50k server messages: through {@link MessageIngestor} micro-batches and through
+ * {@link MessageRepository#saveMessagesBatch} directly, against one transaction per message
+ * (the old path, measured on a sample because it is that slow). Timings go to logcat under
+ * this class's tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageIngestBenchmark {
+    private static final String TAG = "MessageIngestBench";
+    private static final int MESSAGES = 50_000;
+    private static final int PER_ROW_SAMPLE = 2_000;
+    private static final int CHATS = 10;
+    private static final int PAGE_SIZE = 500;
+
+    private MessageRepository repository;
+    private String runId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repository = new MessageRepository(context);
+        runId = "bench-" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() {
+        for (String prefix : new String[]{"ingest", "batch", "row"}) {
+            for (int c = 0; c < CHATS; c++) {
+                repository.deleteAllMessagesForChat(chatId(prefix, c));
+            }
+        }
+    }
+
+    @Test
+    public void ingest50kMessages() throws Exception {
+        List<Message> perRow = messages("row", PER_ROW_SAMPLE);
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (Message message : perRow) {
+            assertNotNull(repository.saveMessage(message));
+        }
+        double perRowMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6 / PER_ROW_SAMPLE;
+
+        List<Message> pages = messages("batch", MESSAGES);
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int from = 0; from < pages.size(); from += PAGE_SIZE) {
+            assertTrue(repository.saveMessagesBatch(pages.subList(from, Math.min(pages.size(), from + PAGE_SIZE))));
+        }
+        long batchMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        // Socket-style arrival: one message at a time into the ingestor
+        MessageIngestor ingestor = MessageIngestor.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        List<Message> events = messages("ingest", MESSAGES);
+        start = SystemClock.elapsedRealtimeNanos();
+        for (Message message : events) {
+            ingestor.enqueue(message);
+        }
+        ingestor.flush();
+        // Writes run in order: once this no-op has run, every batch handed over before it is
+        // stored. A timed flush may still be handing its batch over, so check and go again.
+        long deadline = SystemClock.elapsedRealtime() + 60_000;
+        do {
+            DatabaseExecutor.getInstance().submitWrite(() -> null).get();
+        } while (storedCount("ingest") < MESSAGES && SystemClock.elapsedRealtime() < deadline);
+        long ingestMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d messages: one transaction each ~%.0f ms (%.3f ms/msg over %d), saveMessagesBatch %d ms, MessageIngestor %d ms",
+                MESSAGES, perRowMs * MESSAGES, perRowMs, PER_ROW_SAMPLE, batchMs, ingestMs));
+        assertEquals(MESSAGES, storedCount("batch"));
+        assertEquals(MESSAGES, storedCount("ingest"));
+    }
+
+    private List<Message> messages(String prefix, int count) {
+        long base = System.currentTimeMillis() - count;
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Message message = new Message("Benchmark message " + i + " with some ordinary chat text", "text",
+                    "sender" + (i % 7));
+            message.setId(runId + "-" + prefix + "-" + i);
+            message.setChatId(chatId(prefix, i % CHATS));
+            message.setChatType("group");
+            message.setTimestamp(base + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private int storedCount(String prefix) {
+        int total = 0;
+        for (int c = 0; c < CHATS; c++) {
+            total += repository.getMessagesCountForChat(chatId(prefix, c));
+        }
+        return total;
+    }
+
+    private String chatId(String prefix, int chat) {
+        return runId + "-" + prefix + "-chat" + chat;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.StandInServer;
+import com.example.chatappjava.models.Message;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sequence gaps are detected and fetched as exact ranges from the stand-in server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageSequenceTrackerTest {
+    private static final String TOKEN = "test-token";
+    /** Messages per range page, small so paging is exercised. */
+    private static final int PAGE_LIMIT = 2;
+
+    private Context context;
+    private StandInServer server;
+    private MessageSequenceTracker tracker;
+    private MessageRepository repository;
+    private DatabaseManager prefs;
+    private boolean signedInForTest;
+    private long savedDeltaAt;
+    private String chatId;
+    // seq -> message the stand-in has for chatId
+    private final Map<Long, JSONObject> serverMessages = new TreeMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new StandInServer();
+        server.start();
+        tracker = MessageSequenceTracker.getInstance(context);
+        repository = new MessageRepository(context);
+        prefs = new DatabaseManager(context);
+        String token = prefs.getToken();
+        if (token == null || token.isEmpty()) {
+            prefs.saveLoginInfo(TOKEN, "{\"_id\":\"tester\"}");
+            signedInForTest = true;
+        }
+        savedDeltaAt = syncPrefs().getLong("last_messages_delta", -1);
+        chatId = UUID.randomUUID().toString().replace("-", "").substring(0, 24);
+        server.on("GET", "/api/messages/" + chatId + "/range", this::range);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.deleteAllMessagesForChat(chatId);
+        DatabaseHelper.getInstance(context).getWritableDatabase().delete(DatabaseHelper.TABLE_CHAT_SEQUENCES,
+                DatabaseHelper.COL_SEQ_CHAT_ID + " = ?", new String[]{chatId});
+        if (savedDeltaAt < 0) {
+            syncPrefs().edit().remove("last_messages_delta").commit();
+        } else {
+            syncPrefs().edit().putLong("last_messages_delta", savedDeltaAt).commit();
+        }
+        if (signedInForTest) {
+            prefs.clearLoginInfo();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void holeLeftOpenIsFetchedAsExactRange() throws Exception {
+        // Start tracking at 2 with nothing stored locally
+        assertTrue(tracker.rangesBehind(Collections.singletonMap(chatId, 2L)).isEmpty());
+        addServerMessages(3, 4, 5);
+        CountDownLatch recovered = new CountDownLatch(1);
+        AtomicReference<List<Message>> messages = new AtomicReference<>();
+        MessageSequenceTracker.Listener listener = (chat, list) -> {
+            if (chatId.equals(chat)) {
+                messages.set(list);
+                recovered.countDown();
+            }
+        };
+        tracker.addListener(listener);
+        try {
+            // 3 and 4 never arrive over the socket
+            tracker.onRealtimeMessage(new JSONObject().put("chat", chatId).put("seq", 5));
+
+            assertTrue("gap was not filled", recovered.await(10, TimeUnit.SECONDS));
+        } finally {
+            tracker.removeListener(listener);
+        }
+
+        List<RecordedRequest> fetched = server.requests("GET", "/api/messages/" + chatId + "/range");
+        assertEquals(1, fetched.size());
+        assertEquals("2", fetched.get(0).getRequestUrl().queryParameter("afterSeq"));
+        assertEquals("4", fetched.get(0).getRequestUrl().queryParameter("upToSeq"));
+        assertEquals(2, messages.get().size());
+        assertEquals(2, repository.getMessagesForChat(chatId, 0).size());
+        // The watermark moved over the fetched range and the 5 that was already seen
+        assertTrue(tracker.rangesBehind(Collections.singletonMap(chatId, 5L)).isEmpty());
+    }
+
+    @Test
+    public void catchUpFetchesOnlyWhatIsBehindAcrossPages() throws Exception {
+        assertTrue(tracker.rangesBehind(Collections.singletonMap(chatId, 2L)).isEmpty());
+        // 5 was deleted on the server; the range still answers for it
+        addServerMessages(3, 4, 6, 7);
+
+        List<MessageSequenceTracker.Range> ranges = tracker.rangesBehind(Collections.singletonMap(chatId, 7L));
+        assertEquals(1, ranges.size());
+        assertEquals(2, ranges.get(0).afterSeq);
+        assertEquals(7, ranges.get(0).upToSeq);
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean success = new AtomicBoolean();
+        AtomicInteger saved = new AtomicInteger();
+        SyncManager.getInstance(context).fetchMessageRange(TOKEN, ranges.get(0), (ok, count) -> {
+            success.set(ok);
+            saved.set(count);
+            done.countDown();
+        });
+        assertTrue("range fetch timed out", done.await(10, TimeUnit.SECONDS));
+
+        assertTrue(success.get());
+        assertEquals(4, saved.get());
+        List<RecordedRequest> pages = server.requests("GET", "/api/messages/" + chatId + "/range");
+        assertEquals(2, pages.size());
+        assertEquals("2", pages.get(0).getRequestUrl().queryParameter("afterSeq"));
+        assertEquals("4", pages.get(1).getRequestUrl().queryParameter("afterSeq"));
+        assertEquals(4, repository.getMessagesForChat(chatId, 0).size());
+        assertTrue(tracker.rangesBehind(Collections.singletonMap(chatId, 7L)).isEmpty());
+    }
+
+    @Test
+    public void serverWithoutSequencesFallsBackToTimestampDelta() throws Exception {
+        // Older servers match /sequences as a chat ID and reject it
+        server.on("GET", "/api/messages/sequences", request ->
+                StandInServer.json(400, "{\"success\":false,\"message\":\"Validation failed\"}"));
+        // The periodic delta is not due, so only the fallback asks for it
+        syncPrefs().edit().putLong("last_messages_delta", System.currentTimeMillis()).commit();
+
+        SyncManager.getInstance(context).catchUp(TOKEN);
+
+        assertEquals(1, server.awaitRequests("GET", "/api/messages/sequences", 1, 10_000).size());
+        assertFalse(server.awaitRequests("GET", "/api/updates/messages", 1, 10_000).isEmpty());
+    }
+
+    private SharedPreferences syncPrefs() {
+        return context.getSharedPreferences("sync_prefs", Context.MODE_PRIVATE);
+    }
+
+    private void addServerMessages(long... seqs) throws Exception {
+        for (long seq : seqs) {
+            serverMessages.put(seq, new JSONObject()
+                    .put("_id", server.newObjectId())
+                    .put("chat", chatId)
+                    .put("senderId", "peer")
+                    .put("content", "message " + seq)
+                    .put("type", "text")
+                    .put("seq", seq)
+                    .put("createdAt", System.currentTimeMillis() - 1000 + seq));
+        }
+    }
+
+    /** GET /api/messages/:chatId/range, paged like the server. */
+    private MockResponse range(RecordedRequest request) throws Exception {
+        long afterSeq = Long.parseLong(request.getRequestUrl().queryParameter("afterSeq"));
+        long upToSeq = Long.parseLong(request.getRequestUrl().queryParameter("upToSeq"));
+        JSONArray page = new JSONArray();
+        long lastInPage = afterSeq;
+        for (Map.Entry<Long, JSONObject> entry : serverMessages.entrySet()) {
+            if (entry.getKey() > afterSeq && entry.getKey() <= upToSeq && page.length() < PAGE_LIMIT) {
+                page.put(entry.getValue());
+                lastInPage = entry.getKey();
+            }
+        }
+        boolean hasMore = page.length() == PAGE_LIMIT && lastInPage < upToSeq;
+        JSONObject data = new JSONObject()
+                .put("messages", page)
+                .put("coveredSeq", hasMore ? lastInPage : Math.max(upToSeq, afterSeq))
+                .put("has_more", hasMore);
+        return StandInServer.json(200, new JSONObject().put("success", true).put("data", data).toString());
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.chatappjava.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.StandInServer;
+import com.example.chatappjava.models.Message;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Outbox flushes against the stand-in server: each message gets its own verdict, and a
+ * failed message holds the rest of its chat without touching other chats.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OfflineMessageSyncManagerTest {
+    private static final String TOO_LONG = new String(new char[5001]).replace('\0', 'x');
+    private static final String PENDING = DatabaseHelper.COL_MSG_SYNC_STATUS + " = 'pending'";
+
+    private StandInServer server;
+    private MessageRepository repository;
+    private DatabaseManager prefs;
+    private SQLiteDatabase db;
+    // The device's own pending messages -> their next_attempt_at, held back during the test
+    private final Map<String, Long> parked = new HashMap<>();
+    private boolean signedInForTest;
+    private String chatA;
+    private String chatB;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new StandInServer();
+        server.start();
+        repository = new MessageRepository(context);
+        prefs = new DatabaseManager(context);
+        String token = prefs.getToken();
+        if (token == null || token.isEmpty()) {
+            prefs.saveLoginInfo("test-token", "{\"_id\":\"tester\"}");
+            signedInForTest = true;
+        }
+        chatA = newChatId();
+        chatB = newChatId();
+        parkDevicePendingMessages(context);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.deleteAllMessagesForChat(chatA);
+        repository.deleteAllMessagesForChat(chatB);
+        for (Map.Entry<String, Long> entry : parked.entrySet()) {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT, entry.getValue());
+            db.update(DatabaseHelper.TABLE_MESSAGES, values,
+                    DatabaseHelper.COL_MSG_ID + " = ? AND " + PENDING, new String[]{entry.getKey()});
+        }
+        if (signedInForTest) {
+            prefs.clearLoginInfo();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void batchResultsAreAppliedPerNonce() throws Exception {
+        long now = System.currentTimeMillis();
+        Message a1 = pending(chatA, "first", now);
+        Message a2 = pending(chatA, TOO_LONG, now + 1);
+        Message a3 = pending(chatA, "behind the bad one", now + 2);
+        Message b1 = pending(chatB, "other chat", now + 3);
+
+        Flush flush = flush(a1, b1);
+
+        assertEquals(1, server.requests("POST", "/api/messages/batch").size());
+        JSONArray sent = StandInServer.body(server.requests("POST", "/api/messages/batch").get(0))
+                .getJSONArray("messages");
+        assertEquals(4, sent.length());
+
+        // ok: acked and replaced by the server row
+        assertFalse(repository.isMessagePending(a1.getId()));
+        assertFalse(repository.isMessagePending(b1.getId()));
+        assertNotNull(flush.synced.get(a1.getId()));
+        assertEquals(chatB, flush.synced.get(b1.getId()).getChatId());
+        // failed: still pending, with a retry scheduled
+        assertTrue(repository.isMessagePending(a2.getId()));
+        assertTrue(waitForRetry(a2.getId()));
+        // held: still pending and never attempted, so no retry of its own
+        assertTrue(repository.isMessagePending(a3.getId()));
+        assertFalse(repository.getScheduledRetries(System.currentTimeMillis()).containsKey(a3.getId()));
+        assertEquals(ids(a2, a3), ids(repository.getPendingMessagesForChat(chatA)));
+        // the held message counts too, so progress ends at total
+        assertTrue(flush.complete.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void serverWithoutBatchFallsBackToSingleSends() throws Exception {
+        server.on("POST", "/api/messages/batch", request ->
+                StandInServer.json(404, "{\"success\":false,\"message\":\"Not found\"}"));
+        long now = System.currentTimeMillis();
+        Message a1 = pending(chatA, "first", now);
+        Message a2 = pending(chatA, TOO_LONG, now + 1);
+        Message a3 = pending(chatA, "behind the bad one", now + 2);
+        Message b1 = pending(chatB, "other chat", now + 3);
+
+        flush(a1, b1);
+
+        assertEquals(1, server.requests("POST", "/api/messages/batch").size());
+        List<String> singles = singleSends();
+        assertTrue(waitForRetry(a2.getId()));
+        // a3 waits behind a2 and is not sent
+        assertEquals(3, singles.size());
+        assertFalse(singles.contains(a3.getClientNonce()));
+        assertFalse(repository.isMessagePending(a1.getId()));
+        assertFalse(repository.isMessagePending(b1.getId()));
+        assertEquals(ids(a2, a3), ids(repository.getPendingMessagesForChat(chatA)));
+    }
+
+    @Test
+    public void rejectedBatchFailsWithoutSingleSends() throws Exception {
+        // A server that validates the batch as a whole rejects it for one bad item
+        server.on("POST", "/api/messages/batch", request ->
+                StandInServer.json(400, "{\"success\":false,\"message\":\"Validation failed\"}"));
+        long now = System.currentTimeMillis();
+        Message a1 = pending(chatA, "first", now);
+        Message b1 = pending(chatB, "other chat", now + 1);
+
+        flush();
+
+        assertTrue(waitForRetry(a1.getId()));
+        assertTrue(waitForRetry(b1.getId()));
+        assertEquals(1, server.requests("POST", "/api/messages/batch").size());
+        assertTrue(singleSends().isEmpty());
+        assertTrue(repository.isMessagePending(a1.getId()));
+        assertTrue(repository.isMessagePending(b1.getId()));
+    }
+
+    /** Client nonces of the messages sent one at a time. */
+    private List<String> singleSends() throws Exception {
+        List<String> singles = new ArrayList<>();
+        for (RecordedRequest request : server.requests("POST", "/api/messages")) {
+            if ("/api/messages".equals(request.getPath())) {
+                singles.add(StandInServer.body(request).getString("clientNonce"));
+            }
+        }
+        return singles;
+    }
+
+    /**
+     * A flush sends every pending row; schedule the ones already on the device a day out so
+     * only this test's messages reach the stand-in server.
+     */
+    private void parkDevicePendingMessages(Context context) {
+        db = DatabaseHelper.getInstance(context).getWritableDatabase();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_MESSAGES,
+                new String[]{DatabaseHelper.COL_MSG_ID, DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT},
+                PENDING, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                parked.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        db.update(DatabaseHelper.TABLE_MESSAGES, values, PENDING, null);
+    }
+
+    private Message pending(String chatId, String content, long timestamp) {
+        Message message = new Message(content, "text", "tester");
+        message.setChatId(chatId);
+        message.setChatType("private");
+        message.setTimestamp(timestamp);
+        assertNotNull(repository.saveMessage(message));
+        return message;
+    }
+
+    /** Flush the outbox and wait until every message in acked has been synced. */
+    private Flush flush(Message... acked) throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        OfflineMessageSyncManager manager = new OfflineMessageSyncManager(context);
+        assumeTrue("needs a network connection", manager.isNetworkAvailable());
+        Flush flush = new Flush(acked);
+        manager.setPendingSyncListener(flush);
+        manager.syncPendingMessages();
+        assertTrue("flush timed out", flush.done.await(15, TimeUnit.SECONDS));
+        return flush;
+    }
+
+    private boolean waitForRetry(String messageId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (repository.getScheduledRetries(System.currentTimeMillis()).containsKey(messageId)) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static List<String> ids(Message... messages) {
+        List<String> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return ids(messages.toArray(new Message[0]));
+    }
+
+    private static String newChatId() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 24);
+    }
+
+    private static final class Flush implements OfflineMessageSyncManager.PendingSyncListener {
+        final Map<String, Message> synced = new ConcurrentHashMap<>();
+        final Set<String> expected = ConcurrentHashMap.newKeySet();
+        final CountDownLatch done;
+        final CountDownLatch complete = new CountDownLatch(1);
+
+        Flush(Message... acked) {
+            for (Message message : acked) {
+                expected.add(message.getId());
+            }
+            done = new CountDownLatch(expected.size());
+        }
+
+        @Override
+        public void onMessageSynced(String tempMessageId, Message serverMessage) {
+            synced.put(tempMessageId, serverMessage);
+            if (expected.remove(tempMessageId)) {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onSyncProgress(int completed, int total) {
+            if (completed == total) {
+                complete.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.chatappjava.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatappjava.models.Chat;
+import com.example.chatappjava.models.Message;
+import com.example.chatappjava.models.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Mapping 10k message and 10k conversation rows read from SQLite: the old path (every column
+ * looked up by name on every row, some fields set through reflection, over SELECT *) against
+ * {@link MessageRowMapper} and {@link ChatRowMapper} over their projections. Timings go to
+ * logcat under this class's tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMapperBenchmark {
+    private static final String TAG = "RowMapperBench";
+    private static final int ROWS = 10_000;
+
+    private SQLiteDatabase db;
+    private String runId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = DatabaseHelper.getInstance(context).getWritableDatabase();
+        runId = "bench-" + System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                db.insertOrThrow(DatabaseHelper.TABLE_CONVERSATIONS, null,
+                        conversation(chatId(i), i % 2 == 0 ? "private" : "group"));
+                db.insertOrThrow(DatabaseHelper.TABLE_MESSAGES, null, message(i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.delete(DatabaseHelper.TABLE_MESSAGES, DatabaseHelper.COL_MSG_CHAT_ID + " = ?", new String[]{chatId(0)});
+        db.delete(DatabaseHelper.TABLE_CONVERSATIONS, DatabaseHelper.COL_CONV_ID + " LIKE ?",
+                new String[]{runId + "-%"});
+    }
+
+    @Test
+    public void mapsTenThousandRows() {
+        String messagesWhere = DatabaseHelper.COL_MSG_CHAT_ID + " = ?";
+        String[] messagesArgs = {chatId(0)};
+        String order = DatabaseHelper.COL_MSG_TIMESTAMP + " ASC";
+        String chatsWhere = DatabaseHelper.COL_CONV_ID + " LIKE ?";
+        String[] chatsArgs = {runId + "-%"};
+        String chatsOrder = DatabaseHelper.COL_CONV_ID + " ASC";
+
+        // Warm the page cache so neither path pays for the first read
+        count(db.query(DatabaseHelper.TABLE_MESSAGES, null, messagesWhere, messagesArgs, null, null, order));
+        count(db.query(DatabaseHelper.TABLE_CONVERSATIONS, null, chatsWhere, chatsArgs, null, null, chatsOrder));
+
+        List<Message> oldMessages = new ArrayList<>(ROWS);
+        long start = SystemClock.elapsedRealtimeNanos();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_MESSAGES, null, messagesWhere, messagesArgs,
+                null, null, order)) {
+            while (cursor.moveToNext()) {
+                oldMessages.add(oldCursorToMessage(cursor));
+            }
+        }
+        long oldMessagesMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        List<Message> newMessages = new ArrayList<>(ROWS);
+        start = SystemClock.elapsedRealtimeNanos();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_MESSAGES, MessageRowMapper.COLUMNS, messagesWhere,
+                messagesArgs, null, null, order)) {
+            MessageRowMapper mapper = new MessageRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                newMessages.add(mapper.map(cursor));
+            }
+        }
+        long newMessagesMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        List<Chat> oldChats = new ArrayList<>(ROWS);
+        start = SystemClock.elapsedRealtimeNanos();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_CONVERSATIONS, null, chatsWhere, chatsArgs,
+                null, null, chatsOrder)) {
+            while (cursor.moveToNext()) {
+                oldChats.add(oldCursorToChat(cursor));
+            }
+        }
+        long oldChatsMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        List<Chat> newChats = new ArrayList<>(ROWS);
+        start = SystemClock.elapsedRealtimeNanos();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_CONVERSATIONS, ChatRowMapper.COLUMNS, chatsWhere,
+                chatsArgs, null, null, chatsOrder)) {
+            ChatRowMapper mapper = new ChatRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                newChats.add(mapper.map(cursor));
+            }
+        }
+        long newChatsMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+
+        Log.i(TAG, ROWS + " rows: messages before " + oldMessagesMs + " ms, after " + newMessagesMs
+                + " ms; conversations before " + oldChatsMs + " ms, after " + newChatsMs + " ms");
+
+        assertEquals(ROWS, oldMessages.size());
+        assertEquals(ROWS, newMessages.size());
+        for (int i = 0; i < ROWS; i++) {
+            Message before = oldMessages.get(i);
+            Message after = newMessages.get(i);
+            assertEquals(before.getId(), after.getId());
+            assertEquals(before.getTimestamp(), after.getTimestamp());
+            assertEquals(before.getContent(), after.getContent());
+            assertEquals(before.getSenderDisplayName(), after.getSenderDisplayName());
+            assertEquals(before.getAttachments(), after.getAttachments());
+            assertEquals(before.getReplyToMessageId(), after.getReplyToMessageId());
+            assertEquals(before.isRead(), after.isRead());
+            assertEquals(before.getSyncStatus(), after.getSyncStatus());
+        }
+        assertEquals(ROWS, oldChats.size());
+        assertEquals(ROWS, newChats.size());
+        for (int i = 0; i < ROWS; i++) {
+            Chat before = oldChats.get(i);
+            Chat after = newChats.get(i);
+            assertEquals(before.getId(), after.getId());
+            assertEquals(before.getName(), after.getName());
+            assertEquals(before.getUnreadCount(), after.getUnreadCount());
+            assertEquals(before.getLastMessageTime(), after.getLastMessageTime());
+            assertEquals(before.getCreatedAt(), after.getCreatedAt());
+            assertEquals(before.getGroupId(), after.getGroupId());
+            assertEquals(before.getVisibility(), after.getVisibility());
+            assertEquals(before.getOtherParticipant() != null, after.getOtherParticipant() != null);
+        }
+    }
+
+    private ContentValues conversation(String id, String type) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COL_CONV_ID, id);
+        values.put(DatabaseHelper.COL_CONV_TYPE, type);
+        values.put(DatabaseHelper.COL_CONV_NAME, "Chat " + id);
+        values.put(DatabaseHelper.COL_CONV_AVATAR, "/uploads/avatars/" + id + ".jpg");
+        values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE, "last");
+        values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME, 1_700_000_000_000L);
+        values.put(DatabaseHelper.COL_CONV_UNREAD_COUNT, 3);
+        values.put(DatabaseHelper.COL_CONV_IS_ACTIVE, 1);
+        values.put(DatabaseHelper.COL_CONV_CREATOR_ID, "creator1");
+        values.put(DatabaseHelper.COL_CONV_CREATED_AT, 1_600_000_000_000L);
+        values.put(DatabaseHelper.COL_CONV_UPDATED_AT, 1_700_000_000_500L);
+        values.put(DatabaseHelper.COL_CONV_GROUP_ID, "group1");
+        values.put(DatabaseHelper.COL_CONV_IS_PUBLIC, 1);
+        values.put(DatabaseHelper.COL_CONV_VISIBILITY, "public");
+        return values;
+    }
+
+    private ContentValues message(int i) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COL_MSG_ID, runId + "-msg" + i);
+        values.put(DatabaseHelper.COL_MSG_CHAT_ID, chatId(0));
+        values.put(DatabaseHelper.COL_MSG_SENDER_ID, "sender" + (i % 7));
+        values.put(DatabaseHelper.COL_MSG_SENDER_NAME, "Sender " + (i % 7));
+        values.put(DatabaseHelper.COL_MSG_CONTENT, "Benchmark message " + i + " with some ordinary chat text");
+        values.put(DatabaseHelper.COL_MSG_TYPE, "text");
+        values.put(DatabaseHelper.COL_MSG_CHAT_TYPE, "group");
+        values.put(DatabaseHelper.COL_MSG_TIMESTAMP, 1_700_000_000_000L + i);
+        values.put(DatabaseHelper.COL_MSG_IS_READ, i % 2);
+        values.put(DatabaseHelper.COL_MSG_ATTACHMENTS, "[]");
+        if (i % 10 == 0) {
+            values.put(DatabaseHelper.COL_MSG_REPLY_TO_ID, runId + "-msg" + (i / 2));
+        }
+        values.put(DatabaseHelper.COL_MSG_CLIENT_NONCE, runId + "-nonce" + i);
+        values.put(DatabaseHelper.COL_MSG_SYNC_STATUS, "synced");
+        values.put(DatabaseHelper.COL_MSG_SEQ, i + 1);
+        return values;
+    }
+
+    private String chatId(int i) {
+        return runId + "-chat" + i;
+    }
+
+    private static void count(Cursor cursor) {
+        try (Cursor c = cursor) {
+            while (c.moveToNext()) {
+                // read through
+            }
+        }
+    }
+
+    /** MessageRepository.cursorToMessage before the row mappers. */
+    private static Message oldCursorToMessage(Cursor cursor) {
+        Message message = new Message();
+
+        int idIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ID);
+        int chatIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_ID);
+        int senderIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_ID);
+        int senderNameIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_NAME);
+        int senderAvatarIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_AVATAR);
+        int contentIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CONTENT);
+        int typeIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TYPE);
+        int chatTypeIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_TYPE);
+        int timestampIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TIMESTAMP);
+        int isReadIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_READ);
+        int isDeletedIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_DELETED);
+        int attachmentsIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ATTACHMENTS);
+        int localImageUriIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI);
+        int replyToIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_ID);
+        int replyToContentIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT);
+        int replyToSenderIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_SENDER);
+        int editedIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED);
+        int editedAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED_AT);
+        int clientNonceIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CLIENT_NONCE);
+        int syncStatusIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SYNC_STATUS);
+
+        if (idIndex >= 0) message.setId(cursor.getString(idIndex));
+        if (chatIdIndex >= 0) message.setChatId(cursor.getString(chatIdIndex));
+        if (senderIdIndex >= 0) message.setSenderId(cursor.getString(senderIdIndex));
+        if (senderNameIndex >= 0) message.setSenderDisplayName(cursor.getString(senderNameIndex));
+        if (senderAvatarIndex >= 0) message.setSenderAvatarUrl(cursor.getString(senderAvatarIndex));
+        if (contentIndex >= 0) message.setContent(cursor.getString(contentIndex));
+        if (typeIndex >= 0) message.setType(cursor.getString(typeIndex));
+        if (chatTypeIndex >= 0) message.setChatType(cursor.getString(chatTypeIndex));
+        if (timestampIndex >= 0) message.setTimestamp(cursor.getLong(timestampIndex));
+        if (isReadIndex >= 0) message.setRead(cursor.getInt(isReadIndex) == 1);
+        if (isDeletedIndex >= 0) message.setDeleted(cursor.getInt(isDeletedIndex) == 1);
+        if (attachmentsIndex >= 0) {
+            String attachments = cursor.getString(attachmentsIndex);
+            if (attachments != null) {
+                try {
+                    java.lang.reflect.Field attField = Message.class.getDeclaredField("attachments");
+                    attField.setAccessible(true);
+                    attField.set(message, attachments);
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not set attachments field");
+                }
+            }
+        }
+        if (localImageUriIndex >= 0) message.setLocalImageUri(cursor.getString(localImageUriIndex));
+        if (replyToIdIndex >= 0) message.setReplyToMessageId(cursor.getString(replyToIdIndex));
+        if (replyToContentIndex >= 0) message.setReplyToContent(cursor.getString(replyToContentIndex));
+        if (replyToSenderIndex >= 0) message.setReplyToSenderName(cursor.getString(replyToSenderIndex));
+        if (editedIndex >= 0) message.setEdited(cursor.getInt(editedIndex) == 1);
+        if (editedAtIndex >= 0) message.setEditedAt(cursor.getLong(editedAtIndex));
+        if (message.isEdited() && message.getEditedAt() <= 0) {
+            message.setEdited(false);
+        }
+        if (clientNonceIndex >= 0) message.setClientNonce(cursor.getString(clientNonceIndex));
+        if (syncStatusIndex >= 0) {
+            String status = cursor.getString(syncStatusIndex);
+            if (status != null && !status.isEmpty()) {
+                message.setSyncStatus(status);
+            }
+        }
+        message.inferSyncStatusIfNeeded();
+        return message;
+    }
+
+    /** ConversationRepository.cursorToChat before the row mappers. */
+    private static Chat oldCursorToChat(Cursor cursor) {
+        Chat chat = new Chat();
+
+        int idIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_ID);
+        int typeIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_TYPE);
+        int nameIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_NAME);
+        int descriptionIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_DESCRIPTION);
+        int avatarIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_AVATAR);
+        int lastMessageIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE);
+        int lastMessageTimeIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME);
+        int unreadCountIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UNREAD_COUNT);
+        int isActiveIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_ACTIVE);
+        int creatorIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATOR_ID);
+        int createdAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATED_AT);
+        int updatedAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UPDATED_AT);
+        int groupIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_GROUP_ID);
+        int isPublicIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_PUBLIC);
+        int visibilityIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_VISIBILITY);
+
+        if (idIndex >= 0) chat.setId(cursor.getString(idIndex));
+        if (typeIndex >= 0) chat.setType(cursor.getString(typeIndex));
+        if (nameIndex >= 0) chat.setName(cursor.getString(nameIndex));
+        if (descriptionIndex >= 0) chat.setDescription(cursor.getString(descriptionIndex));
+        if (avatarIndex >= 0) {
+            String avatar = cursor.getString(avatarIndex);
+            chat.setAvatar(avatar);
+            if (chat.isPrivateChat() && avatar != null && !avatar.isEmpty()) {
+                User otherParticipant = chat.getOtherParticipant();
+                if (otherParticipant == null) {
+                    otherParticipant = new User();
+                    chat.setOtherParticipant(otherParticipant);
+                }
+                otherParticipant.setAvatar(avatar);
+            }
+        }
+        if (lastMessageIndex >= 0) {
+            setField(chat, "lastMessage", cursor.getString(lastMessageIndex));
+        }
+        if (lastMessageTimeIndex >= 0) chat.setLastMessageTime(cursor.getLong(lastMessageTimeIndex));
+        if (unreadCountIndex >= 0) {
+            setField(chat, "unreadCount", cursor.getInt(unreadCountIndex));
+        }
+        if (isActiveIndex >= 0) chat.setActive(cursor.getInt(isActiveIndex) == 1);
+        if (creatorIdIndex >= 0) chat.setCreatorId(cursor.getString(creatorIdIndex));
+        if (createdAtIndex >= 0) {
+            setField(chat, "createdAt", cursor.getLong(createdAtIndex));
+        }
+        if (updatedAtIndex >= 0) chat.setUpdatedAt(cursor.getLong(updatedAtIndex));
+        if (groupIdIndex >= 0) {
+            setField(chat, "groupId", cursor.getString(groupIdIndex));
+        }
+        if (isPublicIndex >= 0) chat.setIsPublic(cursor.getInt(isPublicIndex) == 1);
+        if (visibilityIndex >= 0) {
+            setField(chat, "visibility", cursor.getString(visibilityIndex));
+        }
+        return chat;
+    }
+
+    /** The field lookup and accessibility change happen on every call, as they did. */
+    private static void setField(Chat chat, String name, Object value) {
+        try {
+            java.lang.reflect.Field field = Chat.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(chat, value);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not set " + name);
+        }
+    }
+}
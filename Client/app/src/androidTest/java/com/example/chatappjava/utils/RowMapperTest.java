@@ -0,0 +1,156 @@
+package com.example.chatappjava.utils;
+
+import android.database.MatrixCursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.chatappjava.models.Chat;
+import com.example.chatappjava.models.Message;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cursor rows to models through {@link MessageRowMapper} and {@link ChatRowMapper}, including
+ * the narrower projections the repositories query with.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMapperTest {
+    @Test
+    public void messageRowMapsEveryColumn() {
+        MatrixCursor cursor = new MatrixCursor(MessageRowMapper.COLUMNS);
+        cursor.addRow(messageRow("64b7f0c2a1d3e4f5a6b7c8d9", 1_700_000_000_000L, 1_700_000_100_000L));
+        assertTrue(cursor.moveToFirst());
+
+        Message message = new MessageRowMapper(cursor).map(cursor);
+
+        assertEquals("64b7f0c2a1d3e4f5a6b7c8d9", message.getId());
+        assertEquals("chat1", message.getChatId());
+        assertEquals("sender1", message.getSenderId());
+        assertEquals("Alice", message.getSenderDisplayName());
+        assertEquals("hello", message.getContent());
+        assertEquals("text", message.getType());
+        assertEquals("group", message.getChatType());
+        assertEquals(1_700_000_000_000L, message.getTimestamp());
+        assertTrue(message.isRead());
+        assertFalse(message.isDeleted());
+        assertEquals("[]", message.getAttachments());
+        assertEquals("reply1", message.getReplyToMessageId());
+        assertTrue(message.isEdited());
+        assertEquals(1_700_000_100_000L, message.getEditedAt());
+        assertEquals("nonce-1", message.getClientNonce());
+        assertEquals(Message.SYNC_SYNCED, message.getSyncStatus());
+        assertEquals(42, message.getSeq());
+    }
+
+    @Test
+    public void editedWithoutEditTimeIsNotEdited() {
+        MatrixCursor cursor = new MatrixCursor(MessageRowMapper.COLUMNS);
+        cursor.addRow(messageRow("64b7f0c2a1d3e4f5a6b7c8d9", 1_700_000_000_000L, 0L));
+        assertTrue(cursor.moveToFirst());
+
+        assertFalse(new MessageRowMapper(cursor).map(cursor).isEdited());
+    }
+
+    @Test
+    public void previewProjectionLeavesOtherFieldsAtTheirDefaults() {
+        MatrixCursor cursor = new MatrixCursor(MessageRowMapper.PREVIEW_COLUMNS);
+        Object[] full = messageRow("64b7f0c2a1d3e4f5a6b7c8d9", 1_700_000_000_000L, 1_700_000_100_000L);
+        Object[] preview = new Object[MessageRowMapper.PREVIEW_COLUMNS.length];
+        for (int i = 0; i < preview.length; i++) {
+            preview[i] = full[Arrays.asList(MessageRowMapper.COLUMNS).indexOf(MessageRowMapper.PREVIEW_COLUMNS[i])];
+        }
+        cursor.addRow(preview);
+        assertTrue(cursor.moveToFirst());
+
+        Message message = new MessageRowMapper(cursor).map(cursor);
+        Message defaults = new Message();
+
+        assertEquals("hello", message.getContent());
+        assertEquals(1_700_000_000_000L, message.getTimestamp());
+        assertEquals(defaults.isRead(), message.isRead());
+        assertEquals(defaults.getAttachments(), message.getAttachments());
+        assertEquals(defaults.getReplyToMessageId(), message.getReplyToMessageId());
+        assertFalse(message.isEdited());
+        assertEquals(defaults.getSeq(), message.getSeq());
+    }
+
+    @Test
+    public void privateChatAvatarSeedsThePeer() {
+        MatrixCursor cursor = new MatrixCursor(ChatRowMapper.COLUMNS);
+        cursor.addRow(chatRow("chat1", "private", "/uploads/avatars/peer.jpg"));
+        cursor.addRow(chatRow("chat2", "group", "/uploads/avatars/group.jpg"));
+        ChatRowMapper mapper = new ChatRowMapper(cursor);
+
+        assertTrue(cursor.moveToNext());
+        Chat direct = mapper.map(cursor);
+        assertEquals("chat1", direct.getId());
+        assertEquals("/uploads/avatars/peer.jpg", direct.getAvatar());
+        assertNotNull(direct.getOtherParticipant());
+        assertEquals("/uploads/avatars/peer.jpg", direct.getOtherParticipant().getAvatar());
+
+        assertTrue(cursor.moveToNext());
+        Chat group = mapper.map(cursor);
+        assertEquals("chat2", group.getId());
+        assertNull(group.getOtherParticipant());
+        assertEquals("group1", group.getGroupId());
+        assertTrue(group.isPublicGroup());
+        assertEquals("public", group.getVisibility());
+        assertEquals(3, group.getUnreadCount());
+        assertEquals(1_700_000_000_000L, group.getLastMessageTime());
+        assertEquals(1_600_000_000_000L, group.getCreatedAt());
+        assertEquals(1_700_000_000_500L, group.getUpdatedAt());
+    }
+
+    /** A messages row in {@link MessageRowMapper#COLUMNS} order. */
+    private static Object[] messageRow(String id, long timestamp, long editedAt) {
+        return new Object[]{
+                id,            // id
+                "chat1",       // chat_id
+                "sender1",     // sender_id
+                "Alice",       // sender_name
+                null,          // sender_avatar
+                "hello",       // content
+                "text",        // type
+                "group",       // chat_type
+                timestamp,     // timestamp
+                1,             // is_read
+                0,             // is_deleted
+                "[]",          // attachments
+                null,          // local_image_uri
+                "reply1",      // reply_to_id
+                "earlier",     // reply_to_content
+                "Bob",         // reply_to_sender
+                1,             // edited
+                editedAt,      // edited_at
+                "nonce-1",     // client_nonce
+                "synced",      // sync_status
+                42L            // seq
+        };
+    }
+
+    /** A conversations row in {@link ChatRowMapper#COLUMNS} order. */
+    private static Object[] chatRow(String id, String type, String avatar) {
+        return new Object[]{
+                id,                  // id
+                type,                // type
+                "Chat " + id,        // name
+                null,                // description
+                avatar,              // avatar
+                "last",              // last_message
+                1_700_000_000_000L,  // last_message_time
+                3,                   // unread_count
+                1,                   // is_active
+                "creator1",          // creator_id
+                1_600_000_000_000L,  // created_at
+                1_700_000_000_500L,  // updated_at
+                "group1",            // group_id
+                1,                   // is_public
+                "public"             // visibility
+        };
+    }
+}
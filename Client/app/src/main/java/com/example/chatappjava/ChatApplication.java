@@ -1,12 +1,18 @@
 package com.example.chatappjava;
 
+import android.app.Activity;
 import android.app.Application;
 import android.content.Intent;
+import android.os.Bundle;
 import android.util.Log;
 import com.example.chatappjava.models.Chat;
+import com.example.chatappjava.network.HttpEngine;
 import com.example.chatappjava.network.SocketManager;
 import com.example.chatappjava.ui.call.RingingActivity;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.OfflineMessageSyncManager;
+import com.example.chatappjava.utils.StorageRetentionManager;
+import com.example.chatappjava.utils.SyncOrchestrator;
 import com.google.firebase.messaging.FirebaseMessaging;
 import org.json.JSONException;
 
@@ -18,11 +24,15 @@ public class ChatApplication extends Application {
     private static ChatApplication instance;
     private SocketManager socketManager;
     private DatabaseManager databaseManager;
+    private int startedActivities;
     
     @Override
     public void onCreate() {
         super.onCreate();
         instance = this;
+
+        // Disk cache for API reads; must be in place before the first request
+        HttpEngine.init(this);
         
         // Initialize managers
         databaseManager = new DatabaseManager(this);
@@ -33,6 +43,17 @@ public class ChatApplication extends Application {
         
         // Setup global socket connection
         setupGlobalSocketManager();
+
+        // Re-arm outbox retries persisted by a previous process
+        if (databaseManager.getToken() != null) {
+            OfflineMessageSyncManager.getInstance(this).scheduleNextRetry();
+        }
+
+        // Network and socket driven sync; starts listening right away
+        SyncOrchestrator.getInstance(this);
+
+        // Trim the local store while nothing is on screen
+        registerActivityLifecycleCallbacks(new IdleWindowCallbacks());
     }
     
     public static ChatApplication getInstance() {
@@ -102,6 +123,43 @@ public class ChatApplication extends Application {
         }
     }
     
+    /**
+     * Tracks whether any activity is visible; storage compaction runs only while none is,
+     * and foreground sync fallbacks only while one is.
+     */
+    private class IdleWindowCallbacks implements ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (startedActivities++ == 0) {
+                StorageRetentionManager.getInstance(ChatApplication.this).cancel();
+                SyncOrchestrator.getInstance(ChatApplication.this).onAppForeground();
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (startedActivities > 0 && --startedActivities == 0) {
+                SyncOrchestrator.getInstance(ChatApplication.this).onAppBackground();
+                StorageRetentionManager.getInstance(ChatApplication.this).runIfDue();
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {}
+    }
+    
     /**
      * Initialize Firebase Cloud Messaging
      */
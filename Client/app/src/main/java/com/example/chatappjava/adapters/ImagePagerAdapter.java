@@ -8,8 +8,8 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatappjava.R;
+import com.example.chatappjava.utils.CachedImageLoader;
 import com.github.chrisbanes.photoview.PhotoView;
-import com.squareup.picasso.Picasso;
 
 import java.util.List;
 
@@ -56,12 +56,9 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
                               ":" + com.example.chatappjava.config.ServerConfig.getServerPort() + imageUrl;
                 }
                 
-                Picasso.get()
-                    .load(imageUrl)
-                    .placeholder(R.drawable.ic_profile_placeholder)
-                    .error(R.drawable.ic_profile_placeholder)
-                    .into(ivZoomImage);
+                CachedImageLoader.load(ivZoomImage, imageUrl, R.drawable.ic_profile_placeholder, request -> { });
             } else {
+                CachedImageLoader.clear(ivZoomImage);
                 ivZoomImage.setImageResource(R.drawable.ic_profile_placeholder);
             }
         }
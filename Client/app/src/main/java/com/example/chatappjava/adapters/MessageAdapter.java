@@ -18,7 +18,9 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.chatappjava.R;
 import com.example.chatappjava.models.Message;
 import com.example.chatappjava.models.User;
+import com.example.chatappjava.network.MediaCache;
 import com.example.chatappjava.utils.AvatarManager;
+import com.example.chatappjava.utils.CachedImageLoader;
 import com.example.chatappjava.config.ServerConfig;
 import com.squareup.picasso.Picasso;
 import java.text.SimpleDateFormat;
@@ -389,8 +391,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                             if (!(thumb.startsWith("content://") || thumb.startsWith("file://"))) {
                                 loadUrl = thumb.startsWith("http") ? thumb : ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + thumb);
                             }
-                            Picasso.get().cancelRequest(ivSentReplyThumb);
-                            Picasso.get().load(loadUrl).noFade().fit().centerCrop().into(ivSentReplyThumb);
+                            CachedImageLoader.load(ivSentReplyThumb, loadUrl, 0, request -> request.noFade().fit().centerCrop());
                         } else {
                             ivSentReplyThumb.setVisibility(View.GONE);
                         }
@@ -425,15 +426,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                         String localUri = message.getLocalImageUri();
                         String displayUrl;
                         // Prefer localUri to avoid flicker while upload completes
-                        if (localUri != null && !localUri.isEmpty()) {
-                            Picasso.get().cancelRequest(ivSentImage);
-                            Picasso.get()
-                                .load(localUri)
-                                .noFade()
-                                .fit()
-                                .centerCrop()
-                                .error(R.drawable.ic_profile_placeholder)
-                                .into(ivSentImage);
+                        if (hasLocalCopy(localUri)) {
+                            CachedImageLoader.load(ivSentImage, localUri, 0,
+                                request -> request.noFade().fit().centerCrop().error(R.drawable.ic_profile_placeholder));
                             displayUrl = (serverUrlCandidate != null && !serverUrlCandidate.isEmpty()) ?
                                 (serverUrlCandidate.startsWith("http") ? serverUrlCandidate :
                                     ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + serverUrlCandidate))
@@ -442,15 +437,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                             // Convert to full URL for display
                             displayUrl = serverUrlCandidate.startsWith("http") ? serverUrlCandidate :
                                 ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + serverUrlCandidate);
-                            Picasso.get().cancelRequest(ivSentImage);
-                            Picasso.get()
-                                .load(displayUrl)
-                                .noFade()
-                                .fit()
-                                .centerCrop()
-                                .placeholder(R.drawable.ic_profile_placeholder)
-                                .error(R.drawable.ic_profile_placeholder)
-                                .into(ivSentImage);
+                            // From the media cache; downloaded once, read from disk afterwards
+                            CachedImageLoader.load(ivSentImage, displayUrl, R.drawable.ic_profile_placeholder,
+                                request -> request.noFade().fit().centerCrop());
                         } else {
                             displayUrl = null;
                         }
@@ -458,7 +447,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                         if (displayUrl != null) {
                             ivSentImage.setOnClickListener(v -> {
                                 if (listener != null) {
-                                    listener.onImageClick(displayUrl, message.getLocalImageUri());
+                                    listener.onImageClick(displayUrl, localImageFor(v.getContext(), message, displayUrl));
                                 }
                             });
                         }
@@ -547,6 +536,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                             ivSentImage.setPadding(0, 0, 0, 0);
                         } catch (Exception ignored) {}
                         boolean isDownloaded = isFileDownloaded(itemView.getContext(), message);
+                        CachedImageLoader.clear(ivSentImage);
                         ivSentImage.setImageResource(isDownloaded ? R.drawable.ic_open : R.drawable.ic_download);
                         ivSentImage.setOnClickListener(v -> {
                             if (listener != null) {
@@ -608,8 +598,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                             if (!(thumb.startsWith("content://") || thumb.startsWith("file://"))) {
                                 loadUrl = thumb.startsWith("http") ? thumb : ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + thumb);
                             }
-                            Picasso.get().cancelRequest(ivReceivedReplyThumb);
-                            Picasso.get().load(loadUrl).noFade().fit().centerCrop().into(ivReceivedReplyThumb);
+                            CachedImageLoader.load(ivReceivedReplyThumb, loadUrl, 0, request -> request.noFade().fit().centerCrop());
                         } else {
                             ivReceivedReplyThumb.setVisibility(View.GONE);
                         }
@@ -647,15 +636,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                         String serverUrlCandidate = getImageUrlFromMessage(message);
                         String localUri = message.getLocalImageUri();
                         String displayUrl;
-                        if (localUri != null && !localUri.isEmpty()) {
-                            Picasso.get().cancelRequest(ivReceivedImage);
-                            Picasso.get()
-                                .load(localUri)
-                                .noFade()
-                                .fit()
-                                .centerCrop()
-                                .error(R.drawable.ic_profile_placeholder)
-                                .into(ivReceivedImage);
+                        if (hasLocalCopy(localUri)) {
+                            CachedImageLoader.load(ivReceivedImage, localUri, 0,
+                                request -> request.noFade().fit().centerCrop().error(R.drawable.ic_profile_placeholder));
                             displayUrl = (serverUrlCandidate != null && !serverUrlCandidate.isEmpty()) ?
                                 (serverUrlCandidate.startsWith("http") ? serverUrlCandidate :
                                     ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + serverUrlCandidate))
@@ -663,15 +646,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                         } else if (serverUrlCandidate != null && !serverUrlCandidate.isEmpty()) {
                             displayUrl = serverUrlCandidate.startsWith("http") ? serverUrlCandidate :
                                 ("http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + serverUrlCandidate);
-                            Picasso.get().cancelRequest(ivReceivedImage);
-                            Picasso.get()
-                                .load(displayUrl)
-                                .noFade()
-                                .fit()
-                                .centerCrop()
-                                .placeholder(R.drawable.ic_profile_placeholder)
-                                .error(R.drawable.ic_profile_placeholder)
-                                .into(ivReceivedImage);
+                            // From the media cache; downloaded once, read from disk afterwards
+                            CachedImageLoader.load(ivReceivedImage, displayUrl, R.drawable.ic_profile_placeholder,
+                                request -> request.noFade().fit().centerCrop());
                         } else {
                             displayUrl = null;
                         }
@@ -679,7 +656,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                         if (displayUrl != null) {
                             ivReceivedImage.setOnClickListener(v -> {
                                 if (listener != null) {
-                                    listener.onImageClick(displayUrl, message.getLocalImageUri());
+                                    listener.onImageClick(displayUrl, localImageFor(v.getContext(), message, displayUrl));
                                 }
                             });
                         }
@@ -767,6 +744,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
                             ivReceivedImage.setPadding(0, 0, 0, 0);
                         } catch (Exception ignored) {}
                         boolean isDownloaded = isFileDownloaded(itemView.getContext(), message);
+                        CachedImageLoader.clear(ivReceivedImage);
                         ivReceivedImage.setImageResource(isDownloaded ? R.drawable.ic_open : R.drawable.ic_download);
                         ivReceivedImage.setOnClickListener(v -> {
                             if (listener != null) {
@@ -1176,17 +1154,9 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
     private static String getImageUrlFromMessage(Message message) {
         // For image messages, try to get URL from attachments first, then fallback to content
         if (message.isImageMessage()) {
-            String attachments = message.getAttachments();
-            if (attachments != null && !attachments.isEmpty()) {
-                try {
-                    org.json.JSONArray attachmentsArray = new org.json.JSONArray(attachments);
-                    if (attachmentsArray.length() > 0) {
-                        org.json.JSONObject attachment = attachmentsArray.getJSONObject(0);
-                        return attachment.optString("url", "");
-                    }
-                } catch (org.json.JSONException e) {
-                    e.printStackTrace();
-                }
+            List<Message.Attachment> attachments = message.getAttachmentList();
+            if (!attachments.isEmpty()) {
+                return attachments.get(0).url != null ? attachments.get(0).url : "";
             }
             // Fallback to content field for backward compatibility
             return message.getContent();
@@ -1311,70 +1281,50 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
     
     // Helper methods for file messages
     private static String getFileInfoFromMessage(Message message) {
-        try {
-            if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
-                org.json.JSONArray attachments = new org.json.JSONArray(message.getAttachments());
-                if (attachments.length() > 0) {
-                    org.json.JSONObject attachment = attachments.getJSONObject(0);
-                    String originalName = attachment.optString("originalName", "Unknown File");
-                    originalName = fixProbableMojibake(originalName);
-                    long fileSize = attachment.optLong("size", 0);
-                    String mimeType = attachment.optString("mimeType", "");
-                    
-                    String fileType = getFileTypeFromMime(mimeType);
-                    String sizeStr = formatFileSize(fileSize);
-                    
-                    return originalName + "\n" + fileType + " • " + sizeStr;
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        List<Message.Attachment> attachments = message.getAttachmentList();
+        if (!attachments.isEmpty()) {
+            Message.Attachment attachment = attachments.get(0);
+            String originalName = fixProbableMojibake(attachment.name != null ? attachment.name : "Unknown File");
+            String fileType = getFileTypeFromMime(attachment.mimeType != null ? attachment.mimeType : "");
+            String sizeStr = formatFileSize(attachment.size);
+            
+            return originalName + "\n" + fileType + " • " + sizeStr;
         }
         return "File";
     }
     
     private static String[] parseFileDataFromMessage(Message message) {
-        try {
-            if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
-                org.json.JSONArray attachments = new org.json.JSONArray(message.getAttachments());
-                if (attachments.length() > 0) {
-                    org.json.JSONObject attachment = attachments.getJSONObject(0);
-                    String fileUrl = attachment.optString("url", "");
-                    String fileName = attachment.optString("filename", "");
-                    String originalName = attachment.optString("originalName", "");
-                    originalName = fixProbableMojibake(originalName);
-                    String mimeType = attachment.optString("mimeType", "");
-                    long fileSize = attachment.optLong("size", 0);
-                    
-                    // Convert relative URL to full URL
-                    if (!fileUrl.startsWith("http")) {
-                        fileUrl = "http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + fileUrl;
-                    }
-                    
-                    return new String[]{fileUrl, fileName, originalName, mimeType, String.valueOf(fileSize)};
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        List<Message.Attachment> attachments = message.getAttachmentList();
+        if (attachments.isEmpty()) {
+            return null;
         }
-        return null;
+        Message.Attachment attachment = attachments.get(0);
+        String fileUrl = attachment.url != null ? attachment.url : "";
+        // The server's stored name, as the JSON's filename field; originalName is for display
+        String fileName = attachment.filename != null ? attachment.filename : "";
+        String originalName = fixProbableMojibake(attachment.name != null ? attachment.name : "");
+        String mimeType = attachment.mimeType != null ? attachment.mimeType : "";
+        
+        // Convert relative URL to full URL
+        if (!fileUrl.startsWith("http")) {
+            fileUrl = "http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + fileUrl;
+        }
+        
+        return new String[]{fileUrl, fileName, originalName, mimeType, String.valueOf(attachment.size)};
     }
     
     private static String[] parseVoiceDataFromMessage(Message message) {
         try {
-            if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
-                org.json.JSONArray attachments = new org.json.JSONArray(message.getAttachments());
-                if (attachments.length() > 0) {
-                    org.json.JSONObject attachment = attachments.getJSONObject(0);
-                    String voiceUrl = attachment.optString("url", "");
-                    
-                    // Convert relative URL to full URL
-                    if (!voiceUrl.startsWith("http")) {
-                        voiceUrl = "http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + voiceUrl;
-                    }
-                    
-                    return new String[]{voiceUrl};
+            List<Message.Attachment> attachments = message.getAttachmentList();
+            if (!attachments.isEmpty()) {
+                String voiceUrl = attachments.get(0).url != null ? attachments.get(0).url : "";
+                
+                // Convert relative URL to full URL
+                if (!voiceUrl.startsWith("http")) {
+                    voiceUrl = "http://" + ServerConfig.getServerIp() + ":" + ServerConfig.getServerPort() + voiceUrl;
                 }
+                
+                return new String[]{voiceUrl};
             }
             // Fallback to content field
             String content = message.getContent();
@@ -1417,18 +1367,15 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
     private static String estimateVoiceDuration(Message message) {
         try {
             // Try to get duration from attachments
-            if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
-                org.json.JSONArray attachments = new org.json.JSONArray(message.getAttachments());
-                if (attachments.length() > 0) {
-                    org.json.JSONObject attachment = attachments.getJSONObject(0);
-                    long fileSize = attachment.optLong("size", 0);
-                    // Rough estimate: ~16KB per second for AAC/MP4 audio at 96kbps
-                    if (fileSize > 0) {
-                        int seconds = (int) (fileSize / 16000); // Approximate
-                        int minutes = seconds / 60;
-                        int secs = seconds % 60;
-                        return String.format(Locale.getDefault(), "%d:%02d", minutes, secs);
-                    }
+            List<Message.Attachment> attachments = message.getAttachmentList();
+            if (!attachments.isEmpty()) {
+                long fileSize = attachments.get(0).size;
+                // Rough estimate: ~16KB per second for AAC/MP4 audio at 96kbps
+                if (fileSize > 0) {
+                    int seconds = (int) (fileSize / 16000); // Approximate
+                    int minutes = seconds / 60;
+                    int secs = seconds % 60;
+                    return String.format(Locale.getDefault(), "%d:%02d", minutes, secs);
                 }
             }
         } catch (Exception e) {
@@ -1457,11 +1404,30 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         return String.format("%.1f GB", size / (1024.0 * 1024.0 * 1024.0));
     }
 
+    /** False for a file:// URI whose file is gone (e.g. a cleared temp copy). */
+    private static boolean hasLocalCopy(String localUri) {
+        if (localUri == null || localUri.isEmpty()) return false;
+        if (localUri.startsWith("file://")) {
+            String path = android.net.Uri.parse(localUri).getPath();
+            return path != null && new java.io.File(path).exists();
+        }
+        return true;
+    }
+
+    /** The message's own local image, else the media cache's copy, so zooming reads from disk. */
+    private static String localImageFor(Context context, Message message, String displayUrl) {
+        String localUri = message.getLocalImageUri();
+        if (hasLocalCopy(localUri)) return localUri;
+        return CachedImageLoader.localUriFor(context, displayUrl);
+    }
+
     private static boolean isFileDownloaded(Context context, Message message) {
         try {
             String[] fileData = parseFileDataFromMessage(message);
             if (fileData == null) return false;
+            if (MediaCache.getInstance(context).peek(fileData[0]) != null) return true;
             String originalName = fileData[2];
+            if (originalName.isEmpty()) return false;
             java.io.File dir = context.getExternalFilesDir(android.os.Environment.DIRECTORY_DOWNLOADS);
             if (dir == null) return false;
             java.io.File f = new java.io.File(dir, originalName);
@@ -0,0 +1,160 @@
+package com.example.chatappjava.adapters;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatappjava.R;
+import com.example.chatappjava.models.Message;
+import com.example.chatappjava.utils.AvatarManager;
+import com.example.chatappjava.utils.MessageRepository;
+import com.example.chatappjava.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.hdodenhof.circleimageview.CircleImageView;
+
+/**
+ * Shows local full-text message search hits with the matched terms highlighted.
+ */
+public class MessageSearchAdapter extends RecyclerView.Adapter<MessageSearchAdapter.MessageSearchViewHolder> {
+
+    public interface OnMessageSearchClickListener {
+        void onMessageHitClick(Message message);
+    }
+
+    private final List<MessageRepository.SearchResult> results = new ArrayList<>();
+    private final OnMessageSearchClickListener listener;
+    private final Context context;
+    private final AvatarManager avatarManager;
+
+    public MessageSearchAdapter(Context context, OnMessageSearchClickListener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.avatarManager = AvatarManager.getInstance(context);
+    }
+
+    public void setResults(List<MessageRepository.SearchResult> newResults) {
+        int oldSize = results.size();
+        results.clear();
+        if (oldSize > 0) {
+            notifyItemRangeRemoved(0, oldSize);
+        }
+        addResults(newResults);
+    }
+
+    public void addResults(List<MessageRepository.SearchResult> newResults) {
+        if (newResults != null && !newResults.isEmpty()) {
+            int startPosition = results.size();
+            results.addAll(newResults);
+            notifyItemRangeInserted(startPosition, newResults.size());
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    @NonNull
+    @Override
+    public MessageSearchViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_message_search, parent, false);
+        return new MessageSearchViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MessageSearchViewHolder holder, int position) {
+        MessageRepository.SearchResult result = results.get(position);
+        Message message = result.message;
+
+        holder.tvSenderName.setText(message.getSenderUsername());
+
+        String snippet = result.snippet;
+        if (snippet != null && !snippet.isEmpty()) {
+            holder.tvSnippet.setText(highlight(snippet));
+        } else {
+            holder.tvSnippet.setText(message.getContent());
+        }
+
+        String avatar = message.getSenderAvatar();
+        if (avatar != null && !avatar.isEmpty() && avatarManager != null) {
+            avatarManager.loadAvatar(UrlUtils.getFullAvatarUrl(avatar), holder.ivAvatar, R.drawable.ic_profile_placeholder);
+        } else {
+            holder.ivAvatar.setImageResource(R.drawable.ic_profile_placeholder);
+        }
+
+        if (message.getTimestamp() > 0) {
+            holder.tvTimestamp.setText(formatTimeAgo(System.currentTimeMillis() - message.getTimestamp()));
+        } else {
+            holder.tvTimestamp.setText("");
+        }
+
+        holder.itemView.setOnClickListener(v -> {
+            if (listener != null) {
+                listener.onMessageHitClick(message);
+            }
+        });
+    }
+
+    /** Bold the matched terms the repository marked, showing the rest of the text as is. */
+    static CharSequence highlight(String snippet) {
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        int matchStart = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == MessageRepository.MATCH_START) {
+                matchStart = text.length();
+            } else if (c == MessageRepository.MATCH_END) {
+                if (matchStart >= 0 && matchStart < text.length()) {
+                    text.setSpan(new StyleSpan(Typeface.BOLD), matchStart, text.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                matchStart = -1;
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+
+    private String formatTimeAgo(long timeDiff) {
+        long seconds = timeDiff / 1000;
+        if (seconds < 60) return seconds + "s ago";
+        long minutes = seconds / 60;
+        if (minutes < 60) return minutes + "m ago";
+        long hours = minutes / 60;
+        if (hours < 24) return hours + "h ago";
+        long days = hours / 24;
+        if (days < 7) return days + "d ago";
+        long weeks = days / 7;
+        if (weeks < 4) return weeks + "w ago";
+        long months = days / 30;
+        return months + "mo ago";
+    }
+
+    static class MessageSearchViewHolder extends RecyclerView.ViewHolder {
+        CircleImageView ivAvatar;
+        TextView tvSenderName;
+        TextView tvSnippet;
+        TextView tvTimestamp;
+
+        MessageSearchViewHolder(@NonNull View itemView) {
+            super(itemView);
+            ivAvatar = itemView.findViewById(R.id.iv_avatar);
+            tvSenderName = itemView.findViewById(R.id.tv_sender_name);
+            tvSnippet = itemView.findViewById(R.id.tv_snippet);
+            tvTimestamp = itemView.findViewById(R.id.tv_timestamp);
+        }
+    }
+}
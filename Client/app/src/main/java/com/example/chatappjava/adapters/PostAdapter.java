@@ -20,6 +20,7 @@ import com.example.chatappjava.R;
 import com.example.chatappjava.config.ServerConfig;
 import com.example.chatappjava.models.Post;
 import com.example.chatappjava.utils.AvatarManager;
+import com.example.chatappjava.utils.CachedImageLoader;
 import com.example.chatappjava.utils.MotionUtils;
 import com.squareup.picasso.Picasso;
 
@@ -447,11 +448,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                         rvPostGallery.setVisibility(View.GONE);
                         String imageUrl = mediaUrls.get(0);
                         if (imageUrl != null && !imageUrl.isEmpty()) {
-                            Picasso.get()
-                                    .load(imageUrl)
-                                    .placeholder(R.drawable.ic_profile_placeholder)
-                                    .error(R.drawable.ic_profile_placeholder)
-                                    .into(ivPostImage);
+                            CachedImageLoader.load(ivPostImage, imageUrl, R.drawable.ic_profile_placeholder, request -> { });
                         }
                         ivPostImage.setOnClickListener(v -> {
                             if (listener != null) {
@@ -535,11 +532,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                                 ivEmbeddedImage.setVisibility(View.VISIBLE);
                                 String imageUrl = sharedPost.getMediaUrls().get(0);
                                 if (imageUrl != null && !imageUrl.isEmpty()) {
-                                    Picasso.get()
-                                            .load(imageUrl)
-                                            .placeholder(R.drawable.ic_profile_placeholder)
-                                            .error(R.drawable.ic_profile_placeholder)
-                                            .into(ivEmbeddedImage);
+                                    CachedImageLoader.load(ivEmbeddedImage, imageUrl, R.drawable.ic_profile_placeholder, request -> { });
                                 }
                                 ivEmbeddedImage.setOnClickListener(v -> {
                                     if (listener != null) {
@@ -10,7 +10,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatappjava.R;
-import com.squareup.picasso.Picasso;
+import com.example.chatappjava.utils.CachedImageLoader;
 
 import java.util.List;
 
@@ -83,14 +83,10 @@ public class PostGalleryAdapter extends RecyclerView.Adapter<PostGalleryAdapter.
                               ":" + com.example.chatappjava.config.ServerConfig.getServerPort() + imageUrl;
                 }
                 
-                Picasso.get()
-                    .load(imageUrl)
-                    .placeholder(R.drawable.ic_profile_placeholder)
-                    .error(R.drawable.ic_profile_placeholder)
-                    .resize(400, 400)
-                    .centerCrop()
-                    .into(ivGalleryImage);
+                CachedImageLoader.load(ivGalleryImage, imageUrl, R.drawable.ic_profile_placeholder,
+                    request -> request.resize(400, 400).centerCrop());
             } else {
+                CachedImageLoader.clear(ivGalleryImage);
                 ivGalleryImage.setImageResource(R.drawable.ic_profile_placeholder);
             }
             
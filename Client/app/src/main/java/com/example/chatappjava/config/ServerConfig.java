@@ -22,14 +22,62 @@ public class ServerConfig {
     private static final boolean USE_HTTPS = false; // Set to true for production with SSL
     private static final boolean USE_WSS = false;   // Set to true for secure WebSocket
 
+    // Resolved endpoint, built once from the overrides and reused for every URL.
+    // Only invalidate() (after the server settings dialogs save) rebuilds it.
+    private static volatile Endpoint cachedEndpoint;
+
+    private static final class Endpoint {
+        final String serverIp;
+        final int serverPort;
+        final boolean useHttps;
+        final boolean useWss;
+        final String baseUrl;
+        final String resourceBaseUrl;
+
+        Endpoint(String serverIp, int serverPort, boolean useHttps, boolean useWss) {
+            this.serverIp = serverIp;
+            this.serverPort = serverPort;
+            this.useHttps = useHttps;
+            this.useWss = useWss;
+            this.baseUrl = (useHttps ? "https" : "http") + "://" + serverIp + ":" + serverPort;
+            this.resourceBaseUrl = "http://" + serverIp + ":" + serverPort;
+        }
+    }
+
+    private static Endpoint endpoint() {
+        Endpoint endpoint = cachedEndpoint;
+        if (endpoint == null) {
+            endpoint = new Endpoint(
+                resolveServerIp(), resolveServerPort(), resolveUsingHttps(), resolveUsingWss());
+            // Before the Application exists the overrides can't be read yet; don't pin the defaults
+            if (com.example.chatappjava.ChatApplication.getInstance() != null) {
+                cachedEndpoint = endpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * Drop the cached endpoint so the next call re-reads the server overrides.
+     */
+    public static void invalidate() {
+        cachedEndpoint = null;
+    }
+
     // ===== URL GENERATION =====
     
     /**
      * Get the base server URL
      */
     public static String getBaseUrl() {
-        String protocol = isUsingHttps() ? "https" : "http";
-        return protocol + "://" + getServerIp() + ":" + getServerPort();
+        return endpoint().baseUrl;
+    }
+
+    /**
+     * Base URL used for uploaded resources (avatars, images, files); always plain http
+     */
+    public static String getResourceBaseUrl() {
+        return endpoint().resourceBaseUrl;
     }
     
     /**
@@ -45,6 +93,31 @@ public class ServerConfig {
      * Get current server IP
      */
     public static String getServerIp() {
+        return endpoint().serverIp;
+    }
+
+    /**
+     * Get current server port
+     */
+    public static int getServerPort() {
+        return endpoint().serverPort;
+    }
+
+    /**
+     * Check if using HTTPS
+     */
+    public static boolean isUsingHttps() {
+        return endpoint().useHttps;
+    }
+
+    /**
+     * Check if using secure WebSocket
+     */
+    public static boolean isUsingWss() {
+        return endpoint().useWss;
+    }
+
+    private static String resolveServerIp() {
         try {
             com.example.chatappjava.ChatApplication app = com.example.chatappjava.ChatApplication.getInstance();
             if (app != null) {
@@ -68,10 +141,7 @@ public class ServerConfig {
         return SERVER_IP;
     }
     
-    /**
-     * Get current server port
-     */
-    public static int getServerPort() {
+    private static int resolveServerPort() {
         try {
             com.example.chatappjava.ChatApplication app = com.example.chatappjava.ChatApplication.getInstance();
             if (app != null) {
@@ -88,10 +158,7 @@ public class ServerConfig {
         return SERVER_PORT;
     }
     
-    /**
-     * Check if using HTTPS
-     */
-    public static boolean isUsingHttps() {
+    private static boolean resolveUsingHttps() {
         try {
             com.example.chatappjava.ChatApplication app = com.example.chatappjava.ChatApplication.getInstance();
             if (app != null) {
@@ -108,10 +175,7 @@ public class ServerConfig {
         return USE_HTTPS;
     }
     
-    /**
-     * Check if using secure WebSocket
-     */
-    public static boolean isUsingWss() {
+    private static boolean resolveUsingWss() {
         try {
             com.example.chatappjava.ChatApplication app = com.example.chatappjava.ChatApplication.getInstance();
             if (app != null) {
@@ -292,6 +292,7 @@ public class Chat {
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
     public String getGroupId() { return groupId; }
+    public void setGroupId(String groupId) { this.groupId = groupId; }
 
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
@@ -350,6 +351,7 @@ public class Chat {
     }
     
     public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
 
     public String getAvatar() { return avatar; }
     public void setAvatar(String avatar) { this.avatar = avatar; }
@@ -357,6 +359,7 @@ public class Chat {
     public void setIsPublic(boolean isPublic) { this.isPublic = isPublic; }
     public boolean hasExplicitPublicFlag() { return hasPublicFlag; }
     public String getVisibility() { return visibility; }
+    public void setVisibility(String visibility) { this.visibility = visibility; }
     public String getJoinRequestStatus() { return joinRequestStatus; }
     public void setJoinRequestStatus(String status) { this.joinRequestStatus = status; }
     
@@ -98,7 +98,12 @@ public class Message {
     // Reactions summary (emoji -> count) and raw list (optional)
     private java.util.Map<String, Integer> reactionSummary;
     private String reactionsRaw; // store raw JSON if needed to show user list
+    // Normalized rows from message_reactions; reactionsRaw is built from these only when asked for
+    private java.util.List<Reaction> reactionList;
+    // Decoded attachments, from message_attachments or parsed once from the JSON
+    private java.util.List<Attachment> attachmentList;
     private String clientNonce; // unique from client to dedupe echo
+    private long seq; // per-chat sequence number from the server; 0 = not assigned yet
     private String syncStatus = SYNC_SYNCED;
     
     // Reply and edit info
@@ -237,6 +242,7 @@ public class Message {
         }
         message.ensureReactionSummaryFromRaw();
         message.clientNonce = json.optString("clientNonce", null);
+        message.seq = json.optLong("seq", 0);
         if (json.has("senderInfo") && json.get("senderInfo") instanceof JSONObject) {
             JSONObject senderInfoJson = json.getJSONObject("senderInfo");
             message.senderInfo = SenderInfo.fromJson(senderInfoJson);
@@ -291,6 +297,7 @@ public class Message {
         json.put("timestamp", timestamp);
         json.put("isRead", isRead);
         json.put("isDeleted", isDeleted);
+        if (seq > 0) json.put("seq", seq);
         if (replyToMessageId != null && !replyToMessageId.isEmpty()) {
             json.put("replyTo", replyToMessageId);
         }
@@ -335,6 +342,73 @@ public class Message {
     public void setDeleted(boolean deleted) { isDeleted = deleted; }
 
     public String getAttachments() { return attachments; }
+    public void setAttachments(String attachments) {
+        this.attachments = attachments;
+        this.attachmentList = null;
+    }
+
+    /** One attachment as stored in message_attachments. */
+    public static final class Attachment {
+        public final String url;
+        public final String mimeType;
+        public final String name; // originalName, else the stored filename
+        public final String filename; // name of the file on the server
+        public final long size;
+        public final String thumbnail;
+
+        public Attachment(String url, String mimeType, String name, String filename, long size, String thumbnail) {
+            this.url = url;
+            this.mimeType = mimeType;
+            this.name = name;
+            this.filename = filename;
+            this.size = size;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    /** Set attachments from stored rows (SQLite), so binding never parses the JSON column. */
+    public void setAttachmentList(java.util.List<Attachment> attachments) {
+        this.attachmentList = attachments != null ? attachments : new java.util.ArrayList<>();
+    }
+
+    /** Attachments as rows, parsing the raw JSON once if the message came from a payload. */
+    public java.util.List<Attachment> getAttachmentList() {
+        if (attachmentList == null) {
+            attachmentList = parseAttachments(attachments);
+        }
+        return attachmentList;
+    }
+
+    /** Decode an attachments JSON array; unparseable or empty input gives an empty list. */
+    public static java.util.List<Attachment> parseAttachments(String json) {
+        java.util.List<Attachment> list = new java.util.ArrayList<>();
+        if (json == null || json.isEmpty()) {
+            return list;
+        }
+        try {
+            org.json.JSONArray arr = new org.json.JSONArray(json);
+            for (int i = 0; i < arr.length(); i++) {
+                org.json.JSONObject a = arr.optJSONObject(i);
+                if (a == null) {
+                    continue;
+                }
+                String filename = a.optString("filename", "");
+                String name = a.optString("originalName", "");
+                if (name.isEmpty()) {
+                    name = filename;
+                }
+                list.add(new Attachment(
+                        a.optString("url", null),
+                        a.optString("mimeType", null),
+                        name.isEmpty() ? null : name,
+                        filename.isEmpty() ? null : filename,
+                        a.optLong("size", 0),
+                        a.optString("thumbnail", null)));
+            }
+        } catch (org.json.JSONException ignored) {
+        }
+        return list;
+    }
     public String getLocalImageUri() { return localImageUri; }
     public void setLocalImageUri(String localImageUri) { this.localImageUri = localImageUri; }
     public String getReplyToImageThumb() { return replyToImageThumb; }
@@ -344,16 +418,74 @@ public class Message {
 
     public void setReactionsRaw(String reactionsRaw) {
         this.reactionsRaw = reactionsRaw;
+        this.reactionList = null;
         this.reactionSummary = null;
         ensureReactionSummaryFromRaw();
     }
 
+    /** One reaction as stored in message_reactions. */
+    public static final class Reaction {
+        public final String userId;
+        public final String username;
+        public final String emoji;
+
+        public Reaction(String userId, String username, String emoji) {
+            this.userId = userId;
+            this.username = username;
+            this.emoji = emoji;
+        }
+    }
+
+    /**
+     * Set reactions from stored rows (SQLite). The summary is counted directly;
+     * the JSON form is only built if something asks for getReactionsRaw().
+     */
+    public void setReactionList(java.util.List<Reaction> reactions) {
+        this.reactionList = reactions != null ? reactions : new java.util.ArrayList<>();
+        this.reactionsRaw = null;
+        java.util.Map<String, Integer> map = new java.util.HashMap<>();
+        for (Reaction r : reactionList) {
+            if (r.emoji != null && !r.emoji.isEmpty()) {
+                map.put(r.emoji, map.getOrDefault(r.emoji, 0) + 1);
+            }
+        }
+        this.reactionSummary = map.isEmpty() ? null : map;
+    }
+
+    /** Reactions as rows, parsing the raw JSON only if the message came from a payload. */
+    public java.util.List<Reaction> getReactionList() {
+        if (reactionList != null) {
+            return reactionList;
+        }
+        java.util.List<Reaction> list = new java.util.ArrayList<>();
+        if (reactionsRaw == null || reactionsRaw.isEmpty()) {
+            return list;
+        }
+        try {
+            org.json.JSONArray arr = new org.json.JSONArray(reactionsRaw);
+            for (int i = 0; i < arr.length(); i++) {
+                org.json.JSONObject r = arr.optJSONObject(i);
+                if (r == null) {
+                    continue;
+                }
+                org.json.JSONObject user = r.optJSONObject("user");
+                list.add(new Reaction(
+                        extractReactionUserId(r),
+                        user != null ? user.optString("username", "") : "",
+                        r.optString("emoji", "")));
+            }
+        } catch (org.json.JSONException ignored) {
+        }
+        return list;
+    }
+
     /** Build summary map from stored reactions JSON (e.g. when loading from SQLite). */
     public void ensureReactionSummaryFromRaw() {
         if (reactionSummary != null && !reactionSummary.isEmpty()) {
             return;
         }
         if (reactionsRaw == null || reactionsRaw.isEmpty()) {
+            // Rows from SQLite already produced the summary in setReactionList
             return;
         }
         try {
@@ -395,6 +527,7 @@ public class Message {
             return;
         }
         reactionsRaw = other.reactionsRaw;
+        reactionList = other.reactionList;
         if (other.reactionSummary != null && !other.reactionSummary.isEmpty()) {
             reactionSummary = new java.util.HashMap<>(other.reactionSummary);
         } else {
@@ -410,6 +543,7 @@ public class Message {
         } else {
             reactionsRaw = reactions.toString();
         }
+        reactionList = null;
         reactionSummary = null;
         ensureReactionSummaryFromRaw();
     }
@@ -437,18 +571,11 @@ public class Message {
         if (userId == null || userId.isEmpty()) {
             return null;
         }
-        try {
-            if (reactionsRaw != null && !reactionsRaw.isEmpty()) {
-                org.json.JSONArray arr = new org.json.JSONArray(reactionsRaw);
-                for (int i = 0; i < arr.length(); i++) {
-                    org.json.JSONObject reaction = arr.getJSONObject(i);
-                    if (userId.equals(extractReactionUserId(reaction))) {
-                        String emoji = reaction.optString("emoji", "");
-                        return emoji.isEmpty() ? null : emoji;
-                    }
-                }
+        for (Reaction reaction : getReactionList()) {
+            if (userId.equals(reaction.userId)) {
+                String emoji = reaction.emoji;
+                return emoji == null || emoji.isEmpty() ? null : emoji;
             }
-        } catch (org.json.JSONException ignored) {
         }
         return null;
     }
@@ -459,8 +586,9 @@ public class Message {
             return;
         }
         try {
-            org.json.JSONArray source = (reactionsRaw != null && !reactionsRaw.isEmpty())
-                    ? new org.json.JSONArray(reactionsRaw)
+            String raw = getReactionsRaw();
+            org.json.JSONArray source = (raw != null && !raw.isEmpty())
+                    ? new org.json.JSONArray(raw)
                     : new org.json.JSONArray();
             org.json.JSONArray updated = new org.json.JSONArray();
             for (int i = 0; i < source.length(); i++) {
@@ -491,11 +619,12 @@ public class Message {
             return null;
         }
         try {
-            if (reactionsRaw == null || reactionsRaw.isEmpty()) {
+            String raw = getReactionsRaw();
+            if (raw == null || raw.isEmpty()) {
                 decrementReaction(emoji);
                 return emoji;
             }
-            org.json.JSONArray source = new org.json.JSONArray(reactionsRaw);
+            org.json.JSONArray source = new org.json.JSONArray(raw);
             org.json.JSONArray updated = new org.json.JSONArray();
             boolean removed = false;
             for (int i = 0; i < source.length(); i++) {
@@ -546,9 +675,29 @@ public class Message {
             reactionSummary.put(emoji, c - 1);
         }
     }
-    public String getReactionsRaw() { return reactionsRaw; }
+    public String getReactionsRaw() {
+        if (reactionsRaw == null && reactionList != null && !reactionList.isEmpty()) {
+            org.json.JSONArray arr = new org.json.JSONArray();
+            try {
+                for (Reaction r : reactionList) {
+                    org.json.JSONObject user = new org.json.JSONObject();
+                    user.put("_id", r.userId != null ? r.userId : "");
+                    user.put("username", r.username != null ? r.username : "");
+                    org.json.JSONObject entry = new org.json.JSONObject();
+                    entry.put("emoji", r.emoji != null ? r.emoji : "");
+                    entry.put("user", user);
+                    arr.put(entry);
+                }
+            } catch (org.json.JSONException ignored) {
+            }
+            reactionsRaw = arr.toString();
+        }
+        return reactionsRaw;
+    }
     public String getClientNonce() { return clientNonce; }
     public void setClientNonce(String clientNonce) { this.clientNonce = clientNonce; }
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
 
     public String getSyncStatus() { return syncStatus; }
 
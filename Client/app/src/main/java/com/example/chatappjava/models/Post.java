@@ -25,7 +25,9 @@ public class Post {
     private String reactionType; // "like", "love", "wow", "sad", "angry", null
     private String sharedPostId; // ID of the original post if this is a share
     private Post sharedPost; // The original post object (populated from backend)
+    private String sharedPostJson; // Cached JSON of sharedPost, parsed on first access
     private List<User> taggedUsers; // Users tagged in this post
+    private String taggedUsersJson; // Cached JSON array of taggedUsers, parsed on first access
     
     // Constructors
     public Post() {
@@ -365,19 +367,61 @@ public class Post {
     }
     
     public Post getSharedPost() {
+        if (sharedPost == null && sharedPostJson != null) {
+            try {
+                sharedPost = Post.fromJson(new JSONObject(sharedPostJson));
+            } catch (JSONException e) {
+                // Corrupt cache entry: behave as if the shared post was never stored
+            }
+            sharedPostJson = null;
+        }
         return sharedPost;
     }
     
     public void setSharedPost(Post sharedPost) {
         this.sharedPost = sharedPost;
+        this.sharedPostJson = null;
+    }
+
+    /**
+     * Keep the shared post as stored JSON; it is only parsed if getSharedPost() is called.
+     */
+    public void setSharedPostJson(String sharedPostJson) {
+        this.sharedPost = null;
+        this.sharedPostJson = sharedPostJson;
     }
     
     public List<User> getTaggedUsers() {
+        if (taggedUsersJson != null) {
+            List<User> parsed = new ArrayList<>();
+            try {
+                JSONArray tagsArray = new JSONArray(taggedUsersJson);
+                for (int i = 0; i < tagsArray.length(); i++) {
+                    JSONObject tagObj = tagsArray.optJSONObject(i);
+                    if (tagObj != null) {
+                        parsed.add(User.fromJsonStatic(tagObj));
+                    }
+                }
+            } catch (JSONException e) {
+                // Keep whatever parsed before the bad entry
+            }
+            taggedUsers = parsed;
+            taggedUsersJson = null;
+        }
         return taggedUsers != null ? taggedUsers : new ArrayList<>();
     }
     
     public void setTaggedUsers(List<User> taggedUsers) {
         this.taggedUsers = taggedUsers;
+        this.taggedUsersJson = null;
+    }
+
+    /**
+     * Keep tagged users as a stored JSON array; it is only parsed if getTaggedUsers() is called.
+     */
+    public void setTaggedUsersJson(String taggedUsersJson) {
+        this.taggedUsers = null;
+        this.taggedUsersJson = taggedUsersJson;
     }
     
     // Helper methods
@@ -112,6 +112,7 @@ public class User extends BaseModel {
     public void setLastName(String lastName) { this.lastName = lastName; }
     
     public String getPhoneNumber() { return phoneNumber; }
+    public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
 
     public String getAvatar() { return avatar; }
     public void setAvatar(String avatar) { this.avatar = avatar; }
@@ -121,6 +122,10 @@ public class User extends BaseModel {
     }
     
     public String getBio() { return bio; }
+    public void setBio(String bio) { this.bio = bio; }
+    
+    public long getLastSeen() { return lastSeen; }
+    public void setLastSeen(long lastSeen) { this.lastSeen = lastSeen; }
     
     public boolean isFriend() { return isFriend; }
     public void setFriend(boolean friend) { isFriend = friend; }
@@ -7,14 +7,14 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.Response;
 
 public class ApiClient {
 
@@ -53,14 +53,63 @@ public class ApiClient {
 
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient client;
+    /** Asked for explicitly so the reply's pagination.total shows whether the list is complete. */
+    public static final int CHATS_PAGE_LIMIT = 200;
 
+    // Whose calls these are for cancelAllRequests(); the stale-while-revalidate view shares its parent's
+    private final ApiClient owner;
+    private final boolean staleWhileRevalidate;
+
+    /**
+     * A cheap facade over {@link HttpEngine}: every instance shares its connection pool and
+     * dispatcher, so constructing one per screen or per callback costs nothing.
+     */
     public ApiClient() {
-        client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+        this.owner = this;
+        this.staleWhileRevalidate = false;
+    }
+
+    private ApiClient(ApiClient owner) {
+        this.owner = owner;
+        this.staleWhileRevalidate = true;
+    }
+
+    /**
+     * A view of this client whose authenticated GETs answer from the HTTP cache first.
+     *
+     * The callback's onResponse runs with the cached body right away (if there is one),
+     * then the request is revalidated: a 304 or an unchanged ETag ends there, a changed
+     * body is delivered to onResponse a second time. With a cached body on screen, a
+     * network failure or server error is only logged; onFailure runs only when there was
+     * nothing cached to show. Callbacks must therefore replace what they show, not append.
+     */
+    public ApiClient staleWhileRevalidate() {
+        return staleWhileRevalidate ? this : new ApiClient(this);
+    }
+
+    /** Tag calls with this facade so {@link #cancelAllRequests()} only touches its own. */
+    private Call newCall(Request request) {
+        return HttpEngine.get().newCall(request.newBuilder().tag(ApiClient.class, owner).build());
+    }
+
+    /**
+     * GETs go through {@link SingleFlight}: a request identical to one still in flight
+     * (same URL and token) shares its response instead of hitting the server again. The
+     * shared call is untagged; {@link #cancelAllRequests()} detaches only this facade's
+     * callers from it.
+     */
+    private void enqueueGet(Request request, Callback callback) {
+        SingleFlight.enqueue(request, owner, callback);
+    }
+
+    /** GET calls that reached the network since the process started. */
+    public static long getNetworkGetCount() {
+        return SingleFlight.startedCount();
+    }
+
+    /** GETs answered by joining an identical in-flight call instead of making their own. */
+    public static long getDeduplicatedGetCount() {
+        return SingleFlight.joinedCount();
     }
 
     /**
@@ -77,7 +126,7 @@ public class ApiClient {
                 .addHeader("Content-Type", "application/json")
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -91,7 +140,7 @@ public class ApiClient {
                 .addHeader("Content-Type", "application/json")
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -104,7 +153,7 @@ public class ApiClient {
                 .post(body)
                 .addHeader("Content-Type", "application/json")
                 .build();
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -117,7 +166,7 @@ public class ApiClient {
                 .post(body)
                 .addHeader("Content-Type", "application/json")
                 .build();
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -133,7 +182,7 @@ public class ApiClient {
                     .post(body)
                     .addHeader("Content-Type", "application/json")
                     .build();
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (org.json.JSONException e) {
             callback.onFailure(null, new java.io.IOException("Failed to prepare request body"));
         }
@@ -156,7 +205,7 @@ public class ApiClient {
                     .post(body)
                     .addHeader("Content-Type", "application/json")
                     .build();
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (org.json.JSONException e) {
             callback.onFailure(null, new java.io.IOException("Failed to prepare request body"));
         }
@@ -176,7 +225,7 @@ public class ApiClient {
                     .post(body)
                     .addHeader("Content-Type", "application/json")
                     .build();
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (org.json.JSONException e) {
             callback.onFailure(null, new java.io.IOException("Failed to prepare request body"));
         }
@@ -201,7 +250,65 @@ public class ApiClient {
                 .get()
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        if (staleWhileRevalidate) {
+            getCachedThenRevalidate(request, callback);
+            return;
+        }
+        enqueueGet(request, callback);
+    }
+
+    private void getCachedThenRevalidate(Request request, Callback callback) {
+        Request cacheOnly = request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+        newCall(cacheOnly).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                revalidate(request, null, callback);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                // Nothing cached comes back as 504 Unsatisfiable Request
+                if (!response.isSuccessful()) {
+                    response.close();
+                    revalidate(request, null, callback);
+                    return;
+                }
+                String cachedEtag = response.header("ETag", "");
+                try {
+                    callback.onResponse(call, response);
+                } finally {
+                    revalidate(request, cachedEtag, callback);
+                }
+            }
+        });
+    }
+
+    /** cachedEtag is null when nothing was delivered from the cache, "" when it had no ETag. */
+    private void revalidate(Request request, String cachedEtag, Callback callback) {
+        enqueueGet(request, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (cachedEtag == null) {
+                    callback.onFailure(call, e);
+                } else {
+                    android.util.Log.d("ApiClient", "Revalidation failed, keeping cached " + request.url().encodedPath() + ": " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                if (cachedEtag != null) {
+                    Response network = response.networkResponse();
+                    boolean unchanged = (network != null && network.code() == 304)
+                            || (!cachedEtag.isEmpty() && cachedEtag.equals(response.header("ETag")));
+                    if (unchanged || response.code() >= 500) {
+                        response.close();
+                        return;
+                    }
+                }
+                callback.onResponse(call, response);
+            }
+        });
     }
 
     /**
@@ -215,7 +322,7 @@ public class ApiClient {
                 .post(body)
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -228,7 +335,7 @@ public class ApiClient {
                 .put(body)
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -241,7 +348,7 @@ public class ApiClient {
                 .patch(body)
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -275,7 +382,7 @@ public class ApiClient {
                 .delete()
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -288,7 +395,7 @@ public class ApiClient {
                 .delete(body)
                 .build();
 
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -379,7 +486,7 @@ public class ApiClient {
      * Get user's chats
      */
     public void getChats(String token, Callback callback) {
-        authenticatedGet(GET_CHATS_ENDPOINT, token, callback);
+        authenticatedGet(GET_CHATS_ENDPOINT + "?limit=" + CHATS_PAGE_LIMIT, token, callback);
     }
 
     /**
@@ -388,6 +495,28 @@ public class ApiClient {
     public void sendMessage(String token, JSONObject messageData, Callback callback) {
         authenticatedPost("/api/messages", token, messageData, callback);
     }
+
+    /**
+     * Mark every message of a chat up to a read marker as read. The marker is the
+     * (timestamp, id) of the newest message read; the id is optional.
+     */
+    public void markChatRead(String token, String chatId, JSONObject marker, Callback callback) {
+        authenticatedPut("/api/messages/" + chatId + "/read", token, marker, callback);
+    }
+
+    /**
+     * Send several messages in one request. Each item must carry its clientNonce;
+     * the response has one result per item, keyed by that nonce.
+     */
+    public void sendMessagesBatch(String token, JSONArray messages, Callback callback) {
+        JSONObject body = new JSONObject();
+        try {
+            body.put("messages", messages);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        authenticatedPost("/api/messages/batch", token, body, callback);
+    }
     
     /**
      * Edit a message content
@@ -436,7 +565,7 @@ public class ApiClient {
                     .url(getBaseUrl() + "/api/messages/" + messageId + "/reactions")
                     .delete(requestBody)
                     .build();
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to prepare remove reaction: " + e.getMessage()));
@@ -459,7 +588,34 @@ public class ApiClient {
                     .get()
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
-            client.newCall(request).enqueue(callback);
+            enqueueGet(request, callback);
+        } catch (Exception e) {
+            e.printStackTrace();
+            callback.onFailure(null, new IOException("Failed to get messages: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Keyset page of older messages: the server returns up to {@code limit} messages strictly
+     * before (beforeTimestamp, beforeId), oldest first. Unlike page numbers, the cursor does not
+     * drift when new messages arrive while the user scrolls back.
+     */
+    public void getMessagesBefore(String token, String chatId, long beforeTimestamp, String beforeId,
+                                  int limit, Callback callback) {
+        try {
+            StringBuilder url = new StringBuilder(getBaseUrl())
+                    .append("/api/messages/").append(chatId)
+                    .append("?before=").append(beforeTimestamp)
+                    .append("&limit=").append(limit);
+            if (beforeId != null && !beforeId.isEmpty()) {
+                url.append("&beforeId=").append(java.net.URLEncoder.encode(beforeId, "UTF-8"));
+            }
+            Request request = new Request.Builder()
+                    .url(url.toString())
+                    .get()
+                    .addHeader("Authorization", "Bearer " + token)
+                    .build();
+            enqueueGet(request, callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to get messages: " + e.getMessage()));
@@ -539,7 +695,7 @@ public class ApiClient {
                 .url(getBaseUrl() + LOGOUT_ENDPOINT)
                 .post(RequestBody.create("", JSON))
                 .build();
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -564,7 +720,7 @@ public class ApiClient {
                 .url(getBaseUrl() + DELETE_REQUEST_OTP_ENDPOINT)
                 .post(RequestBody.create("", JSON))
                 .build();
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -578,7 +734,7 @@ public class ApiClient {
                     .url(getBaseUrl() + DELETE_CONFIRM_ENDPOINT)
                     .delete(RequestBody.create(body.toString(), JSON))
                     .build();
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (JSONException e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to prepare confirm delete: " + e.getMessage()));
@@ -610,7 +766,7 @@ public class ApiClient {
                 .post(requestBody)
                 .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
             
         } catch (Exception e) {
             e.printStackTrace();
@@ -667,7 +823,7 @@ public class ApiClient {
                 .build();
             
             android.util.Log.d("ApiClient", "uploadChatImage: Sending POST request to " + url + " with MIME type: " + mimeType);
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
             
         } catch (Exception e) {
             android.util.Log.e("ApiClient", "uploadChatImage: Exception: " + e.getMessage(), e);
@@ -716,7 +872,7 @@ public class ApiClient {
                 .post(requestBody)
                 .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
             
         } catch (Exception e) {
             e.printStackTrace();
@@ -725,63 +881,8 @@ public class ApiClient {
     }
 
     /**
-     * Upload chat file to server (PDF, TXT, etc.)
-     * @param token Authentication token
-     * @param fileUri File URI to upload
-     * @param fileName Original file name
-     * @param mimeType File MIME type
-     * @param fileSize File size in bytes
-     * @param chatId Chat ID for organizing uploads
-     * @param callback Response callback
-     */
-    public void uploadChatFile(String token, android.net.Uri fileUri, String fileName, String mimeType, long fileSize, String chatId, Callback callback) {
-        try {
-            String url = getBaseUrl() + UPLOAD_CHAT_FILE_ENDPOINT + "/" + chatId + "/file";
-            
-            // For content URIs, we need to read the stream directly
-            RequestBody fileBody = RequestBody.create(
-                MediaType.parse(mimeType != null ? mimeType : "application/octet-stream"), 
-                readUriToByteArray(fileUri)
-            );
-            
-            RequestBody requestBody = new MultipartBody.Builder()
-                .setType(MultipartBody.FORM)
-                .addFormDataPart("file", fileName != null ? fileName : "file", fileBody)
-                .addFormDataPart("chatId", chatId)
-                .build();
-            
-            Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + token)
-                .post(requestBody)
-                .build();
-            
-            client.newCall(request).enqueue(callback);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Create a failed callback
-            callback.onFailure(null, new IOException("Failed to prepare chat file upload: " + e.getMessage()));
-        }
-    }
-    
-    private byte[] readUriToByteArray(android.net.Uri uri) throws java.io.IOException {
-        java.io.InputStream inputStream = null;
-        try {
-            // This is a placeholder - in practice, BaseChatActivity should handle URI resolution
-            // and pass a File object to the File-based uploadChatFile method instead
-            throw new UnsupportedOperationException("Use File-based uploadChatFile method for content URIs");
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (java.io.IOException ignored) {}
-            }
-        }
-    }
-
-    /**
-     * Upload chat file to server using a File (recommended for content URIs copied to cache)
+     * Upload chat file to server (PDF, TXT, etc.). For content URIs use
+     * {@link ResumableUploader}, which streams them without a temp copy.
      */
     public void uploadChatFile(String token, java.io.File file, String originalName, String mimeType, long fileSize, String chatId, Callback callback) {
         try {
@@ -804,7 +905,7 @@ public class ApiClient {
                 .post(requestBody)
                 .build();
 
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to prepare chat file upload: " + e.getMessage()));
@@ -823,7 +924,7 @@ public class ApiClient {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -838,7 +939,7 @@ public class ApiClient {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -853,22 +954,14 @@ public class ApiClient {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
      * Get group members
      */
     public void getGroupMembers(String token, String groupId, Callback callback) {
-        String url = getBaseUrl() + "/api/chats/" + groupId + "/members";
-        
-        Request request = new Request.Builder()
-                .url(url)
-                .get()
-                .addHeader("Authorization", "Bearer " + token)
-                .build();
-        
-        client.newCall(request).enqueue(callback);
+        authenticatedGet("/api/chats/" + groupId + "/members", token, callback);
     }
 
     /**
@@ -883,7 +976,7 @@ public class ApiClient {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -905,7 +998,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             // Create a failed callback
@@ -932,7 +1025,7 @@ public class ApiClient {
                     .addHeader("Content-Type", "application/json")
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to initiate call: " + e.getMessage()));
@@ -952,7 +1045,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to join call: " + e.getMessage()));
@@ -972,7 +1065,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to decline call: " + e.getMessage()));
@@ -992,7 +1085,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to leave call: " + e.getMessage()));
@@ -1012,7 +1105,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to end call: " + e.getMessage()));
@@ -1032,7 +1125,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            enqueueGet(request, callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to get call details: " + e.getMessage()));
@@ -1052,7 +1145,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            enqueueGet(request, callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to get call history: " + e.getMessage()));
@@ -1072,7 +1165,7 @@ public class ApiClient {
                     .addHeader("Authorization", "Bearer " + token)
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            enqueueGet(request, callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to get active calls: " + e.getMessage()));
@@ -1094,7 +1187,7 @@ public class ApiClient {
                     .addHeader("Content-Type", "application/json")
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to update call settings: " + e.getMessage()));
@@ -1117,7 +1210,7 @@ public class ApiClient {
                     .addHeader("Content-Type", "application/json")
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to create private chat: " + e.getMessage()));
@@ -1137,7 +1230,7 @@ public class ApiClient {
                 .addHeader("Content-Type", "application/json")
                 .build();
         
-        client.newCall(request).enqueue(callback);
+        newCall(request).enqueue(callback);
     }
 
     /**
@@ -1155,7 +1248,7 @@ public class ApiClient {
                     .addHeader("Content-Type", "application/json")
                     .build();
             
-            client.newCall(request).enqueue(callback);
+            newCall(request).enqueue(callback);
         } catch (Exception e) {
             e.printStackTrace();
             callback.onFailure(null, new IOException("Failed to transfer ownership: " + e.getMessage()));
@@ -1163,10 +1256,22 @@ public class ApiClient {
     }
 
     /**
-     * Cancels all pending requests.
+     * Cancels the pending requests made through this instance. Other facades share the
+     * dispatcher and keep theirs, including GETs they joined with this one.
      */
     public void cancelAllRequests() {
-        client.dispatcher().cancelAll();
+        SingleFlight.cancel(owner);
+        okhttp3.Dispatcher dispatcher = HttpEngine.get().dispatcher();
+        for (Call call : dispatcher.queuedCalls()) {
+            if (call.request().tag(ApiClient.class) == owner) {
+                call.cancel();
+            }
+        }
+        for (Call call : dispatcher.runningCalls()) {
+            if (call.request().tag(ApiClient.class) == owner) {
+                call.cancel();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,93 @@
+package com.example.chatappjava.network;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The process-wide HTTP engine: one connection pool, one dispatcher and one TLS session
+ * cache for every request the app makes.
+ *
+ * Clients with other timeouts come from {@link #withTimeouts}; OkHttp's newBuilder() keeps
+ * the pool and dispatcher, so they still share connections and threads. On https servers
+ * HTTP/2 is negotiated through ALPN and concurrent requests multiplex over one connection;
+ * plain http falls back to pooled HTTP/1.1 keep-alive connections.
+ *
+ * Writes are tracked for {@link SingleFlight}, so a GET never joins a call that started
+ * before a later POST, PUT or DELETE.
+ *
+ * Once {@link #init} has run, responses are kept in a disk cache under cacheDir/http.
+ * The server marks API reads "private, max-age=0" and varies them on Authorization, so a
+ * cached body is always revalidated with If-None-Match and an unchanged one comes back as
+ * a body-less 304; stale bodies stay readable for ApiClient's stale-while-revalidate mode.
+ */
+public final class HttpEngine {
+
+    private static final int MAX_REQUESTS = 32;
+    // Our traffic goes to one API host; leave room for media and the socket's long-poll
+    private static final int MAX_REQUESTS_PER_HOST = 10;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final long CACHE_SIZE_BYTES = 20L * 1024 * 1024;
+
+    private static volatile OkHttpClient client;
+    private static Cache cache;
+
+    private HttpEngine() {
+    }
+
+    /** Attach the disk cache. Call from Application.onCreate, before the first request. */
+    public static synchronized void init(Context context) {
+        if (cache == null && client == null) {
+            cache = new Cache(new File(context.getCacheDir(), "http"), CACHE_SIZE_BYTES);
+        }
+    }
+
+    /** The shared client with the default 30 s timeouts. */
+    public static OkHttpClient get() {
+        OkHttpClient result = client;
+        if (result == null) {
+            synchronized (HttpEngine.class) {
+                result = client;
+                if (result == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequests(MAX_REQUESTS);
+                    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+                    result = new OkHttpClient.Builder()
+                            .cache(cache)
+                            .dispatcher(dispatcher)
+                            .addInterceptor(SingleFlight.WRITE_TRACKER)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .retryOnConnectionFailure(true)
+                            .connectTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .readTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .writeTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .build();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A view of the shared client with other timeouts (seconds; 0 = none), e.g. a quick
+     * health probe or a long-poll. Shares the pool, dispatcher and TLS sessions.
+     */
+    public static OkHttpClient withTimeouts(long connectSeconds, long readSeconds, long writeSeconds) {
+        return get().newBuilder()
+                .connectTimeout(connectSeconds, TimeUnit.SECONDS)
+                .readTimeout(readSeconds, TimeUnit.SECONDS)
+                .writeTimeout(writeSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+}
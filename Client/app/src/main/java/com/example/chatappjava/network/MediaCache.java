@@ -0,0 +1,550 @@
+package com.example.chatappjava.network;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.chatappjava.config.ServerConfig;
+import com.example.chatappjava.utils.ContentHasher;
+import com.example.chatappjava.utils.DatabaseExecutor;
+import com.example.chatappjava.utils.DatabaseHelper;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.CacheControl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Disk cache and download manager for chat images, post images and chat files.
+ *
+ * media_files maps each URL to a file under cacheDir/media named by the SHA-256 of its
+ * content, so the same bytes behind several URLs are stored once. The index is read into
+ * memory at start, which keeps {@link #peek} cheap enough for onBindViewHolder; the least
+ * recently used files go once the total passes {@link #MAX_CACHE_BYTES}.
+ *
+ * {@link #fetch} downloads what is not on disk yet. Concurrent fetches of one URL share a
+ * download. Large files from a server that honours Range come down as several parallel
+ * ranges. Partial downloads stay on disk, so a retry, or the next fetch after a restart,
+ * continues where it stopped. Listeners run on the main thread.
+ */
+public class MediaCache {
+    private static final String TAG = "MediaCache";
+
+    public interface Listener {
+        void onReady(File file);
+
+        void onFailed(IOException e);
+    }
+
+    private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+    /** Below this one stream is as fast as several. */
+    private static final long PARALLEL_MIN_BYTES = 4L * 1024 * 1024;
+    private static final int RANGES_PER_DOWNLOAD = 3;
+    private static final int MAX_CONCURRENT_DOWNLOADS = 3;
+    private static final int MAX_RANGE_REQUESTS = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+    /** last_access is written back at most this often per URL. */
+    private static final long ACCESS_WRITE_INTERVAL_MS = 60 * 60 * 1000L;
+    /** Partial downloads nobody came back for. */
+    private static final long PARTIAL_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The file is kept here; the HTTP cache would only hold a second copy
+    private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+
+    private static final class Entry {
+        final File file;
+        final long size;
+        volatile long lastAccess;
+        volatile long lastAccessWritten;
+
+        Entry(File file, long size, long lastAccess) {
+            this.file = file;
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.lastAccessWritten = lastAccess;
+        }
+    }
+
+    private static MediaCache instance;
+
+    private final File dir;
+    private final ContentResolver resolver;
+    private final DatabaseHelper dbHelper;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final Future<Integer> indexLoaded;
+    // URL -> listeners waiting for its download
+    private final Map<String, List<Listener>> inFlight = new HashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS, runnable -> {
+        Thread thread = new Thread(runnable, "media");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    // Separate from the downloads waiting on them, so they can never starve each other
+    private final ExecutorService rangeExecutor = Executors.newFixedThreadPool(MAX_RANGE_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "media-range");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private MediaCache(Context context) {
+        this.dir = new File(context.getCacheDir(), "media");
+        this.resolver = context.getContentResolver();
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.indexLoaded = DatabaseExecutor.getInstance().submitRead(this::loadIndex);
+    }
+
+    public static synchronized MediaCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Full URL for a server path such as /uploads/...; anything else is returned as is. */
+    public static String absoluteUrl(String pathOrUrl) {
+        if (pathOrUrl == null || !pathOrUrl.startsWith("/")) {
+            return pathOrUrl;
+        }
+        return ServerConfig.getResourceBaseUrl() + pathOrUrl;
+    }
+
+    /** Whether url is something this cache downloads (http or https). */
+    public static boolean isCacheable(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+
+    /** The local copy of url, or null when it is not on disk. Memory only, fine on the main thread. */
+    public File peek(String url) {
+        if (url == null || !indexLoaded.isDone()) {
+            return null;
+        }
+        Entry entry = index.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.file.exists()) {
+            // Cleared by the system along with the rest of the cache dir
+            forget(url);
+            return null;
+        }
+        touch(url, entry);
+        return entry.file;
+    }
+
+    /** Get url onto disk, downloading it unless it is there already. */
+    public void fetch(String url, Listener listener) {
+        synchronized (inFlight) {
+            List<Listener> waiting = inFlight.get(url);
+            if (waiting != null) {
+                waiting.add(listener);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(listener);
+            inFlight.put(url, waiting);
+        }
+        executor.execute(() -> {
+            File file = null;
+            IOException failure = null;
+            try {
+                file = obtain(url);
+            } catch (IOException e) {
+                Log.w(TAG, "Download of " + url + " failed: " + e.getMessage());
+                failure = e;
+            }
+            List<Listener> waiting;
+            synchronized (inFlight) {
+                waiting = inFlight.remove(url);
+            }
+            File result = file;
+            IOException error = failure;
+            mainHandler.post(() -> {
+                for (Listener waiter : waiting) {
+                    if (result != null) {
+                        waiter.onReady(result);
+                    } else {
+                        waiter.onFailed(error);
+                    }
+                }
+            });
+        });
+    }
+
+    private File obtain(String url) throws IOException {
+        awaitIndex();
+        Entry known = index.get(url);
+        if (known != null && known.file.exists()) {
+            touch(url, known);
+            return known.file;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        String key = ContentHasher.sha256(url);
+        int attempt = 0;
+        while (true) {
+            try {
+                return store(url, download(url, key));
+            } catch (FileNotFoundException e) {
+                // Gone from the server (or never there); retrying will not help
+                throw e;
+            } catch (IOException e) {
+                if (++attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                Log.d(TAG, "Download interrupted (" + e.getMessage() + "), retry " + attempt);
+                try {
+                    Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", interrupted);
+                }
+            }
+        }
+    }
+
+    // ===== Downloading =====
+
+    /** Download url into key.part and return that file. */
+    private File download(String url, String key) throws IOException {
+        File partial = new File(dir, key + ".part");
+        long total = -1;
+        boolean ranges = false;
+        try (Response head = execute(new Request.Builder().url(url).head())) {
+            if (head.code() == 404) {
+                throw new FileNotFoundException("Not found: " + url);
+            }
+            // Anything else unusual (a server without HEAD, say): fall back to a plain GET
+            if (head.isSuccessful()) {
+                total = parseLength(head.header("Content-Length"));
+                ranges = "bytes".equalsIgnoreCase(head.header("Accept-Ranges"));
+            }
+        }
+
+        if (ranges && total >= PARALLEL_MIN_BYTES) {
+            downloadInRanges(url, key, total, partial);
+        } else {
+            downloadInOneStream(url, partial, ranges);
+        }
+        return partial;
+    }
+
+    private void downloadInOneStream(String url, File partial, boolean ranges) throws IOException {
+        long have = ranges && partial.exists() ? partial.length() : 0;
+        Request.Builder request = new Request.Builder().url(url);
+        if (have > 0) {
+            request.header("Range", "bytes=" + have + "-");
+        }
+        try (Response response = execute(request)) {
+            if (response.code() == 416) {
+                // The stored part does not fit this file; start over on the retry
+                partial.delete();
+                throw new IOException("Stored part rejected by the server");
+            }
+            requireSuccess(url, response);
+            // 200 instead of 206: the server sent everything, so start from scratch
+            appendTo(partial, response.body(), response.code() == 206);
+        }
+    }
+
+    /**
+     * Fetch total bytes as parallel ranges into key.part0, key.part1, ... and join them.
+     * Media never changes under its URL (uploads get unique names), so stored ranges are
+     * trusted without If-Range.
+     */
+    private void downloadInRanges(String url, String key, long total, File partial) throws IOException {
+        long rangeSize = (total + RANGES_PER_DOWNLOAD - 1) / RANGES_PER_DOWNLOAD;
+        File[] parts = new File[RANGES_PER_DOWNLOAD];
+        List<Future<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < RANGES_PER_DOWNLOAD; i++) {
+            long start = i * rangeSize;
+            long end = Math.min(total, start + rangeSize) - 1;
+            File part = new File(dir, key + ".part" + i);
+            parts[i] = part;
+            pending.add(rangeExecutor.submit(() -> {
+                downloadRange(url, part, start, end);
+                return null;
+            }));
+        }
+
+        // Wait for every range, so the ones that finish are kept for the retry
+        IOException failure = null;
+        for (Future<Void> range : pending) {
+            try {
+                range.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            for (File part : parts) {
+                Files.copy(part.toPath(), out);
+            }
+        }
+        for (File part : parts) {
+            part.delete();
+        }
+    }
+
+    /** Bytes [start, end] of url into part, continuing from what part already holds. */
+    private void downloadRange(String url, File part, long start, long end) throws IOException {
+        long length = end - start + 1;
+        long have = part.exists() ? part.length() : 0;
+        if (have > length) {
+            part.delete();
+            have = 0;
+        }
+        if (have == length) {
+            return;
+        }
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .header("Range", "bytes=" + (start + have) + "-" + end);
+        try (Response response = execute(request)) {
+            requireSuccess(url, response);
+            if (response.code() != 206) {
+                throw new IOException("Range request answered with " + response.code());
+            }
+            appendTo(part, response.body(), true);
+        }
+    }
+
+    private static Response execute(Request.Builder request) throws IOException {
+        return HttpEngine.get().newCall(request.cacheControl(NO_STORE).build()).execute();
+    }
+
+    private static void requireSuccess(String url, Response response) throws IOException {
+        if (response.isSuccessful()) {
+            return;
+        }
+        if (response.code() >= 400 && response.code() < 500) {
+            throw new FileNotFoundException("HTTP " + response.code() + " for " + url);
+        }
+        throw new IOException("Server error " + response.code());
+    }
+
+    private static void appendTo(File file, ResponseBody body, boolean append) throws IOException {
+        try (InputStream in = body.byteStream(); FileOutputStream out = new FileOutputStream(file, append)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static long parseLength(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ===== Index =====
+
+    /** Move a finished download to its content-addressed name and record it. */
+    private File store(String url, File partial) throws IOException {
+        String sha = ContentHasher.sha256(resolver, Uri.fromFile(partial));
+        File target = new File(dir, sha + extension(url));
+        if (target.exists()) {
+            // Same bytes already stored for another URL
+            partial.delete();
+        } else if (!partial.renameTo(target)) {
+            partial.delete();
+            throw new IOException("Cannot store " + target);
+        }
+
+        long now = System.currentTimeMillis();
+        long size = target.length();
+        index.put(url, new Entry(target, size, now));
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MEDIA_FILE_URL, url);
+            values.put(DatabaseHelper.COL_MEDIA_FILE_PATH, target.getAbsolutePath());
+            values.put(DatabaseHelper.COL_MEDIA_FILE_SIZE, size);
+            values.put(DatabaseHelper.COL_MEDIA_FILE_LAST_ACCESS, now);
+            dbHelper.getWritableDatabase().insertWithOnConflict(DatabaseHelper.TABLE_MEDIA_FILES, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        });
+        trim();
+        return target;
+    }
+
+    /** Drop the least recently used files until the cache fits its budget. */
+    private synchronized void trim() {
+        // Budget and age are per file; several URLs may share one
+        Map<File, Long> lastUse = new HashMap<>();
+        long total = 0;
+        for (Entry entry : index.values()) {
+            Long seen = lastUse.get(entry.file);
+            if (seen == null) {
+                total += entry.size;
+            }
+            lastUse.put(entry.file, Math.max(seen != null ? seen : 0, entry.lastAccess));
+        }
+        sweepPartials();
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+
+        List<Map.Entry<File, Long>> files = new ArrayList<>(lastUse.entrySet());
+        files.sort(Map.Entry.comparingByValue());
+        Set<File> evicted = new HashSet<>();
+        for (Map.Entry<File, Long> file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.getKey().length();
+            if (file.getKey().delete() || !file.getKey().exists()) {
+                total -= length;
+                evicted.add(file.getKey());
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator(); it.hasNext(); ) {
+            if (evicted.contains(it.next().getValue().file)) {
+                it.remove();
+            }
+        }
+        for (File file : evicted) {
+            paths.add(file.getAbsolutePath());
+        }
+        Log.d(TAG, "Evicted " + evicted.size() + " files, " + total + " bytes left");
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            for (String path : paths) {
+                db.delete(DatabaseHelper.TABLE_MEDIA_FILES, DatabaseHelper.COL_MEDIA_FILE_PATH + " = ?", new String[]{path});
+            }
+        });
+    }
+
+    private void sweepPartials() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - PARTIAL_MAX_AGE_MS;
+        for (File file : files) {
+            if (file.getName().contains(".part") && file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+    }
+
+    private void touch(String url, Entry entry) {
+        long now = System.currentTimeMillis();
+        entry.lastAccess = now;
+        if (now - entry.lastAccessWritten < ACCESS_WRITE_INTERVAL_MS) {
+            return;
+        }
+        entry.lastAccessWritten = now;
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MEDIA_FILE_LAST_ACCESS, now);
+            dbHelper.getWritableDatabase().update(DatabaseHelper.TABLE_MEDIA_FILES, values,
+                    DatabaseHelper.COL_MEDIA_FILE_URL + " = ?", new String[]{url});
+        });
+    }
+
+    private void forget(String url) {
+        index.remove(url);
+        DatabaseExecutor.getInstance().executeWrite(() ->
+                dbHelper.getWritableDatabase().delete(DatabaseHelper.TABLE_MEDIA_FILES,
+                        DatabaseHelper.COL_MEDIA_FILE_URL + " = ?", new String[]{url}));
+    }
+
+    private Integer loadIndex() {
+        List<String> missing = new ArrayList<>();
+        try (Cursor cursor = dbHelper.getReadableDatabase().query(DatabaseHelper.TABLE_MEDIA_FILES,
+                new String[]{DatabaseHelper.COL_MEDIA_FILE_URL, DatabaseHelper.COL_MEDIA_FILE_PATH,
+                        DatabaseHelper.COL_MEDIA_FILE_SIZE, DatabaseHelper.COL_MEDIA_FILE_LAST_ACCESS},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                String url = cursor.getString(0);
+                File file = new File(cursor.getString(1));
+                if (file.exists()) {
+                    index.put(url, new Entry(file, cursor.getLong(2), cursor.getLong(3)));
+                } else {
+                    missing.add(url);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading media index: " + e.getMessage());
+        }
+        if (!missing.isEmpty()) {
+            DatabaseExecutor.getInstance().executeWrite(() -> {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                for (String url : missing) {
+                    db.delete(DatabaseHelper.TABLE_MEDIA_FILES, DatabaseHelper.COL_MEDIA_FILE_URL + " = ?", new String[]{url});
+                }
+            });
+        }
+        return index.size();
+    }
+
+    private void awaitIndex() {
+        try {
+            indexLoaded.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Media index unavailable: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** File extension from the URL path, so viewers can tell what the file is. */
+    private static String extension(String url) {
+        String name = Uri.parse(url).getLastPathSegment();
+        if (name == null) {
+            return "";
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String ext = name.substring(dot + 1).toLowerCase();
+        return ext.matches("[a-z0-9]{1,5}") ? "." + ext : "";
+    }
+}
@@ -0,0 +1,726 @@
+package com.example.chatappjava.network;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import com.example.chatappjava.config.ServerConfig;
+import com.example.chatappjava.utils.ContentHasher;
+import com.example.chatappjava.utils.DatabaseExecutor;
+import com.example.chatappjava.utils.DatabaseHelper;
+import com.example.chatappjava.utils.DatabaseManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Uploads attachments straight from their URI in resumable chunks.
+ *
+ * A session is opened on the server (POST /api/upload/sessions), then the file is PUT in
+ * chunks at the offset the server acknowledges, each chunk streamed from the
+ * ContentResolver. A dropped connection costs at most the chunk in flight: the offset is
+ * asked for again and the upload continues. The session id is kept in upload_sessions, so
+ * sending the same source again, also after a restart, resumes instead of starting over.
+ * The stored key includes the source's last-modified time and a hash of its first and last
+ * megabyte, so a file rewritten in place under the same URI and size starts a new session
+ * instead of being appended to the old bytes.
+ *
+ * Sessions are not picked up on their own after the process dies. The screen that started
+ * an upload is the only thing waiting for its URL (the chat message or post is created from
+ * the response), so finishing it in the background would store a file nothing refers to.
+ * The session is resumed when the user sends the same source again within a day; unused
+ * rows are pruned by the next saveSession() and expire on the server.
+ *
+ * The callback gets the final response, with the same fields as the multipart endpoints
+ * (imageUrl / fileUrl, fileName, originalName, fileSize, mimeType). Servers without
+ * sessions get one streamed multipart request instead.
+ *
+ * Images are hashed (SHA-256) first and looked up with POST /api/upload/lookup, which only
+ * answers with blobs of the signed-in account whose file is still on disk. When the same
+ * bytes went up before, the earlier URL is handed back without uploading anything; the
+ * response then carries {@code deduplicated: true}. Otherwise the image is uploaded as usual.
+ * media_hashes remembers, per server and account, each source (URI, size, last-modified
+ * time) with its hash and where it ended up. A source seen before is not hashed again, and
+ * a URL stored within the last day is reused without the lookup; older entries are
+ * confirmed by the lookup first and forgotten when it answers 404.
+ */
+public class ResumableUploader {
+    private static final String TAG = "ResumableUploader";
+
+    public static final String KIND_CHAT_IMAGE = "chat-image";
+    public static final String KIND_CHAT_FILE = "chat-file";
+    public static final String KIND_POST_IMAGE = "post-image";
+
+    private static final String SESSIONS_ENDPOINT = "/api/upload/sessions";
+    private static final String LOOKUP_ENDPOINT = "/api/upload/lookup";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
+    /** Used until the server says otherwise. */
+    private static final long DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    /** Bytes hashed at each end of the source into the stored session key. */
+    private static final long FINGERPRINT_BYTES = 1024 * 1024;
+    /** Attempts per chunk before the upload is reported as failed (its session is kept). */
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+    /** Server sessions expire after a day; older local rows point at nothing. */
+    private static final long SESSION_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    /** Upper bound across all screens; UploadBatch limits each batch below it. */
+    private static final int MAX_CONCURRENT_UPLOADS = 4;
+    /** A stored URL younger than this is reused without asking the server. */
+    private static final long KNOWN_URL_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    /** Rows kept in media_hashes, most recently used first. */
+    private static final int MAX_KNOWN_MEDIA = 2000;
+
+    private static ResumableUploader instance;
+
+    private final ContentResolver resolver;
+    private final DatabaseHelper dbHelper;
+    private final DatabaseManager databaseManager;
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_UPLOADS, runnable -> {
+        Thread thread = new Thread(runnable, "uploads");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private ResumableUploader(Context context) {
+        this.resolver = context.getContentResolver();
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.databaseManager = new DatabaseManager(context);
+    }
+
+    public static synchronized ResumableUploader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResumableUploader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** A started upload. */
+    public static final class Upload {
+        private volatile boolean cancelled;
+        private volatile Call call;
+
+        /** Stop the upload and drop its server session; the callback gets onFailure. */
+        public void cancel() {
+            cancelled = true;
+            Call current = call;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** Make call the one cancel() stops. */
+        Call track(Call next) throws IOException {
+            call = next;
+            if (cancelled) {
+                next.cancel();
+                throw new IOException("Canceled");
+            }
+            return next;
+        }
+    }
+
+    private final class Job {
+        final String token;
+        // Signed-in account when the upload started; media_hashes entries are kept per account
+        final String userId;
+        final Uri uri;
+        final String kind;
+        final String chatId;
+        final String fileName;
+        final String mimeType;
+        final long size;
+        final UriRequestBody.ProgressListener progress;
+        final Callback caller;
+        final Upload handle = new Upload();
+        // Set once hashed for the lookup; reused as the fingerprint of small images
+        volatile String sha256;
+        // media_hashes row for this source, when its last-modified time is known
+        volatile String mediaKey;
+        // Last-modified time and head/tail hash, set before a chunked upload looks up its session
+        volatile String fingerprint;
+
+        final Callback callback = new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                caller.onFailure(call, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                caller.onResponse(call, sha256 != null && response.isSuccessful() ? remember(Job.this, response) : response);
+            }
+        };
+
+        Job(String token, String userId, Uri uri, String kind, String chatId, String fileName, String mimeType,
+            long size, UriRequestBody.ProgressListener progress, Callback callback) {
+            this.token = token;
+            this.userId = userId;
+            this.uri = uri;
+            this.kind = kind;
+            this.chatId = chatId;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.progress = progress;
+            this.caller = callback;
+        }
+
+        String sourceKey() {
+            return kind + "|" + (chatId != null ? chatId : "") + "|" + uri + "|" + size + "|" + fingerprint;
+        }
+
+        String mediaScope() {
+            return ServerConfig.getBaseUrl() + "|" + userId + "|" + kind;
+        }
+    }
+
+    /**
+     * Upload a content or file URI.
+     *
+     * @param kind     one of the KIND_ constants
+     * @param chatId   target chat; null for post images
+     * @param size     size in bytes; without it (<= 0) the file goes up in one streamed request
+     * @param progress optional, called on the upload thread
+     * @param callback gets the final response or the failure, on the upload thread
+     * @return handle to cancel the upload
+     */
+    public Upload upload(String token, Uri uri, String kind, String chatId, String fileName, String mimeType, long size,
+                         UriRequestBody.ProgressListener progress, Callback callback) {
+        String type = mimeType != null ? mimeType : "application/octet-stream";
+        String name = fileName != null ? fileName : "file";
+        Job job = new Job(token, databaseManager.getUserId(), uri, kind, chatId, name, type, size, progress, callback);
+        executor.execute(() -> {
+            if (job.handle.isCancelled()) {
+                job.callback.onFailure(null, new IOException("Canceled"));
+            } else if (reuseKnownUpload(job)) {
+                // Answered with the earlier upload's URL
+            } else if (job.size <= 0) {
+                uploadInOneRequest(job);
+            } else {
+                uploadInChunks(job);
+            }
+        });
+        return job.handle;
+    }
+
+    /** Hand back an earlier upload of the same bytes if the server still has it; true when the job is answered. */
+    private boolean reuseKnownUpload(Job job) {
+        if (!KIND_CHAT_IMAGE.equals(job.kind) && !KIND_POST_IMAGE.equals(job.kind)) {
+            // Chat files are downloaded through their chat, so their URLs cannot be shared
+            return false;
+        }
+        long modified = lastModified(job.uri);
+        if (modified > 0 && job.size > 0) {
+            job.mediaKey = job.mediaScope() + "|" + job.uri + "|" + job.size + "|" + modified;
+        }
+        KnownMedia known = job.mediaKey != null ? loadKnownMedia(job.mediaKey) : null;
+        if (known != null) {
+            job.sha256 = known.sha256;
+        } else {
+            try {
+                job.sha256 = ContentHasher.sha256(resolver, job.uri);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not hash " + job.fileName + ", uploading it: " + e.getMessage());
+                return false;
+            }
+        }
+        if (known == null || known.url == null) {
+            // The same bytes may have gone up from another source
+            known = loadKnownUrl(job.mediaScope(), job.sha256);
+        }
+
+        if (known != null && known.url != null && System.currentTimeMillis() - known.updatedAt < KNOWN_URL_MAX_AGE_MS) {
+            try {
+                JSONObject body = new JSONObject();
+                body.put("success", true);
+                body.put("message", "Already uploaded");
+                body.put("deduplicated", true);
+                body.put("imageUrl", known.url);
+                body.put("fileName", known.url.substring(known.url.lastIndexOf('/') + 1));
+                body.put("originalName", job.fileName);
+                body.put("fileSize", job.size);
+                body.put("mimeType", job.mimeType);
+                // Keeps the entry's age, so it is still confirmed once a day
+                saveKnownMedia(job, known.url, known.updatedAt);
+                deliverKnown(job, null, new Response.Builder()
+                        .request(new Request.Builder().url(ServerConfig.getBaseUrl() + LOOKUP_ENDPOINT).build())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(body.toString(), JSON))
+                        .build());
+                return true;
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+
+        Call call = null;
+        try {
+            JSONObject query = new JSONObject();
+            query.put("sha256", job.sha256);
+            query.put("kind", job.kind);
+            call = job.handle.track(newCall(job.token, new Request.Builder()
+                    .url(ServerConfig.getBaseUrl() + LOOKUP_ENDPOINT)
+                    .post(RequestBody.create(query.toString(), JSON))
+                    .build()));
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    // 404: not uploaded before, gone since, or a server without lookups
+                    if (known != null && known.url != null && response.code() == 404) {
+                        forgetKnownUrl(job.mediaScope(), job.sha256);
+                    }
+                    if (known == null) {
+                        // Not hashed again next time
+                        saveKnownMedia(job, null, System.currentTimeMillis());
+                    }
+                    return false;
+                }
+                ResponseBody body = response.body();
+                String text = body.string();
+                String url = new JSONObject(text).optString("imageUrl", "");
+                if (url.isEmpty()) {
+                    return false;
+                }
+                saveKnownMedia(job, url, System.currentTimeMillis());
+                deliverKnown(job, call, response.newBuilder()
+                        .body(ResponseBody.create(text, body.contentType()))
+                        .build());
+                return true;
+            }
+        } catch (IOException | JSONException e) {
+            if (job.handle.isCancelled()) {
+                job.callback.onFailure(call, new IOException("Canceled"));
+                return true;
+            }
+            // The lookup is only a shortcut; upload as usual
+            Log.d(TAG, "Media lookup failed (" + e.getMessage() + "), uploading " + job.fileName);
+            return false;
+        }
+    }
+
+    private void deliverKnown(Job job, Call call, Response response) {
+        Log.d(TAG, job.fileName + " was uploaded before, reusing its URL");
+        if (job.progress != null && job.size > 0) {
+            job.progress.onProgress(job.size, job.size);
+        }
+        try {
+            job.caller.onResponse(call, response);
+        } catch (IOException e) {
+            Log.e(TAG, "Upload callback failed: " + e.getMessage());
+        }
+    }
+
+    /** Note where a finished upload ended up; the response is handed on unread. */
+    private Response remember(Job job, Response response) throws IOException {
+        ResponseBody body = response.body();
+        String text = body.string();
+        try {
+            String url = new JSONObject(text).optString("imageUrl", "");
+            if (!url.isEmpty()) {
+                saveKnownMedia(job, url, System.currentTimeMillis());
+            }
+        } catch (JSONException e) {
+            // Not ours to judge; the caller parses it
+        }
+        return response.newBuilder()
+                .body(ResponseBody.create(text, body.contentType()))
+                .build();
+    }
+
+    private void uploadInChunks(Job job) {
+        try {
+            // An image hashed for deduplication that fits in the fingerprint is hashed already
+            String hash = job.sha256 != null && job.size <= 2 * FINGERPRINT_BYTES
+                    ? job.sha256 : ContentHasher.sha256HeadAndTail(resolver, job.uri, job.size, FINGERPRINT_BYTES);
+            job.fingerprint = lastModified(job.uri) + ":" + hash;
+        } catch (IOException e) {
+            job.callback.onFailure(null, e);
+            return;
+        }
+        String key = job.sourceKey();
+        String uploadId = loadSession(key);
+        long offset = -1; // unknown: ask the server
+        long chunkSize = DEFAULT_CHUNK_SIZE;
+        int attempt = 0;
+        boolean restarted = false;
+        Call call = null;
+
+        while (true) {
+            try {
+                if (uploadId == null) {
+                    call = job.handle.track(newCall(job.token, createSessionRequest(job)));
+                    Response response = call.execute();
+                    if (response.code() == 404) {
+                        // Server without resumable uploads
+                        response.close();
+                        uploadInOneRequest(job);
+                        return;
+                    }
+                    if (response.code() >= 500) {
+                        response.close();
+                        throw new IOException("Server error " + response.code());
+                    }
+                    if (!response.isSuccessful()) {
+                        job.callback.onResponse(call, response);
+                        return;
+                    }
+                    JSONObject session = readJson(response);
+                    uploadId = session.getString("uploadId");
+                    offset = session.optLong("offset", 0);
+                    chunkSize = session.optLong("chunkSize", chunkSize);
+                    saveSession(key, uploadId);
+                } else if (offset < 0) {
+                    call = job.handle.track(newCall(job.token, new Request.Builder().url(sessionUrl(uploadId)).get().build()));
+                    Response response = call.execute();
+                    if (response.code() == 404 && !restarted) {
+                        // Expired or already completed elsewhere: start a new session
+                        response.close();
+                        deleteSession(key);
+                        uploadId = null;
+                        restarted = true;
+                        continue;
+                    }
+                    if (response.code() >= 500) {
+                        response.close();
+                        throw new IOException("Server error " + response.code());
+                    }
+                    if (!response.isSuccessful()) {
+                        deleteSession(key);
+                        job.callback.onResponse(call, response);
+                        return;
+                    }
+                    JSONObject session = readJson(response);
+                    offset = session.optLong("offset", 0);
+                    chunkSize = session.optLong("chunkSize", chunkSize);
+                    if (offset > 0) {
+                        Log.d(TAG, "Resuming " + job.fileName + " at " + offset + " of " + job.size);
+                    }
+                }
+
+                long length = Math.min(chunkSize, job.size - offset);
+                RequestBody chunk = new UriRequestBody(resolver, job.uri, OCTET_STREAM, offset, length,
+                        job.progress, offset, job.size);
+                call = job.handle.track(newCall(job.token, new Request.Builder()
+                        .url(sessionUrl(uploadId))
+                        .header("Upload-Offset", String.valueOf(offset))
+                        .put(chunk)
+                        .build()));
+                Response response = call.execute();
+                if (response.code() == 409) {
+                    // Not the server's offset; it tells us where to continue
+                    long serverOffset = readJson(response).optLong("offset", -1);
+                    if (serverOffset == offset) {
+                        // Same offset: an earlier attempt of this chunk is still being written
+                        throw new IOException("Chunk still in progress on the server");
+                    }
+                    offset = serverOffset;
+                    continue;
+                }
+                if (response.code() == 404 && !restarted) {
+                    response.close();
+                    deleteSession(key);
+                    uploadId = null;
+                    restarted = true;
+                    continue;
+                }
+                if (response.code() >= 500) {
+                    response.close();
+                    throw new IOException("Server error " + response.code());
+                }
+                if (!response.isSuccessful()) {
+                    deleteSession(key);
+                    job.callback.onResponse(call, response);
+                    return;
+                }
+
+                ResponseBody body = response.body();
+                String text = body.string();
+                JSONObject result = new JSONObject(text);
+                if (result.optBoolean("complete", false)) {
+                    deleteSession(key);
+                    job.callback.onResponse(call, response.newBuilder()
+                            .body(ResponseBody.create(text, body.contentType()))
+                            .build());
+                    return;
+                }
+                offset = result.optLong("offset", offset + length);
+                attempt = 0;
+            } catch (IOException e) {
+                if (job.handle.isCancelled()) {
+                    abandon(job, uploadId);
+                    job.callback.onFailure(call, e);
+                    return;
+                }
+                if (++attempt >= MAX_ATTEMPTS) {
+                    // The session stays stored: sending the same file again resumes it
+                    Log.w(TAG, "Upload of " + job.fileName + " failed: " + e.getMessage());
+                    job.callback.onFailure(call, e);
+                    return;
+                }
+                Log.d(TAG, "Upload interrupted (" + e.getMessage() + "), retry " + attempt);
+                offset = -1;
+                try {
+                    Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    job.callback.onFailure(call, new IOException("Upload interrupted", interrupted));
+                    return;
+                }
+            } catch (JSONException e) {
+                deleteSession(key);
+                job.callback.onFailure(call, new IOException("Unexpected upload response: " + e.getMessage()));
+                return;
+            }
+        }
+    }
+
+    /** One multipart request to the classic endpoint, body still streamed from the URI. */
+    private void uploadInOneRequest(Job job) {
+        String endpoint;
+        String field;
+        switch (job.kind) {
+            case KIND_CHAT_IMAGE:
+                endpoint = "/api/upload/chat/" + job.chatId + "/image";
+                field = "image";
+                break;
+            case KIND_POST_IMAGE:
+                endpoint = "/api/upload/posts/image";
+                field = "image";
+                break;
+            default:
+                endpoint = "/api/upload/chat/" + job.chatId + "/file";
+                field = "file";
+                break;
+        }
+        MultipartBody.Builder form = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart(field, job.fileName, new UriRequestBody(resolver, job.uri,
+                        MediaType.parse(job.mimeType), job.size > 0 ? job.size : -1, job.progress));
+        if (job.chatId != null) {
+            form.addFormDataPart("chatId", job.chatId);
+        }
+        Request request = new Request.Builder()
+                .url(ServerConfig.getBaseUrl() + endpoint)
+                .post(form.build())
+                .build();
+        try {
+            job.handle.track(newCall(job.token, request)).enqueue(job.callback);
+        } catch (IOException e) {
+            job.callback.onFailure(null, e);
+        }
+    }
+
+    /** The user gave up on this upload: forget its session here and on the server. */
+    private void abandon(Job job, String uploadId) {
+        deleteSession(job.sourceKey());
+        if (uploadId == null) {
+            return;
+        }
+        newCall(job.token, new Request.Builder().url(sessionUrl(uploadId)).delete().build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                // Expires on the server by itself
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+
+    /** When the source was last written, or 0 if its provider does not say. */
+    private long lastModified(Uri uri) {
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            return new File(uri.getPath()).lastModified();
+        }
+        try (Cursor cursor = resolver.query(uri, new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED},
+                null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Not a document provider, or one without the column
+        }
+        return 0;
+    }
+
+    private Request createSessionRequest(Job job) throws IOException {
+        JSONObject body = new JSONObject();
+        try {
+            body.put("kind", job.kind);
+            if (job.chatId != null) {
+                body.put("chatId", job.chatId);
+            }
+            body.put("fileName", job.fileName);
+            body.put("mimeType", job.mimeType);
+            body.put("size", job.size);
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+        return new Request.Builder()
+                .url(ServerConfig.getBaseUrl() + SESSIONS_ENDPOINT)
+                .post(RequestBody.create(body.toString(), JSON))
+                .build();
+    }
+
+    private static String sessionUrl(String uploadId) {
+        return ServerConfig.getBaseUrl() + SESSIONS_ENDPOINT + "/" + uploadId;
+    }
+
+    private static Call newCall(String token, Request request) {
+        return HttpEngine.get().newCall(request.newBuilder()
+                .header("Authorization", "Bearer " + token)
+                .build());
+    }
+
+    private static JSONObject readJson(Response response) throws IOException, JSONException {
+        try (Response ignored = response) {
+            return new JSONObject(response.body().string());
+        }
+    }
+
+    // ===== Stored sessions =====
+
+    private String loadSession(String key) {
+        try {
+            return DatabaseExecutor.getInstance().submitRead(() -> {
+                SQLiteDatabase db = dbHelper.getReadableDatabase();
+                try (Cursor cursor = db.query(DatabaseHelper.TABLE_UPLOAD_SESSIONS,
+                        new String[]{DatabaseHelper.COL_UPLOAD_ID},
+                        DatabaseHelper.COL_UPLOAD_SOURCE_KEY + " = ? AND " + DatabaseHelper.COL_UPLOAD_UPDATED_AT + " > ?",
+                        new String[]{key, String.valueOf(System.currentTimeMillis() - SESSION_MAX_AGE_MS)},
+                        null, null, null)) {
+                    return cursor.moveToFirst() ? cursor.getString(0) : null;
+                }
+            }).get();
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading upload session: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveSession(String key, String uploadId) {
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            // Drop expired sessions while we are here
+            db.delete(DatabaseHelper.TABLE_UPLOAD_SESSIONS, DatabaseHelper.COL_UPLOAD_UPDATED_AT + " <= ?",
+                    new String[]{String.valueOf(System.currentTimeMillis() - SESSION_MAX_AGE_MS)});
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_UPLOAD_SOURCE_KEY, key);
+            values.put(DatabaseHelper.COL_UPLOAD_ID, uploadId);
+            values.put(DatabaseHelper.COL_UPLOAD_UPDATED_AT, System.currentTimeMillis());
+            db.insertWithOnConflict(DatabaseHelper.TABLE_UPLOAD_SESSIONS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        });
+    }
+
+    private void deleteSession(String key) {
+        DatabaseExecutor.getInstance().executeWrite(() ->
+                dbHelper.getWritableDatabase().delete(DatabaseHelper.TABLE_UPLOAD_SESSIONS,
+                        DatabaseHelper.COL_UPLOAD_SOURCE_KEY + " = ?", new String[]{key}));
+    }
+
+    // ===== Known media =====
+
+    /** A media_hashes row. */
+    private static final class KnownMedia {
+        final String sha256;
+        final String url; // null: hashed, but not known to be on the server
+        final long updatedAt;
+
+        KnownMedia(String sha256, String url, long updatedAt) {
+            this.sha256 = sha256;
+            this.url = url;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private KnownMedia loadKnownMedia(String key) {
+        return queryKnownMedia(DatabaseHelper.COL_MEDIA_KEY + " = ?", new String[]{key});
+    }
+
+    /** The most recently confirmed URL for these bytes from any source. */
+    private KnownMedia loadKnownUrl(String scope, String sha256) {
+        return queryKnownMedia(DatabaseHelper.COL_MEDIA_SCOPE + " = ? AND " + DatabaseHelper.COL_MEDIA_SHA256 + " = ? AND "
+                + DatabaseHelper.COL_MEDIA_HASH_URL + " IS NOT NULL", new String[]{scope, sha256});
+    }
+
+    private KnownMedia queryKnownMedia(String selection, String[] args) {
+        try {
+            return DatabaseExecutor.getInstance().submitRead(() -> {
+                SQLiteDatabase db = dbHelper.getReadableDatabase();
+                try (Cursor cursor = db.query(DatabaseHelper.TABLE_MEDIA_HASHES,
+                        new String[]{DatabaseHelper.COL_MEDIA_SHA256, DatabaseHelper.COL_MEDIA_HASH_URL,
+                                DatabaseHelper.COL_MEDIA_UPDATED_AT},
+                        selection, args, null, null, DatabaseHelper.COL_MEDIA_UPDATED_AT + " DESC", "1")) {
+                    return cursor.moveToFirst()
+                            ? new KnownMedia(cursor.getString(0), cursor.getString(1), cursor.getLong(2)) : null;
+                }
+            }).get();
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading media index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** The server no longer has these bytes; every source that pointed at them must ask again. */
+    private void forgetKnownUrl(String scope, String sha256) {
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.putNull(DatabaseHelper.COL_MEDIA_HASH_URL);
+            dbHelper.getWritableDatabase().update(DatabaseHelper.TABLE_MEDIA_HASHES, values,
+                    DatabaseHelper.COL_MEDIA_SCOPE + " = ? AND " + DatabaseHelper.COL_MEDIA_SHA256 + " = ?",
+                    new String[]{scope, sha256});
+        });
+    }
+
+    private void saveKnownMedia(Job job, String url, long updatedAt) {
+        String scope = job.mediaScope();
+        String sha256 = job.sha256;
+        if (job.mediaKey == null && url == null) {
+            return;
+        }
+        // Without a last-modified time the row is keyed by hash; it is still found through it
+        String rowKey = job.mediaKey != null ? job.mediaKey : scope + "|" + sha256;
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MEDIA_KEY, rowKey);
+            values.put(DatabaseHelper.COL_MEDIA_SCOPE, scope);
+            values.put(DatabaseHelper.COL_MEDIA_SHA256, sha256);
+            values.put(DatabaseHelper.COL_MEDIA_HASH_URL, url);
+            values.put(DatabaseHelper.COL_MEDIA_UPDATED_AT, updatedAt);
+            db.insertWithOnConflict(DatabaseHelper.TABLE_MEDIA_HASHES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_MEDIA_HASHES + " WHERE " + DatabaseHelper.COL_MEDIA_KEY
+                    + " NOT IN (SELECT " + DatabaseHelper.COL_MEDIA_KEY + " FROM " + DatabaseHelper.TABLE_MEDIA_HASHES
+                    + " ORDER BY " + DatabaseHelper.COL_MEDIA_UPDATED_AT + " DESC LIMIT " + MAX_KNOWN_MEDIA + ")");
+        });
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.chatappjava.network;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Coalesces identical GETs that are in flight at the same time.
+ *
+ * Requests are keyed by method, URL, Authorization header and the write generation. The
+ * first caller starts the call; anyone asking for the same key before it completes joins it
+ * instead of opening another one. Every non-GET request through {@link HttpEngine} moves
+ * the generation on, once when it is sent and again when its response arrives. A read
+ * issued after a write therefore never joins a flight that started before the write, so it
+ * cannot be answered with data from before the change.
+ *
+ * A lone caller gets the response untouched. When others joined, the body is read once and
+ * every caller receives its own copy of the response, so each can consume it as usual.
+ *
+ * The shared call belongs to no one. {@link #cancel(Object)} detaches one owner's callers,
+ * who get onFailure as with a cancelled call, and the call itself is only cancelled once
+ * nobody is waiting for it any more.
+ */
+final class SingleFlight {
+    private static final String TAG = "SingleFlight";
+
+    /** One running call and whoever is waiting for it. */
+    private static final class Flight {
+        final Call call;
+        final List<Waiter> waiters = new ArrayList<>();
+
+        Flight(Call call) {
+            this.call = call;
+        }
+    }
+
+    private static final class Waiter {
+        final Object owner;
+        final Callback callback;
+
+        Waiter(Object owner, Callback callback) {
+            this.owner = owner;
+            this.callback = callback;
+        }
+    }
+
+    // Guarded by itself
+    private static final Map<String, Flight> inFlight = new HashMap<>();
+
+    // Moves on around every request that may change server state
+    private static final AtomicLong writeGeneration = new AtomicLong();
+
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong joined = new AtomicLong();
+
+    private SingleFlight() {
+    }
+
+    /** Installed on the shared engine: bumps the write generation around non-GET requests. */
+    static final Interceptor WRITE_TRACKER = chain -> {
+        String method = chain.request().method();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return chain.proceed(chain.request());
+        }
+        writeGeneration.incrementAndGet();
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            writeGeneration.incrementAndGet();
+        }
+    };
+
+    /** Network calls actually started. */
+    static long startedCount() {
+        return started.get();
+    }
+
+    /** Requests that were answered by another caller's call. */
+    static long joinedCount() {
+        return joined.get();
+    }
+
+    /**
+     * Start request, or join an identical call that is already running.
+     *
+     * @param owner what {@link #cancel(Object)} is later called with to drop this caller
+     */
+    static void enqueue(Request request, Object owner, Callback callback) {
+        String key = request.method() + " " + request.url() + " " + request.header("Authorization")
+                + " " + writeGeneration.get();
+        Flight flight;
+        synchronized (inFlight) {
+            flight = inFlight.get(key);
+            if (flight != null) {
+                flight.waiters.add(new Waiter(owner, callback));
+                long count = joined.incrementAndGet();
+                Log.d(TAG, "Joined in-flight " + request.url().encodedPath() + " (" + count + " deduplicated of "
+                        + (count + started.get()) + ")");
+                return;
+            }
+            flight = new Flight(HttpEngine.get().newCall(request));
+            flight.waiters.add(new Waiter(owner, callback));
+            inFlight.put(key, flight);
+        }
+        started.incrementAndGet();
+        Flight self = flight;
+        flight.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                for (Waiter waiter : finish(key, self)) {
+                    waiter.callback.onFailure(call, e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                List<Waiter> waiters = finish(key, self);
+                if (waiters.isEmpty()) {
+                    // Everyone was detached while the response was on its way
+                    response.close();
+                    return;
+                }
+                if (waiters.size() == 1) {
+                    waiters.get(0).callback.onResponse(call, response);
+                    return;
+                }
+                byte[] bytes;
+                ResponseBody body = response.body();
+                try (Response ignored = response) {
+                    bytes = body != null ? body.bytes() : new byte[0];
+                } catch (IOException e) {
+                    for (Waiter waiter : waiters) {
+                        waiter.callback.onFailure(call, e);
+                    }
+                    return;
+                }
+                for (Waiter waiter : waiters) {
+                    Response copy = response.newBuilder()
+                            .body(ResponseBody.create(bytes, body != null ? body.contentType() : null))
+                            .build();
+                    try {
+                        waiter.callback.onResponse(call, copy);
+                    } catch (Exception e) {
+                        // One caller's failure must not keep the response from the others
+                        Log.e(TAG, "Callback for " + request.url().encodedPath() + " failed: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Detach every caller that enqueued with owner. Their callbacks get onFailure("Canceled")
+     * on the dispatcher's threads; calls nobody else is waiting for are cancelled.
+     */
+    static void cancel(Object owner) {
+        List<Runnable> detached = new ArrayList<>();
+        List<Call> abandoned = new ArrayList<>();
+        synchronized (inFlight) {
+            Iterator<Flight> flights = inFlight.values().iterator();
+            while (flights.hasNext()) {
+                Flight flight = flights.next();
+                Iterator<Waiter> waiters = flight.waiters.iterator();
+                while (waiters.hasNext()) {
+                    Waiter waiter = waiters.next();
+                    if (waiter.owner == owner) {
+                        detached.add(() -> waiter.callback.onFailure(flight.call, new IOException("Canceled")));
+                        waiters.remove();
+                    }
+                }
+                if (flight.waiters.isEmpty()) {
+                    flights.remove();
+                    abandoned.add(flight.call);
+                }
+            }
+        }
+        for (Call call : abandoned) {
+            call.cancel();
+        }
+        if (detached.isEmpty()) {
+            return;
+        }
+        HttpEngine.get().dispatcher().executorService().execute(() -> {
+            for (Runnable failure : detached) {
+                failure.run();
+            }
+        });
+    }
+
+    private static List<Waiter> finish(String key, Flight flight) {
+        synchronized (inFlight) {
+            // Not there when every caller was detached; a newer flight may hold the key by now
+            if (inFlight.get(key) == flight) {
+                inFlight.remove(key);
+            }
+            return new ArrayList<>(flight.waiters);
+        }
+    }
+}
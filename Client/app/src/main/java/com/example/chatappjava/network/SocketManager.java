@@ -139,6 +139,10 @@ public class SocketManager {
             options.reconnectionDelay = 1000;
             options.reconnectionDelayMax = 5000;
             options.transports = new String[] { "polling", "websocket" };
+            // Ride the app's connection pool; reads wait past the server's 25 s ping + 20 s timeout
+            okhttp3.OkHttpClient transport = HttpEngine.withTimeouts(15, 60, 15);
+            options.callFactory = transport;
+            options.webSocketFactory = transport;
 
             String serverUrl = ServerConfig.getWebSocketUrl();
             Log.d(TAG, "Connecting to Socket.io server: " + serverUrl);
@@ -447,6 +451,11 @@ public class SocketManager {
                     JSONObject data = (JSONObject) args[0];
                     Log.d(TAG, "private_message received chatId=" + data.optString("chatId", ""));
                     JSONObject message = enrichMessagePayload(data);
+                    if (appContext != null) {
+                        com.example.chatappjava.utils.MessageSequenceTracker
+                                .getInstance(appContext)
+                                .onRealtimeMessage(message);
+                    }
                     for (MessageListener l : messageListeners) {
                         try {
                             l.onPrivateMessage(message);
@@ -467,6 +476,11 @@ public class SocketManager {
                     JSONObject data = (JSONObject) args[0];
                     Log.d(TAG, "group_message received chatId=" + data.optString("chatId", ""));
                     JSONObject message = enrichMessagePayload(data);
+                    if (appContext != null) {
+                        com.example.chatappjava.utils.MessageSequenceTracker
+                                .getInstance(appContext)
+                                .onRealtimeMessage(message);
+                    }
                     for (MessageListener l : messageListeners) {
                         try {
                             l.onGroupMessage(message);
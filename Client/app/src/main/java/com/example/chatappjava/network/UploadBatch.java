@@ -0,0 +1,273 @@
+package com.example.chatappjava.network;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.chatappjava.utils.ImageTranscoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Uploads a set of attachments through {@link ResumableUploader} with at most
+ * {@code parallelism} of them running at once.
+ *
+ * A failed item does not stop the others; once nothing is left running the listener hears
+ * which items failed and {@link #retryFailed()} sends only those again (resuming where the
+ * server stopped). {@link #cancel()} stops everything. The resulting URLs are handed over in
+ * item order once every item is up. With {@link #transcodeImages} each item is shrunk by
+ * {@link ImageTranscoder} just before it is sent. Methods and listener callbacks run on the
+ * main thread.
+ */
+public class UploadBatch {
+    private static final String TAG = "UploadBatch";
+
+    /** One source to upload; size 0 when unknown. */
+    public static final class Item {
+        final Uri uri;
+        final String fileName;
+        final String mimeType;
+        final long size;
+
+        public Item(Uri uri, String fileName, String mimeType, long size) {
+            this.uri = uri;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.size = size;
+        }
+    }
+
+    public interface Listener {
+        /** Bytes sent of one item. */
+        default void onItemProgress(int index, long bytesSent, long totalBytes) {
+            // optional
+        }
+
+        /** Bytes sent across the batch and how many items are done. */
+        void onProgress(long bytesSent, long totalBytes, int itemsDone, int itemCount);
+
+        /** Nothing is running any more and these items failed; retryFailed() or cancel(). */
+        void onStalled(List<Integer> failed);
+
+        /** Every item is up; URLs in item order. */
+        void onComplete(List<String> urls);
+    }
+
+    private enum State { PENDING, RUNNING, DONE, FAILED }
+
+    private final ResumableUploader uploader;
+    private final ImageTranscoder transcoder;
+    private final String token;
+    private final String kind;
+    private final String chatId;
+    private final List<Item> items;
+    private final int parallelism;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Main-thread state
+    private final State[] states;
+    private final long[] sent;
+    private final String[] urls;
+    private final ResumableUploader.Upload[] uploads;
+    private final boolean[] transcoded;
+    private ImageTranscoder.Profile transcodeProfile;
+    private long totalBytes;
+    private int running;
+    private boolean cancelled;
+
+    public UploadBatch(Context context, String token, String kind, String chatId, List<Item> items,
+                       int parallelism, Listener listener) {
+        this.uploader = ResumableUploader.getInstance(context);
+        this.transcoder = ImageTranscoder.getInstance(context);
+        this.token = token;
+        this.kind = kind;
+        this.chatId = chatId;
+        this.items = new ArrayList<>(items);
+        this.parallelism = Math.max(1, parallelism);
+        this.listener = listener;
+        this.states = new State[items.size()];
+        this.sent = new long[items.size()];
+        this.urls = new String[items.size()];
+        this.uploads = new ResumableUploader.Upload[items.size()];
+        this.transcoded = new boolean[items.size()];
+        Arrays.fill(states, State.PENDING);
+        updateTotalBytes();
+    }
+
+    /** Shrink every item with this profile before sending it; call before {@link #start()}. */
+    public UploadBatch transcodeImages(ImageTranscoder.Profile profile) {
+        this.transcodeProfile = profile;
+        return this;
+    }
+
+    public void start() {
+        pump();
+    }
+
+    /** Send the failed items again; the finished ones are kept. */
+    public void retryFailed() {
+        if (cancelled) {
+            return;
+        }
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == State.FAILED) {
+                states[i] = State.PENDING;
+            }
+        }
+        pump();
+    }
+
+    /** Stop every running upload; no listener calls follow. */
+    public void cancel() {
+        cancelled = true;
+        for (ResumableUploader.Upload upload : uploads) {
+            if (upload != null) {
+                upload.cancel();
+            }
+        }
+    }
+
+    private void pump() {
+        if (cancelled) {
+            return;
+        }
+        for (int i = 0; i < states.length && running < parallelism; i++) {
+            if (states[i] == State.PENDING) {
+                startItem(i);
+            }
+        }
+        if (running > 0) {
+            return;
+        }
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == State.FAILED) {
+                failed.add(i);
+            }
+        }
+        if (!failed.isEmpty()) {
+            listener.onStalled(failed);
+        } else {
+            listener.onComplete(Arrays.asList(urls));
+        }
+    }
+
+    private void startItem(int index) {
+        states[index] = State.RUNNING;
+        running++;
+        if (transcodeProfile == null || transcoded[index]) {
+            uploadItem(index);
+            return;
+        }
+        // Counted as running while it is transcoded, so the parallelism bound covers both steps
+        transcoded[index] = true;
+        Item source = items.get(index);
+        transcoder.transcode(source.uri, transcodeProfile, file -> mainHandler.post(() -> {
+            if (cancelled) {
+                return;
+            }
+            if (file != null) {
+                items.set(index, new Item(Uri.fromFile(file), transcodedName(source.fileName),
+                        transcodeProfile.format.mimeType, file.length()));
+                updateTotalBytes();
+            }
+            uploadItem(index);
+        }));
+    }
+
+    private void uploadItem(int index) {
+        Item item = items.get(index);
+        uploads[index] = uploader.upload(token, item.uri, kind, chatId, item.fileName, item.mimeType, item.size,
+                (bytesSent, total) -> mainHandler.post(() -> onItemProgress(index, bytesSent, total)),
+                new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        Log.w(TAG, "Item " + index + " failed: " + e.getMessage());
+                        mainHandler.post(() -> onItemFinished(index, null));
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        String url = null;
+                        try (Response ignored = response) {
+                            String body = response.body().string();
+                            if (response.isSuccessful()) {
+                                JSONObject json = new JSONObject(body);
+                                url = json.optString("imageUrl", json.optString("fileUrl", ""));
+                            } else {
+                                Log.w(TAG, "Item " + index + " rejected: " + response.code() + " " + body);
+                            }
+                        } catch (JSONException e) {
+                            Log.w(TAG, "Item " + index + " bad response: " + e.getMessage());
+                        }
+                        String result = url != null && !url.isEmpty() ? url : null;
+                        mainHandler.post(() -> onItemFinished(index, result));
+                    }
+                });
+    }
+
+    private void onItemProgress(int index, long bytesSent, long total) {
+        if (cancelled || states[index] != State.RUNNING) {
+            return;
+        }
+        sent[index] = bytesSent;
+        listener.onItemProgress(index, bytesSent, total);
+        reportProgress();
+    }
+
+    private void onItemFinished(int index, String url) {
+        if (cancelled) {
+            return;
+        }
+        running--;
+        uploads[index] = null;
+        if (url != null) {
+            states[index] = State.DONE;
+            urls[index] = url;
+            sent[index] = Math.max(0, items.get(index).size);
+        } else {
+            states[index] = State.FAILED;
+        }
+        reportProgress();
+        pump();
+    }
+
+    private void updateTotalBytes() {
+        long total = 0;
+        for (Item item : items) {
+            total += Math.max(0, item.size);
+        }
+        totalBytes = total;
+    }
+
+    private String transcodedName(String fileName) {
+        String base = fileName != null ? fileName : "image";
+        int dot = base.lastIndexOf('.');
+        return (dot > 0 ? base.substring(0, dot) : base) + transcodeProfile.format.extension;
+    }
+
+    private void reportProgress() {
+        long bytes = 0;
+        int done = 0;
+        for (int i = 0; i < states.length; i++) {
+            bytes += sent[i];
+            if (states[i] == State.DONE) {
+                done++;
+            }
+        }
+        listener.onProgress(bytes, totalBytes, done, states.length);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.chatappjava.network;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Streams a byte range of a content (or file) URI straight from the ContentResolver, so a
+ * large attachment never has to fit in the heap or be copied to a temp file first. The
+ * stream is reopened on every write, so OkHttp may retry the request.
+ */
+public class UriRequestBody extends RequestBody {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Called on the uploading thread as bytes are handed to the connection. */
+    public interface ProgressListener {
+        void onProgress(long bytesSent, long totalBytes);
+    }
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final MediaType contentType;
+    private final long offset;
+    private final long length;
+    private final ProgressListener listener;
+    // Where this range sits in the whole upload, for progress
+    private final long progressBase;
+    private final long progressTotal;
+
+    /** The whole source; length -1 when its size is unknown. */
+    public UriRequestBody(ContentResolver resolver, Uri uri, MediaType contentType, long length,
+                          ProgressListener listener) {
+        this(resolver, uri, contentType, 0, length, listener, 0, length);
+    }
+
+    /** Bytes [offset, offset + length) of the source. */
+    public UriRequestBody(ContentResolver resolver, Uri uri, MediaType contentType, long offset, long length,
+                          ProgressListener listener, long progressBase, long progressTotal) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.contentType = contentType;
+        this.offset = offset;
+        this.length = length;
+        this.listener = listener;
+        this.progressBase = progressBase;
+        this.progressTotal = progressTotal;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + uri);
+            }
+            skipFully(in, offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long sent = 0;
+            // Report about every 1% so a 200 MB file does not post thousands of updates
+            long step = Math.max(BUFFER_SIZE, progressTotal / 100);
+            long lastReported = 0;
+            while (length < 0 || sent < length) {
+                int max = length < 0 ? buffer.length : (int) Math.min(buffer.length, length - sent);
+                int read = in.read(buffer, 0, max);
+                if (read == -1) {
+                    if (length < 0) {
+                        break;
+                    }
+                    throw new EOFException("Source ended at " + (offset + sent) + " of " + (offset + length) + " bytes");
+                }
+                sink.write(buffer, 0, read);
+                sent += read;
+                if (listener != null && (sent - lastReported >= step || sent == length)) {
+                    lastReported = sent;
+                    listener.onProgress(progressBase + sent, progressTotal);
+                }
+            }
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        byte[] scratch = null;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                // Some providers do not support skip; read through instead
+                if (scratch == null) {
+                    scratch = new byte[BUFFER_SIZE];
+                }
+                int read = in.read(scratch, 0, (int) Math.min(scratch.length, remaining));
+                if (read == -1) {
+                    throw new EOFException("Source shorter than offset " + count);
+                }
+                skipped = read;
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -49,19 +49,22 @@ import com.example.chatappjava.models.Message;
 import com.example.chatappjava.models.User;
 import com.example.chatappjava.ChatApplication;
 import com.example.chatappjava.network.ApiClient;
+import com.example.chatappjava.network.MediaCache;
 import com.example.chatappjava.network.SocketManager;
 import com.example.chatappjava.ui.call.RingingActivity;
 import com.example.chatappjava.utils.AvatarManager;
 import com.example.chatappjava.utils.AvatarSyncCoordinator;
 import com.example.chatappjava.utils.ConversationPreviewHelper;
 import com.example.chatappjava.utils.ConversationRepository;
+import com.example.chatappjava.utils.DatabaseExecutor;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.ImageTranscoder;
+import com.example.chatappjava.utils.MessageIngestor;
 import com.example.chatappjava.utils.MessageRepository;
+import com.example.chatappjava.utils.MessageSequenceTracker;
 import com.example.chatappjava.utils.OfflineMessageSyncManager;
-import android.net.ConnectivityManager;
-import android.net.ConnectivityManager.NetworkCallback;
-import android.net.Network;
-import android.net.NetworkRequest;
+import com.example.chatappjava.utils.ReadStateTracker;
+import com.example.chatappjava.utils.SyncOrchestrator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -126,8 +129,8 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
     protected MessageRepository messageRepository;
     protected ConversationRepository conversationRepository;
     protected OfflineMessageSyncManager syncManager; // For offline message sync
-    private ConnectivityManager networkConnectivityManager;
-    private ConnectivityManager.NetworkCallback networkCallback;
+    private SyncOrchestrator.Listener chatSyncListener;
+    private MessageSequenceTracker.Listener sequenceListener;
     protected com.example.chatappjava.utils.SyncManager backgroundSyncManager; // For background delta sync
     protected ApiClient apiClient;
     protected AvatarManager avatarManager;
@@ -150,14 +153,12 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
     private static final long OFFLINE_TOAST_DEBOUNCE_MS = 3000;
     private static final long PLACEHOLDER_MATCH_WINDOW_MS = 5000L;
     private static final long SEND_TIMEOUT_RECONCILE_MS = 3000L;
-    private static final long NETWORK_RESTORE_POST_DELAY_MS = 5000L;
     private final ConcurrentHashMap<String, String> nonceToTempId = new ConcurrentHashMap<>();
     private long lastOfflineSendToastAt = 0;
     private final Handler appendHandler = new Handler(Looper.getMainLooper());
     private Runnable appendFromDbRunnable;
     private SocketManager.MessageListener chatMessageListener;
-    private SocketManager.ConnectionListener realtimeConnectionListener;
-    private boolean socketWasDisconnected = false;
+    private com.example.chatappjava.utils.SyncManager.SyncListener catchUpListener;
     protected boolean hasNewMessages = false;
     protected boolean isInitialLoad = true;
     private boolean isMessagesLoading = false;
@@ -166,8 +167,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
     protected int newMessagesCount = 0; // Count of new messages when user is not at bottom
     private boolean isUpdatingMessages = false; // Flag to prevent concurrent updates
     private boolean isUserReadingOldMessages = false; // Flag to track if user is reading old messages (>5 from bottom)
-    // Pagination state
-    private int currentPage = 1;
+    // Pagination state (keyset: older pages are requested before the oldest loaded message)
     private final int pageSize = 20;
     private final int initialDbLoadLimit = 50; // Load only last 50 messages from DB for faster initial load
     private boolean isLoadingMore = false;
@@ -225,11 +225,10 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         initViews();
         initData();
         setupSocketManager();
-        setupNetworkListener(); // Setup network listener for auto-sync
+        setupSyncListener(); // Offline indicator and reconnect catch-up
         setupClickListeners();
         setupRecyclerView();
         loadChatData();
-        setupRealtimeConnectionListener();
         setupMentionSupport();
     }
 
@@ -339,8 +338,9 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         String userId = databaseManager != null ? databaseManager.getUserId() : null;
         ConversationPreviewHelper.applyMessagePreview(
                 this, conversationRepository, message, userId, incrementUnreadWhenIncoming);
-        if (!incrementUnreadWhenIncoming && currentChat.getId() != null) {
-            ConversationPreviewHelper.clearUnread(conversationRepository, currentChat.getId());
+        if (!incrementUnreadWhenIncoming) {
+            // Seen in the open chat; coalesced with the rest of the burst into one read marker
+            ReadStateTracker.getInstance(this).markReadUpTo(message);
         }
     }
 
@@ -348,14 +348,14 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         if (message == null) {
             return;
         }
-        new Thread(() -> updateConversationPreview(message, incrementUnreadWhenIncoming)).start();
+        DatabaseExecutor.getInstance().executeWrite(() -> updateConversationPreview(message, incrementUnreadWhenIncoming));
     }
 
     protected void persistMessageAsync(Message message) {
         if (message == null || messageRepository == null) {
             return;
         }
-        new Thread(() -> messageRepository.saveMessage(message)).start();
+        DatabaseExecutor.getInstance().executeWrite(() -> messageRepository.saveMessage(message));
     }
     
     // Video call handling - can be overridden by subclasses
@@ -675,10 +675,9 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         }
         
         String chatId = currentChat.getId();
-        android.util.Log.d("BaseChatActivity", "uploadImageToServer: Calling uploadChatImage with chatId: " + chatId);
+        android.util.Log.d("BaseChatActivity", "uploadImageToServer: Uploading to chatId: " + chatId);
         
-        // Upload image to server
-        apiClient.uploadChatImage(token, imageFile, chatId, new okhttp3.Callback() {
+        okhttp3.Callback callback = new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws java.io.IOException {
                 String responseBody = response.body().string();
@@ -719,9 +718,31 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                     Toast.makeText(BaseChatActivity.this, getString(R.string.error_network_detail, e.getMessage()), Toast.LENGTH_SHORT).show();
                 });
             }
+        };
+        
+        // Resized, turned upright and stripped of EXIF first; GIFs and undecodable files go as they are.
+        // An image sent before (forwarded to another chat, say) gets its earlier URL back without an upload.
+        ImageTranscoder.getInstance(this).transcode(Uri.fromFile(imageFile), ImageTranscoder.Profile.CHAT, transcoded -> {
+            java.io.File upload = transcoded != null ? transcoded : imageFile;
+            String mimeType = transcoded != null ? ImageTranscoder.Profile.CHAT.format.mimeType : chatImageMimeType(imageFile);
+            com.example.chatappjava.network.ResumableUploader.getInstance(this).upload(token, Uri.fromFile(upload),
+                    com.example.chatappjava.network.ResumableUploader.KIND_CHAT_IMAGE, chatId,
+                    upload.getName(), mimeType, upload.length(), this::postUploadProgress, callback);
         });
     }
 
+    private static String chatImageMimeType(java.io.File imageFile) {
+        String name = imageFile.getName().toLowerCase();
+        if (name.endsWith(".png")) {
+            return "image/png";
+        } else if (name.endsWith(".gif")) {
+            return "image/gif";
+        } else if (name.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "image/jpeg";
+    }
+
     protected void uploadFileToServer(Uri fileUri, String fileName, String mimeType, long fileSize) {
         if (currentChat == null) {
             setUploadInProgress(false);
@@ -736,36 +757,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             return;
         }
         
-        // Resolve content URI to a temp file to avoid ENOENT on content:// URIs
-        java.io.File uploadTempFile = null;
-        try {
-            android.content.ContentResolver cr = getContentResolver();
-            java.io.InputStream in = cr.openInputStream(fileUri);
-            if (in != null) {
-                uploadTempFile = new java.io.File(getCacheDir(), "upload_" + System.currentTimeMillis());
-                java.io.FileOutputStream out = new java.io.FileOutputStream(uploadTempFile);
-                byte[] buffer = new byte[8192];
-                int len;
-                while ((len = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, len);
-                }
-                in.close();
-                out.flush();
-                out.close();
-            }
-        } catch (Exception e) {
-            android.util.Log.e("BaseChatActivity", "Failed to copy content URI to temp file", e);
-        }
-
-        final java.io.File fileToUpload = (uploadTempFile != null && uploadTempFile.exists()) ? uploadTempFile : null;
-
-        if (fileToUpload == null) {
-            setUploadInProgress(false);
-            Toast.makeText(this, getString(R.string.msg_unable_to_access_selected_file_please_try_again), Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        // Upload file to server (prefer File-based path)
+        // Streamed from the URI in resumable chunks; no temp copy, no whole-file buffer
         okhttp3.Callback callback = new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws java.io.IOException {
@@ -809,12 +801,18 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                 android.util.Log.e("BaseChatActivity", "File upload failed: " + e.getMessage());
                 runOnUiThread(() -> {
                     setUploadInProgress(false);
-                    Toast.makeText(BaseChatActivity.this, getString(R.string.error_network_detail, e.getMessage()), Toast.LENGTH_SHORT).show();
+                    if (e instanceof java.io.FileNotFoundException) {
+                        Toast.makeText(BaseChatActivity.this, getString(R.string.msg_unable_to_access_selected_file_please_try_again), Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(BaseChatActivity.this, getString(R.string.error_network_detail, e.getMessage()), Toast.LENGTH_SHORT).show();
+                    }
                 });
             }
         };
 
-        apiClient.uploadChatFile(token, fileToUpload, fileName, mimeType, fileSize, currentChat.getId(), callback);
+        com.example.chatappjava.network.ResumableUploader.getInstance(this).upload(token, fileUri,
+                com.example.chatappjava.network.ResumableUploader.KIND_CHAT_FILE, currentChat.getId(),
+                fileName, mimeType, fileSize, this::postUploadProgress, callback);
     }
 
     protected void sendFileMessage(String fileUrl, String fileName, String originalName, String mimeType, long fileSize) {
@@ -1599,6 +1597,8 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         boolean uploading = activeUploadCount > 0;
         if (sendUploadProgress != null) {
             sendUploadProgress.setVisibility(uploading ? View.VISIBLE : View.GONE);
+            // Spinner until postUploadProgress reports bytes for a lone upload
+            sendUploadProgress.setIndeterminate(true);
         }
         if (ivSend != null) {
             ivSend.setEnabled(!uploading);
@@ -1611,6 +1611,22 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         }
     }
 
+    /** Byte progress of a streamed upload; called on the upload thread. */
+    protected void postUploadProgress(long bytesSent, long totalBytes) {
+        if (totalBytes <= 0) {
+            return;
+        }
+        int permille = (int) (bytesSent * 1000 / totalBytes);
+        runOnUiThread(() -> {
+            if (sendUploadProgress == null || activeUploadCount != 1) {
+                return;
+            }
+            sendUploadProgress.setIndeterminate(false);
+            sendUploadProgress.setMax(1000);
+            sendUploadProgress.setProgress(permille);
+        });
+    }
+
     private void setupTypingListeners() {
         if (socketManager == null) {
             return;
@@ -1847,63 +1863,50 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         setupTypingListeners();
     }
 
-    /**
-     * Industry pattern: socket = realtime; HTTP delta only on reconnect / resume (gap-fill).
-     */
-    private void setupRealtimeConnectionListener() {
-        if (socketManager == null) return;
-        if (realtimeConnectionListener == null) {
-            realtimeConnectionListener = new SocketManager.ConnectionListener() {
-                @Override
-                public void onConnected() {
-                    if (!socketWasDisconnected) {
-                        return;
-                    }
-                    socketWasDisconnected = false;
-                    runOnUiThread(() -> catchUpAfterDisconnect());
-                }
-
-                @Override
-                public void onDisconnected() {
-                    socketWasDisconnected = true;
-                }
-            };
-        }
-        socketManager.addConnectionListener(realtimeConnectionListener);
-    }
-
     /**
      * HTTP catch-up only after real disconnect (socket down, network lost, send timeout).
      * While socket is connected, incoming messages come solely from socket events.
+     * The orchestrator merges this with reconnect triggers and runs one catch-up.
      */
     private void catchUpAfterDisconnect() {
         if (currentChat == null) return;
         reconcileOutboxFromDb();
-        String token = databaseManager != null ? databaseManager.getToken() : null;
-        if (token == null || token.isEmpty() || backgroundSyncManager == null) {
-            return;
-        }
-        final com.example.chatappjava.utils.SyncManager.SyncListener once =
-                new com.example.chatappjava.utils.SyncManager.SyncListener() {
-                    @Override
-                    public void onSyncComplete(String resourceType, boolean success, int itemsUpdated) {
-                        if (!"messages".equals(resourceType)) {
-                            return;
-                        }
-                        backgroundSyncManager.removeSyncListener(this);
-                        runOnUiThread(() -> scheduleAppendNewMessagesFromDb(false));
-                    }
+        SyncOrchestrator.getInstance(this).requestCatchUp();
+    }
 
-                    @Override
-                    public void onSyncError(String resourceType, String error) {
-                        if ("messages".equals(resourceType)) {
-                            backgroundSyncManager.removeSyncListener(this);
-                            runOnUiThread(() -> scheduleAppendNewMessagesFromDb(false));
-                        }
-                    }
-                };
-        backgroundSyncManager.addSyncListener(once);
-        backgroundSyncManager.syncMessagesNow(token);
+    /**
+     * A catch-up is starting (requested here or by a reconnect): append whatever the
+     * messages delta brings once it has landed.
+     */
+    private void onCatchUpStarting() {
+        if (currentChat == null || backgroundSyncManager == null || catchUpListener != null) return;
+        reconcileOutboxFromDb();
+        catchUpListener = new com.example.chatappjava.utils.SyncManager.SyncListener() {
+            @Override
+            public void onSyncComplete(String resourceType, boolean success, int itemsUpdated) {
+                if ("messages".equals(resourceType)) {
+                    finishCatchUp(this);
+                }
+            }
+
+            @Override
+            public void onSyncError(String resourceType, String error) {
+                if ("messages".equals(resourceType)) {
+                    finishCatchUp(this);
+                }
+            }
+        };
+        backgroundSyncManager.addSyncListener(catchUpListener);
+    }
+
+    private void finishCatchUp(com.example.chatappjava.utils.SyncManager.SyncListener listener) {
+        backgroundSyncManager.removeSyncListener(listener);
+        runOnUiThread(() -> {
+            if (catchUpListener == listener) {
+                catchUpListener = null;
+            }
+            scheduleAppendNewMessagesFromDb(false);
+        });
     }
 
     /** Socket event → UI immediately (front of main queue). */
@@ -2291,7 +2294,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                 return;
             }
 
-            currentPage = 1;
             hasMore = true;
 
             // Initial load: use full API call
@@ -2409,18 +2411,19 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         if (currentChat == null || messageRepository == null) return;
         
         // Load asynchronously to avoid blocking UI thread
-        new Thread(() -> {
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            // Fetch one extra row to learn whether older messages exist without counting the whole chat
             List<Message> dbMessages = messageRepository.getMessagesForChat(
                 currentChat.getId(), 
-                initialDbLoadLimit
+                initialDbLoadLimit + 1
             );
-            
-            // Check if there are more messages in DB
-            int totalCount = messageRepository.getMessagesCountForChat(currentChat.getId());
-            hasMoreInDb = totalCount > initialDbLoadLimit;
+            hasMoreInDb = dbMessages.size() > initialDbLoadLimit;
+            if (hasMoreInDb) {
+                dbMessages.remove(0);
+            }
             // IMPORTANT: Set hasMore based on whether there are more messages in DB or server
             // This ensures loadMoreMessages can be called when scrolling up
-            boolean shouldHaveMore = hasMoreInDb || totalCount > dbMessages.size();
+            boolean shouldHaveMore = hasMoreInDb;
 
             runOnUiThread(() -> {
                 if (!dbMessages.isEmpty()) {
@@ -2429,7 +2432,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                     messages.addAll(dbMessages);
                     hasMore = shouldHaveMore;
                     android.util.Log.d("BaseChatActivity", "Loaded " + dbMessages.size() +
-                            " messages from database (total: " + totalCount + "), hasMore=" + hasMore + ", hasMoreInDb=" + hasMoreInDb);
+                            " messages from database, hasMore=" + hasMore + ", hasMoreInDb=" + hasMoreInDb);
                     notifyMessageListReplaced(previousMessages);
                     updateSummarizeIndicator();
                     shouldAutoScroll = true;
@@ -2446,7 +2449,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                     updateMessagesEmptyState();
                 }
             });
-        }).start();
+        });
     }
     
     /**
@@ -2634,7 +2637,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         final long placeholderSinceTs = minPlaceholderTs;
         final boolean wasAtBottom = isAtBottom();
 
-        new Thread(() -> {
+        DatabaseExecutor.getInstance().executeRead(() -> {
             List<Message> newMessages;
             if (reconcilePlaceholders) {
                 newMessages = messageRepository.getSyncedMessagesSince(chatId, placeholderSinceTs);
@@ -2660,7 +2663,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             }
 
             runOnUiThread(() -> applyAppendedMessages(newMessages, wasAtBottom));
-        }).start();
+        });
     }
 
     private void applyAppendedMessages(List<Message> newMessages, boolean wasAtBottom) {
@@ -2690,54 +2693,35 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
      * Check if network is available
      */
     private boolean isNetworkAvailable() {
-        ConnectivityManager cm =
-            (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null) {
-            return false;
-        }
-        android.net.Network network = cm.getActiveNetwork();
-        if (network == null) {
-            return false;
-        }
-        android.net.NetworkCapabilities caps = cm.getNetworkCapabilities(network);
-        if (caps == null) {
-            return false;
-        }
-        // LAN server: do not require NET_CAPABILITY_VALIDATED (no public internet needed).
-        return caps.hasCapability(android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET)
-                && (caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_WIFI)
-                || caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_CELLULAR)
-                || caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_ETHERNET));
+        return SyncOrchestrator.getInstance(this).isNetworkAvailable();
     }
     
     /**
-     * Setup network listener to auto-sync pending messages when WiFi comes back
+     * Follow the shared orchestrator: it flushes the outbox and runs the catch-up when the
+     * network or socket comes back; this screen updates its indicator and appends the result.
      */
-    private void setupNetworkListener() {
-        networkConnectivityManager =
-            (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        
-        if (networkConnectivityManager == null) return;
-        
-        NetworkRequest request = new NetworkRequest.Builder().build();
-        networkCallback = new NetworkCallback() {
+    private void setupSyncListener() {
+        chatSyncListener = new SyncOrchestrator.Listener() {
             @Override
-            public void onAvailable(Network network) {
-                android.util.Log.d("BaseChatActivity", "Network available, reconciling messages");
-                runOnUiThread(() -> {
-                    updateOfflineIndicator();
-                    reconcileAfterNetworkRestore();
-                });
+            public void onNetworkChanged(boolean available) {
+                android.util.Log.d("BaseChatActivity", available ? "Network available" : "Network lost");
+                updateOfflineIndicator();
             }
-            
+
             @Override
-            public void onLost(Network network) {
-                android.util.Log.d("BaseChatActivity", "Network lost");
-                runOnUiThread(() -> updateOfflineIndicator());
+            public void onCatchUp() {
+                onCatchUpStarting();
             }
         };
-        
-        networkConnectivityManager.registerNetworkCallback(request, networkCallback);
+        SyncOrchestrator.getInstance(this).addListener(chatSyncListener);
+
+        // Missed messages fetched by sequence can be older than what is shown; they are inserted in place
+        sequenceListener = (chatId, recovered) -> {
+            if (currentChat != null && chatId.equals(currentChat.getId())) {
+                applyAppendedMessages(recovered, isAtBottom());
+            }
+        };
+        MessageSequenceTracker.getInstance(this).addListener(sequenceListener);
     }
     
     /**
@@ -3092,9 +3076,8 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         updateOfflineIndicator();
         updateSummarizeIndicator();
 
-        // Note: Sync pending messages is handled by network callback (setupNetworkListener)
+        // Note: Sync pending messages is handled by SyncOrchestrator
         // No need to sync here to avoid duplicate syncs when network comes back
-        // Network callback will handle it automatically
     }
 
     private void loadMoreMessages() {
@@ -3103,110 +3086,149 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             android.util.Log.d("BaseChatActivity", "loadMoreMessages blocked: currentChat=" + (currentChat != null) + ", isLoadingMore=" + isLoadingMore + ", hasMore=" + hasMore);
             return;
         }
+        // Keyset cursor: the oldest message we already show that the server knows about
+        Message anchor = null;
+        for (Message m : messages) {
+            if (m != null && m.getId() != null && !m.getId().isEmpty() && !isPlaceholderId(m.getId())) {
+                anchor = m;
+                break;
+            }
+        }
+        if (anchor == null) {
+            android.util.Log.d("BaseChatActivity", "loadMoreMessages skipped: no synced message to page from");
+            return;
+        }
         isLoadingMore = true;
-        android.util.Log.d("BaseChatActivity", "loadMoreMessages starting: currentPage=" + currentPage + ", pageSize=" + pageSize);
-        String token = databaseManager.getToken();
+        final String chatId = currentChat.getId();
+        final long beforeTimestamp = anchor.getTimestamp();
+        final String beforeId = anchor.getId();
+        android.util.Log.d("BaseChatActivity", "loadMoreMessages starting: before=" + beforeTimestamp + "/" + beforeId + ", pageSize=" + pageSize);
         // Capture current top item and offset to restore after prepend
         LinearLayoutManager lmBefore = (LinearLayoutManager) rvMessages.getLayoutManager();
         int firstVisibleBefore = lmBefore != null ? lmBefore.findFirstVisibleItemPosition() : 0;
         View firstViewBefore = rvMessages.getChildAt(0);
         int topOffsetBefore = firstViewBefore != null ? (firstViewBefore.getTop() - rvMessages.getPaddingTop()) : 0;
-        apiClient.getMessages(token, currentChat.getId(), currentPage + 1, pageSize, new Callback() {
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                String body = response.body().string();
-                runOnUiThread(() -> {
-                    isLoadingMore = false;
-                    if (!response.isSuccessful()) return;
-                    try {
-                        JSONObject json = new JSONObject(body);
-                        if (!json.optBoolean("success", false)) return;
-                        JSONObject data = json.getJSONObject("data");
-                        org.json.JSONArray arr = data.optJSONArray("messages");
-                        if (arr != null && arr.length() > 0) {
-                            java.util.List<Message> older = new java.util.ArrayList<>();
-                            for (int i = 0; i < arr.length(); i++) {
-                                Message m = Message.fromJson(arr.getJSONObject(i));
-                                older.add(m);
-                            }
-                            
-                            // Batch save messages for better performance
-                            if (!older.isEmpty() && messageRepository != null) {
-                                messageRepository.saveMessagesBatch(older);
-                            }
-                            
-                            // Wait for RecyclerView to be idle before modifying list
-                            waitForRecyclerViewIdle(() -> {
-                                if (isUpdatingMessages) {
-                                    isLoadingMore = false;
-                                    return;
-                                }
-                                isUpdatingMessages = true;
-                                
-                                try {
-                                    // Stop scroll to prevent inconsistency
-                                    if (rvMessages != null) {
-                                        rvMessages.stopScroll();
-                                    }
-                                    
-                                    // Check if list hasn't been cleared by another operation
-                                    if (messages.isEmpty() && !older.isEmpty()) {
-                                        // List was cleared, can't restore position - just add messages
-                                        messages.addAll(older);
-                                        currentPage += 1;
-                                        hasMore = arr.length() >= pageSize;
-                                        if (messageAdapter != null) {
-                                            messageAdapter.notifyItemRangeInserted(0, older.size());
-                                        }
-                                        return;
-                                    }
-                                    
-                                    // Add older messages at the beginning
-                                    messages.addAll(0, older);
-                                    currentPage += 1;
-                                    hasMore = arr.length() >= pageSize;
-                                    
-                                    // Notify adapter after list modification
-                                    if (messageAdapter != null) {
-                                        messageAdapter.notifyItemRangeInserted(0, older.size());
+
+        // Local page first: a full page from SQLite needs no round trip
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            List<Message> local = messageRepository != null
+                    ? messageRepository.getMessagesBefore(chatId, beforeTimestamp, beforeId, pageSize)
+                    : new ArrayList<>();
+            if (local.size() >= pageSize) {
+                runOnUiThread(() -> prependOlderMessages(local, true, firstVisibleBefore, topOffsetBefore));
+                return;
+            }
+            String token = databaseManager.getToken();
+            if (token == null || token.isEmpty()) {
+                runOnUiThread(() -> prependOlderMessages(local, false, firstVisibleBefore, topOffsetBefore));
+                return;
+            }
+            apiClient.getMessagesBefore(token, chatId, beforeTimestamp, beforeId, pageSize, new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    String body = response.body().string();
+                    java.util.List<Message> older = new java.util.ArrayList<>();
+                    boolean ok = false;
+                    if (response.isSuccessful()) {
+                        try {
+                            JSONObject json = new JSONObject(body);
+                            if (json.optBoolean("success", false)) {
+                                JSONObject data = json.getJSONObject("data");
+                                org.json.JSONArray arr = data.optJSONArray("messages");
+                                if (arr != null) {
+                                    for (int i = 0; i < arr.length(); i++) {
+                                        older.add(Message.fromJson(arr.getJSONObject(i)));
                                     }
-                                    
-                                    // Restore previous viewport after adapter has been notified
-                                    rvMessages.post(() -> {
-                                        rvMessages.post(() -> {
-                                            LinearLayoutManager lm = (LinearLayoutManager) rvMessages.getLayoutManager();
-                                            if (lm != null && !messages.isEmpty()) {
-                                                try {
-                                                    int newFirstVisible = firstVisibleBefore + older.size();
-                                                    if (newFirstVisible >= 0 && newFirstVisible < messages.size()) {
-                                                        lm.scrollToPositionWithOffset(newFirstVisible, topOffsetBefore);
-                                                    }
-                                                } catch (Exception e) {
-                                                    android.util.Log.e("BaseChatActivity", "Error restoring scroll in loadMoreMessages: " + e.getMessage());
-                                                }
-                                            }
-                                        });
-                                    });
-                                } catch (Exception e) {
-                                    android.util.Log.e("BaseChatActivity", "Error in loadMoreMessages: " + e.getMessage());
-                                } finally {
-                                    isLoadingMore = false;
-                                    isUpdatingMessages = false;
                                 }
-                            });
-                        } else {
-                            hasMore = false;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            android.util.Log.e("BaseChatActivity", "Error parsing loadMoreMessages response: " + e.getMessage());
                         }
-                    } catch (Exception e) {
-                        android.util.Log.e("BaseChatActivity", "Error parsing loadMoreMessages response: " + e.getMessage());
                     }
-                });
-            }
-            @Override public void onFailure(Call call, IOException e) { 
-                runOnUiThread(() -> {
-                    isLoadingMore = false;
+                    if (!ok) {
+                        // Server page unavailable: show what we have locally
+                        runOnUiThread(() -> prependOlderMessages(local, !local.isEmpty(), firstVisibleBefore, topOffsetBefore));
+                        return;
+                    }
+                    if (!older.isEmpty()) {
+                        MessageIngestor.getInstance(BaseChatActivity.this).enqueueAll(older);
+                    }
+                    boolean more = older.size() >= pageSize;
+                    runOnUiThread(() -> prependOlderMessages(older, more, firstVisibleBefore, topOffsetBefore));
+                }
+                @Override public void onFailure(Call call, IOException e) { 
                     android.util.Log.e("BaseChatActivity", "Failed to load more messages: " + e.getMessage());
+                    runOnUiThread(() -> prependOlderMessages(local, !local.isEmpty(), firstVisibleBefore, topOffsetBefore));
+                }
+            });
+        });
+    }
+
+    /**
+     * Prepend a page of older messages and keep the viewport where the user was reading.
+     */
+    private void prependOlderMessages(List<Message> older, boolean more, int firstVisibleBefore, int topOffsetBefore) {
+        isLoadingMore = false;
+        if (older == null || older.isEmpty()) {
+            hasMore = more;
+            return;
+        }
+        // Wait for RecyclerView to be idle before modifying list
+        waitForRecyclerViewIdle(() -> {
+            if (isUpdatingMessages) {
+                isLoadingMore = false;
+                return;
+            }
+            isUpdatingMessages = true;
+            
+            try {
+                // Stop scroll to prevent inconsistency
+                if (rvMessages != null) {
+                    rvMessages.stopScroll();
+                }
+                
+                // Check if list hasn't been cleared by another operation
+                if (messages.isEmpty()) {
+                    // List was cleared, can't restore position - just add messages
+                    messages.addAll(older);
+                    hasMore = more;
+                    if (messageAdapter != null) {
+                        messageAdapter.notifyItemRangeInserted(0, older.size());
+                    }
+                    return;
+                }
+                
+                // Add older messages at the beginning
+                messages.addAll(0, older);
+                hasMore = more;
+                
+                // Notify adapter after list modification
+                if (messageAdapter != null) {
+                    messageAdapter.notifyItemRangeInserted(0, older.size());
+                }
+                
+                // Restore previous viewport after adapter has been notified
+                rvMessages.post(() -> {
+                    rvMessages.post(() -> {
+                        LinearLayoutManager lm = (LinearLayoutManager) rvMessages.getLayoutManager();
+                        if (lm != null && !messages.isEmpty()) {
+                            try {
+                                int newFirstVisible = firstVisibleBefore + older.size();
+                                if (newFirstVisible >= 0 && newFirstVisible < messages.size()) {
+                                    lm.scrollToPositionWithOffset(newFirstVisible, topOffsetBefore);
+                                }
+                            } catch (Exception e) {
+                                android.util.Log.e("BaseChatActivity", "Error restoring scroll in loadMoreMessages: " + e.getMessage());
+                            }
+                        }
+                    });
                 });
+            } catch (Exception e) {
+                android.util.Log.e("BaseChatActivity", "Error in loadMoreMessages: " + e.getMessage());
+            } finally {
+                isLoadingMore = false;
+                isUpdatingMessages = false;
             }
         });
     }
@@ -3416,15 +3438,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         appendHandler.postDelayed(this::reconcilePendingFromDbAndServer, SEND_TIMEOUT_RECONCILE_MS);
     }
 
-    private void reconcileAfterNetworkRestore() {
-        reconcilePendingFromDbAndServer();
-        appendHandler.postDelayed(() -> {
-            if (syncManager != null) {
-                syncManager.syncPendingMessages();
-            }
-        }, NETWORK_RESTORE_POST_DELAY_MS);
-    }
-
     private void reconcilePendingFromDbAndServer() {
         catchUpAfterDisconnect();
     }
@@ -3569,7 +3582,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             return;
         }
 
-        new Thread(() -> {
+        DatabaseExecutor.getInstance().executeRead(() -> {
             int loadLimit = Math.max(messages.size(), initialDbLoadLimit);
             List<Message> dbMessages = messageRepository.getMessagesForChat(currentChat.getId(), loadLimit);
             if (dbMessages == null || dbMessages.isEmpty()) {
@@ -3622,7 +3635,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                     messageAdapter.notifyItemChanged(idx);
                 }
             });
-        }).start();
+        });
     }
 
     private static void preserveSenderIfMissing(Message target, Message fallback) {
@@ -3743,8 +3756,13 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             return false;
         }
 
-        messages.add(incoming);
-        int pos = messages.size() - 1;
+        // Usually the newest; a message recovered from a sequence gap goes before the later-numbered ones
+        int pos = messages.size();
+        while (pos > 0 && incoming.getSeq() > 0
+                && messages.get(pos - 1).getSeq() > incoming.getSeq()) {
+            pos--;
+        }
+        messages.add(pos, incoming);
         messageAdapter.notifyItemInserted(pos);
         updateMessagesEmptyState();
 
@@ -3760,6 +3778,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
     private void acknowledgeSentMessage(String tempId, Message serverMessage) {
         if (serverMessage == null || messageAdapter == null) return;
         serverMessage.setSyncStatus(Message.SYNC_SYNCED);
+        MessageSequenceTracker.getInstance(this).onMessageAcked(serverMessage);
 
         if (messageRepository != null) {
             if (tempId != null && !tempId.isEmpty()) {
@@ -3817,9 +3836,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         if (clientNonce != null && !clientNonce.isEmpty()) {
             clearOutgoingNonce(clientNonce);
         }
-        if (syncManager != null && tempId != null) {
-            syncManager.clearSendTimeoutGrace(tempId);
-        }
         updateConversationPreviewAsync(serverMessage, false);
     }
 
@@ -3836,9 +3852,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         messages.remove(tempIdx);
         messageAdapter.notifyItemRemoved(tempIdx);
         clearNonceForTempId(tempId);
-        if (syncManager != null) {
-            syncManager.clearSendTimeoutGrace(tempId);
-        }
 
         if (realIdx < 0) {
             scheduleAppendNewMessagesFromDb(false);
@@ -3870,7 +3883,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         }
         message.setSyncStatus(Message.SYNC_PENDING);
         if (messageRepository != null) {
-            messageRepository.markMessageAsPending(message.getId(), null);
+            messageRepository.markMessageForRetry(message.getId());
         }
         notifySendStatusChanged(message.getId());
         Toast.makeText(this, getString(R.string.message_status_retry_toast), Toast.LENGTH_SHORT).show();
@@ -3905,9 +3918,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                 messages.remove(i);
                 messageAdapter.notifyItemRemoved(i);
                 clearNonceForTempId(tempId);
-                if (syncManager != null) {
-                    syncManager.clearSendTimeoutGrace(tempId);
-                }
                 break;
             }
         }
@@ -3959,9 +3969,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             messages.remove(i);
             messageAdapter.notifyItemRemoved(i);
             clearNonceForTempId(tempId);
-            if (syncManager != null) {
-                syncManager.clearSendTimeoutGrace(tempId);
-            }
         }
     }
 
@@ -4264,14 +4271,17 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         if (messageRepository != null) {
             messageRepository.setOnTempMessageRemovedListener(null);
         }
-        if (networkConnectivityManager != null && networkCallback != null) {
-            try {
-                networkConnectivityManager.unregisterNetworkCallback(networkCallback);
-            } catch (Exception e) {
-                Log.e("BaseChatActivity", "Error unregistering network callback", e);
-            }
-            networkCallback = null;
-            networkConnectivityManager = null;
+        if (chatSyncListener != null) {
+            SyncOrchestrator.getInstance(this).removeListener(chatSyncListener);
+            chatSyncListener = null;
+        }
+        if (sequenceListener != null) {
+            MessageSequenceTracker.getInstance(this).removeListener(sequenceListener);
+            sequenceListener = null;
+        }
+        if (catchUpListener != null && backgroundSyncManager != null) {
+            backgroundSyncManager.removeSyncListener(catchUpListener);
+            catchUpListener = null;
         }
         super.onDestroy();
         clearTypingState();
@@ -4279,9 +4289,6 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             if (chatMessageListener != null) {
                 socketManager.removeMessageListener(chatMessageListener);
             }
-            if (realtimeConnectionListener != null) {
-                socketManager.removeConnectionListener(realtimeConnectionListener);
-            }
             socketManager.removeTypingListener();
         }
     }
@@ -4386,7 +4393,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         }
         final String messageId = message.getId();
         final String reactionsRaw = message.getReactionsRaw() != null ? message.getReactionsRaw() : "[]";
-        new Thread(() -> messageRepository.updateMessageReactions(messageId, reactionsRaw)).start();
+        DatabaseExecutor.getInstance().executeWrite(() -> messageRepository.updateMessageReactions(messageId, reactionsRaw));
     }
 
     private Message snapshotReactions(Message message) {
@@ -4695,7 +4702,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             }
 
             final Message toPersist = incoming;
-            persistMessageAsync(toPersist);
+            MessageIngestor.getInstance(this).enqueue(toPersist);
             updateConversationPreviewAsync(toPersist, false);
             appendHandler.post(this::updateSummarizeIndicator);
         } catch (Exception e) {
@@ -4708,9 +4715,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             String chatId = messageJson.optString("chat");
             if (currentChat == null || !chatId.equals(currentChat.getId())) return;
             Message edited = Message.fromJson(messageJson);
-            if (messageRepository != null) {
-                messageRepository.saveMessage(edited);
-            }
+            MessageIngestor.getInstance(this).enqueue(edited);
             int idx = indexOfMessageById(edited.getId());
             if (idx >= 0) {
                 messages.set(idx, edited);
@@ -4759,11 +4764,11 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             org.json.JSONArray reactions = reactionJson.optJSONArray("reactions");
             final String reactionsRaw = reactions != null ? reactions.toString() : "[]";
 
-            new Thread(() -> {
+            DatabaseExecutor.getInstance().executeWrite(() -> {
                 if (messageRepository != null) {
                     messageRepository.updateMessageReactions(messageId, reactionsRaw);
                 }
-            }).start();
+            });
 
             if (currentChat == null || chatId.isEmpty() || !chatIdsMatch(chatId, currentChat.getId())) {
                 return;
@@ -5056,9 +5061,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
                             if (json.optBoolean("success", false)) {
                                 message.setContent(newContent);
                                 message.setEdited(true);
-                                if (messageRepository != null) {
-                                    messageRepository.saveMessage(message);
-                                }
+                                MessageIngestor.getInstance(BaseChatActivity.this).enqueue(message);
                                 int idx = indexOfMessageById(message.getId());
                                 if (idx >= 0) {
                                     messageAdapter.notifyItemChanged(idx);
@@ -5529,13 +5532,14 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
     @Override
     public void onFileClick(String fileUrl, String fileName, String originalName, String mimeType, long fileSize) {
         try {
+            // Files saved to Downloads by earlier versions are still opened from there
             java.io.File downloaded = getDownloadedFile(originalName);
             if (downloaded != null && downloaded.exists()) {
                 // Open local file
                 openLocalFile(downloaded, mimeType);
             } else {
-                // Download file
-                startDownload(fileUrl, originalName != null ? originalName : fileName);
+                // From the media cache, downloading it first if needed
+                startDownload(fileUrl, mimeType);
             }
         } catch (Exception e) {
             Toast.makeText(this, getString(R.string.error_cannot_handle_file), Toast.LENGTH_SHORT).show();
@@ -5548,7 +5552,7 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
         return new java.io.File(dir, originalName);
     }
 
-    private void startDownload(String relativeOrAbsoluteUrl, String targetName) {
+    private void startDownload(String relativeOrAbsoluteUrl, String mimeType) {
         String baseUrl;
         String fullUrl;
         if (relativeOrAbsoluteUrl != null && relativeOrAbsoluteUrl.startsWith("http")) {
@@ -5558,18 +5562,49 @@ public abstract class BaseChatActivity extends AppCompatActivity implements Mess
             fullUrl = baseUrl + relativeOrAbsoluteUrl;
         }
 
-        android.app.DownloadManager dm = (android.app.DownloadManager) getSystemService(android.content.Context.DOWNLOAD_SERVICE);
-        android.net.Uri uri = android.net.Uri.parse(fullUrl);
-        android.app.DownloadManager.Request req = new android.app.DownloadManager.Request(uri);
-        req.setAllowedNetworkTypes(android.app.DownloadManager.Request.NETWORK_WIFI | android.app.DownloadManager.Request.NETWORK_MOBILE);
-        req.setTitle(targetName);
-        req.setDescription("Downloading file...");
-        req.setNotificationVisibility(android.app.DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-
-        req.setDestinationInExternalFilesDir(this, Environment.DIRECTORY_DOWNLOADS, targetName);
+        MediaCache cache = MediaCache.getInstance(this);
+        java.io.File cached = cache.peek(fullUrl);
+        if (cached != null) {
+            openLocalFile(cached, mimeType);
+            return;
+        }
 
-        dm.enqueue(req);
+        // Large files come down in parallel ranges and resume after a dropped connection
         Toast.makeText(this, getString(R.string.status_downloading), Toast.LENGTH_SHORT).show();
+        cache.fetch(fullUrl, new MediaCache.Listener() {
+            @Override
+            public void onReady(java.io.File file) {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                refreshFileMessage(fullUrl);
+                openLocalFile(file, mimeType);
+            }
+
+            @Override
+            public void onFailed(java.io.IOException e) {
+                if (!isFinishing() && !isDestroyed()) {
+                    Toast.makeText(BaseChatActivity.this, getString(R.string.error_network_detail, e.getMessage()), Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    /** Redraw the file messages for fullUrl so their icon turns from download to open. */
+    private void refreshFileMessage(String fullUrl) {
+        String path = android.net.Uri.parse(fullUrl).getPath();
+        if (path == null || messages == null || messageAdapter == null) {
+            return;
+        }
+        // Attachments are raw JSON, which may escape the slashes
+        String escapedPath = path.replace("/", "\\/");
+        for (int i = 0; i < messages.size(); i++) {
+            Message msg = messages.get(i);
+            String attachments = msg != null ? msg.getAttachments() : null;
+            if (attachments != null && (attachments.contains(path) || attachments.contains(escapedPath))) {
+                messageAdapter.notifyItemChanged(i);
+            }
+        }
     }
 
     private void openLocalFile(java.io.File file, String mimeType) {
@@ -94,7 +94,7 @@ public class BlockedUsersActivity extends AppCompatActivity {
         }
         SkeletonHelper.setListLoading(listSkeleton, true);
         rvBlocked.setVisibility(View.GONE);
-        apiClient.getBlockedUsers(token, new Callback() {
+        apiClient.staleWhileRevalidate().getBlockedUsers(token, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 runOnUiThread(() -> {
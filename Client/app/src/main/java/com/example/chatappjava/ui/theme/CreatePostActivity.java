@@ -2,6 +2,7 @@ package com.example.chatappjava.ui.theme;
 
 import android.app.AlertDialog;
 import android.app.ProgressDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -34,8 +35,11 @@ import com.example.chatappjava.config.ServerConfig;
 import com.example.chatappjava.models.Post;
 import com.example.chatappjava.models.User;
 import com.example.chatappjava.network.ApiClient;
+import com.example.chatappjava.network.ResumableUploader;
+import com.example.chatappjava.network.UploadBatch;
 import com.example.chatappjava.utils.AvatarManager;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.ImageTranscoder;
 import com.github.dhaval2404.imagepicker.ImagePicker;
 import com.squareup.picasso.Picasso;
 
@@ -57,6 +61,8 @@ public class CreatePostActivity extends AppCompatActivity {
     
     private static final String TAG = "CreatePostActivity";
     private static final int MAX_IMAGES = 20;
+    // Enough to overlap round trips without splitting a slow uplink too many ways
+    private static final int MEDIA_UPLOAD_PARALLELISM = 3;
     
     // UI Components - Top Action Bar
     private ImageButton ivClose;
@@ -99,6 +105,7 @@ public class CreatePostActivity extends AppCompatActivity {
     // State
     private boolean hasContent = false;
     private ProgressDialog progressDialog;
+    private UploadBatch uploadBatch;
     private String sharedPostId; // ID of the post being shared
     private Post originalPost; // Original post being shared
     
@@ -868,6 +875,16 @@ public class CreatePostActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onDestroy() {
+        // Nobody is left to create the post these uploads are for
+        if (uploadBatch != null) {
+            uploadBatch.cancel();
+            uploadBatch = null;
+        }
+        super.onDestroy();
+    }
+    
     private void publishPost() {
         if (!hasContent) {
             Toast.makeText(this, getString(R.string.error_please_add_some_content), Toast.LENGTH_SHORT).show();
@@ -888,155 +905,123 @@ public class CreatePostActivity extends AppCompatActivity {
         progressDialog = new ProgressDialog(this);
         progressDialog.setMessage("Publishing Post...");
         progressDialog.setCancelable(false);
+        if (!selectedMedia.isEmpty()) {
+            progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(R.string.action_cancel),
+                    (dialog, which) -> cancelPublish());
+        }
         progressDialog.show();
         
         String content = etPostContent.getText().toString().trim();
-        String userId = databaseManager.getUserId();
         
         // If there are media files, upload them first
         if (!selectedMedia.isEmpty()) {
-            uploadMediaFiles(token, userId, content);
+            uploadMediaFiles(token, content);
         } else {
             // No media, create post directly
             createPostWithData(token, content, new ArrayList<>());
         }
     }
     
-    private void uploadMediaFiles(String token, String userId, String content) {
-        List<String> uploadedImageUrls = new ArrayList<>();
-        final int[] uploadCount = {0};
-        final int totalMedia = selectedMedia.size();
+    private void uploadMediaFiles(String token, String content) {
+        List<UploadBatch.Item> items = new ArrayList<>();
+        for (MediaItem item : selectedMedia) {
+            // Streamed from the URI; the picker's file, if any, is read in place
+            Uri source = item.file != null && item.file.exists() ? Uri.fromFile(item.file) : item.uri;
+            if (source == null) {
+                if (progressDialog != null && progressDialog.isShowing()) {
+                    progressDialog.dismiss();
+                }
+                Toast.makeText(this, getString(R.string.error_failed_to_process_image_file), Toast.LENGTH_SHORT).show();
+                btnPost.setEnabled(true);
+                return;
+            }
+            long size = "file".equals(source.getScheme()) ? new File(source.getPath()).length() : querySize(source);
+            items.add(new UploadBatch.Item(source, displayName(source), imageMimeType(source), size));
+        }
         
-        for (int i = 0; i < selectedMedia.size(); i++) {
-            MediaItem item = selectedMedia.get(i);
-            
-            // Convert URI to File
-            File imageFile = null;
-            try {
-                if (item.file != null && item.file.exists()) {
-                    imageFile = item.file;
-                } else if (item.uri != null) {
-                    // Try to get file from URI
-                    android.content.ContentResolver resolver = getContentResolver();
-                    java.io.InputStream inputStream = resolver.openInputStream(item.uri);
-                    if (inputStream != null) {
-                        // Create temp file
-                        File tempFile = new File(getCacheDir(), "post_image_" + System.currentTimeMillis() + ".jpg");
-                        java.io.FileOutputStream outputStream = new java.io.FileOutputStream(tempFile);
-                        byte[] buffer = new byte[4096];
-                        int bytesRead;
-                        while ((bytesRead = inputStream.read(buffer)) != -1) {
-                            outputStream.write(buffer, 0, bytesRead);
-                        }
-                        outputStream.close();
-                        inputStream.close();
-                        imageFile = tempFile;
-                    }
+        progressDialog.setMessage(getString(R.string.status_uploading_post_media, 0, items.size(), 0));
+        uploadBatch = new UploadBatch(this, token, ResumableUploader.KIND_POST_IMAGE, null, items,
+                MEDIA_UPLOAD_PARALLELISM, new UploadBatch.Listener() {
+            @Override
+            public void onProgress(long bytesSent, long totalBytes, int itemsDone, int itemCount) {
+                int percent = totalBytes > 0 ? (int) (bytesSent * 100 / totalBytes) : itemsDone * 100 / itemCount;
+                if (progressDialog != null) {
+                    progressDialog.setMessage(getString(R.string.status_uploading_post_media, itemsDone, itemCount, percent));
                 }
-                
-                if (imageFile == null || !imageFile.exists()) {
-                    runOnUiThread(() -> {
-                        if (progressDialog != null && progressDialog.isShowing()) {
-                            progressDialog.dismiss();
-                        }
-                        Toast.makeText(CreatePostActivity.this, getString(R.string.error_failed_to_process_image_file), Toast.LENGTH_SHORT).show();
-                        btnPost.setEnabled(true);
-                    });
-                    return;
+            }
+            
+            @Override
+            public void onStalled(List<Integer> failed) {
+                Log.w(TAG, failed.size() + " of " + items.size() + " images failed to upload: " + failed);
+                if (progressDialog != null && progressDialog.isShowing()) {
+                    progressDialog.dismiss();
                 }
-                
-                final File finalImageFile = imageFile;
-                final int index = i;
-                
-                // Upload image
-                apiClient.uploadPostImage(token, finalImageFile, userId, new Callback() {
-                    @Override
-                    public void onFailure(Call call, IOException e) {
-                        runOnUiThread(() -> {
-                            if (progressDialog != null && progressDialog.isShowing()) {
-                                progressDialog.dismiss();
-                            }
-                            Log.e(TAG, "Failed to upload image: " + e.getMessage());
-                            Toast.makeText(CreatePostActivity.this, getString(R.string.error_failed_to_upload_image), Toast.LENGTH_SHORT).show();
-                            btnPost.setEnabled(true);
-                        });
-                    }
-                    
-                    @Override
-                    public void onResponse(Call call, Response response) throws IOException {
-                        String responseBody = response.body().string();
-                        if (response.isSuccessful()) {
-                            try {
-                                JSONObject jsonResponse = new JSONObject(responseBody);
-                                Log.d(TAG, "Upload response for image " + index + ": " + jsonResponse.toString());
-                                
-                                if (jsonResponse.optBoolean("success", false)) {
-                                    String imageUrl = jsonResponse.optString("imageUrl", "");
-                                    if (!imageUrl.isEmpty()) {
-                                        uploadedImageUrls.add(imageUrl);
-                                        Log.d(TAG, "Image " + index + " uploaded successfully: " + imageUrl);
-                                    } else {
-                                        Log.e(TAG, "Image " + index + " upload response missing imageUrl");
-                                    }
-                                } else {
-                                    String message = jsonResponse.optString("message", "Unknown error");
-                                    Log.e(TAG, "Image " + index + " upload failed: " + message);
-                                }
-                                
-                                uploadCount[0]++;
-                                Log.d(TAG, "Upload progress: " + uploadCount[0] + "/" + totalMedia);
-                                
-                                // If all uploads are done, create post
-                                if (uploadCount[0] == totalMedia) {
-                                    Log.d(TAG, "All uploads completed. Total images: " + uploadedImageUrls.size());
-                                    runOnUiThread(() -> {
-                                        if (uploadedImageUrls.isEmpty()) {
-                                            if (progressDialog != null && progressDialog.isShowing()) {
-                                                progressDialog.dismiss();
-                                            }
-                                            Toast.makeText(CreatePostActivity.this, getString(R.string.error_failed_to_upload_images), Toast.LENGTH_SHORT).show();
-                                            btnPost.setEnabled(true);
-                                        } else {
-                                            createPostWithData(token, content, uploadedImageUrls);
-                                        }
-                                    });
-                                }
-                                
-                            } catch (JSONException e) {
-                                Log.e(TAG, "Error parsing upload response: " + e.getMessage() + ", body: " + responseBody);
-                                runOnUiThread(() -> {
-                                    if (progressDialog != null && progressDialog.isShowing()) {
-                                        progressDialog.dismiss();
-                                    }
-                                    Toast.makeText(CreatePostActivity.this, getString(R.string.error_error_processing_upload_response), Toast.LENGTH_SHORT).show();
-                                    btnPost.setEnabled(true);
-                                });
-                            }
-                        } else {
-                            Log.e(TAG, "Upload failed with code: " + response.code() + ", body: " + responseBody);
-                            runOnUiThread(() -> {
-                                if (progressDialog != null && progressDialog.isShowing()) {
-                                    progressDialog.dismiss();
-                                }
-                                Toast.makeText(CreatePostActivity.this, getString(R.string.error_upload_image_code, response.code()), Toast.LENGTH_SHORT).show();
-                                btnPost.setEnabled(true);
-                            });
-                        }
-                    }
-                });
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error preparing image file: " + e.getMessage());
-                runOnUiThread(() -> {
-                    if (progressDialog != null && progressDialog.isShowing()) {
-                        progressDialog.dismiss();
-                    }
-                    Toast.makeText(CreatePostActivity.this, getString(R.string.error_error_processing_image), Toast.LENGTH_SHORT).show();
-                    btnPost.setEnabled(true);
-                });
-                return;
+                new AlertDialog.Builder(CreatePostActivity.this)
+                    .setMessage(getString(R.string.error_post_media_failed, failed.size(), items.size()))
+                    .setCancelable(false)
+                    .setPositiveButton(R.string.action_retry, (dialog, which) -> {
+                        progressDialog.show();
+                        uploadBatch.retryFailed();
+                    })
+                    .setNegativeButton(R.string.action_cancel, (dialog, which) -> cancelPublish())
+                    .show();
+            }
+            
+            @Override
+            public void onComplete(List<String> urls) {
+                Log.d(TAG, "All uploads completed. Total images: " + urls.size());
+                uploadBatch = null;
+                progressDialog.setMessage("Publishing Post...");
+                createPostWithData(token, content, urls);
+            }
+        });
+        uploadBatch.transcodeImages(ImageTranscoder.Profile.POST).start();
+    }
+    
+    /** The user gave up while media was uploading: stop all of it and let them edit again. */
+    private void cancelPublish() {
+        if (uploadBatch != null) {
+            uploadBatch.cancel();
+            uploadBatch = null;
+        }
+        if (progressDialog != null && progressDialog.isShowing()) {
+            progressDialog.dismiss();
+        }
+        btnPost.setEnabled(true);
+    }
+    
+    /** Size from the provider, or 0 when it does not say (the upload then goes in one request). */
+    private long querySize(Uri uri) {
+        try (android.database.Cursor cursor = getContentResolver().query(uri,
+                new String[]{android.provider.OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
             }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read size of " + uri + ": " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private String displayName(Uri uri) {
+        String name = uri.getLastPathSegment();
+        return name != null && name.contains(".") ? name : "post_image_" + System.currentTimeMillis() + ".jpg";
+    }
+
+    private String imageMimeType(Uri uri) {
+        String type = getContentResolver().getType(uri);
+        if (type != null && type.startsWith("image/")) {
+            return type;
+        }
+        String name = String.valueOf(uri.getLastPathSegment()).toLowerCase();
+        if (name.endsWith(".png")) {
+            return "image/png";
+        } else if (name.endsWith(".gif")) {
+            return "image/gif";
+        } else if (name.endsWith(".webp")) {
+            return "image/webp";
         }
+        return "image/jpeg";
     }
     
     private void createPostWithData(String token, String content, List<String> imageUrls) {
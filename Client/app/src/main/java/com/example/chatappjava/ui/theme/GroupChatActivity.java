@@ -14,6 +14,7 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 
 import com.example.chatappjava.network.ApiClient;
+import com.example.chatappjava.utils.ImageTranscoder;
 import com.github.dhaval2404.imagepicker.ImagePicker;
 
 import com.example.chatappjava.R;
@@ -647,7 +648,7 @@ public class GroupChatActivity extends BaseChatActivity {
             java.io.File imageFile = new java.io.File(selectedImageUri.getPath());
             
             String token = databaseManager.getToken();
-            apiClient.uploadGroupAvatar(token, currentChat.getId(), imageFile, new Callback() {
+            Callback callback = new Callback() {
                 @Override
                 public void onFailure(Call call, java.io.IOException e) {
                     runOnUiThread(() -> {
@@ -690,7 +691,10 @@ public class GroupChatActivity extends BaseChatActivity {
                         isChangingAvatar = false;
                     });
                 }
-            });
+            };
+            String chatId = currentChat.getId();
+            ImageTranscoder.getInstance(this).transcode(selectedImageUri, ImageTranscoder.Profile.AVATAR,
+                    transcoded -> apiClient.uploadGroupAvatar(token, chatId, transcoded != null ? transcoded : imageFile, callback));
         } catch (Exception e) {
             e.printStackTrace();
             Toast.makeText(this, getString(R.string.error_error_preparing_image_for_upload), Toast.LENGTH_SHORT).show();
@@ -877,8 +881,7 @@ public class GroupChatActivity extends BaseChatActivity {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        okhttp3.OkHttpClient client = new okhttp3.OkHttpClient();
-        client.newCall(request).enqueue(new okhttp3.Callback() {
+        com.example.chatappjava.network.HttpEngine.get().newCall(request).enqueue(new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
                 if (response.isSuccessful()) {
@@ -189,7 +189,7 @@ public class GroupMembersActivity extends AppCompatActivity implements GroupMemb
         SkeletonHelper.setListLoading(listSkeleton, true);
         rvMembers.setVisibility(View.GONE);
 
-        apiClient.getGroupMembers(token, currentChat.getId(), new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getGroupMembers(token, currentChat.getId(), new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
                 runOnUiThread(() -> {
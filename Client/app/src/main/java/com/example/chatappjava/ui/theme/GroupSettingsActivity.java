@@ -23,6 +23,7 @@ import com.example.chatappjava.R;
 import com.example.chatappjava.models.Chat;
 import com.example.chatappjava.network.ApiClient;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.ImageTranscoder;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -660,8 +661,7 @@ public class GroupSettingsActivity extends AppCompatActivity {
                 .addHeader("Authorization", "Bearer " + token)
                 .build();
         
-        okhttp3.OkHttpClient client = new okhttp3.OkHttpClient();
-        client.newCall(request).enqueue(new okhttp3.Callback() {
+        com.example.chatappjava.network.HttpEngine.get().newCall(request).enqueue(new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
                 if (response.isSuccessful()) {
@@ -901,7 +901,7 @@ public class GroupSettingsActivity extends AppCompatActivity {
             return;
         }
         Toast.makeText(this, getString(R.string.status_uploading_avatar), Toast.LENGTH_SHORT).show();
-        apiClient.uploadGroupAvatar(token, currentChat.getId(), imageFile, new Callback() {
+        Callback callback = new Callback() {
             @Override
             public void onResponse(Call call, Response response) throws IOException {
                 String responseBody = response.body() != null ? response.body().string() : "";
@@ -941,6 +941,9 @@ public class GroupSettingsActivity extends AppCompatActivity {
             public void onFailure(Call call, IOException e) {
                 runOnUiThread(() -> Toast.makeText(GroupSettingsActivity.this, getString(R.string.error_network_detail, e.getMessage()), Toast.LENGTH_SHORT).show());
             }
-        });
+        };
+        String chatId = currentChat.getId();
+        ImageTranscoder.getInstance(this).transcode(Uri.fromFile(imageFile), ImageTranscoder.Profile.AVATAR,
+                transcoded -> apiClient.uploadGroupAvatar(token, chatId, transcoded != null ? transcoded : imageFile, callback));
     }
 }
@@ -1,7 +1,6 @@
 package com.example.chatappjava.ui.theme;
 
 import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
@@ -12,8 +11,6 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
-import android.os.Handler;
-import android.os.Looper;
 import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
@@ -35,14 +32,16 @@ import com.example.chatappjava.models.User;
 import com.example.chatappjava.network.ApiClient;
 import com.example.chatappjava.utils.AvatarManager;
 import com.example.chatappjava.utils.AvatarSyncCoordinator;
+import com.example.chatappjava.utils.DatabaseExecutor;
 import com.example.chatappjava.utils.DatabaseManager;
 import com.example.chatappjava.utils.ConversationPreviewHelper;
 import com.example.chatappjava.utils.ConversationRepository;
+import com.example.chatappjava.utils.MessageIngestor;
 import com.example.chatappjava.utils.MessageRepository;
 import com.example.chatappjava.utils.EmptyStateHelper;
 import com.example.chatappjava.utils.MotionUtils;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+import com.example.chatappjava.utils.ReadStateTracker;
+import com.example.chatappjava.utils.SyncOrchestrator;
 import com.example.chatappjava.config.ServerConfig;
 import com.squareup.picasso.Picasso;
 import com.example.chatappjava.adapters.CallListAdapter;
@@ -107,20 +106,18 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
     private boolean isLoadingChats = false;
     private boolean isLoadingCalls = false;
     private boolean isLoadingPosts = false;
-    private boolean isPolling = false;
+    private boolean isLoadingCachedPosts = false;
+    private boolean hasMoreCachedPosts = true;
+    // Bumped whenever postList is replaced or extended; a cache read started earlier is dropped
+    private int postListGeneration = 0;
     private AlertDialog currentDialog;
     private final java.util.Set<String> blockedUserIds = new java.util.HashSet<>();
-    private static final long HOME_POLL_INTERVAL_MS = 300000L;
-    private final Handler homePollHandler = new Handler(Looper.getMainLooper());
-    private final Runnable homePollRunnable = new Runnable() {
+    // Chats refresh through the conversations SyncListener; only the badge needs a nudge
+    private final SyncOrchestrator.Listener homeSyncListener = new SyncOrchestrator.Listener() {
         @Override
-        public void run() {
+        public void onCatchUp() {
             if (!isFinishing()) {
-                if (!isLoadingChats) {
-                    loadChats();
-                    loadFriendRequestCount();
-                }
-                homePollHandler.postDelayed(this, HOME_POLL_INTERVAL_MS);
+                loadFriendRequestCount();
             }
         }
     };
@@ -1154,6 +1151,19 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
         
         rvChatList.setLayoutManager(new LinearLayoutManager(this));
         rvChatList.setAdapter(chatAdapter);
+        rvChatList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@androidx.annotation.NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || currentTab != 3) {
+                    return;
+                }
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager != null
+                        && layoutManager.findLastVisibleItemPosition() >= layoutManager.getItemCount() - 5) {
+                    loadMoreCachedPosts();
+                }
+            }
+        });
         
         // Setup SwipeRefreshLayout
         if (swipeRefreshLayout != null) {
@@ -1887,6 +1897,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                                 
                                 // Insert new posts at the top
                                 if (!newPosts.isEmpty()) {
+                                    postListGeneration++;
                                     postList.addAll(0, newPosts);
                                     
                                     // Save new posts to database
@@ -1961,15 +1972,8 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                     Log.e(TAG, "Failed to load posts: " + e.getMessage());
                     // If we have cached posts, keep showing them
                     if (postList.isEmpty()) {
-                        // Try to load from database again if we don't have any posts
-                        List<com.example.chatappjava.models.Post> cachedPosts = postRepository.getAllPosts();
-                        if (!cachedPosts.isEmpty()) {
-                            postList = cachedPosts;
-                            if (postAdapter != null) {
-                                postAdapter.setPosts(postList);
-                updateHomeEmptyState();
-                            }
-                        }
+                        // Try to load from database again (on the reader thread) if we don't have any posts
+                        loadPostsFromCache();
                     }
                     isLoadingPosts = false;
                 });
@@ -2059,6 +2063,8 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                                     }
                                 }
                                 
+                                // Server results win over a cache read still in flight
+                                postListGeneration++;
                                 if (forceReload) {
                                     postList.clear();
                                 }
@@ -2102,19 +2108,72 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
     }
 
     /**
-     * Load posts from cache for instant UI display
+     * Load posts from cache for instant UI display.
+     * Only the first window is read, on the database reader thread; older cached
+     * posts are paged in again by loadMoreCachedPosts() while scrolling. The result is
+     * dropped if the list changed meanwhile, so it never replaces newer server posts.
      */
     private void loadPostsFromCache() {
-        List<com.example.chatappjava.models.Post> cachedPosts = postRepository.getAllPosts();
-        if (!cachedPosts.isEmpty()) {
-            postList.clear();
-            postList.addAll(cachedPosts);
-            if (postAdapter != null) {
-                postAdapter.setPosts(postList);
-                updateHomeEmptyState();
-            }
-            System.out.println("HomeActivity: Loaded " + cachedPosts.size() + " posts from cache");
+        final int pageSize = com.example.chatappjava.utils.PostRepository.FEED_PAGE_SIZE;
+        final int generation = ++postListGeneration;
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            List<com.example.chatappjava.models.Post> cachedPosts = postRepository.getRecentPosts(pageSize);
+            runOnUiThread(() -> {
+                if (generation != postListGeneration) {
+                    Log.d(TAG, "Dropped a stale cache read of " + cachedPosts.size() + " posts");
+                    return;
+                }
+                hasMoreCachedPosts = cachedPosts.size() >= pageSize;
+                if (cachedPosts.isEmpty() || isFinishing()) {
+                    return;
+                }
+                postList.clear();
+                postList.addAll(cachedPosts);
+                if (postAdapter != null) {
+                    postAdapter.setPosts(postList);
+                    updateHomeEmptyState();
+                }
+                Log.d(TAG, "Loaded " + cachedPosts.size() + " posts from cache");
+            });
+        });
+    }
+
+    /**
+     * Append the next window of cached posts older than the last one shown.
+     */
+    private void loadMoreCachedPosts() {
+        if (isLoadingCachedPosts || !hasMoreCachedPosts || postList.isEmpty() || postAdapter == null) {
+            return;
         }
+        com.example.chatappjava.models.Post anchor = postList.get(postList.size() - 1);
+        final long beforeTimestamp = anchor.getTimestamp();
+        final String beforeId = anchor.getId();
+        final int pageSize = com.example.chatappjava.utils.PostRepository.FEED_PAGE_SIZE;
+        isLoadingCachedPosts = true;
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            List<com.example.chatappjava.models.Post> older = postRepository.getPostsBefore(beforeTimestamp, beforeId, pageSize);
+            runOnUiThread(() -> {
+                isLoadingCachedPosts = false;
+                // The first page was reloaded meanwhile; this window no longer follows it
+                if (postList.isEmpty() || postList.get(postList.size() - 1) != anchor) {
+                    return;
+                }
+                hasMoreCachedPosts = older.size() >= pageSize;
+                if (older.isEmpty() || isFinishing()) {
+                    return;
+                }
+                java.util.Set<String> shown = new java.util.HashSet<>();
+                for (com.example.chatappjava.models.Post post : postList) {
+                    shown.add(post.getId());
+                }
+                for (com.example.chatappjava.models.Post post : older) {
+                    if (shown.add(post.getId())) {
+                        postList.add(post);
+                    }
+                }
+                postAdapter.setPosts(postList);
+            });
+        });
     }
     
     private void reloadHome() {
@@ -2244,12 +2303,6 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
             // Refresh friend request count when returning to activity
             loadFriendRequestCount();
             
-            // Sync foreground when app becomes active
-            String token = databaseManager.getToken();
-            if (token != null && !token.isEmpty() && syncManager != null) {
-                syncManager.syncForeground(token);
-            }
-            
             // Refresh blocked users and then chats
             loadBlockedUsers();
             // Instant preview from local DB, then server catch-up if needed
@@ -2259,7 +2312,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
             if (socketManager == null || !socketManager.isConnected()) {
                 loadChats();
             }
-            startHomePolling();
+            SyncOrchestrator.getInstance(this).addListener(homeSyncListener);
             // Setup socket listener for member removal
             setupSocketManager();
             registerHomeAvatarSyncListener();
@@ -2269,7 +2322,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
     @Override
     protected void onPause() {
         super.onPause();
-        stopHomePolling();
+        SyncOrchestrator.getInstance(this).removeListener(homeSyncListener);
         // Remove message listener to avoid leaks
         com.example.chatappjava.network.SocketManager socketManager = 
             com.example.chatappjava.ChatApplication.getInstance().getSocketManager();
@@ -2437,7 +2490,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                         if (reactionJson == null || messageRepository == null) {
                             return;
                         }
-                        new Thread(() -> {
+                        DatabaseExecutor.getInstance().executeWrite(() -> {
                             try {
                                 String messageId = reactionJson.optString("messageId", "");
                                 org.json.JSONArray reactions = reactionJson.optJSONArray("reactions");
@@ -2449,7 +2502,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                             } catch (Exception e) {
                                 Log.e(TAG, "onReactionUpdated cache failed", e);
                             }
-                        }).start();
+                        });
                     }
                 };
             }
@@ -2521,7 +2574,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                 "Are you sure you want to exit?",
                 "Yes",
                 "No",
-                () -> { stopHomePolling(); finish(); },
+                () -> { SyncOrchestrator.getInstance(this).removeListener(homeSyncListener); finish(); },
                 null,
                 false
         );
@@ -2595,18 +2648,6 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
         }
     }
 
-    private void startHomePolling() {
-        if (isPolling) return;
-        isPolling = true;
-        homePollHandler.postDelayed(homePollRunnable, HOME_POLL_INTERVAL_MS);
-    }
-
-    private void stopHomePolling() {
-        if (!isPolling) return;
-        isPolling = false;
-        homePollHandler.removeCallbacks(homePollRunnable);
-    }
-    
     private void loadChats() {
         loadChats(false);
     }
@@ -2765,12 +2806,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
             ConversationPreviewHelper.applyMessagePreview(
                     this, conversationRepository, message, userId, incrementUnread);
 
-            final Message toCache = message;
-            new Thread(() -> {
-                if (messageRepository != null) {
-                    messageRepository.saveMessage(toCache);
-                }
-            }).start();
+            MessageIngestor.getInstance(this).enqueue(message);
 
             // Reload fresh Chat instances from DB so DiffUtil detects preview changes
             // (in-place mutation shares refs with the adapter and skips UI updates).
@@ -2785,13 +2821,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
      * Check if network is available
      */
     private boolean isNetworkAvailable() {
-        ConnectivityManager connectivityManager = 
-            (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (connectivityManager != null) {
-            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-            return activeNetwork != null && activeNetwork.isConnected();
-        }
-        return false;
+        return SyncOrchestrator.getInstance(this).isNetworkAvailable();
     }
 
     private boolean isChatWithBlockedUser(Chat chat) {
@@ -2815,7 +2845,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
     private void loadBlockedUsers() {
         String token = databaseManager.getToken();
         if (token == null || token.isEmpty()) return;
-        apiClient.getBlockedUsers(token, new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getBlockedUsers(token, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, java.io.IOException e) { /* ignore */ }
 
@@ -2843,6 +2873,37 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
         });
     }
     
+    /**
+     * Show a chat list fetched from the server. When the stored copy was already identical
+     * the list on screen is left alone instead of being diffed again.
+     */
+    private void showFetchedChats(List<Chat> chats, boolean changed) {
+        if (isFinishing()) {
+            return;
+        }
+        if (changed || chatList.isEmpty()) {
+            // Store full list, then update adapter based on current tab
+            this.chatList = chats;
+            if (chatAdapter != null) {
+                if (currentTab == 1) {
+                    applyGroupsFilter();
+                } else {
+                    applyChatsFilter();
+                }
+                System.out.println("HomeActivity: Updated adapter with " + (currentTab == 1 ? "groups filter" : "all chats") );
+            } else {
+                System.out.println("HomeActivity: Adapter is null, cannot update chats");
+            }
+        } else {
+            Log.d(TAG, "Chats unchanged since last refresh");
+        }
+        
+        // Stop refresh spinner
+        if (swipeRefreshLayout != null && swipeRefreshLayout.isRefreshing()) {
+            swipeRefreshLayout.setRefreshing(false);
+        }
+    }
+    
     private void handleChatsResponse(int statusCode, String responseBody) {
         try {
             System.out.println("HomeActivity: Chats Response Code: " + statusCode);
@@ -2858,7 +2919,12 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                     
                     // Parse chats and update adapter
                     List<Chat> chats = new ArrayList<>();
-                    java.util.Set<String> serverChatIds = new java.util.HashSet<>();
+                    // Only a reply that holds every chat may retire local ones; older servers
+                    // send no pagination and answer with a single page
+                    org.json.JSONObject pagination = data.optJSONObject("pagination");
+                    boolean complete = pagination != null
+                            && pagination.optInt("page", 1) == 1
+                            && pagination.optInt("total", Integer.MAX_VALUE) <= pagination.optInt("limit", 0);
                     
                     for (int i = 0; i < chatsArray.length(); i++) {
                         org.json.JSONObject chatJson = chatsArray.getJSONObject(i);
@@ -2867,56 +2933,24 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
                         try {
                             Chat chat = Chat.fromJson(chatJson, databaseManager.getUserId());
                             chats.add(chat);
-                            serverChatIds.add(chat.getId());
-                            
-                            // Save to database for offline access
-                            if (conversationRepository != null) {
-                                conversationRepository.saveConversation(chat);
-                            }
                         } catch (Exception e) {
                             System.out.println("HomeActivity: Error parsing chat " + i + ": " + e.getMessage());
                             e.printStackTrace();
+                            complete = false;
                         }
                     }
                     
-                    // CRITICAL FIX: Delete chats from local database that are no longer on server
-                    // This handles cases where chats/groups were deleted but still exist in local SQLite
+                    // Save for offline access in one transaction. When this is the full list, chats
+                    // gone from the server are marked inactive locally as well
                     if (conversationRepository != null) {
-                        List<Chat> localChats = conversationRepository.getAllConversations();
-                        for (Chat localChat : localChats) {
-                            if (!serverChatIds.contains(localChat.getId())) {
-                                System.out.println("HomeActivity: Deleting chat from local database: " + localChat.getId() + " (" + localChat.getName() + ")");
-                            // Delete conversation from local database
-                            conversationRepository.deleteConversation(localChat.getId());
-                            
-                            // Also delete all messages for this chat
-                            try {
-                                com.example.chatappjava.utils.MessageRepository messageRepo = 
-                                    new com.example.chatappjava.utils.MessageRepository(HomeActivity.this);
-                                messageRepo.deleteAllMessagesForChat(localChat.getId());
-                            } catch (Exception e) {
-                                System.out.println("HomeActivity: Error deleting messages for chat " + localChat.getId() + ": " + e.getMessage());
-                            }
-                            }
-                        }
-                    }
-                    
-                    // Store full list, then update adapter based on current tab
-                    this.chatList = chats;
-                    if (chatAdapter != null) {
-                        if (currentTab == 1) {
-                            applyGroupsFilter();
-                        } else {
-                            applyChatsFilter();
-                        }
-                        System.out.println("HomeActivity: Updated adapter with " + (currentTab == 1 ? "groups filter" : "all chats") );
+                        boolean fullRefresh = complete;
+                        DatabaseExecutor.getInstance().executeWrite(() -> {
+                            ConversationRepository.UpsertResult result =
+                                    conversationRepository.upsertConversations(chats, fullRefresh);
+                            runOnUiThread(() -> showFetchedChats(chats, result.hasChanges()));
+                        });
                     } else {
-                        System.out.println("HomeActivity: Adapter is null, cannot update chats");
-                    }
-                    
-                    // Stop refresh spinner
-                    if (swipeRefreshLayout != null && swipeRefreshLayout.isRefreshing()) {
-                        swipeRefreshLayout.setRefreshing(false);
+                        showFetchedChats(chats, true);
                     }
                 } else {
                     System.out.println("HomeActivity: Failed to load chats: " + jsonResponse.optString("message", "Unknown error"));
@@ -3158,7 +3192,7 @@ public class HomeActivity extends AppCompatActivity implements ChatListAdapter.O
     public void onChatClick(Chat chat) {
         if (chat != null && conversationRepository != null) {
             chat.setUnreadCount(0);
-            ConversationPreviewHelper.clearUnread(conversationRepository, chat.getId());
+            ReadStateTracker.getInstance(this).markChatRead(chat.getId(), chat.getLastMessageTime());
         }
 
         Intent intent;
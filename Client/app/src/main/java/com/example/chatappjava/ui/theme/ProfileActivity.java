@@ -33,6 +33,7 @@ import com.example.chatappjava.models.User;
 import com.example.chatappjava.network.ApiClient;
 import com.example.chatappjava.utils.AvatarManager;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.ImageTranscoder;
 import com.github.dhaval2404.imagepicker.ImagePicker;
 import com.squareup.picasso.Picasso;
 import com.github.chrisbanes.photoview.PhotoView;
@@ -266,7 +267,7 @@ public class ProfileActivity extends AppCompatActivity {
         String currentUserId = databaseManager.getUserId();
         if (currentUserId == null || currentUserId.isEmpty()) return;
         
-        apiClient.getUserFriendsById(token, currentUserId, new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getUserFriendsById(token, currentUserId, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, java.io.IOException e) {
                 runOnUiThread(() -> {
@@ -325,7 +326,7 @@ public class ProfileActivity extends AppCompatActivity {
         String currentUserId = databaseManager.getUserId();
         if (currentUserId == null || currentUserId.isEmpty()) return;
         
-        apiClient.getUserPosts(token, currentUserId, 1, 20, new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getUserPosts(token, currentUserId, 1, 20, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, java.io.IOException e) {
                 runOnUiThread(() -> {
@@ -710,7 +711,7 @@ public class ProfileActivity extends AppCompatActivity {
             // Convert URI to File
             File imageFile = new File(selectedImageUri.getPath());
             
-            apiClient.uploadAvatar(token, imageFile, new Callback() {
+            Callback callback = new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     runOnUiThread(() -> {
@@ -745,7 +746,11 @@ public class ProfileActivity extends AppCompatActivity {
                         }
                     });
                 }
-            });
+            };
+            
+            // Avatars are shown small: send a 512px upright copy without the photo's EXIF
+            ImageTranscoder.getInstance(this).transcode(selectedImageUri, ImageTranscoder.Profile.AVATAR,
+                    transcoded -> apiClient.uploadAvatar(token, transcoded != null ? transcoded : imageFile, callback));
         } catch (Exception e) {
             e.printStackTrace();
             showLoading(false);
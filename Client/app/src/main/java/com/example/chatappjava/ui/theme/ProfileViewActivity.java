@@ -416,7 +416,7 @@ public class ProfileViewActivity extends AppCompatActivity {
         }
         
         android.util.Log.d("ProfileViewActivity", "Loading posts for userId: " + userId);
-        apiClient.getUserPosts(token, userId, 1, 20, new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getUserPosts(token, userId, 1, 20, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, java.io.IOException e) {
                 runOnUiThread(() -> {
@@ -499,7 +499,7 @@ public class ProfileViewActivity extends AppCompatActivity {
         String token = databaseManager.getToken();
         if (token == null || token.isEmpty()) return;
 
-        apiClient.getUserFriendsById(token, otherUser.getId(), new okhttp3.Callback() {
+        apiClient.staleWhileRevalidate().getUserFriendsById(token, otherUser.getId(), new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, java.io.IOException e) {
                 runOnUiThread(() -> {
@@ -18,10 +18,15 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.chatappjava.R;
 import com.example.chatappjava.adapters.UserSearchAdapter;
 import com.example.chatappjava.adapters.GroupSearchAdapter;
+import com.example.chatappjava.adapters.MessageSearchAdapter;
 import com.example.chatappjava.models.Chat;
+import com.example.chatappjava.models.Message;
 import com.example.chatappjava.models.User;
 import com.example.chatappjava.network.ApiClient;
+import com.example.chatappjava.utils.ConversationRepository;
+import com.example.chatappjava.utils.DatabaseExecutor;
 import com.example.chatappjava.utils.DatabaseManager;
+import com.example.chatappjava.utils.MessageRepository;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -32,7 +37,7 @@ import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Response;
 
-public class SearchActivity extends AppCompatActivity implements UserSearchAdapter.OnUserClickListener, GroupSearchAdapter.OnGroupClickListener {
+public class SearchActivity extends AppCompatActivity implements UserSearchAdapter.OnUserClickListener, GroupSearchAdapter.OnGroupClickListener, MessageSearchAdapter.OnMessageSearchClickListener {
     
     private EditText etSearch;
     private ImageView ivBack, ivClear;
@@ -40,7 +45,7 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
     private View listSkeleton;
     private LinearLayout tvNoResults, tvSearchHint;
     private TextView tvNoResultsTitle;
-    private TextView tabUsers, tabGroups, tabDiscover, tabPosts;
+    private TextView tabUsers, tabGroups, tabDiscover, tabPosts, tabMessages;
     private HorizontalScrollView filtersContainer;
     private TextView filterFriends, filterMedia, filterHashtag, filterDate;
     
@@ -52,6 +57,8 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
     private List<User> searchResults;
     private List<Chat> groupResults;
     private List<com.example.chatappjava.models.Post> postResults;
+    private MessageSearchAdapter messageSearchAdapter;
+    private MessageRepository messageRepository;
     
     private String mode; // "add_members", "forward" or null for normal search
     private String forwardContent; // for forward mode (text fallback)
@@ -61,6 +68,14 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
     private boolean isSearchingGroups = false; // Track current search mode
     private boolean isDiscoverGroups = false; // Discover public groups user not in
     private boolean isSearchingPosts = false; // Track if searching posts
+    private boolean isSearchingMessages = false; // Local full-text search over stored messages
+    
+    // Local message search paging
+    private String messageQuery = "";
+    private int messageSearchOffset = 0;
+    private boolean hasMoreMessageHits = false;
+    private boolean isLoadingMessageHits = false;
+    private int messageSearchGeneration = 0; // Drops results of superseded queries
     
     // Search filters
     private boolean filterOnlyFriends = false;
@@ -109,6 +124,7 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         tabGroups = findViewById(R.id.tab_groups);
         tabDiscover = findViewById(R.id.tab_discover);
         tabPosts = findViewById(R.id.tab_posts);
+        tabMessages = findViewById(R.id.tab_messages);
         
         // Filter views
         filtersContainer = findViewById(R.id.filters_container);
@@ -125,6 +141,8 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         groupResults = new ArrayList<>();
         postResults = new ArrayList<>();
         currentGroupMemberIds = new ArrayList<>();
+        messageRepository = new MessageRepository(this);
+        messageSearchAdapter = new MessageSearchAdapter(this, this);
         
         // Initialize post search adapter
         postSearchAdapter = new com.example.chatappjava.adapters.PostSearchAdapter(
@@ -161,6 +179,10 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
             forwardContent = intent.getStringExtra("forward_content");
             forwardMessageRaw = intent.getStringExtra("forward_message");
         }
+        if (mode != null && tabMessages != null) {
+            // Message search only makes sense in normal search mode
+            tabMessages.setVisibility(View.GONE);
+        }
         if ("add_members".equals(mode) && intent.hasExtra("chat")) {
             try {
                 LinearLayout searchTabs = findViewById(R.id.search_tabs);
@@ -319,8 +341,8 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
                     return;
                 }
                 
-                // For posts: debounce with shorter delay
-                if (isSearchingPosts) {
+                // For posts and local messages: debounce with shorter delay
+                if (isSearchingPosts || isSearchingMessages) {
                     if (searchRunnable != null) {
                         etSearch.removeCallbacks(searchRunnable);
                     }
@@ -353,6 +375,20 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         rvSearchResults.setAdapter(userAdapter); // Start with user adapter
         // Forward mode: ensure groups tab shows Forward button
         groupAdapter.setForwardMode("forward".equals(mode));
+
+        // Page in more local message hits as the list nears its end
+        rvSearchResults.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@androidx.annotation.NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (!isSearchingMessages || dy <= 0 || !hasMoreMessageHits || isLoadingMessageHits) {
+                    return;
+                }
+                LinearLayoutManager lm = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (lm != null && lm.findLastVisibleItemPosition() >= messageSearchAdapter.getItemCount() - 5) {
+                    loadMessageHits(false);
+                }
+            }
+        });
     }
 
     private void refreshUserListDisplay() {
@@ -401,6 +437,10 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
             tabPosts.setOnClickListener(v -> switchToPostSearch());
         }
         
+        if (tabMessages != null) {
+            tabMessages.setOnClickListener(v -> switchToMessageSearch());
+        }
+        
         // Filter click listeners
         if (filterFriends != null) {
             filterFriends.setOnClickListener(v -> toggleFilterFriends());
@@ -516,10 +556,12 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         isSearchingGroups = false;
         isDiscoverGroups = false;
         isSearchingPosts = false;
+        isSearchingMessages = false;
         tabUsers.setSelected(true);
         tabGroups.setSelected(false);
         if (tabDiscover != null) tabDiscover.setSelected(false);
         if (tabPosts != null) tabPosts.setSelected(false);
+        if (tabMessages != null) tabMessages.setSelected(false);
         rvSearchResults.setAdapter(userAdapter);
         clearSearchResults();
         etSearch.setHint("Search users...");
@@ -530,9 +572,11 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
     private void switchToGroupSearch() {
         isSearchingGroups = true;
         isDiscoverGroups = false;
+        isSearchingMessages = false;
         tabUsers.setSelected(false);
         tabGroups.setSelected(true);
         if (tabDiscover != null) tabDiscover.setSelected(false);
+        if (tabMessages != null) tabMessages.setSelected(false);
         rvSearchResults.setAdapter(groupAdapter);
         groupAdapter.setDiscoverMode(false);
         groupAdapter.setForwardMode("forward".equals(mode));
@@ -545,10 +589,12 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         isSearchingGroups = true;
         isDiscoverGroups = true;
         isSearchingPosts = false;
+        isSearchingMessages = false;
         tabUsers.setSelected(false);
         tabGroups.setSelected(false);
         if (tabDiscover != null) tabDiscover.setSelected(true);
         if (tabPosts != null) tabPosts.setSelected(false);
+        if (tabMessages != null) tabMessages.setSelected(false);
         rvSearchResults.setAdapter(groupAdapter);
         groupAdapter.setDiscoverMode(true);
         groupAdapter.setForwardMode(false);
@@ -563,10 +609,12 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         isSearchingGroups = false;
         isDiscoverGroups = false;
         isSearchingPosts = true;
+        isSearchingMessages = false;
         tabUsers.setSelected(false);
         tabGroups.setSelected(false);
         if (tabDiscover != null) tabDiscover.setSelected(false);
         if (tabPosts != null) tabPosts.setSelected(true);
+        if (tabMessages != null) tabMessages.setSelected(false);
         rvSearchResults.setAdapter(postSearchAdapter);
         clearSearchResults();
         etSearch.setHint("Search posts, captions, hashtags...");
@@ -574,6 +622,25 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         showRecentSearchesOrTrending();
     }
     
+    private void switchToMessageSearch() {
+        isSearchingGroups = false;
+        isDiscoverGroups = false;
+        isSearchingPosts = false;
+        isSearchingMessages = true;
+        tabUsers.setSelected(false);
+        tabGroups.setSelected(false);
+        if (tabDiscover != null) tabDiscover.setSelected(false);
+        if (tabPosts != null) tabPosts.setSelected(false);
+        if (tabMessages != null) tabMessages.setSelected(true);
+        rvSearchResults.setAdapter(messageSearchAdapter);
+        clearSearchResults();
+        etSearch.setHint("Search your messages...");
+        updateFiltersVisibility();
+        resetFilters();
+        // Local index: re-run the current query right away
+        performSearchWithCurrentQuery();
+    }
+    
     private void resetFilters() {
         filterOnlyFriends = false;
         filterMediaOnly = false;
@@ -711,6 +778,13 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
             return;
         }
         
+        if (isSearchingMessages) {
+            // Messages: local full-text index, no network needed
+            messageQuery = query;
+            loadMessageHits(true);
+            return;
+        }
+        
         if (isSearchingPosts) {
             // Search posts
             if (query.length() < 2) {
@@ -995,6 +1069,8 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
                 String searchType;
                 if (isSearchingPosts) {
                     searchType = getString(R.string.search_type_posts);
+                } else if (isSearchingMessages) {
+                    searchType = getString(R.string.search_type_messages);
                 } else if (isSearchingGroups) {
                     searchType = isDiscoverGroups
                             ? getString(R.string.search_type_public_groups)
@@ -1013,7 +1089,14 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
     }
     
     private void clearSearchResults() {
-        if (isSearchingPosts) {
+        if (isSearchingMessages) {
+            messageSearchGeneration++;
+            messageQuery = "";
+            messageSearchOffset = 0;
+            hasMoreMessageHits = false;
+            isLoadingMessageHits = false;
+            messageSearchAdapter.setResults(null);
+        } else if (isSearchingPosts) {
             int oldSize = postResults.size();
             postResults.clear();
             if (postSearchAdapter != null && oldSize > 0) {
@@ -1035,6 +1118,71 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
         updateResultsVisibility();
     }
 
+    /**
+     * Query the local message index on a reader thread.
+     * @param reset true for a new query (first page), false to append the next page
+     */
+    private void loadMessageHits(boolean reset) {
+        if (reset) {
+            messageSearchGeneration++;
+            messageSearchOffset = 0;
+            hasMoreMessageHits = false;
+        }
+        final int generation = messageSearchGeneration;
+        final String query = messageQuery;
+        final int offset = messageSearchOffset;
+        final int pageSize = MessageRepository.DEFAULT_SEARCH_PAGE_SIZE;
+        isLoadingMessageHits = true;
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            List<MessageRepository.SearchResult> hits = messageRepository.search(query, null, pageSize, offset);
+            runOnUiThread(() -> {
+                if (generation != messageSearchGeneration || !isSearchingMessages) {
+                    return;
+                }
+                isLoadingMessageHits = false;
+                messageSearchOffset = offset + hits.size();
+                hasMoreMessageHits = hits.size() >= pageSize;
+                if (reset) {
+                    messageSearchAdapter.setResults(hits);
+                } else {
+                    messageSearchAdapter.addResults(hits);
+                }
+                updateResultsVisibility();
+            });
+        });
+    }
+
+    // MessageSearchAdapter.OnMessageSearchClickListener implementation
+    @Override
+    public void onMessageHitClick(Message message) {
+        if (message == null || message.getChatId() == null) {
+            return;
+        }
+        String chatId = message.getChatId();
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            Chat chat = new ConversationRepository(this).getConversationById(chatId);
+            runOnUiThread(() -> openChatFromSearch(chat));
+        });
+    }
+
+    private void openChatFromSearch(Chat chat) {
+        if (chat == null) {
+            Toast.makeText(this, getString(R.string.error_error_opening_chat), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent intent = new Intent(this, chat.isGroupChat() ? GroupChatActivity.class : PrivateChatActivity.class);
+        try {
+            intent.putExtra("chat", chat.toJson().toString());
+            if (chat.isPrivateChat() && chat.getOtherParticipant() != null) {
+                intent.putExtra("user", chat.getOtherParticipant().toJson().toString());
+            }
+            startActivity(intent);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            Toast.makeText(this, getString(R.string.error_error_opening_chat), Toast.LENGTH_SHORT).show();
+        }
+    }
+
     private void replaceUserSearchResults(java.util.List<User> users) {
         int oldSize = searchResults.size();
         searchResults.clear();
@@ -1388,7 +1536,7 @@ public class SearchActivity extends AppCompatActivity implements UserSearchAdapt
             return;
         }
         showLoading(true);
-        apiClient.authenticatedGet("/api/groups/public", token, new Callback() {
+        apiClient.staleWhileRevalidate().authenticatedGet("/api/groups/public", token, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 runOnUiThread(() -> {
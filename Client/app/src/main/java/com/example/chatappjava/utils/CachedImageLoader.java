@@ -0,0 +1,94 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.widget.ImageView;
+
+import com.example.chatappjava.R;
+import com.example.chatappjava.network.MediaCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Shows chat and post images through {@link MediaCache}: straight from disk when the file is
+ * there, otherwise once the cache has downloaded it, so scrolling back or reopening a chat
+ * does not go to the network again. Picasso still decodes and sizes the image. A view that
+ * was recycled for another URL in the meantime is left alone.
+ */
+public final class CachedImageLoader {
+
+    private CachedImageLoader() {
+    }
+
+    /**
+     * @param url         absolute URL, server path (/uploads/...), or content:// / file:// URI
+     * @param placeholder shown while loading and on failure; 0 for none
+     * @param options     sizing for the request, e.g. {@code r -> r.fit().centerCrop()}
+     */
+    public static void load(ImageView view, String url, int placeholder, Consumer<RequestCreator> options) {
+        Picasso.get().cancelRequest(view);
+        String fullUrl = MediaCache.absoluteUrl(url);
+        view.setTag(R.id.tag_media_url, fullUrl);
+        if (!MediaCache.isCacheable(fullUrl)) {
+            show(view, Picasso.get().load(fullUrl), placeholder, options);
+            return;
+        }
+
+        MediaCache cache = MediaCache.getInstance(view.getContext());
+        File local = cache.peek(fullUrl);
+        if (local != null) {
+            show(view, Picasso.get().load(local), placeholder, options);
+            return;
+        }
+
+        if (placeholder != 0) {
+            view.setImageResource(placeholder);
+        } else {
+            view.setImageDrawable(null);
+        }
+        cache.fetch(fullUrl, new MediaCache.Listener() {
+            @Override
+            public void onReady(File file) {
+                if (fullUrl.equals(view.getTag(R.id.tag_media_url))) {
+                    show(view, Picasso.get().load(file), placeholder, options);
+                }
+            }
+
+            @Override
+            public void onFailed(IOException e) {
+                // Let Picasso try the network itself and show its error image
+                if (fullUrl.equals(view.getTag(R.id.tag_media_url))) {
+                    show(view, Picasso.get().load(fullUrl), placeholder, options);
+                }
+            }
+        });
+    }
+
+    /** Drop whatever view was loading, before it is given something else to show. */
+    public static void clear(ImageView view) {
+        Picasso.get().cancelRequest(view);
+        view.setTag(R.id.tag_media_url, null);
+    }
+
+    /** The cached copy of url as a file:// URI, or null when it is not on disk. */
+    public static String localUriFor(Context context, String url) {
+        String fullUrl = MediaCache.absoluteUrl(url);
+        if (!MediaCache.isCacheable(fullUrl)) {
+            return null;
+        }
+        File local = MediaCache.getInstance(context).peek(fullUrl);
+        return local != null ? Uri.fromFile(local).toString() : null;
+    }
+
+    private static void show(ImageView view, RequestCreator request, int placeholder, Consumer<RequestCreator> options) {
+        if (placeholder != 0) {
+            request.placeholder(placeholder).error(placeholder);
+        }
+        options.accept(request);
+        request.into(view);
+    }
+}
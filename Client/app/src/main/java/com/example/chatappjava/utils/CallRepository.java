@@ -27,7 +27,7 @@ public class CallRepository {
     
     public CallRepository(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
     }
     
     /**
@@ -71,8 +71,6 @@ public class CallRepository {
             
         } catch (JSONException e) {
             Log.e(TAG, "Error saving call: " + call.getCallId(), e);
-        } finally {
-            db.close();
         }
     }
     
@@ -127,7 +125,6 @@ public class CallRepository {
             Log.e(TAG, "Error saving calls", e);
         } finally {
             db.endTransaction();
-            db.close();
         }
     }
     
@@ -159,7 +156,6 @@ public class CallRepository {
             Log.e(TAG, "Error reading calls from database", e);
         } finally {
             cursor.close();
-            db.close();
         }
         
         return calls;
@@ -193,7 +189,6 @@ public class CallRepository {
             Log.e(TAG, "Error reading call from database", e);
         } finally {
             cursor.close();
-            db.close();
         }
         
         return call;
@@ -209,7 +204,6 @@ public class CallRepository {
         String[] whereArgs = {callId};
         
         db.delete(DatabaseHelper.TABLE_CALLS, whereClause, whereArgs);
-        db.close();
         
         Log.d(TAG, "Deleted call: " + callId);
     }
@@ -220,7 +214,6 @@ public class CallRepository {
     public void deleteAllCalls() {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         db.delete(DatabaseHelper.TABLE_CALLS, null, null);
-        db.close();
         
         Log.d(TAG, "Deleted all calls");
     }
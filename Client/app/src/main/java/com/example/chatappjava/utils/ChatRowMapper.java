@@ -0,0 +1,100 @@
+package com.example.chatappjava.utils;
+
+import android.database.Cursor;
+
+import com.example.chatappjava.models.Chat;
+import com.example.chatappjava.models.User;
+
+/**
+ * Maps rows of the conversations table to Chat objects through the model's setters.
+ * Column indexes are resolved once per cursor; columns missing from a narrow
+ * projection are skipped. Participants are attached separately from
+ * conversation_participants.
+ */
+final class ChatRowMapper {
+
+    /** Every column the model is built from (legacy participant JSON columns excluded). */
+    static final String[] COLUMNS = {
+        DatabaseHelper.COL_CONV_ID,
+        DatabaseHelper.COL_CONV_TYPE,
+        DatabaseHelper.COL_CONV_NAME,
+        DatabaseHelper.COL_CONV_DESCRIPTION,
+        DatabaseHelper.COL_CONV_AVATAR,
+        DatabaseHelper.COL_CONV_LAST_MESSAGE,
+        DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME,
+        DatabaseHelper.COL_CONV_UNREAD_COUNT,
+        DatabaseHelper.COL_CONV_IS_ACTIVE,
+        DatabaseHelper.COL_CONV_CREATOR_ID,
+        DatabaseHelper.COL_CONV_CREATED_AT,
+        DatabaseHelper.COL_CONV_UPDATED_AT,
+        DatabaseHelper.COL_CONV_GROUP_ID,
+        DatabaseHelper.COL_CONV_IS_PUBLIC,
+        DatabaseHelper.COL_CONV_VISIBILITY
+    };
+
+    private final int id;
+    private final int type;
+    private final int name;
+    private final int description;
+    private final int avatar;
+    private final int lastMessage;
+    private final int lastMessageTime;
+    private final int unreadCount;
+    private final int isActive;
+    private final int creatorId;
+    private final int createdAt;
+    private final int updatedAt;
+    private final int groupId;
+    private final int isPublic;
+    private final int visibility;
+
+    ChatRowMapper(Cursor cursor) {
+        id = cursor.getColumnIndex(DatabaseHelper.COL_CONV_ID);
+        type = cursor.getColumnIndex(DatabaseHelper.COL_CONV_TYPE);
+        name = cursor.getColumnIndex(DatabaseHelper.COL_CONV_NAME);
+        description = cursor.getColumnIndex(DatabaseHelper.COL_CONV_DESCRIPTION);
+        avatar = cursor.getColumnIndex(DatabaseHelper.COL_CONV_AVATAR);
+        lastMessage = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE);
+        lastMessageTime = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME);
+        unreadCount = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UNREAD_COUNT);
+        isActive = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_ACTIVE);
+        creatorId = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATOR_ID);
+        createdAt = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATED_AT);
+        updatedAt = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UPDATED_AT);
+        groupId = cursor.getColumnIndex(DatabaseHelper.COL_CONV_GROUP_ID);
+        isPublic = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_PUBLIC);
+        visibility = cursor.getColumnIndex(DatabaseHelper.COL_CONV_VISIBILITY);
+    }
+
+    /**
+     * Build a Chat from the cursor's current row.
+     */
+    Chat map(Cursor cursor) {
+        Chat chat = new Chat();
+        if (id >= 0) chat.setId(cursor.getString(id));
+        if (type >= 0) chat.setType(cursor.getString(type));
+        if (name >= 0) chat.setName(cursor.getString(name));
+        if (description >= 0) chat.setDescription(cursor.getString(description));
+        if (avatar >= 0) {
+            String value = cursor.getString(avatar);
+            chat.setAvatar(value);
+            // Private chats store the peer's avatar here; seed the peer until its row is attached
+            if (chat.isPrivateChat() && value != null && !value.isEmpty()) {
+                User peer = new User();
+                peer.setAvatar(value);
+                chat.setOtherParticipant(peer);
+            }
+        }
+        if (lastMessage >= 0) chat.setLastMessage(cursor.getString(lastMessage));
+        if (lastMessageTime >= 0) chat.setLastMessageTime(cursor.getLong(lastMessageTime));
+        if (unreadCount >= 0) chat.setUnreadCount(cursor.getInt(unreadCount));
+        if (isActive >= 0) chat.setActive(cursor.getInt(isActive) == 1);
+        if (creatorId >= 0) chat.setCreatorId(cursor.getString(creatorId));
+        if (createdAt >= 0) chat.setCreatedAt(cursor.getLong(createdAt));
+        if (updatedAt >= 0) chat.setUpdatedAt(cursor.getLong(updatedAt));
+        if (groupId >= 0) chat.setGroupId(cursor.getString(groupId));
+        if (isPublic >= 0) chat.setIsPublic(cursor.getInt(isPublic) == 1);
+        if (visibility >= 0) chat.setVisibility(cursor.getString(visibility));
+        return chat;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.chatappjava.utils;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of a content or file URI, read in chunks so large media never sits in the heap.
+ * Used to recognise the same media again (transcoding cache, upload deduplication, media
+ * cache file names).
+ */
+public final class ContentHasher {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentHasher() {
+    }
+
+    /** Lower-case hex digest; call off the main thread. */
+    public static String sha256(ContentResolver resolver, Uri uri) throws IOException {
+        return digest(resolver, uri, Long.MAX_VALUE, 0, 0);
+    }
+
+    /**
+     * Lower-case hex digest of the first and the last sampleBytes of content that is size
+     * bytes long; the same as {@link #sha256(ContentResolver, Uri)} when the content is not
+     * longer than both samples. Call off the main thread.
+     */
+    public static String sha256HeadAndTail(ContentResolver resolver, Uri uri, long size, long sampleBytes)
+            throws IOException {
+        if (size <= 2 * sampleBytes) {
+            return sha256(resolver, uri);
+        }
+        return digest(resolver, uri, sampleBytes, size - 2 * sampleBytes, sampleBytes);
+    }
+
+    /** Hash head bytes, skip skipBytes, then hash tail bytes. */
+    private static String digest(ContentResolver resolver, Uri uri, long head, long skipBytes, long tail)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + uri);
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            update(digest, in, buffer, head);
+            skipFully(in, buffer, skipBytes);
+            update(digest, in, buffer, tail);
+        }
+        return hex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, InputStream in, byte[] buffer, long count) throws IOException {
+        long remaining = count;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            digest.update(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void skipFully(InputStream in, byte[] buffer, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                // Some streams cannot skip; read through instead
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    return;
+                }
+                skipped = read;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /** Lower-case hex digest of a string's UTF-8 bytes (URLs, keys). */
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return hex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -104,11 +104,4 @@ public final class ConversationPreviewHelper {
         boolean increment = incrementUnreadWhenIncoming && incoming;
         persistPreview(repository, chatId, preview, resolveTimestamp(message), increment);
     }
-
-    public static void clearUnread(ConversationRepository repository, String chatId) {
-        if (repository == null || TextUtils.isEmpty(chatId)) {
-            return;
-        }
-        repository.updateUnreadCount(chatId, 0);
-    }
 }
@@ -8,10 +8,16 @@ import android.util.Log;
 import com.example.chatappjava.models.Chat;
 import com.example.chatappjava.models.User;
 
-import org.json.JSONArray;
-import org.json.JSONException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Repository class for managing conversations (chats) in SQLite database
@@ -19,13 +25,17 @@ import java.util.List;
  */
 public class ConversationRepository {
     private static final String TAG = "ConversationRepository";
+
+    // Stay well under SQLITE_MAX_VARIABLE_NUMBER when loading participants with IN (...)
+    private static final int PARTICIPANT_QUERY_CHUNK = 500;
+    private static final String SYNC_STATUS_SYNCED = "synced";
     
     private final DatabaseHelper dbHelper;
     private final Context context;
     
     public ConversationRepository(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
     }
     
     /**
@@ -35,73 +45,163 @@ public class ConversationRepository {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         try {
-            ContentValues values = new ContentValues();
-            values.put(DatabaseHelper.COL_CONV_ID, chat.getId());
-            values.put(DatabaseHelper.COL_CONV_TYPE, chat.getType());
-            values.put(DatabaseHelper.COL_CONV_NAME, chat.getName());
-            values.put(DatabaseHelper.COL_CONV_DESCRIPTION, chat.getDescription());
+            db.beginTransaction();
+            ContentValues values = toContentValues(chat);
+            values.put(DatabaseHelper.COL_CONV_CONTENT_HASH, contentHash(values, chat));
+            writeConversation(db, chat, values);
+            db.setTransactionSuccessful();
             
-            // For private chats, save other participant's avatar (like calls save caller avatar)
-            // For group chats, save group avatar
-            String avatarToSave = chat.getAvatar();
-            if (chat.isPrivateChat() && chat.getOtherParticipant() != null && 
-                chat.getOtherParticipant().getAvatar() != null && 
-                !chat.getOtherParticipant().getAvatar().isEmpty()) {
-                avatarToSave = chat.getOtherParticipant().getAvatar();
-                Log.d(TAG, "Saving other participant avatar for private chat: " + avatarToSave);
+            Log.d(TAG, "Conversation saved: " + chat.getId());
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving conversation: " + e.getMessage(), e);
+        } finally {
+            if (db.inTransaction()) {
+                db.endTransaction();
             }
-            values.put(DatabaseHelper.COL_CONV_AVATAR, avatarToSave);
-            values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE, chat.getLastMessage());
-            values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME, chat.getLastMessageTime());
-            values.put(DatabaseHelper.COL_CONV_UNREAD_COUNT, chat.getUnreadCount());
-            values.put(DatabaseHelper.COL_CONV_IS_ACTIVE, chat.isActive() ? 1 : 0);
-            values.put(DatabaseHelper.COL_CONV_CREATOR_ID, chat.getCreatorId());
-            values.put(DatabaseHelper.COL_CONV_CREATED_AT, chat.getCreatedAt());
-            values.put(DatabaseHelper.COL_CONV_UPDATED_AT, chat.getUpdatedAt());
-            values.put(DatabaseHelper.COL_CONV_GROUP_ID, chat.getGroupId());
-            values.put(DatabaseHelper.COL_CONV_IS_PUBLIC, chat.isPublicGroup() ? 1 : 0);
-            values.put(DatabaseHelper.COL_CONV_VISIBILITY, chat.getVisibility());
+        }
+    }
 
-            if (chat.isPrivateChat() && chat.getOtherParticipant() != null) {
-                try {
-                    values.put(
-                        DatabaseHelper.COL_CONV_OTHER_PARTICIPANT,
-                        chat.getOtherParticipant().toJson().toString()
-                    );
-                } catch (JSONException e) {
-                    Log.w(TAG, "Could not serialize other participant: " + e.getMessage());
-                    values.putNull(DatabaseHelper.COL_CONV_OTHER_PARTICIPANT);
-                }
-            } else {
-                values.putNull(DatabaseHelper.COL_CONV_OTHER_PARTICIPANT);
+    /**
+     * Row values for a conversation (everything but the content hash).
+     */
+    private static ContentValues toContentValues(Chat chat) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COL_CONV_ID, chat.getId());
+        values.put(DatabaseHelper.COL_CONV_TYPE, chat.getType());
+        values.put(DatabaseHelper.COL_CONV_NAME, chat.getName());
+        values.put(DatabaseHelper.COL_CONV_DESCRIPTION, chat.getDescription());
+        
+        // For private chats, save other participant's avatar (like calls save caller avatar)
+        // For group chats, save group avatar
+        String avatarToSave = chat.getAvatar();
+        if (chat.isPrivateChat() && chat.getOtherParticipant() != null && 
+            chat.getOtherParticipant().getAvatar() != null && 
+            !chat.getOtherParticipant().getAvatar().isEmpty()) {
+            avatarToSave = chat.getOtherParticipant().getAvatar();
+        }
+        values.put(DatabaseHelper.COL_CONV_AVATAR, avatarToSave);
+        values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE, chat.getLastMessage());
+        values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME, chat.getLastMessageTime());
+        values.put(DatabaseHelper.COL_CONV_UNREAD_COUNT, chat.getUnreadCount());
+        values.put(DatabaseHelper.COL_CONV_IS_ACTIVE, chat.isActive() ? 1 : 0);
+        values.put(DatabaseHelper.COL_CONV_CREATOR_ID, chat.getCreatorId());
+        values.put(DatabaseHelper.COL_CONV_CREATED_AT, chat.getCreatedAt());
+        values.put(DatabaseHelper.COL_CONV_UPDATED_AT, chat.getUpdatedAt());
+        values.put(DatabaseHelper.COL_CONV_GROUP_ID, chat.getGroupId());
+        values.put(DatabaseHelper.COL_CONV_IS_PUBLIC, chat.isPublicGroup() ? 1 : 0);
+        values.put(DatabaseHelper.COL_CONV_VISIBILITY, chat.getVisibility());
+        // Participants and the private-chat peer live in conversation_participants
+        values.putNull(DatabaseHelper.COL_CONV_OTHER_PARTICIPANT);
+        values.putNull(DatabaseHelper.COL_CONV_PARTICIPANTS);
+        return values;
+    }
+
+    /**
+     * Replace the conversation row and its participant rows. The caller owns the transaction.
+     */
+    private static void writeConversation(SQLiteDatabase db, Chat chat, ContentValues values) {
+        // Use INSERT OR REPLACE to handle both insert and update
+        db.insertWithOnConflict(
+            DatabaseHelper.TABLE_CONVERSATIONS,
+            null,
+            values,
+            SQLiteDatabase.CONFLICT_REPLACE
+        );
+        writeParticipantRows(db, chat.getId(), chat.getParticipantIds(),
+                chat.isPrivateChat() ? chat.getOtherParticipant() : null);
+    }
+
+    /**
+     * Hash of everything a save would write for this chat: the row values plus participant
+     * IDs and the peer profile. Equal hashes mean the stored copy is already current.
+     */
+    private static String contentHash(ContentValues values, Chat chat) {
+        StringBuilder canonical = new StringBuilder(256);
+        for (String key : new TreeSet<>(values.keySet())) {
+            canonical.append(key).append('=').append(values.get(key)).append('\u001f');
+        }
+        List<String> participantIds = chat.getParticipantIds();
+        if (participantIds != null) {
+            for (String userId : participantIds) {
+                canonical.append(userId).append(',');
             }
-            
-            // Convert participants list to JSON array
-            List<String> participants = chat.getParticipantIds();
-            if (participants != null && !participants.isEmpty()) {
-                JSONArray participantsArray = new JSONArray();
-                for (String participantId : participants) {
-                    participantsArray.put(participantId);
+        }
+        User peer = chat.isPrivateChat() ? chat.getOtherParticipant() : null;
+        if (peer != null) {
+            canonical.append('\u001f').append(peer.getId())
+                    .append('|').append(peer.getUsername())
+                    .append('|').append(peer.getEmail())
+                    .append('|').append(peer.getAvatar())
+                    .append('|').append(peer.getFirstName())
+                    .append('|').append(peer.getLastName())
+                    .append('|').append(peer.getBio())
+                    .append('|').append(peer.getPhoneNumber())
+                    .append('|').append(peer.getLastSeen());
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime ships SHA-1; fall back to the (weaker) string hash just in case
+            return Integer.toHexString(canonical.toString().hashCode());
+        }
+    }
+
+    /**
+     * Rewrite the participant rows of one conversation: every participant ID in list order,
+     * with the private-chat peer's profile merged into its row (or stored on its own row
+     * when the peer is not in the list). The caller owns the transaction.
+     */
+    static void writeParticipantRows(SQLiteDatabase db, String conversationId, List<String> participantIds, User peer) {
+        if (conversationId == null) {
+            return;
+        }
+        db.delete(DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS,
+                DatabaseHelper.COL_PART_CONVERSATION_ID + " = ?", new String[]{conversationId});
+
+        String peerId = peer != null && peer.getId() != null && !peer.getId().isEmpty() ? peer.getId() : null;
+        if (participantIds != null) {
+            for (int i = 0; i < participantIds.size(); i++) {
+                String userId = participantIds.get(i);
+                if (userId == null || userId.isEmpty() || userId.equals(peerId)) {
+                    continue;
                 }
-                values.put(DatabaseHelper.COL_CONV_PARTICIPANTS, participantsArray.toString());
+                ContentValues row = new ContentValues();
+                row.put(DatabaseHelper.COL_PART_CONVERSATION_ID, conversationId);
+                row.put(DatabaseHelper.COL_PART_USER_ID, userId);
+                row.put(DatabaseHelper.COL_PART_POSITION, i);
+                db.insertWithOnConflict(DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS, null, row,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        }
+
+        if (peerId != null) {
+            int position = participantIds != null ? participantIds.indexOf(peerId) : -1;
+            ContentValues row = new ContentValues();
+            row.put(DatabaseHelper.COL_PART_CONVERSATION_ID, conversationId);
+            row.put(DatabaseHelper.COL_PART_USER_ID, peerId);
+            if (position >= 0) {
+                row.put(DatabaseHelper.COL_PART_POSITION, position);
             } else {
-                values.putNull(DatabaseHelper.COL_CONV_PARTICIPANTS);
+                row.putNull(DatabaseHelper.COL_PART_POSITION);
             }
-            
-            // Use INSERT OR REPLACE to handle both insert and update
-            db.insertWithOnConflict(
-                DatabaseHelper.TABLE_CONVERSATIONS,
-                null,
-                values,
-                SQLiteDatabase.CONFLICT_REPLACE
-            );
-            
-            Log.d(TAG, "Conversation saved: " + chat.getId());
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving conversation: " + e.getMessage(), e);
-        } finally {
-            db.close();
+            row.put(DatabaseHelper.COL_PART_IS_PEER, 1);
+            row.put(DatabaseHelper.COL_PART_USERNAME, peer.getUsername());
+            row.put(DatabaseHelper.COL_PART_EMAIL, peer.getEmail());
+            row.put(DatabaseHelper.COL_PART_AVATAR, peer.getAvatar());
+            row.put(DatabaseHelper.COL_PART_FIRST_NAME, peer.getFirstName());
+            row.put(DatabaseHelper.COL_PART_LAST_NAME, peer.getLastName());
+            row.put(DatabaseHelper.COL_PART_BIO, peer.getBio());
+            row.put(DatabaseHelper.COL_PART_PHONE, peer.getPhoneNumber());
+            row.put(DatabaseHelper.COL_PART_LAST_SEEN, peer.getLastSeen());
+            db.insertWithOnConflict(DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS, null, row,
+                    SQLiteDatabase.CONFLICT_REPLACE);
         }
     }
     
@@ -109,9 +209,108 @@ public class ConversationRepository {
      * Save multiple conversations
      */
     public void saveConversations(List<Chat> chats) {
-        for (Chat chat : chats) {
-            saveConversation(chat);
+        upsertConversations(chats, false);
+    }
+
+    /**
+     * Which conversations a bulk upsert actually touched.
+     */
+    public static final class UpsertResult {
+        public final List<String> changedIds;
+        public final List<String> removedIds;
+        /** False when the transaction failed and nothing was written. */
+        public final boolean saved;
+
+        UpsertResult(List<String> changedIds, List<String> removedIds, boolean saved) {
+            this.changedIds = changedIds;
+            this.removedIds = removedIds;
+            this.saved = saved;
+        }
+
+        public boolean hasChanges() {
+            return !changedIds.isEmpty() || !removedIds.isEmpty();
+        }
+    }
+
+    /**
+     * Save a batch of conversations in one transaction, skipping rows whose stored content
+     * hash already matches. With {@code fullRefresh} the list is taken as the complete set:
+     * active local conversations missing from it are soft-deleted (is_active = 0) and their
+     * synced messages dropped. Pending and failed messages stay for the outbox. Only pass
+     * true when the caller knows the server returned every chat, not just one page.
+     */
+    public UpsertResult upsertConversations(List<Chat> chats, boolean fullRefresh) {
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        if (chats == null) {
+            return new UpsertResult(changed, removed, true);
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long start = System.currentTimeMillis();
+        
+        try {
+            db.beginTransaction();
+            Map<String, String> storedHashes = new HashMap<>();
+            Set<String> activeIds = new HashSet<>();
+            try (Cursor cursor = db.query(
+                    DatabaseHelper.TABLE_CONVERSATIONS,
+                    new String[]{DatabaseHelper.COL_CONV_ID, DatabaseHelper.COL_CONV_CONTENT_HASH,
+                            DatabaseHelper.COL_CONV_IS_ACTIVE},
+                    null, null, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    storedHashes.put(cursor.getString(0), cursor.getString(1));
+                    if (cursor.getInt(2) == 1) {
+                        activeIds.add(cursor.getString(0));
+                    }
+                }
+            }
+            
+            Set<String> seen = new HashSet<>();
+            for (Chat chat : chats) {
+                if (chat == null || chat.getId() == null || !seen.add(chat.getId())) {
+                    continue;
+                }
+                ContentValues values = toContentValues(chat);
+                String hash = contentHash(values, chat);
+                if (hash.equals(storedHashes.get(chat.getId()))) {
+                    continue;
+                }
+                values.put(DatabaseHelper.COL_CONV_CONTENT_HASH, hash);
+                writeConversation(db, chat, values);
+                changed.add(chat.getId());
+            }
+            
+            if (fullRefresh) {
+                ContentValues inactive = new ContentValues();
+                inactive.put(DatabaseHelper.COL_CONV_IS_ACTIVE, 0);
+                // Cleared so the chat is written again if the server lists it later
+                inactive.putNull(DatabaseHelper.COL_CONV_CONTENT_HASH);
+                for (String localId : activeIds) {
+                    if (seen.contains(localId)) {
+                        continue;
+                    }
+                    db.update(DatabaseHelper.TABLE_CONVERSATIONS, inactive,
+                            DatabaseHelper.COL_CONV_ID + " = ?", new String[]{localId});
+                    // Unsent messages stay until the outbox has delivered or given up on them
+                    db.delete(DatabaseHelper.TABLE_MESSAGES,
+                            DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?",
+                            new String[]{localId, SYNC_STATUS_SYNCED});
+                    removed.add(localId);
+                }
+            }
+            db.setTransactionSuccessful();
+            
+            Log.d(TAG, "Upserted " + chats.size() + " conversations: " + changed.size() + " changed, "
+                    + removed.size() + " removed in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Error upserting conversations: " + e.getMessage(), e);
+            return new UpsertResult(new ArrayList<>(), new ArrayList<>(), false);
+        } finally {
+            if (db.inTransaction()) {
+                db.endTransaction();
+            }
         }
+        return new UpsertResult(changed, removed, true);
     }
     
     /**
@@ -125,7 +324,7 @@ public class ConversationRepository {
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_CONVERSATIONS,
-            null,
+            ChatRowMapper.COLUMNS,
             DatabaseHelper.COL_CONV_IS_ACTIVE + " = 1",
             null,
             null,
@@ -136,18 +335,16 @@ public class ConversationRepository {
         
         if (cursor != null) {
             try {
+                ChatRowMapper mapper = new ChatRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Chat chat = cursorToChat(cursor);
-                    if (chat != null) {
-                        conversations.add(chat);
-                    }
+                    conversations.add(mapper.map(cursor));
                 }
             } finally {
                 cursor.close();
             }
         }
+        loadParticipants(db, conversations);
         
-        db.close();
         Log.d(TAG, "Retrieved " + conversations.size() + " conversations from database");
         return conversations;
     }
@@ -161,7 +358,7 @@ public class ConversationRepository {
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_CONVERSATIONS,
-            null,
+            ChatRowMapper.COLUMNS,
             DatabaseHelper.COL_CONV_ID + " = ?",
             new String[]{chatId},
             null,
@@ -173,14 +370,18 @@ public class ConversationRepository {
         if (cursor != null) {
             try {
                 if (cursor.moveToFirst()) {
-                    chat = cursorToChat(cursor);
+                    chat = new ChatRowMapper(cursor).map(cursor);
                 }
             } finally {
                 cursor.close();
             }
         }
+        if (chat != null) {
+            List<Chat> single = new ArrayList<>(1);
+            single.add(chat);
+            loadParticipants(db, single);
+        }
         
-        db.close();
         return chat;
     }
     
@@ -191,6 +392,7 @@ public class ConversationRepository {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(DatabaseHelper.COL_CONV_IS_ACTIVE, 0);
+        values.putNull(DatabaseHelper.COL_CONV_CONTENT_HASH);
         
         db.update(
             DatabaseHelper.TABLE_CONVERSATIONS,
@@ -198,8 +400,6 @@ public class ConversationRepository {
             DatabaseHelper.COL_CONV_ID + " = ?",
             new String[]{chatId}
         );
-        
-        db.close();
     }
     
     /**
@@ -211,6 +411,8 @@ public class ConversationRepository {
         values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE, lastMessage);
         values.put(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME, lastMessageTime);
         values.put(DatabaseHelper.COL_CONV_UPDATED_AT, System.currentTimeMillis());
+        // Row no longer matches what the server last sent; the next bulk upsert must rewrite it
+        values.putNull(DatabaseHelper.COL_CONV_CONTENT_HASH);
         
         db.update(
             DatabaseHelper.TABLE_CONVERSATIONS,
@@ -218,8 +420,6 @@ public class ConversationRepository {
             DatabaseHelper.COL_CONV_ID + " = ?",
             new String[]{chatId}
         );
-        
-        db.close();
     }
     
     /**
@@ -230,6 +430,7 @@ public class ConversationRepository {
         ContentValues values = new ContentValues();
         values.put(DatabaseHelper.COL_CONV_UNREAD_COUNT, unreadCount);
         values.put(DatabaseHelper.COL_CONV_UPDATED_AT, System.currentTimeMillis());
+        values.putNull(DatabaseHelper.COL_CONV_CONTENT_HASH);
         
         db.update(
             DatabaseHelper.TABLE_CONVERSATIONS,
@@ -237,174 +438,107 @@ public class ConversationRepository {
             DatabaseHelper.COL_CONV_ID + " = ?",
             new String[]{chatId}
         );
-        
-        db.close();
     }
     
     /**
-     * Convert Cursor to Chat object
+     * Fill participant IDs and the private-chat peer for a list of conversations with one
+     * IN (...) lookup per chunk. A peer avatar already taken from the conversation row wins,
+     * matching how the avatar column has always overridden the stored peer profile.
      */
-    private Chat cursorToChat(Cursor cursor) {
-        try {
-            Chat chat = new Chat();
-            
-            int idIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_ID);
-            int typeIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_TYPE);
-            int nameIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_NAME);
-            int descriptionIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_DESCRIPTION);
-            int avatarIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_AVATAR);
-            int lastMessageIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE);
-            int lastMessageTimeIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_LAST_MESSAGE_TIME);
-            int unreadCountIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UNREAD_COUNT);
-            int isActiveIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_ACTIVE);
-            int creatorIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATOR_ID);
-            int createdAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_CREATED_AT);
-            int updatedAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_UPDATED_AT);
-            int participantsIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_PARTICIPANTS);
-            int groupIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_GROUP_ID);
-            int isPublicIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_IS_PUBLIC);
-            int visibilityIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_VISIBILITY);
-            int otherParticipantIndex = cursor.getColumnIndex(DatabaseHelper.COL_CONV_OTHER_PARTICIPANT);
-            
-            if (idIndex >= 0) chat.setId(cursor.getString(idIndex));
-            if (typeIndex >= 0) chat.setType(cursor.getString(typeIndex));
-            if (nameIndex >= 0) chat.setName(cursor.getString(nameIndex));
-            if (descriptionIndex >= 0) chat.setDescription(cursor.getString(descriptionIndex));
-            
-            if (otherParticipantIndex >= 0) {
-                String otherParticipantJson = cursor.getString(otherParticipantIndex);
-                if (otherParticipantJson != null && !otherParticipantJson.isEmpty()) {
-                    try {
-                        chat.setOtherParticipant(User.fromJsonStatic(new org.json.JSONObject(otherParticipantJson)));
-                    } catch (JSONException e) {
-                        Log.w(TAG, "Could not parse other participant JSON: " + e.getMessage());
-                    }
-                }
+    private static void loadParticipants(SQLiteDatabase db, List<Chat> chats) {
+        if (chats.isEmpty()) {
+            return;
+        }
+        Map<String, Chat> byId = new HashMap<>();
+        for (Chat chat : chats) {
+            byId.put(chat.getId(), chat);
+        }
+        for (int start = 0; start < chats.size(); start += PARTICIPANT_QUERY_CHUNK) {
+            int end = Math.min(chats.size(), start + PARTICIPANT_QUERY_CHUNK);
+            String[] ids = new String[end - start];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                ids[i - start] = chats.get(i).getId();
+                placeholders.append(i == start ? "?" : ",?");
             }
-
-            if (avatarIndex >= 0) {
-                String avatar = cursor.getString(avatarIndex);
-                chat.setAvatar(avatar);
-
-                if (chat.isPrivateChat() && avatar != null && !avatar.isEmpty()) {
-                    User otherParticipant = chat.getOtherParticipant();
-                    if (otherParticipant == null) {
-                        otherParticipant = new User();
-                        chat.setOtherParticipant(otherParticipant);
+            try (Cursor cursor = db.query(
+                    DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS,
+                    null,
+                    DatabaseHelper.COL_PART_CONVERSATION_ID + " IN (" + placeholders + ")",
+                    ids,
+                    null, null,
+                    DatabaseHelper.COL_PART_CONVERSATION_ID + ", " + DatabaseHelper.COL_PART_POSITION)) {
+                int convIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_CONVERSATION_ID);
+                int userIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_USER_ID);
+                int positionIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_POSITION);
+                int peerIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_IS_PEER);
+                while (cursor.moveToNext()) {
+                    Chat chat = byId.get(cursor.getString(convIndex));
+                    if (chat == null) {
+                        continue;
                     }
-                    otherParticipant.setAvatar(avatar);
-                }
-            }
-            
-            if (lastMessageIndex >= 0) {
-                try {
-                    java.lang.reflect.Field lastMsgField = Chat.class.getDeclaredField("lastMessage");
-                    lastMsgField.setAccessible(true);
-                    lastMsgField.set(chat, cursor.getString(lastMessageIndex));
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not set lastMessage");
-                }
-            }
-            
-            if (lastMessageTimeIndex >= 0) chat.setLastMessageTime(cursor.getLong(lastMessageTimeIndex));
-            
-            if (unreadCountIndex >= 0) {
-                try {
-                    java.lang.reflect.Field unreadField = Chat.class.getDeclaredField("unreadCount");
-                    unreadField.setAccessible(true);
-                    unreadField.setInt(chat, cursor.getInt(unreadCountIndex));
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not set unreadCount");
-                }
-            }
-            
-            if (isActiveIndex >= 0) chat.setActive(cursor.getInt(isActiveIndex) == 1);
-            if (creatorIdIndex >= 0) chat.setCreatorId(cursor.getString(creatorIdIndex));
-            
-            if (createdAtIndex >= 0) {
-                try {
-                    java.lang.reflect.Field createdAtField = Chat.class.getDeclaredField("createdAt");
-                    createdAtField.setAccessible(true);
-                    createdAtField.setLong(chat, cursor.getLong(createdAtIndex));
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not set createdAt");
-                }
-            }
-            
-            if (updatedAtIndex >= 0) chat.setUpdatedAt(cursor.getLong(updatedAtIndex));
-            
-            if (groupIdIndex >= 0) {
-                try {
-                    java.lang.reflect.Field groupIdField = Chat.class.getDeclaredField("groupId");
-                    groupIdField.setAccessible(true);
-                    groupIdField.set(chat, cursor.getString(groupIdIndex));
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not set groupId");
-                }
-            }
-            
-            if (isPublicIndex >= 0) {
-                try {
-                    chat.setIsPublic(cursor.getInt(isPublicIndex) == 1);
-                } catch (Exception e) {
-                    try {
-                        java.lang.reflect.Field isPublicField = Chat.class.getDeclaredField("isPublic");
-                        isPublicField.setAccessible(true);
-                        isPublicField.setBoolean(chat, cursor.getInt(isPublicIndex) == 1);
-                    } catch (Exception ex) {
-                        Log.w(TAG, "Could not set isPublic");
+                    String userId = cursor.getString(userIndex);
+                    if (!cursor.isNull(positionIndex)) {
+                        chat.getParticipantIds().add(userId);
                     }
-                }
-            }
-            
-            if (visibilityIndex >= 0) {
-                try {
-                    java.lang.reflect.Field visibilityField = Chat.class.getDeclaredField("visibility");
-                    visibilityField.setAccessible(true);
-                    visibilityField.set(chat, cursor.getString(visibilityIndex));
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not set visibility");
-                }
-            }
-            
-            // Parse participants JSON array
-            if (participantsIndex >= 0) {
-                String participantsJson = cursor.getString(participantsIndex);
-                if (participantsJson != null && !participantsJson.isEmpty()) {
-                    try {
-                        JSONArray participantsArray = new JSONArray(participantsJson);
-                        List<String> participantIds = chat.getParticipantIds();
-                        for (int i = 0; i < participantsArray.length(); i++) {
-                            participantIds.add(participantsArray.getString(i));
+                    if (cursor.getInt(peerIndex) == 1 && chat.isPrivateChat()) {
+                        User peer = cursorToPeer(cursor, userId);
+                        User current = chat.getOtherParticipant();
+                        if (current != null && current.getAvatar() != null && !current.getAvatar().isEmpty()) {
+                            peer.setAvatar(current.getAvatar());
                         }
-                    } catch (JSONException e) {
-                        Log.w(TAG, "Could not parse participants JSON");
+                        chat.setOtherParticipant(peer);
                     }
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading participants: " + e.getMessage(), e);
             }
-            
-            return chat;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting cursor to chat: " + e.getMessage(), e);
-            return null;
         }
     }
-    
+
+    private static User cursorToPeer(Cursor cursor, String userId) {
+        User peer = new User();
+        peer.setId(userId);
+        peer.setUsername(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_USERNAME)));
+        peer.setEmail(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_EMAIL)));
+        peer.setAvatar(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_AVATAR)));
+        peer.setFirstName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_FIRST_NAME)));
+        peer.setLastName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_LAST_NAME)));
+        peer.setBio(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_BIO)));
+        peer.setPhoneNumber(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_PHONE)));
+        peer.setLastSeen(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COL_PART_LAST_SEEN)));
+        return peer;
+    }
+
     public void updatePeerAvatarForUser(String userId, String avatarPath) {
         if (userId == null || userId.isEmpty()) {
             return;
         }
-        List<Chat> conversations = getAllConversations();
-        for (Chat chat : conversations) {
-            if (chat == null || !chat.isPrivateChat()) {
-                continue;
-            }
-            User other = chat.getOtherParticipant();
-            if (other != null && userId.equals(other.getId())) {
-                other.setAvatar(avatarPath != null ? avatarPath : "");
-                chat.setAvatar(avatarPath != null ? avatarPath : "");
-                saveConversation(chat);
+        String avatar = avatarPath != null ? avatarPath : "";
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            // Private chats whose peer is this user, found through idx_participants_user_id
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_CONVERSATIONS + " SET " + DatabaseHelper.COL_CONV_AVATAR + " = ?, " +
+                    DatabaseHelper.COL_CONV_CONTENT_HASH + " = NULL" +
+                    " WHERE " + DatabaseHelper.COL_CONV_TYPE + " = 'private' AND " + DatabaseHelper.COL_CONV_ID + " IN (" +
+                    "SELECT " + DatabaseHelper.COL_PART_CONVERSATION_ID + " FROM " + DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS +
+                    " WHERE " + DatabaseHelper.COL_PART_USER_ID + " = ? AND " + DatabaseHelper.COL_PART_IS_PEER + " = 1)",
+                    new Object[]{avatar, userId});
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_PART_AVATAR, avatar);
+            db.update(
+                DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS,
+                values,
+                DatabaseHelper.COL_PART_USER_ID + " = ? AND " + DatabaseHelper.COL_PART_IS_PEER + " = 1",
+                new String[]{userId}
+            );
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating peer avatar for user: " + userId, e);
+        } finally {
+            if (db.inTransaction()) {
+                db.endTransaction();
             }
         }
     }
@@ -427,7 +561,7 @@ public class ConversationRepository {
     public void clearAllConversations() {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         db.delete(DatabaseHelper.TABLE_CONVERSATIONS, null, null);
-        db.close();
+        db.delete(DatabaseHelper.TABLE_CONVERSATION_PARTICIPANTS, null, null);
         Log.d(TAG, "All conversations cleared");
     }
 }
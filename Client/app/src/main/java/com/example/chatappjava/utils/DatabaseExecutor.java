@@ -0,0 +1,103 @@
+package com.example.chatappjava.utils;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide executors for SQLite work.
+ * Writes are serialized on a single thread (SQLite only allows one writer anyway);
+ * reads run on a small pool that WAL lets proceed alongside the writer.
+ * Use these instead of raw threads or the main thread for repository calls.
+ */
+public final class DatabaseExecutor {
+
+    private static final String TAG = "DatabaseExecutor";
+    private static final int READER_THREADS = 3;
+
+    private static DatabaseExecutor instance;
+
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    private volatile Thread writerThread;
+
+    private DatabaseExecutor() {
+        writeExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = newBackgroundThread(r, "db-writer");
+            writerThread = t;
+            return t;
+        });
+        readExecutor = Executors.newFixedThreadPool(READER_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return newBackgroundThread(r, "db-reader-" + count.getAndIncrement());
+            }
+        });
+    }
+
+    public static synchronized DatabaseExecutor getInstance() {
+        if (instance == null) {
+            instance = new DatabaseExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a write. Writes run one at a time in submission order.
+     */
+    public void executeWrite(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        if (isWriterThread()) {
+            // Already serialized; avoid deadlocking on our own queue
+            runSafely(task);
+            return;
+        }
+        writeExecutor.execute(() -> runSafely(task));
+    }
+
+    public <T> Future<T> submitWrite(Callable<T> task) {
+        return writeExecutor.submit(task);
+    }
+
+    public void executeRead(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        readExecutor.execute(() -> runSafely(task));
+    }
+
+    public <T> Future<T> submitRead(Callable<T> task) {
+        return readExecutor.submit(task);
+    }
+
+    public boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Database task failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static Thread newBackgroundThread(Runnable r, String name) {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
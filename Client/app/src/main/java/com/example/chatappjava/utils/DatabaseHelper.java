@@ -1,14 +1,18 @@
 package com.example.chatappjava.utils;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import com.example.chatappjava.models.Message;
+
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseHelper";
     private static final String DATABASE_NAME = "ChatApp.db";
-    private static final int DATABASE_VERSION = 7; // Incremented for other_participant on conversations
+    private static final int DATABASE_VERSION = 22; // Incremented for sync_metadata skipped_since/skipped_version (re-fetch undecodable items)
 
     // ===== Table: app_settings =====
     public static final String TABLE_APP_SETTINGS = "app_settings";
@@ -34,6 +38,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COL_CONV_IS_PUBLIC = "is_public";
     public static final String COL_CONV_VISIBILITY = "visibility";
     public static final String COL_CONV_OTHER_PARTICIPANT = "other_participant_json";
+    public static final String COL_CONV_CONTENT_HASH = "content_hash"; // hash of the last bulk-upserted row; NULL after local edits
 
     // ===== Table: messages =====
     public static final String TABLE_MESSAGES = "messages";
@@ -60,6 +65,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COL_MSG_SYNC_STATUS = "sync_status"; // "synced", "pending", "failed"
     public static final String COL_MSG_SYNC_ATTEMPTS = "sync_attempts";
     public static final String COL_MSG_SYNC_ERROR = "sync_error";
+    public static final String COL_MSG_NEXT_ATTEMPT_AT = "next_attempt_at"; // earliest time a pending row may be re-sent; 0 = now
+    public static final String COL_MSG_SEQ = "seq"; // per-chat server sequence number; NULL or 0 = unknown (pending or pre-seq)
 
     // Create table SQL statements
     private static final String CREATE_TABLE_APP_SETTINGS = 
@@ -86,7 +93,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         COL_CONV_GROUP_ID + " TEXT, " +
         COL_CONV_IS_PUBLIC + " INTEGER DEFAULT 0, " +
         COL_CONV_VISIBILITY + " TEXT, " +
-        COL_CONV_OTHER_PARTICIPANT + " TEXT" +
+        COL_CONV_OTHER_PARTICIPANT + " TEXT, " +
+        COL_CONV_CONTENT_HASH + " TEXT" +
         ")";
 
     private static final String CREATE_TABLE_MESSAGES = 
@@ -114,6 +122,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         COL_MSG_SYNC_STATUS + " TEXT DEFAULT 'synced', " + // synced, pending, failed
         COL_MSG_SYNC_ATTEMPTS + " INTEGER DEFAULT 0, " +
         COL_MSG_SYNC_ERROR + " TEXT, " +
+        COL_MSG_NEXT_ATTEMPT_AT + " INTEGER DEFAULT 0, " +
+        COL_MSG_SEQ + " INTEGER DEFAULT 0, " +
         "FOREIGN KEY(" + COL_MSG_CHAT_ID + ") REFERENCES " + TABLE_CONVERSATIONS + "(" + COL_CONV_ID + ") ON DELETE CASCADE" +
         ")";
 
@@ -130,6 +140,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_INDEX_MESSAGES_CLIENT_NONCE = 
         "CREATE INDEX IF NOT EXISTS idx_messages_client_nonce ON " + TABLE_MESSAGES + "(" + COL_MSG_CLIENT_NONCE + ")";
 
+    // Covers both the chat filter and the (timestamp, id) keyset order used for history paging,
+    // so a page deep in a long chat costs the same as the first one
+    private static final String CREATE_INDEX_MESSAGES_CHAT_TIMESTAMP =
+        "CREATE INDEX IF NOT EXISTS idx_messages_chat_ts ON " + TABLE_MESSAGES + "(" +
+        COL_MSG_CHAT_ID + ", " + COL_MSG_TIMESTAMP + ", " + COL_MSG_ID + ")";
+
     // ===== Table: calls =====
     public static final String TABLE_CALLS = "calls";
     public static final String COL_CALL_ID = "call_id";
@@ -208,8 +224,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_INDEX_CALLS_STARTED_AT = 
         "CREATE INDEX IF NOT EXISTS idx_calls_started_at ON " + TABLE_CALLS + "(" + COL_CALL_STARTED_AT + ")";
     
+    // Matches the (timestamp, id) keyset order of cached feed pages
     private static final String CREATE_INDEX_POSTS_TIMESTAMP = 
-        "CREATE INDEX IF NOT EXISTS idx_posts_timestamp ON " + TABLE_POSTS + "(" + COL_POST_TIMESTAMP + ")";
+        "CREATE INDEX IF NOT EXISTS idx_posts_ts ON " + TABLE_POSTS + "(" + COL_POST_TIMESTAMP + ", " + COL_POST_ID + ")";
 
     // ===== Table: sync_metadata =====
     public static final String TABLE_SYNC_METADATA = "sync_metadata";
@@ -217,17 +234,231 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COL_SYNC_LAST_SYNC_TIMESTAMP = "last_sync_timestamp"; // Unix timestamp in milliseconds
     public static final String COL_SYNC_LAST_SYNC_SUCCESS = "last_sync_success"; // 1 if success, 0 if failed
     public static final String COL_SYNC_LAST_SYNC_ERROR = "last_sync_error"; // Error message if failed
+    public static final String COL_SYNC_LAST_SYNC_ID = "last_sync_id"; // _id of the last item at last_sync_timestamp
+    public static final String COL_SYNC_SKIPPED_SINCE = "skipped_since"; // earliest updatedAt of an item this build could not decode; 0 = none
+    public static final String COL_SYNC_SKIPPED_VERSION = "skipped_version"; // app versionCode that skipped it
 
     private static final String CREATE_TABLE_SYNC_METADATA = 
         "CREATE TABLE " + TABLE_SYNC_METADATA + " (" +
         COL_SYNC_RESOURCE_TYPE + " TEXT PRIMARY KEY, " +
         COL_SYNC_LAST_SYNC_TIMESTAMP + " INTEGER DEFAULT 0, " +
         COL_SYNC_LAST_SYNC_SUCCESS + " INTEGER DEFAULT 0, " +
-        COL_SYNC_LAST_SYNC_ERROR + " TEXT" +
+        COL_SYNC_LAST_SYNC_ERROR + " TEXT, " +
+        COL_SYNC_LAST_SYNC_ID + " TEXT, " +
+        COL_SYNC_SKIPPED_SINCE + " INTEGER DEFAULT 0, " +
+        COL_SYNC_SKIPPED_VERSION + " INTEGER DEFAULT 0" +
+        ")";
+
+    // ===== Table: chat_sequences =====
+    // Per-chat watermark: every message with seq <= contiguous_seq has been seen (or the
+    // server confirmed it no longer exists). Kept apart from messages so retention can trim
+    // old rows without losing the watermark.
+    public static final String TABLE_CHAT_SEQUENCES = "chat_sequences";
+    public static final String COL_SEQ_CHAT_ID = "chat_id";
+    public static final String COL_SEQ_CONTIGUOUS = "contiguous_seq";
+
+    private static final String CREATE_TABLE_CHAT_SEQUENCES =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_CHAT_SEQUENCES + " (" +
+        COL_SEQ_CHAT_ID + " TEXT PRIMARY KEY, " +
+        COL_SEQ_CONTIGUOUS + " INTEGER NOT NULL DEFAULT 0" +
+        ")";
+
+    // ===== Table: upload_sessions =====
+    // Server-side resumable upload per local source, so a retry after a dropped connection
+    // or a restart continues at the server's offset instead of sending the file again.
+    public static final String TABLE_UPLOAD_SESSIONS = "upload_sessions";
+    public static final String COL_UPLOAD_SOURCE_KEY = "source_key"; // kind|chat|uri|size|modified:head/tail hash
+    public static final String COL_UPLOAD_ID = "upload_id";
+    public static final String COL_UPLOAD_UPDATED_AT = "updated_at";
+
+    private static final String CREATE_TABLE_UPLOAD_SESSIONS =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_UPLOAD_SESSIONS + " (" +
+        COL_UPLOAD_SOURCE_KEY + " TEXT PRIMARY KEY, " +
+        COL_UPLOAD_ID + " TEXT NOT NULL, " +
+        COL_UPLOAD_UPDATED_AT + " INTEGER NOT NULL" +
+        ")";
+
+    // ===== Table: media_hashes =====
+    // Media this device hashed or uploaded, per server and account: one row per source (URI,
+    // size, last-modified time) with its hash and, once known, where it ended up.
+    public static final String TABLE_MEDIA_HASHES = "media_hashes";
+    public static final String COL_MEDIA_KEY = "media_key"; // server|user|kind|uri|size|mtime
+    public static final String COL_MEDIA_SCOPE = "scope"; // server|user|kind
+    public static final String COL_MEDIA_SHA256 = "sha256";
+    public static final String COL_MEDIA_HASH_URL = "url"; // NULL until the server is known to have it
+    public static final String COL_MEDIA_UPDATED_AT = "updated_at"; // when url was last confirmed
+
+    private static final String CREATE_TABLE_MEDIA_HASHES =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_MEDIA_HASHES + " (" +
+        COL_MEDIA_KEY + " TEXT PRIMARY KEY, " +
+        COL_MEDIA_SCOPE + " TEXT NOT NULL, " +
+        COL_MEDIA_SHA256 + " TEXT NOT NULL, " +
+        COL_MEDIA_HASH_URL + " TEXT, " +
+        COL_MEDIA_UPDATED_AT + " INTEGER NOT NULL" +
         ")";
 
-    public DatabaseHelper(Context context) {
+    private static final String CREATE_INDEX_MEDIA_HASHES_SHA256 =
+        "CREATE INDEX IF NOT EXISTS idx_media_hashes_scope_sha256 ON " + TABLE_MEDIA_HASHES +
+        "(" + COL_MEDIA_SCOPE + ", " + COL_MEDIA_SHA256 + ")";
+
+    // ===== Table: media_files =====
+    // Downloaded media by URL. Files are named by the hash of their content, so several URLs
+    // with the same bytes share one file; the least recently used go when over budget.
+    public static final String TABLE_MEDIA_FILES = "media_files";
+    public static final String COL_MEDIA_FILE_URL = "url";
+    public static final String COL_MEDIA_FILE_PATH = "path";
+    public static final String COL_MEDIA_FILE_SIZE = "size";
+    public static final String COL_MEDIA_FILE_LAST_ACCESS = "last_access";
+
+    private static final String CREATE_TABLE_MEDIA_FILES =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_MEDIA_FILES + " (" +
+        COL_MEDIA_FILE_URL + " TEXT PRIMARY KEY, " +
+        COL_MEDIA_FILE_PATH + " TEXT NOT NULL, " +
+        COL_MEDIA_FILE_SIZE + " INTEGER NOT NULL, " +
+        COL_MEDIA_FILE_LAST_ACCESS + " INTEGER NOT NULL" +
+        ")";
+
+    // ===== Child tables (normalized out of the JSON columns above) =====
+    // Rows are rewritten by the owning repository whenever the parent is saved, and removed
+    // by the cleanup triggers below when the parent row is deleted.
+
+    // message_reactions: one row per reaction, replaces reading messages.reactions
+    public static final String TABLE_MESSAGE_REACTIONS = "message_reactions";
+    public static final String COL_REACT_MESSAGE_ID = "message_id";
+    public static final String COL_REACT_POSITION = "position";
+    public static final String COL_REACT_USER_ID = "user_id";
+    public static final String COL_REACT_USERNAME = "username";
+    public static final String COL_REACT_EMOJI = "emoji";
+
+    private static final String CREATE_TABLE_MESSAGE_REACTIONS =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_MESSAGE_REACTIONS + " (" +
+        COL_REACT_MESSAGE_ID + " TEXT NOT NULL, " +
+        COL_REACT_POSITION + " INTEGER NOT NULL, " +
+        COL_REACT_USER_ID + " TEXT, " +
+        COL_REACT_USERNAME + " TEXT, " +
+        COL_REACT_EMOJI + " TEXT NOT NULL, " +
+        "PRIMARY KEY(" + COL_REACT_MESSAGE_ID + ", " + COL_REACT_POSITION + ")" +
+        ") WITHOUT ROWID";
+
+    // message_attachments: one row per attachment. messages.attachments keeps the wire JSON
+    // because rendering, forwarding and the outbox pass it through verbatim.
+    public static final String TABLE_MESSAGE_ATTACHMENTS = "message_attachments";
+    public static final String COL_ATT_MESSAGE_ID = "message_id";
+    public static final String COL_ATT_POSITION = "position";
+    public static final String COL_ATT_URL = "url";
+    public static final String COL_ATT_MIME_TYPE = "mime_type";
+    public static final String COL_ATT_NAME = "name";
+    public static final String COL_ATT_FILENAME = "filename"; // stored name on the server
+    public static final String COL_ATT_SIZE = "size"; // bytes
+    public static final String COL_ATT_THUMBNAIL = "thumbnail";
+
+    private static final String CREATE_TABLE_MESSAGE_ATTACHMENTS =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_MESSAGE_ATTACHMENTS + " (" +
+        COL_ATT_MESSAGE_ID + " TEXT NOT NULL, " +
+        COL_ATT_POSITION + " INTEGER NOT NULL, " +
+        COL_ATT_URL + " TEXT, " +
+        COL_ATT_MIME_TYPE + " TEXT, " +
+        COL_ATT_NAME + " TEXT, " +
+        COL_ATT_FILENAME + " TEXT, " +
+        COL_ATT_SIZE + " INTEGER DEFAULT 0, " +
+        COL_ATT_THUMBNAIL + " TEXT, " +
+        "PRIMARY KEY(" + COL_ATT_MESSAGE_ID + ", " + COL_ATT_POSITION + ")" +
+        ") WITHOUT ROWID";
+
+    // conversation_participants: participant IDs (position set, in list order) plus the
+    // private-chat peer profile (is_peer = 1), replacing participants / other_participant_json
+    public static final String TABLE_CONVERSATION_PARTICIPANTS = "conversation_participants";
+    public static final String COL_PART_CONVERSATION_ID = "conversation_id";
+    public static final String COL_PART_USER_ID = "user_id";
+    public static final String COL_PART_POSITION = "position"; // NULL = peer only, not in participant list
+    public static final String COL_PART_IS_PEER = "is_peer";
+    public static final String COL_PART_USERNAME = "username";
+    public static final String COL_PART_EMAIL = "email";
+    public static final String COL_PART_AVATAR = "avatar";
+    public static final String COL_PART_FIRST_NAME = "first_name";
+    public static final String COL_PART_LAST_NAME = "last_name";
+    public static final String COL_PART_BIO = "bio";
+    public static final String COL_PART_PHONE = "phone_number";
+    public static final String COL_PART_LAST_SEEN = "last_seen";
+
+    private static final String CREATE_TABLE_CONVERSATION_PARTICIPANTS =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_CONVERSATION_PARTICIPANTS + " (" +
+        COL_PART_CONVERSATION_ID + " TEXT NOT NULL, " +
+        COL_PART_USER_ID + " TEXT NOT NULL, " +
+        COL_PART_POSITION + " INTEGER, " +
+        COL_PART_IS_PEER + " INTEGER DEFAULT 0, " +
+        COL_PART_USERNAME + " TEXT, " +
+        COL_PART_EMAIL + " TEXT, " +
+        COL_PART_AVATAR + " TEXT, " +
+        COL_PART_FIRST_NAME + " TEXT, " +
+        COL_PART_LAST_NAME + " TEXT, " +
+        COL_PART_BIO + " TEXT, " +
+        COL_PART_PHONE + " TEXT, " +
+        COL_PART_LAST_SEEN + " INTEGER DEFAULT 0, " +
+        "PRIMARY KEY(" + COL_PART_CONVERSATION_ID + ", " + COL_PART_USER_ID + ")" +
+        ") WITHOUT ROWID";
+
+    private static final String CREATE_INDEX_PARTICIPANTS_USER_ID =
+        "CREATE INDEX IF NOT EXISTS idx_participants_user_id ON " + TABLE_CONVERSATION_PARTICIPANTS +
+        "(" + COL_PART_USER_ID + ")";
+
+    // post_media: media URLs of a post in display order, replacing posts.media_urls
+    public static final String TABLE_POST_MEDIA = "post_media";
+    public static final String COL_MEDIA_POST_ID = "post_id";
+    public static final String COL_MEDIA_POSITION = "position";
+    public static final String COL_MEDIA_URL = "url";
+
+    private static final String CREATE_TABLE_POST_MEDIA =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_POST_MEDIA + " (" +
+        COL_MEDIA_POST_ID + " TEXT NOT NULL, " +
+        COL_MEDIA_POSITION + " INTEGER NOT NULL, " +
+        COL_MEDIA_URL + " TEXT NOT NULL, " +
+        "PRIMARY KEY(" + COL_MEDIA_POST_ID + ", " + COL_MEDIA_POSITION + ")" +
+        ") WITHOUT ROWID";
+
+    // ===== Virtual table: messages_fts (full-text index over messages) =====
+    // External-content table: stores only the index, rows are read back from messages by rowid.
+    // Kept in sync by triggers; message inserts must be plain or OR REPLACE (never OR IGNORE),
+    // because the BEFORE INSERT trigger drops the index entry of the row being replaced.
+    public static final String TABLE_MESSAGES_FTS = "messages_fts";
+
+    private static final String CREATE_TABLE_MESSAGES_FTS5 =
+        "CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts5(" +
+        COL_MSG_CONTENT + ", " + COL_MSG_SENDER_NAME + ", " +
+        "content='" + TABLE_MESSAGES + "', content_rowid='rowid', " +
+        "tokenize='unicode61 remove_diacritics 2')";
+
+    // Fallback for SQLite builds without FTS5
+    private static final String CREATE_TABLE_MESSAGES_FTS4 =
+        "CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts4(" +
+        "content=\"" + TABLE_MESSAGES + "\", " +
+        COL_MSG_CONTENT + ", " + COL_MSG_SENDER_NAME + ", " +
+        "tokenize=unicode61)";
+
+    private static DatabaseHelper instance;
+
+    /**
+     * Process-wide helper. All repositories share this one connection pool;
+     * never close the database returned by it.
+     */
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL lets readers run concurrently with the single writer (see DatabaseExecutor)
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Lets StorageRetentionManager hand freed pages back with incremental_vacuum.
+        // Only applies to a fresh file; existing files are converted by its one-time VACUUM.
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     @Override
@@ -238,14 +469,22 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_CALLS);
         db.execSQL(CREATE_TABLE_POSTS);
         db.execSQL(CREATE_TABLE_SYNC_METADATA);
+        db.execSQL(CREATE_TABLE_CHAT_SEQUENCES);
+        db.execSQL(CREATE_TABLE_UPLOAD_SESSIONS);
+        db.execSQL(CREATE_TABLE_MEDIA_HASHES);
+        db.execSQL(CREATE_TABLE_MEDIA_FILES);
         
         // Create indexes
-        db.execSQL(CREATE_INDEX_MESSAGES_CHAT_ID);
+        db.execSQL(CREATE_INDEX_MESSAGES_CHAT_TIMESTAMP);
         db.execSQL(CREATE_INDEX_MESSAGES_TIMESTAMP);
         db.execSQL(CREATE_INDEX_MESSAGES_SYNC_STATUS);
         db.execSQL(CREATE_INDEX_MESSAGES_CLIENT_NONCE);
         db.execSQL(CREATE_INDEX_CALLS_STARTED_AT);
         db.execSQL(CREATE_INDEX_POSTS_TIMESTAMP);
+        db.execSQL(CREATE_INDEX_MEDIA_HASHES_SHA256);
+
+        createMessageSearchIndex(db);
+        createChildTables(db);
         
         Log.d(TAG, "Database created successfully with offline chat, calls, and posts tables");
     }
@@ -298,6 +537,279 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 Log.e(TAG, "Error adding other_participant_json column: " + e.getMessage());
             }
         }
+
+        if (oldVersion < 8) {
+            // Composite index replaces the chat_id-only one (it is a prefix of the new index)
+            db.execSQL(CREATE_INDEX_MESSAGES_CHAT_TIMESTAMP);
+            db.execSQL("DROP INDEX IF EXISTS idx_messages_chat_id");
+            Log.d(TAG, "Added composite chat/timestamp index on messages");
+        }
+
+        if (oldVersion < 9) {
+            createMessageSearchIndex(db);
+        }
+
+        if (oldVersion < 10) {
+            createChildTables(db);
+            backfillChildTables(db);
+            Log.d(TAG, "Moved reactions, attachments, participants and post media into child tables");
+        }
+
+        if (oldVersion < 11) {
+            db.execSQL(CREATE_INDEX_POSTS_TIMESTAMP);
+            db.execSQL("DROP INDEX IF EXISTS idx_posts_timestamp");
+        }
+
+        if (oldVersion < 12) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_CONVERSATIONS + " ADD COLUMN " + COL_CONV_CONTENT_HASH + " TEXT");
+                Log.d(TAG, "Added content_hash column to conversations table");
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding content_hash column: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 13) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COL_MSG_NEXT_ATTEMPT_AT + " INTEGER DEFAULT 0");
+                Log.d(TAG, "Added next_attempt_at column to messages table");
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding next_attempt_at column: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 14) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COL_MSG_SEQ + " INTEGER DEFAULT 0");
+                Log.d(TAG, "Added seq column to messages table");
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding seq column: " + e.getMessage());
+            }
+            db.execSQL(CREATE_TABLE_CHAT_SEQUENCES);
+        }
+
+        if (oldVersion < 15) {
+            db.execSQL(CREATE_TABLE_UPLOAD_SESSIONS);
+        }
+
+        if (oldVersion < 17) {
+            db.execSQL(CREATE_TABLE_MEDIA_FILES);
+        }
+
+        // Created with the column since version 18 (also by the oldVersion < 5 step above)
+        if (oldVersion >= 5 && oldVersion < 18) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_SYNC_METADATA + " ADD COLUMN " + COL_SYNC_LAST_SYNC_ID + " TEXT");
+                Log.d(TAG, "Added last_sync_id column to sync_metadata table");
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding last_sync_id column: " + e.getMessage());
+            }
+        }
+
+        // Interim builds left version 19 with or without message_attachments; rebuild it
+        // everywhere so every install ends up with the same table, filename column included
+        if (oldVersion >= 10 && oldVersion < 20) {
+            db.execSQL("DROP TRIGGER IF EXISTS messages_children_ad");
+            db.execSQL("DROP TRIGGER IF EXISTS messages_children_au");
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGE_ATTACHMENTS);
+            createChildTables(db);
+            backfillAttachmentRows(db);
+            Log.d(TAG, "Rebuilt message_attachments");
+        }
+
+        // The only media_hashes step. Earlier builds created it at 16 with other keys and
+        // dropped it at 19; whatever is left is replaced, the rows are only a cache
+        if (oldVersion < 21) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_MEDIA_HASHES);
+            db.execSQL(CREATE_TABLE_MEDIA_HASHES);
+            db.execSQL(CREATE_INDEX_MEDIA_HASHES_SHA256);
+        }
+
+        // Created with the columns since version 22 (also by the oldVersion < 5 step above)
+        if (oldVersion >= 5 && oldVersion < 22) {
+            db.execSQL("ALTER TABLE " + TABLE_SYNC_METADATA + " ADD COLUMN " + COL_SYNC_SKIPPED_SINCE + " INTEGER DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_SYNC_METADATA + " ADD COLUMN " + COL_SYNC_SKIPPED_VERSION + " INTEGER DEFAULT 0");
+        }
+    }
+
+    /**
+     * Create the normalized child tables, their indexes and the triggers that keep them
+     * attached to their parent rows (deletes cascade, a message ID change re-keys its rows).
+     */
+    private static void createChildTables(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_MESSAGE_REACTIONS);
+        db.execSQL(CREATE_TABLE_MESSAGE_ATTACHMENTS);
+        db.execSQL(CREATE_TABLE_CONVERSATION_PARTICIPANTS);
+        db.execSQL(CREATE_INDEX_PARTICIPANTS_USER_ID);
+        db.execSQL(CREATE_TABLE_POST_MEDIA);
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_children_ad AFTER DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                "DELETE FROM " + TABLE_MESSAGE_REACTIONS + " WHERE " + COL_REACT_MESSAGE_ID + " = old." + COL_MSG_ID + "; " +
+                "DELETE FROM " + TABLE_MESSAGE_ATTACHMENTS + " WHERE " + COL_ATT_MESSAGE_ID + " = old." + COL_MSG_ID + "; END");
+        // Temp -> server ID promotion updates messages.id in place
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_children_au AFTER UPDATE OF " + COL_MSG_ID + " ON " + TABLE_MESSAGES + " BEGIN " +
+                "UPDATE " + TABLE_MESSAGE_REACTIONS + " SET " + COL_REACT_MESSAGE_ID + " = new." + COL_MSG_ID +
+                " WHERE " + COL_REACT_MESSAGE_ID + " = old." + COL_MSG_ID + "; " +
+                "UPDATE " + TABLE_MESSAGE_ATTACHMENTS + " SET " + COL_ATT_MESSAGE_ID + " = new." + COL_MSG_ID +
+                " WHERE " + COL_ATT_MESSAGE_ID + " = old." + COL_MSG_ID + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS conversations_children_ad AFTER DELETE ON " + TABLE_CONVERSATIONS + " BEGIN " +
+                "DELETE FROM " + TABLE_CONVERSATION_PARTICIPANTS + " WHERE " + COL_PART_CONVERSATION_ID + " = old." + COL_CONV_ID + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS posts_children_ad AFTER DELETE ON " + TABLE_POSTS + " BEGIN " +
+                "DELETE FROM " + TABLE_POST_MEDIA + " WHERE " + COL_MEDIA_POST_ID + " = old." + COL_POST_ID + "; END");
+    }
+
+    /** Fill message_attachments from messages.attachments, leaving the other child tables alone. */
+    private static void backfillAttachmentRows(SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("SELECT " + COL_MSG_ID + ", " + COL_MSG_ATTACHMENTS + " FROM " + TABLE_MESSAGES +
+                " WHERE " + COL_MSG_ATTACHMENTS + " IS NOT NULL AND " + COL_MSG_ATTACHMENTS + " != '' AND " +
+                COL_MSG_ATTACHMENTS + " != '[]'", null)) {
+            while (c.moveToNext()) {
+                MessageRepository.writeAttachmentRows(db, c.getString(0), Message.parseAttachments(c.getString(1)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error backfilling message attachments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One-time copy of the legacy JSON columns into the child tables. The JSON columns are
+     * left in place (SQLite on minSdk cannot drop columns) but are no longer read.
+     */
+    private static void backfillChildTables(SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("SELECT " + COL_MSG_ID + ", " + COL_MSG_REACTIONS + ", " + COL_MSG_ATTACHMENTS +
+                " FROM " + TABLE_MESSAGES + " WHERE (" + COL_MSG_REACTIONS + " IS NOT NULL AND " + COL_MSG_REACTIONS + " != '' AND " +
+                COL_MSG_REACTIONS + " != '[]') OR (" + COL_MSG_ATTACHMENTS + " IS NOT NULL AND " + COL_MSG_ATTACHMENTS + " != '' AND " +
+                COL_MSG_ATTACHMENTS + " != '[]')", null)) {
+            while (c.moveToNext()) {
+                Message message = new Message();
+                message.setReactionsRaw(c.getString(1));
+                message.setAttachments(c.getString(2));
+                MessageRepository.writeChildRows(db, c.getString(0), message.getReactionList(), message.getAttachmentList());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error backfilling message child rows: " + e.getMessage(), e);
+        }
+
+        try (Cursor c = db.rawQuery("SELECT " + COL_CONV_ID + ", " + COL_CONV_PARTICIPANTS + ", " + COL_CONV_OTHER_PARTICIPANT +
+                " FROM " + TABLE_CONVERSATIONS, null)) {
+            while (c.moveToNext()) {
+                java.util.List<String> ids = new java.util.ArrayList<>();
+                String participantsJson = c.getString(1);
+                if (participantsJson != null && !participantsJson.isEmpty()) {
+                    try {
+                        org.json.JSONArray arr = new org.json.JSONArray(participantsJson);
+                        for (int i = 0; i < arr.length(); i++) {
+                            ids.add(arr.getString(i));
+                        }
+                    } catch (org.json.JSONException ignored) {
+                    }
+                }
+                com.example.chatappjava.models.User peer = null;
+                String peerJson = c.getString(2);
+                if (peerJson != null && !peerJson.isEmpty()) {
+                    try {
+                        peer = com.example.chatappjava.models.User.fromJsonStatic(new org.json.JSONObject(peerJson));
+                    } catch (org.json.JSONException ignored) {
+                    }
+                }
+                ConversationRepository.writeParticipantRows(db, c.getString(0), ids, peer);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error backfilling conversation participants: " + e.getMessage(), e);
+        }
+
+        try (Cursor c = db.rawQuery("SELECT " + COL_POST_ID + ", " + COL_POST_MEDIA_URLS + " FROM " + TABLE_POSTS +
+                " WHERE " + COL_POST_MEDIA_URLS + " IS NOT NULL", null)) {
+            while (c.moveToNext()) {
+                java.util.List<String> urls = new java.util.ArrayList<>();
+                try {
+                    org.json.JSONArray arr = new org.json.JSONArray(c.getString(1));
+                    for (int i = 0; i < arr.length(); i++) {
+                        urls.add(arr.getString(i));
+                    }
+                } catch (org.json.JSONException ignored) {
+                }
+                PostRepository.writeMediaRows(db, c.getString(0), urls);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error backfilling post media: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create messages_fts (FTS5, or FTS4 where FTS5 is not compiled in), its sync triggers,
+     * and index every existing message.
+     */
+    private static void createMessageSearchIndex(SQLiteDatabase db) {
+        String fts = TABLE_MESSAGES_FTS;
+        String cols = COL_MSG_CONTENT + ", " + COL_MSG_SENDER_NAME;
+        String newVals = "new." + COL_MSG_CONTENT + ", new." + COL_MSG_SENDER_NAME;
+        String oldVals = "old." + COL_MSG_CONTENT + ", old." + COL_MSG_SENDER_NAME;
+
+        db.execSQL("DROP TABLE IF EXISTS " + fts);
+        boolean fts5;
+        try {
+            db.execSQL(CREATE_TABLE_MESSAGES_FTS5);
+            fts5 = true;
+        } catch (SQLiteException e) {
+            Log.w(TAG, "FTS5 unavailable, falling back to FTS4: " + e.getMessage());
+            db.execSQL(CREATE_TABLE_MESSAGES_FTS4);
+            fts5 = false;
+        }
+
+        if (fts5) {
+            // FTS5 external content: removing an entry needs the old column values
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_bi BEFORE INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(" + fts + ", rowid, " + cols + ") " +
+                    "SELECT 'delete', rowid, " + cols + " FROM " + TABLE_MESSAGES +
+                    " WHERE " + COL_MSG_ID + " = new." + COL_MSG_ID + "; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(rowid, " + cols + ") VALUES (new.rowid, " + newVals + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_ad AFTER DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(" + fts + ", rowid, " + cols + ") VALUES ('delete', old.rowid, " + oldVals + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_au AFTER UPDATE OF " + cols + " ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(" + fts + ", rowid, " + cols + ") VALUES ('delete', old.rowid, " + oldVals + "); " +
+                    "INSERT INTO " + fts + "(rowid, " + cols + ") VALUES (new.rowid, " + newVals + "); END");
+        } else {
+            // FTS4 external content: entries are removed by docid while the source row still exists
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_bi BEFORE INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "DELETE FROM " + fts + " WHERE docid IN (SELECT rowid FROM " + TABLE_MESSAGES +
+                    " WHERE " + COL_MSG_ID + " = new." + COL_MSG_ID + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(docid, " + cols + ") VALUES (new.rowid, " + newVals + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_bd BEFORE DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                    "DELETE FROM " + fts + " WHERE docid = old.rowid; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_bu BEFORE UPDATE OF " + cols + " ON " + TABLE_MESSAGES + " BEGIN " +
+                    "DELETE FROM " + fts + " WHERE docid = old.rowid; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS messages_fts_au AFTER UPDATE OF " + cols + " ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + fts + "(docid, " + cols + ") VALUES (new.rowid, " + newVals + "); END");
+        }
+
+        rebuildMessageSearchIndex(db);
+        Log.d(TAG, "Created " + (fts5 ? "FTS5" : "FTS4") + " message search index");
+    }
+
+    /**
+     * Re-index all messages from scratch. Needed after anything that can renumber
+     * messages rowids (e.g. a full VACUUM), since the index refers to rows by rowid.
+     */
+    public static void rebuildMessageSearchIndex(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + "(" + TABLE_MESSAGES_FTS + ") VALUES('rebuild')");
+    }
+
+    /**
+     * Whether messages_fts was created with FTS5 (bm25 ranking available) rather than FTS4.
+     */
+    public static boolean isMessageSearchFts5(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{TABLE_MESSAGES_FTS})) {
+            if (cursor.moveToFirst()) {
+                String sql = cursor.getString(0);
+                return sql != null && sql.toLowerCase(java.util.Locale.US).contains("fts5");
+            }
+        }
+        return false;
     }
 }
 
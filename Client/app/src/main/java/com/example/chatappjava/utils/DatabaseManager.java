@@ -7,6 +7,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public class DatabaseManager {
     private static final String TAG = "DatabaseManager";
@@ -26,74 +29,140 @@ public class DatabaseManager {
     private static final String KEY_NOTIFY_PUSH = "notifyPushEnabled";
     private static final String KEY_NOTIFY_SOUND = "notifySoundEnabled";
     private static final String KEY_NOTIFY_VIBRATE = "notifyVibrateEnabled";
+    private static final String KEY_RETENTION_MESSAGES_PER_CHAT = "retentionMessagesPerChat";
+    private static final String KEY_RETENTION_POST_DAYS = "retentionPostDays";
+    private static final String KEY_RETENTION_CALL_DAYS = "retentionCallDays";
+    private static final String KEY_STORAGE_BUDGET_MB = "storageBudgetMb";
+    private static final String KEY_LAST_COMPACTION_AT = "lastCompactionAt";
+
+    public static final int DEFAULT_RETENTION_MESSAGES_PER_CHAT = 2000;
+    public static final int DEFAULT_RETENTION_POST_DAYS = 30;
+    public static final int DEFAULT_RETENTION_CALL_DAYS = 90;
+    public static final int DEFAULT_STORAGE_BUDGET_MB = 64;
     
+    // Immutable copy of app_settings shared by every DatabaseManager instance.
+    // Loaded once, then replaced wholesale after each write (write-through).
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static volatile Map<String, String> settingsSnapshot;
+
     private final DatabaseHelper dbHelper;
     private final Context context;
 
     public DatabaseManager(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
     }
 
     /**
-     * Save a string value
+     * Save a string value (written to SQLite, then published to the in-memory snapshot)
      */
     private void putString(String key, String value) {
-        try {
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
-            if (db == null) {
-                return;
+        Map<String, String> single = new HashMap<>();
+        single.put(key, value);
+        putStrings(single);
+    }
+
+    /**
+     * Save several values in one transaction and one snapshot swap
+     */
+    private void putStrings(Map<String, String> entries) {
+        synchronized (SNAPSHOT_LOCK) {
+            try {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                if (db == null) {
+                    return;
+                }
+
+                db.beginTransaction();
+                try {
+                    ContentValues values = new ContentValues();
+                    for (Map.Entry<String, String> entry : entries.entrySet()) {
+                        values.clear();
+                        values.put(DatabaseHelper.COLUMN_KEY, entry.getKey());
+                        values.put(DatabaseHelper.COLUMN_VALUE, entry.getValue());
+
+                        // Use INSERT OR REPLACE to handle both insert and update
+                        db.insertWithOnConflict(
+                            DatabaseHelper.TABLE_APP_SETTINGS,
+                            null,
+                            values,
+                            SQLiteDatabase.CONFLICT_REPLACE
+                        );
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                // If nothing is cached yet, the next read loads the row we just wrote
+                Map<String, String> current = settingsSnapshot;
+                if (current != null) {
+                    Map<String, String> updated = new HashMap<>(current);
+                    updated.putAll(entries);
+                    settingsSnapshot = Collections.unmodifiableMap(updated);
+                }
+            } catch (Exception e) {
+                android.util.Log.w("DatabaseManager", "Error putting strings for keys " + entries.keySet() + ": " + e.getMessage());
             }
-            
-            ContentValues values = new ContentValues();
-            values.put(DatabaseHelper.COLUMN_KEY, key);
-            values.put(DatabaseHelper.COLUMN_VALUE, value);
-            
-            // Use INSERT OR REPLACE to handle both insert and update
-            db.insertWithOnConflict(
-                DatabaseHelper.TABLE_APP_SETTINGS,
-                null,
-                values,
-                SQLiteDatabase.CONFLICT_REPLACE
-            );
-            db.close();
-        } catch (Exception e) {
-            android.util.Log.w("DatabaseManager", "Error putting string for key " + key + ": " + e.getMessage());
         }
     }
 
     /**
-     * Get a string value
+     * Get a string value (served from the in-memory snapshot, no disk I/O)
      */
     private String getString(String key, String defaultValue) {
+        Map<String, String> current = snapshot();
+        return current.containsKey(key) ? current.get(key) : defaultValue;
+    }
+
+    /**
+     * Current settings snapshot, loading app_settings once on first use
+     */
+    private Map<String, String> snapshot() {
+        Map<String, String> current = settingsSnapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (SNAPSHOT_LOCK) {
+            if (settingsSnapshot == null) {
+                Map<String, String> loaded = loadSnapshot();
+                if (loaded == null) {
+                    // Don't cache a failed load; try again on the next read
+                    return Collections.emptyMap();
+                }
+                settingsSnapshot = loaded;
+            }
+            return settingsSnapshot;
+        }
+    }
+
+    private Map<String, String> loadSnapshot() {
         try {
             SQLiteDatabase db = dbHelper.getReadableDatabase();
             if (db == null) {
-                return defaultValue;
+                return null;
             }
-            
-            String value = defaultValue;
-            
+
+            Map<String, String> loaded = new HashMap<>();
             Cursor cursor = db.query(
                 DatabaseHelper.TABLE_APP_SETTINGS,
-                new String[]{DatabaseHelper.COLUMN_VALUE},
-                DatabaseHelper.COLUMN_KEY + " = ?",
-                new String[]{key},
-                null, null, null
+                new String[]{DatabaseHelper.COLUMN_KEY, DatabaseHelper.COLUMN_VALUE},
+                null, null, null, null, null
             );
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                int columnIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_VALUE);
-                if (columnIndex >= 0) {
-                    value = cursor.getString(columnIndex);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        loaded.put(cursor.getString(0), cursor.getString(1));
+                    }
+                } finally {
+                    cursor.close();
                 }
-                cursor.close();
             }
-            db.close();
-            return value;
+            Log.d(TAG, "Loaded " + loaded.size() + " app settings into memory");
+            return Collections.unmodifiableMap(loaded);
         } catch (Exception e) {
-            android.util.Log.w("DatabaseManager", "Error getting string for key " + key + ": " + e.getMessage());
-            return defaultValue;
+            android.util.Log.w("DatabaseManager", "Error loading app settings: " + e.getMessage());
+            return null;
         }
     }
 
@@ -137,46 +206,75 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Save a long value
+     */
+    private void putLong(String key, long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    /**
+     * Get a long value
+     */
+    private long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * Check if a key exists
      */
     private boolean contains(String key) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.query(
-            DatabaseHelper.TABLE_APP_SETTINGS,
-            new String[]{DatabaseHelper.COLUMN_KEY},
-            DatabaseHelper.COLUMN_KEY + " = ?",
-            new String[]{key},
-            null, null, null
-        );
-        boolean exists = cursor != null && cursor.getCount() > 0;
-        if (cursor != null) {
-            cursor.close();
-        }
-        db.close();
-        return exists;
+        return snapshot().containsKey(key);
     }
 
     /**
-     * Remove a key
+     * Remove keys in one transaction and one snapshot swap
      */
-    private void remove(String key) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        db.delete(
-            DatabaseHelper.TABLE_APP_SETTINGS,
-            DatabaseHelper.COLUMN_KEY + " = ?",
-            new String[]{key}
-        );
-        db.close();
+    private void removeAll(String... keys) {
+        synchronized (SNAPSHOT_LOCK) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String key : keys) {
+                    db.delete(
+                        DatabaseHelper.TABLE_APP_SETTINGS,
+                        DatabaseHelper.COLUMN_KEY + " = ?",
+                        new String[]{key}
+                    );
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            Map<String, String> current = settingsSnapshot;
+            if (current != null) {
+                Map<String, String> updated = new HashMap<>(current);
+                for (String key : keys) {
+                    updated.remove(key);
+                }
+                settingsSnapshot = Collections.unmodifiableMap(updated);
+            }
+        }
     }
 
     /**
      * Clear all data
      */
     public void clearAll() {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        db.delete(DatabaseHelper.TABLE_APP_SETTINGS, null, null);
-        db.close();
+        synchronized (SNAPSHOT_LOCK) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.delete(DatabaseHelper.TABLE_APP_SETTINGS, null, null);
+            settingsSnapshot = Collections.emptyMap();
+        }
     }
 
     /**
@@ -186,13 +284,15 @@ public class DatabaseManager {
         try {
             JSONObject userJson = new JSONObject(userInfo);
             
-            putBoolean(KEY_IS_LOGGED_IN, true);
-            putString(KEY_TOKEN, token);
-            putString(KEY_USER_INFO, userInfo);
-            putString(KEY_USER_ID, userJson.optString("_id", ""));
-            putString(KEY_USER_NAME, userJson.optString("username", ""));
-            putString(KEY_USER_EMAIL, userJson.optString("email", ""));
-            putString(KEY_USER_AVATAR, userJson.optString("avatar", ""));
+            Map<String, String> entries = new HashMap<>();
+            entries.put(KEY_IS_LOGGED_IN, String.valueOf(true));
+            entries.put(KEY_TOKEN, token);
+            entries.put(KEY_USER_INFO, userInfo);
+            entries.put(KEY_USER_ID, userJson.optString("_id", ""));
+            entries.put(KEY_USER_NAME, userJson.optString("username", ""));
+            entries.put(KEY_USER_EMAIL, userJson.optString("email", ""));
+            entries.put(KEY_USER_AVATAR, userJson.optString("avatar", ""));
+            putStrings(entries);
             
             Log.d(TAG, "Login info saved successfully");
             
@@ -256,13 +356,15 @@ public class DatabaseManager {
      * Clear all login information (logout)
      */
     public void clearLoginInfo() {
-        remove(KEY_IS_LOGGED_IN);
-        remove(KEY_TOKEN);
-        remove(KEY_USER_INFO);
-        remove(KEY_USER_ID);
-        remove(KEY_USER_NAME);
-        remove(KEY_USER_EMAIL);
-        remove(KEY_USER_AVATAR);
+        removeAll(
+            KEY_IS_LOGGED_IN,
+            KEY_TOKEN,
+            KEY_USER_INFO,
+            KEY_USER_ID,
+            KEY_USER_NAME,
+            KEY_USER_EMAIL,
+            KEY_USER_AVATAR
+        );
         Log.d(TAG, "Login info cleared");
     }
 
@@ -307,10 +409,13 @@ public class DatabaseManager {
     }
 
     public void clearServerOverrides() {
-        remove(KEY_OVERRIDE_SERVER_IP);
-        remove(KEY_OVERRIDE_SERVER_PORT);
-        remove(KEY_OVERRIDE_USE_HTTPS);
-        remove(KEY_OVERRIDE_USE_WSS);
+        removeAll(
+            KEY_OVERRIDE_SERVER_IP,
+            KEY_OVERRIDE_SERVER_PORT,
+            KEY_OVERRIDE_USE_HTTPS,
+            KEY_OVERRIDE_USE_WSS
+        );
+        com.example.chatappjava.config.ServerConfig.invalidate();
     }
 
     // ===== Notification preferences =====
@@ -340,9 +445,62 @@ public class DatabaseManager {
     }
 
     public void resetNotificationSettings() {
-        remove(KEY_NOTIFY_PUSH);
-        remove(KEY_NOTIFY_SOUND);
-        remove(KEY_NOTIFY_VIBRATE);
+        removeAll(KEY_NOTIFY_PUSH, KEY_NOTIFY_SOUND, KEY_NOTIFY_VIBRATE);
+    }
+
+    // ===== Local storage retention (see StorageRetentionManager) =====
+
+    /** Newest messages kept per chat; pending and failed sends are always kept. 0 = unlimited. */
+    public int getRetentionMessagesPerChat() {
+        return getInt(KEY_RETENTION_MESSAGES_PER_CHAT, DEFAULT_RETENTION_MESSAGES_PER_CHAT);
+    }
+
+    public void setRetentionMessagesPerChat(int count) {
+        putInt(KEY_RETENTION_MESSAGES_PER_CHAT, count);
+    }
+
+    /** Cached posts older than this many days are dropped. 0 = unlimited. */
+    public int getRetentionPostDays() {
+        return getInt(KEY_RETENTION_POST_DAYS, DEFAULT_RETENTION_POST_DAYS);
+    }
+
+    public void setRetentionPostDays(int days) {
+        putInt(KEY_RETENTION_POST_DAYS, days);
+    }
+
+    /** Call history older than this many days is dropped. 0 = unlimited. */
+    public int getRetentionCallDays() {
+        return getInt(KEY_RETENTION_CALL_DAYS, DEFAULT_RETENTION_CALL_DAYS);
+    }
+
+    public void setRetentionCallDays(int days) {
+        putInt(KEY_RETENTION_CALL_DAYS, days);
+    }
+
+    /** Upper bound for the live (non-free) size of the local database. 0 = unlimited. */
+    public int getStorageBudgetMb() {
+        return getInt(KEY_STORAGE_BUDGET_MB, DEFAULT_STORAGE_BUDGET_MB);
+    }
+
+    public void setStorageBudgetMb(int megabytes) {
+        putInt(KEY_STORAGE_BUDGET_MB, megabytes);
+    }
+
+    public long getLastCompactionAt() {
+        return getLong(KEY_LAST_COMPACTION_AT, 0);
+    }
+
+    public void setLastCompactionAt(long timestamp) {
+        putLong(KEY_LAST_COMPACTION_AT, timestamp);
+    }
+
+    public void resetRetentionSettings() {
+        removeAll(
+            KEY_RETENTION_MESSAGES_PER_CHAT,
+            KEY_RETENTION_POST_DAYS,
+            KEY_RETENTION_CALL_DAYS,
+            KEY_STORAGE_BUDGET_MB
+        );
     }
 }
 
@@ -0,0 +1,184 @@
+package com.example.chatappjava.utils;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull-parses a delta-sync response of the form
+ * {"success": .., "message": .., "data": {"<items>": [..], "updated_at": .., "since_id": .., "has_more": ..}}
+ * without building the whole tree. Items are handed out in bounded batches as they are
+ * read, so memory stays flat however far behind the client is.
+ *
+ * The server sends items in ascending (updatedAt, _id) order, which makes the last item
+ * seen so far a safe checkpoint after every batch. The _id matters: a bulk update stamps
+ * many rows with the same millisecond, and a page may end in the middle of them.
+ */
+final class DeltaSyncReader {
+
+    /** Position in the server's (updatedAt, _id) order; the next page starts right after it. */
+    static final class Checkpoint {
+        static final Checkpoint START = new Checkpoint(0, null);
+
+        final long timestamp;
+        /** Null when unknown (servers before keyset paging); sorts before every id. */
+        final String id;
+
+        Checkpoint(long timestamp, String id) {
+            this.timestamp = timestamp;
+            this.id = id != null && !id.isEmpty() ? id : null;
+        }
+
+        boolean isAfter(Checkpoint other) {
+            if (timestamp != other.timestamp) {
+                return timestamp > other.timestamp;
+            }
+            if (id == null) {
+                return false;
+            }
+            // ObjectIds are fixed-length hex, so string order is id order
+            return other.id == null || id.compareTo(other.id) > 0;
+        }
+
+        static Checkpoint later(Checkpoint a, Checkpoint b) {
+            return b.isAfter(a) ? b : a;
+        }
+    }
+
+    /** Receives one batch of raw items and the checkpoint that covers them. */
+    interface BatchSink {
+        void accept(List<JSONObject> items, Checkpoint checkpoint) throws IOException;
+    }
+
+    /** What the envelope said once the stream is fully consumed. */
+    static final class Result {
+        boolean success;
+        String message;
+        int itemCount;
+        Checkpoint checkpoint = Checkpoint.START;
+        boolean hasMore;
+    }
+
+    private DeltaSyncReader() {
+    }
+
+    static Result read(Reader source, String itemsField, int batchSize, BatchSink sink)
+            throws IOException, JSONException {
+        Result result = new Result();
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("success".equals(name)) {
+                    result.success = reader.nextBoolean();
+                } else if ("message".equals(name) && reader.peek() == JsonToken.STRING) {
+                    result.message = reader.nextString();
+                } else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readData(reader, itemsField, batchSize, sink, result);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return result;
+    }
+
+    private static void readData(JsonReader reader, String itemsField, int batchSize, BatchSink sink, Result result)
+            throws IOException, JSONException {
+        Checkpoint lastItem = Checkpoint.START;
+        long envelopeTimestamp = 0;
+        String envelopeId = null;
+        List<JSONObject> batch = new ArrayList<>(batchSize);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (itemsField.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    JSONObject item = readObject(reader);
+                    lastItem = Checkpoint.later(lastItem, new Checkpoint(
+                            item.optLong("updatedAt", item.optLong("timestamp", 0)), item.optString("_id", null)));
+                    batch.add(item);
+                    result.itemCount++;
+                    if (batch.size() >= batchSize) {
+                        sink.accept(batch, lastItem);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                reader.endArray();
+            } else if ("updated_at".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                envelopeTimestamp = reader.nextLong();
+            } else if ("since_id".equals(name) && reader.peek() == JsonToken.STRING) {
+                envelopeId = reader.nextString();
+            } else if ("has_more".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                result.hasMore = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // The last batch carries the envelope's cursor, which may arrive after the items
+        result.checkpoint = Checkpoint.later(lastItem, new Checkpoint(envelopeTimestamp, envelopeId));
+        sink.accept(batch, result.checkpoint);
+    }
+
+    static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case STRING:
+            default:
+                return reader.nextString();
+        }
+    }
+}
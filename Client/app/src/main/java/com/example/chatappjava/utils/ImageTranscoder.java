@@ -0,0 +1,295 @@
+package com.example.chatappjava.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shrinks photos before they are uploaded.
+ *
+ * The source is decoded with inSampleSize close to the target, scaled so its longer side fits
+ * the profile, turned upright by its EXIF orientation and re-encoded in the profile's format
+ * within its byte budget; metadata (location included) is not carried over. Chat and post
+ * photos go out as WebP, which every client of ours decodes and which is markedly smaller at
+ * the same quality. Avatars go out as JPEG: they are fetched by every other participant and
+ * end up outside the app (notification icons, shared links), where WebP support is not a
+ * given, and at 512px the size difference is small. Output is cached
+ * under cacheDir/transcoded by source hash and profile, so sending the same photo again
+ * reuses it. Animated GIFs and undecodable sources are left alone: the callback gets null
+ * and the caller sends the original.
+ */
+public class ImageTranscoder {
+    private static final String TAG = "ImageTranscoder";
+
+    /** Encoded output formats. */
+    public enum Format {
+        WEBP(Bitmap.CompressFormat.WEBP_LOSSY, "image/webp", ".webp"),
+        JPEG(Bitmap.CompressFormat.JPEG, "image/jpeg", ".jpg");
+
+        final Bitmap.CompressFormat compressFormat;
+        public final String mimeType;
+        public final String extension;
+
+        Format(Bitmap.CompressFormat compressFormat, String mimeType, String extension) {
+            this.compressFormat = compressFormat;
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    /** Target size, byte budget and format per use. */
+    public enum Profile {
+        AVATAR(512, 120 * 1024, Format.JPEG),
+        CHAT(1600, 350 * 1024, Format.WEBP),
+        POST(2048, 600 * 1024, Format.WEBP),
+        THUMBNAIL(320, 30 * 1024, Format.WEBP);
+
+        final int maxDimension;
+        final int maxBytes;
+        public final Format format;
+
+        Profile(int maxDimension, int maxBytes, Format format) {
+            this.maxDimension = maxDimension;
+            this.maxBytes = maxBytes;
+            this.format = format;
+        }
+    }
+
+    /** Runs on the transcoding thread. */
+    public interface Callback {
+        /** @param transcoded the shrunk copy, or null to send the original */
+        void onResult(File transcoded);
+    }
+
+    private static final int START_QUALITY = 82;
+    private static final int MIN_QUALITY = 50;
+    private static final int QUALITY_STEP = 10;
+    private static final float DOWNSCALE_STEP = 0.8f;
+    private static final int MAX_ENCODE_PASSES = 8;
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+    // Decoding full-size photos is memory hungry; two at a time is plenty
+    private static final int POOL_SIZE = 2;
+
+    private static ImageTranscoder instance;
+
+    private final ContentResolver resolver;
+    private final File cacheDir;
+    private final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "transcode");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private ImageTranscoder(Context context) {
+        this.resolver = context.getContentResolver();
+        this.cacheDir = new File(context.getCacheDir(), "transcoded");
+    }
+
+    public static synchronized ImageTranscoder getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageTranscoder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Transcode in the background. */
+    public void transcode(Uri source, Profile profile, Callback callback) {
+        executor.execute(() -> callback.onResult(transcodeNow(source, profile)));
+    }
+
+    /** Transcode on the calling thread (never the main thread); null means send the original. */
+    public File transcodeNow(Uri source, Profile profile) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            // Half the digest is plenty to tell cached outputs apart
+            String hash = ContentHasher.sha256(resolver, source).substring(0, 32);
+            File output = new File(cacheDir, hash + "-" + profile.name().toLowerCase() + profile.format.extension);
+            if (output.exists() && output.length() > 0) {
+                output.setLastModified(System.currentTimeMillis());
+                return output;
+            }
+
+            Bitmap bitmap = decode(source, profile);
+            if (bitmap == null) {
+                return null;
+            }
+            byte[] encoded = encode(bitmap, profile);
+            bitmap.recycle();
+
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                return null;
+            }
+            File partial = new File(cacheDir, output.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(partial)) {
+                out.write(encoded);
+            }
+            if (!partial.renameTo(output)) {
+                partial.delete();
+                return null;
+            }
+            trimCache();
+            return output;
+        } catch (IOException | OutOfMemoryError e) {
+            Log.w(TAG, "Sending " + source + " untouched: " + e);
+            return null;
+        }
+    }
+
+    /** Upright bitmap whose longer side is at most the profile's, or null to leave the source alone. */
+    private Bitmap decode(Uri source, Profile profile) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(source)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0 || "image/gif".equals(bounds.outMimeType)) {
+            return null;
+        }
+
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        // Largest power of two that still leaves at least the target size
+        while (longest / (options.inSampleSize * 2) >= profile.maxDimension) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded;
+        try (InputStream in = open(source)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        Matrix matrix = orientation(source);
+        float scale = Math.min(1f, profile.maxDimension / (float) Math.max(decoded.getWidth(), decoded.getHeight()));
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+        if (matrix.isIdentity()) {
+            return decoded;
+        }
+        Bitmap transformed = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        if (transformed != decoded) {
+            decoded.recycle();
+        }
+        return transformed;
+    }
+
+    /** Lower the quality first, then the size, until the output fits the budget. */
+    private static byte[] encode(Bitmap bitmap, Profile profile) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Bitmap current = bitmap;
+        int quality = START_QUALITY;
+        for (int pass = 0; pass < MAX_ENCODE_PASSES; pass++) {
+            bytes.reset();
+            current.compress(profile.format.compressFormat, quality, bytes);
+            if (bytes.size() <= profile.maxBytes) {
+                break;
+            }
+            if (quality - QUALITY_STEP >= MIN_QUALITY) {
+                quality -= QUALITY_STEP;
+            } else {
+                Bitmap smaller = Bitmap.createScaledBitmap(current,
+                        Math.max(1, Math.round(current.getWidth() * DOWNSCALE_STEP)),
+                        Math.max(1, Math.round(current.getHeight() * DOWNSCALE_STEP)), true);
+                if (current != bitmap) {
+                    current.recycle();
+                }
+                current = smaller;
+            }
+        }
+        if (current != bitmap) {
+            current.recycle();
+        }
+        return bytes.toByteArray();
+    }
+
+    private Matrix orientation(Uri source) {
+        Matrix matrix = new Matrix();
+        try (InputStream in = open(source)) {
+            int orientation = new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    matrix.postRotate(90);
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    matrix.postRotate(180);
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    matrix.postRotate(270);
+                    break;
+                case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                    matrix.postScale(-1, 1);
+                    break;
+                case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                    matrix.postScale(1, -1);
+                    break;
+                case ExifInterface.ORIENTATION_TRANSPOSE:
+                    matrix.postRotate(90);
+                    matrix.postScale(-1, 1);
+                    break;
+                case ExifInterface.ORIENTATION_TRANSVERSE:
+                    matrix.postRotate(270);
+                    matrix.postScale(-1, 1);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            // No readable EXIF: keep the pixels as they are
+        }
+        return matrix;
+    }
+
+    private InputStream open(Uri source) throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) {
+            throw new IOException("Cannot open " + source);
+        }
+        return in;
+    }
+
+    /** Keep the cache under its cap, dropping the least recently used outputs. */
+    private synchronized void trimCache() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
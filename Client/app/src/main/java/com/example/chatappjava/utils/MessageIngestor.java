@@ -0,0 +1,114 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.chatappjava.models.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers incoming server messages (socket events, REST pages, delta sync) into
+ * micro-batches and writes each batch in one transaction on the database writer.
+ * A message waits at most FLUSH_DELAY_MS before it is persisted.
+ *
+ * Outgoing pending messages should keep using MessageRepository.saveMessage so
+ * the outbox sees them immediately.
+ */
+public final class MessageIngestor {
+
+    private static final String TAG = "MessageIngestor";
+    private static final long FLUSH_DELAY_MS = 50;
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static MessageIngestor instance;
+
+    private final MessageRepository messageRepository;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+
+    // Keyed by message ID so repeated events for one message collapse into a single write
+    private Map<String, Message> buffer = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private MessageIngestor(Context context) {
+        this.messageRepository = new MessageRepository(context.getApplicationContext());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-ingest");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static synchronized MessageIngestor getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageIngestor(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a message for the next batch.
+     */
+    public void enqueue(Message message) {
+        if (message == null) {
+            return;
+        }
+        boolean flushNow;
+        synchronized (lock) {
+            buffer.put(bufferKey(message), message);
+            flushNow = buffer.size() >= MAX_BATCH_SIZE;
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    public void enqueueAll(List<Message> messages) {
+        if (messages == null) {
+            return;
+        }
+        for (Message message : messages) {
+            enqueue(message);
+        }
+    }
+
+    /**
+     * Hand whatever is buffered to the writer right away.
+     */
+    public void flush() {
+        List<Message> batch;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (buffer.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(buffer.values());
+            buffer = new LinkedHashMap<>();
+        }
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            messageRepository.saveMessagesBatch(batch);
+            Log.d(TAG, "Flushed " + batch.size() + " buffered messages");
+        });
+    }
+
+    private static String bufferKey(Message message) {
+        String id = message.getId();
+        if (id == null || id.isEmpty()) {
+            // No ID yet: never merge with another message
+            return UUID.randomUUID().toString();
+        }
+        return id;
+    }
+}
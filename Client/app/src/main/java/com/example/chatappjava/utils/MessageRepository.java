@@ -4,13 +4,13 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 import com.example.chatappjava.models.Message;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -24,9 +24,166 @@ public class MessageRepository {
     private static final String SYNC_STATUS_FAILED = "failed";
     private static final long PLACEHOLDER_MATCH_WINDOW_MS = 5000L;
 
+    // Bound positionally by bindMessage(). On conflict the content columns are overwritten, but a
+    // NULL seq keeps the stored one, and a pending save keeps the stored sync status, attempts,
+    // error and retry time so a resave cannot undo backoff. Only a synced save clears them.
+    private static final String UPSERT_MESSAGE_SQL =
+        "INSERT INTO " + DatabaseHelper.TABLE_MESSAGES + " (" +
+        DatabaseHelper.COL_MSG_ID + ", " +
+        DatabaseHelper.COL_MSG_CHAT_ID + ", " +
+        DatabaseHelper.COL_MSG_SENDER_ID + ", " +
+        DatabaseHelper.COL_MSG_SENDER_NAME + ", " +
+        DatabaseHelper.COL_MSG_SENDER_AVATAR + ", " +
+        DatabaseHelper.COL_MSG_CONTENT + ", " +
+        DatabaseHelper.COL_MSG_TYPE + ", " +
+        DatabaseHelper.COL_MSG_CHAT_TYPE + ", " +
+        DatabaseHelper.COL_MSG_TIMESTAMP + ", " +
+        DatabaseHelper.COL_MSG_IS_READ + ", " +
+        DatabaseHelper.COL_MSG_IS_DELETED + ", " +
+        DatabaseHelper.COL_MSG_ATTACHMENTS + ", " +
+        DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI + ", " +
+        DatabaseHelper.COL_MSG_REPLY_TO_ID + ", " +
+        DatabaseHelper.COL_MSG_REPLY_TO_CONTENT + ", " +
+        DatabaseHelper.COL_MSG_REPLY_TO_SENDER + ", " +
+        DatabaseHelper.COL_MSG_EDITED + ", " +
+        DatabaseHelper.COL_MSG_EDITED_AT + ", " +
+        DatabaseHelper.COL_MSG_CLIENT_NONCE + ", " +
+        DatabaseHelper.COL_MSG_SYNC_STATUS + ", " +
+        DatabaseHelper.COL_MSG_SYNC_ATTEMPTS + ", " +
+        DatabaseHelper.COL_MSG_SYNC_ERROR + ", " +
+        DatabaseHelper.COL_MSG_SEQ +
+        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, NULL, ?)" +
+        " ON CONFLICT(" + DatabaseHelper.COL_MSG_ID + ") DO UPDATE SET " +
+        excluded(DatabaseHelper.COL_MSG_CHAT_ID) + ", " +
+        excluded(DatabaseHelper.COL_MSG_SENDER_ID) + ", " +
+        excluded(DatabaseHelper.COL_MSG_SENDER_NAME) + ", " +
+        excluded(DatabaseHelper.COL_MSG_SENDER_AVATAR) + ", " +
+        excluded(DatabaseHelper.COL_MSG_CONTENT) + ", " +
+        excluded(DatabaseHelper.COL_MSG_TYPE) + ", " +
+        excluded(DatabaseHelper.COL_MSG_CHAT_TYPE) + ", " +
+        excluded(DatabaseHelper.COL_MSG_TIMESTAMP) + ", " +
+        excluded(DatabaseHelper.COL_MSG_IS_READ) + ", " +
+        excluded(DatabaseHelper.COL_MSG_IS_DELETED) + ", " +
+        excluded(DatabaseHelper.COL_MSG_ATTACHMENTS) + ", " +
+        excluded(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI) + ", " +
+        excluded(DatabaseHelper.COL_MSG_REPLY_TO_ID) + ", " +
+        excluded(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT) + ", " +
+        excluded(DatabaseHelper.COL_MSG_REPLY_TO_SENDER) + ", " +
+        excluded(DatabaseHelper.COL_MSG_EDITED) + ", " +
+        excluded(DatabaseHelper.COL_MSG_EDITED_AT) + ", " +
+        excluded(DatabaseHelper.COL_MSG_CLIENT_NONCE) + ", " +
+        DatabaseHelper.COL_MSG_SYNC_STATUS + " = " + ifSynced("excluded." + DatabaseHelper.COL_MSG_SYNC_STATUS, DatabaseHelper.COL_MSG_SYNC_STATUS) + ", " +
+        DatabaseHelper.COL_MSG_SYNC_ATTEMPTS + " = " + ifSynced("0", DatabaseHelper.COL_MSG_SYNC_ATTEMPTS) + ", " +
+        DatabaseHelper.COL_MSG_SYNC_ERROR + " = " + ifSynced("NULL", DatabaseHelper.COL_MSG_SYNC_ERROR) + ", " +
+        DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + " = " + ifSynced("0", DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT) + ", " +
+        DatabaseHelper.COL_MSG_SEQ + " = IFNULL(excluded." + DatabaseHelper.COL_MSG_SEQ + ", " + DatabaseHelper.COL_MSG_SEQ + ")";
+
+    private static String excluded(String column) {
+        return column + " = excluded." + column;
+    }
+
+    private static String ifSynced(String whenSynced, String otherwise) {
+        return "CASE WHEN excluded." + DatabaseHelper.COL_MSG_SYNC_STATUS + " = '" + SYNC_STATUS_SYNCED +
+                "' THEN " + whenSynced + " ELSE " + otherwise + " END";
+    }
+
+    private static final String INSERT_REACTION_SQL =
+        "INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_MESSAGE_REACTIONS + " (" +
+        DatabaseHelper.COL_REACT_MESSAGE_ID + ", " +
+        DatabaseHelper.COL_REACT_POSITION + ", " +
+        DatabaseHelper.COL_REACT_USER_ID + ", " +
+        DatabaseHelper.COL_REACT_USERNAME + ", " +
+        DatabaseHelper.COL_REACT_EMOJI +
+        ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ATTACHMENT_SQL =
+        "INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_MESSAGE_ATTACHMENTS + " (" +
+        DatabaseHelper.COL_ATT_MESSAGE_ID + ", " +
+        DatabaseHelper.COL_ATT_POSITION + ", " +
+        DatabaseHelper.COL_ATT_URL + ", " +
+        DatabaseHelper.COL_ATT_MIME_TYPE + ", " +
+        DatabaseHelper.COL_ATT_NAME + ", " +
+        DatabaseHelper.COL_ATT_FILENAME + ", " +
+        DatabaseHelper.COL_ATT_SIZE + ", " +
+        DatabaseHelper.COL_ATT_THUMBNAIL +
+        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Stay well under SQLITE_MAX_VARIABLE_NUMBER when loading child rows with IN (...)
+    private static final int CHILD_QUERY_CHUNK = 500;
+
+    // (timestamp, id) order matches idx_messages_chat_ts; id breaks ties within one millisecond
+    private static final String KEYSET_ORDER_DESC =
+        DatabaseHelper.COL_MSG_TIMESTAMP + " DESC, " + DatabaseHelper.COL_MSG_ID + " DESC";
+    private static final String KEYSET_ORDER_ASC =
+        DatabaseHelper.COL_MSG_TIMESTAMP + " ASC, " + DatabaseHelper.COL_MSG_ID + " ASC";
+
     public interface OnTempMessageRemovedListener {
         void onTempMessageRemoved(String tempId, String realId);
     }
+
+    /**
+     * One full-text search hit: the stored message plus a snippet of its content with
+     * matched terms between {@link #MATCH_START} and {@link #MATCH_END}. The snippet is the
+     * message text as typed, not markup.
+     */
+    public static final class SearchResult {
+        public final Message message;
+        public final String snippet;
+
+        SearchResult(Message message, String snippet) {
+            this.message = message;
+            this.snippet = snippet;
+        }
+    }
+
+    /**
+     * Result of sending one outbox message: either acked with its server ID or failed
+     * with an error. {@link #applySendOutcomes} fills in the attempt count and whether
+     * the message was given up on.
+     */
+    public static final class SendOutcome {
+        public final String tempId;
+        public final String serverId;
+        public final String error;
+        private int attempts;
+        private boolean gaveUp;
+
+        private SendOutcome(String tempId, String serverId, String error) {
+            this.tempId = tempId;
+            this.serverId = serverId;
+            this.error = error;
+        }
+
+        public static SendOutcome acked(String tempId, String serverId) {
+            return new SendOutcome(tempId, serverId, null);
+        }
+
+        public static SendOutcome failed(String tempId, String error) {
+            return new SendOutcome(tempId, null, error);
+        }
+
+        public boolean isAcked() {
+            return serverId != null;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /** True once a failure used up the last attempt and the message was marked failed. */
+        public boolean isGaveUp() {
+            return gaveUp;
+        }
+    }
+
+    public static final int DEFAULT_SEARCH_PAGE_SIZE = 30;
+    private static final int SNIPPET_TOKENS = 12;
+    // Control characters nobody types, so they cannot be confused with message text
+    public static final char MATCH_START = '\u0001';
+    public static final char MATCH_END = '\u0002';
+
+    // Resolved on first search; the FTS flavour never changes for an installed database
+    private static volatile Boolean searchUsesFts5;
     
     private final DatabaseHelper dbHelper;
     private final Context context;
@@ -34,7 +191,7 @@ public class MessageRepository {
     
     public MessageRepository(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
     }
 
     public void setOnTempMessageRemovedListener(OnTempMessageRemovedListener listener) {
@@ -52,58 +209,22 @@ public class MessageRepository {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         try {
-            // Generate temporary ID if message doesn't have one (offline message)
-            String messageId = message.getId();
-            String syncStatus = SYNC_STATUS_SYNCED;
-            
-            if (messageId == null || messageId.isEmpty()) {
-                // This is a new offline message - generate temp ID
-                messageId = "temp_" + UUID.randomUUID().toString();
-                syncStatus = SYNC_STATUS_PENDING;
-                message.setId(messageId);
-                if (message.getClientNonce() == null || message.getClientNonce().isEmpty()) {
-                    message.setClientNonce(messageId);
-                }
-                Log.d(TAG, "Saving new offline message with temp ID: " + messageId);
-            } else if (messageId.startsWith("temp_") || messageId.startsWith("local-")) {
-                syncStatus = SYNC_STATUS_PENDING;
+            db.beginTransaction();
+            SQLiteStatement statement = db.compileStatement(UPSERT_MESSAGE_SQL);
+            ChildRowWriter children = new ChildRowWriter(db);
+            try {
+                bindMessage(statement, message);
+                statement.executeInsert();
+                children.writeReactions(message.getId(), message.getReactionList());
+                children.writeAttachments(message.getId(), message.getAttachmentList());
+                db.setTransactionSuccessful();
+            } finally {
+                statement.close();
+                children.close();
+                db.endTransaction();
             }
             
-            ContentValues values = new ContentValues();
-            values.put(DatabaseHelper.COL_MSG_ID, messageId);
-            values.put(DatabaseHelper.COL_MSG_CHAT_ID, message.getChatId());
-            values.put(DatabaseHelper.COL_MSG_SENDER_ID, message.getSenderId());
-            values.put(DatabaseHelper.COL_MSG_SENDER_NAME, message.getSenderDisplayName());
-            values.put(DatabaseHelper.COL_MSG_SENDER_AVATAR, message.getSenderAvatarUrl());
-            values.put(DatabaseHelper.COL_MSG_CONTENT, message.getContent());
-            values.put(DatabaseHelper.COL_MSG_TYPE, message.getType());
-            values.put(DatabaseHelper.COL_MSG_CHAT_TYPE, message.getChatType());
-            values.put(DatabaseHelper.COL_MSG_TIMESTAMP, message.getTimestamp());
-            values.put(DatabaseHelper.COL_MSG_IS_READ, message.isRead() ? 1 : 0);
-            values.put(DatabaseHelper.COL_MSG_IS_DELETED, message.isDeleted() ? 1 : 0);
-            values.put(DatabaseHelper.COL_MSG_ATTACHMENTS, message.getAttachments());
-            values.put(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI, message.getLocalImageUri());
-            values.put(DatabaseHelper.COL_MSG_REPLY_TO_ID, message.getReplyToMessageId());
-            values.put(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT, message.getReplyToContent());
-            values.put(DatabaseHelper.COL_MSG_REPLY_TO_SENDER, message.getReplyToSenderName());
-            values.put(DatabaseHelper.COL_MSG_EDITED, message.isEdited() ? 1 : 0);
-            values.put(DatabaseHelper.COL_MSG_EDITED_AT, message.getEditedAt());
-            values.put(DatabaseHelper.COL_MSG_REACTIONS, message.getReactionsRaw());
-            values.put(DatabaseHelper.COL_MSG_CLIENT_NONCE, message.getClientNonce());
-            values.put(DatabaseHelper.COL_MSG_SYNC_STATUS, syncStatus);
-            values.put(DatabaseHelper.COL_MSG_SYNC_ATTEMPTS, 0);
-            values.putNull(DatabaseHelper.COL_MSG_SYNC_ERROR);
-            message.setSyncStatus(syncStatus);
-            
-            // Use INSERT OR REPLACE to handle both insert and update
-            db.insertWithOnConflict(
-                DatabaseHelper.TABLE_MESSAGES,
-                null,
-                values,
-                SQLiteDatabase.CONFLICT_REPLACE
-            );
-            
-            Log.d(TAG, "Message saved: " + messageId + " (status: " + syncStatus + ")");
+            Log.d(TAG, "Message saved: " + message.getId() + " (status: " + message.getSyncStatus() + ")");
             return message;
             
         } catch (Exception e) {
@@ -113,6 +234,66 @@ public class MessageRepository {
         // Don't close database connection - let SQLite manage the connection pool
         // Closing here can cause crashes when other threads are using the database
     }
+
+    /**
+     * Assign a temp ID to new offline messages, resolve the sync status and bind
+     * every column of UPSERT_MESSAGE_SQL. The statement is reused across rows.
+     * Reaction and attachment rows are written separately by ChildRowWriter.
+     */
+    private static void bindMessage(SQLiteStatement statement, Message message) {
+        String messageId = message.getId();
+        String syncStatus = SYNC_STATUS_SYNCED;
+        
+        if (messageId == null || messageId.isEmpty()) {
+            // This is a new offline message - generate temp ID
+            messageId = "temp_" + UUID.randomUUID().toString();
+            syncStatus = SYNC_STATUS_PENDING;
+            message.setId(messageId);
+            if (message.getClientNonce() == null || message.getClientNonce().isEmpty()) {
+                message.setClientNonce(messageId);
+            }
+            Log.d(TAG, "Saving new offline message with temp ID: " + messageId);
+        } else if (isPlaceholderId(messageId)) {
+            syncStatus = SYNC_STATUS_PENDING;
+        }
+        message.setSyncStatus(syncStatus);
+
+        statement.clearBindings();
+        statement.bindString(1, messageId);
+        bindNullable(statement, 2, message.getChatId());
+        bindNullable(statement, 3, message.getSenderId());
+        bindNullable(statement, 4, message.getSenderDisplayName());
+        bindNullable(statement, 5, message.getSenderAvatarUrl());
+        bindNullable(statement, 6, message.getContent());
+        bindNullable(statement, 7, message.getType());
+        bindNullable(statement, 8, message.getChatType());
+        statement.bindLong(9, message.getTimestamp());
+        statement.bindLong(10, message.isRead() ? 1 : 0);
+        statement.bindLong(11, message.isDeleted() ? 1 : 0);
+        bindNullable(statement, 12, message.getAttachments());
+        bindNullable(statement, 13, message.getLocalImageUri());
+        bindNullable(statement, 14, message.getReplyToMessageId());
+        bindNullable(statement, 15, message.getReplyToContent());
+        bindNullable(statement, 16, message.getReplyToSenderName());
+        statement.bindLong(17, message.isEdited() ? 1 : 0);
+        statement.bindLong(18, message.getEditedAt());
+        bindNullable(statement, 19, message.getClientNonce());
+        statement.bindString(20, syncStatus);
+        if (message.getSeq() > 0) {
+            statement.bindLong(21, message.getSeq());
+        } else {
+            // Unknown here; NULL lets the upsert keep a seq already stored for this id
+            statement.bindNull(21);
+        }
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
     
     /**
      * Get all messages for a specific chat, ordered by timestamp
@@ -128,13 +309,13 @@ public class MessageRepository {
         // For performance: if limit is specified, get latest messages first (DESC), then reverse
         // This is faster than loading all messages and taking last N
         String orderBy = limit > 0 
-            ? DatabaseHelper.COL_MSG_TIMESTAMP + " DESC"  // Get latest first when limiting
-            : DatabaseHelper.COL_MSG_TIMESTAMP + " ASC"; // Get all in chronological order when no limit
+            ? KEYSET_ORDER_DESC  // Get latest first when limiting
+            : KEYSET_ORDER_ASC; // Get all in chronological order when no limit
         String limitStr = limit > 0 ? String.valueOf(limit) : null;
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_MESSAGES,
-            null,
+            MessageRowMapper.COLUMNS,
             DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " + DatabaseHelper.COL_MSG_IS_DELETED + " = 0",
             new String[]{chatId},
             null,
@@ -145,8 +326,9 @@ public class MessageRepository {
         
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(message);
                     }
@@ -158,6 +340,8 @@ public class MessageRepository {
         
         // Don't close database connection - let SQLite manage the connection pool
         // Closing here can cause crashes when other threads are using the database
+        loadReactions(db, messages);
+        loadAttachments(db, messages);
         
         // If we used DESC order (for limit), reverse to get chronological order
         if (limit > 0) {
@@ -196,7 +380,6 @@ public class MessageRepository {
             cursor.close();
         }
         
-        db.close();
         return count;
     }
     
@@ -204,65 +387,42 @@ public class MessageRepository {
      * Batch save messages for better performance
      * 
      * @param messages List of messages to save
+     * @return false when the batch could not be written; unreadable single rows are skipped
+     *         and do not count as a failure
      */
-    public void saveMessagesBatch(List<Message> messages) {
-        if (messages == null || messages.isEmpty()) return;
+    public boolean saveMessagesBatch(List<Message> messages) {
+        if (messages == null || messages.isEmpty()) return true;
         
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         try {
             db.beginTransaction();
+            SQLiteStatement statement = db.compileStatement(UPSERT_MESSAGE_SQL);
+            ChildRowWriter children = new ChildRowWriter(db);
             try {
+                int saved = 0;
                 for (Message message : messages) {
-                    // Generate temporary ID if message doesn't have one
-                    String messageId = message.getId();
-                    String syncStatus = SYNC_STATUS_SYNCED;
-                    
-                    if (messageId == null || messageId.isEmpty()) {
-                        messageId = "temp_" + UUID.randomUUID().toString();
-                        syncStatus = SYNC_STATUS_PENDING;
-                        message.setId(messageId);
-                        message.setClientNonce(messageId);
+                    try {
+                        bindMessage(statement, message);
+                        statement.executeInsert();
+                        children.writeReactions(message.getId(), message.getReactionList());
+                        children.writeAttachments(message.getId(), message.getAttachmentList());
+                        saved++;
+                    } catch (Exception rowError) {
+                        // Skip the bad row (e.g. missing chat/sender) without losing the batch
+                        Log.w(TAG, "Skipping message " + message.getId() + ": " + rowError.getMessage());
                     }
-                    
-                    ContentValues values = new ContentValues();
-                    values.put(DatabaseHelper.COL_MSG_ID, messageId);
-                    values.put(DatabaseHelper.COL_MSG_CHAT_ID, message.getChatId());
-                    values.put(DatabaseHelper.COL_MSG_SENDER_ID, message.getSenderId());
-                    values.put(DatabaseHelper.COL_MSG_SENDER_NAME, message.getSenderDisplayName());
-                    values.put(DatabaseHelper.COL_MSG_SENDER_AVATAR, message.getSenderAvatarUrl());
-                    values.put(DatabaseHelper.COL_MSG_CONTENT, message.getContent());
-                    values.put(DatabaseHelper.COL_MSG_TYPE, message.getType());
-                    values.put(DatabaseHelper.COL_MSG_CHAT_TYPE, message.getChatType());
-                    values.put(DatabaseHelper.COL_MSG_TIMESTAMP, message.getTimestamp());
-                    values.put(DatabaseHelper.COL_MSG_IS_READ, message.isRead() ? 1 : 0);
-                    values.put(DatabaseHelper.COL_MSG_IS_DELETED, message.isDeleted() ? 1 : 0);
-                    values.put(DatabaseHelper.COL_MSG_ATTACHMENTS, message.getAttachments());
-                    values.put(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI, message.getLocalImageUri());
-                    values.put(DatabaseHelper.COL_MSG_REPLY_TO_ID, message.getReplyToMessageId());
-                    values.put(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT, message.getReplyToContent());
-                    values.put(DatabaseHelper.COL_MSG_REPLY_TO_SENDER, message.getReplyToSenderName());
-                    values.put(DatabaseHelper.COL_MSG_EDITED, message.isEdited() ? 1 : 0);
-                    values.put(DatabaseHelper.COL_MSG_EDITED_AT, message.getEditedAt());
-                    values.put(DatabaseHelper.COL_MSG_REACTIONS, message.getReactionsRaw());
-                    values.put(DatabaseHelper.COL_MSG_CLIENT_NONCE, message.getClientNonce());
-                    values.put(DatabaseHelper.COL_MSG_SYNC_STATUS, syncStatus);
-                    values.put(DatabaseHelper.COL_MSG_SYNC_ATTEMPTS, 0);
-                    values.putNull(DatabaseHelper.COL_MSG_SYNC_ERROR);
-                    
-                    db.insertWithOnConflict(
-                        DatabaseHelper.TABLE_MESSAGES,
-                        null,
-                        values,
-                        SQLiteDatabase.CONFLICT_REPLACE
-                    );
                 }
                 db.setTransactionSuccessful();
-                Log.d(TAG, "Batch saved " + messages.size() + " messages");
+                Log.d(TAG, "Batch saved " + saved + "/" + messages.size() + " messages");
             } finally {
+                statement.close();
+                children.close();
                 db.endTransaction();
             }
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Error batch saving messages: " + e.getMessage(), e);
+            return false;
         }
         // Don't close database connection - let SQLite manage the connection pool
         // Closing here can cause crashes when other threads are using the database
@@ -287,7 +447,7 @@ public class MessageRepository {
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_MESSAGES,
-            null,
+            MessageRowMapper.COLUMNS,
             whereClause,
             whereArgs,
             null,
@@ -298,8 +458,9 @@ public class MessageRepository {
         
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(message);
                     }
@@ -311,6 +472,8 @@ public class MessageRepository {
         
         // Don't close database connection - let SQLite manage the connection pool
         // Closing here can cause crashes when other threads are using the database
+        loadReactions(db, messages);
+        loadAttachments(db, messages);
         Log.d(TAG, "Retrieved " + messages.size() + " new messages after timestamp " + afterTimestamp + " for chat: " + chatId);
         return messages;
     }
@@ -333,7 +496,7 @@ public class MessageRepository {
 
         Cursor cursor = db.query(
                 DatabaseHelper.TABLE_MESSAGES,
-                null,
+                MessageRowMapper.COLUMNS,
                 whereClause,
                 whereArgs,
                 null,
@@ -344,8 +507,9 @@ public class MessageRepository {
 
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(message);
                     }
@@ -354,6 +518,8 @@ public class MessageRepository {
                 cursor.close();
             }
         }
+        loadReactions(db, messages);
+        loadAttachments(db, messages);
 
         Log.d(TAG, "Retrieved " + messages.size() + " synced messages since timestamp "
                 + sinceTimestampInclusive + " for chat: " + chatId);
@@ -415,18 +581,46 @@ public class MessageRepository {
      * @return List of messages
      */
     public List<Message> getMessagesBefore(String chatId, long beforeTimestamp, int limit) {
+        return getMessagesBefore(chatId, beforeTimestamp, null, limit);
+    }
+
+    /**
+     * Keyset page of older messages: everything strictly before (beforeTimestamp, beforeId)
+     * in (timestamp, id) order. Walks idx_messages_chat_ts directly, so the cost per page
+     * does not grow with how far back the user has scrolled, and new messages arriving
+     * meanwhile cannot shift the page boundaries.
+     *
+     * @param chatId Chat ID
+     * @param beforeTimestamp Timestamp of the oldest message already shown
+     * @param beforeId ID of that message (null = strictly older timestamps only)
+     * @param limit Maximum number of messages
+     * @return Messages in chronological order
+     */
+    public List<Message> getMessagesBefore(String chatId, long beforeTimestamp, String beforeId, int limit) {
         List<Message> messages = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String whereClause = DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " +
-                            DatabaseHelper.COL_MSG_TIMESTAMP + " < ? AND " +
-                            DatabaseHelper.COL_MSG_IS_DELETED + " = 0";
-        String[] whereArgs = {chatId, String.valueOf(beforeTimestamp)};
-        String orderBy = DatabaseHelper.COL_MSG_TIMESTAMP + " DESC";
+        String whereClause;
+        String[] whereArgs;
+        if (beforeId == null || beforeId.isEmpty()) {
+            whereClause = DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " +
+                    DatabaseHelper.COL_MSG_TIMESTAMP + " < ? AND " +
+                    DatabaseHelper.COL_MSG_IS_DELETED + " = 0";
+            whereArgs = new String[]{chatId, String.valueOf(beforeTimestamp)};
+        } else {
+            whereClause = DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND (" +
+                    DatabaseHelper.COL_MSG_TIMESTAMP + " < ? OR (" +
+                    DatabaseHelper.COL_MSG_TIMESTAMP + " = ? AND " +
+                    DatabaseHelper.COL_MSG_ID + " < ?)) AND " +
+                    DatabaseHelper.COL_MSG_IS_DELETED + " = 0";
+            String ts = String.valueOf(beforeTimestamp);
+            whereArgs = new String[]{chatId, ts, ts, beforeId};
+        }
+        String orderBy = KEYSET_ORDER_DESC;
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_MESSAGES,
-            null,
+            MessageRowMapper.COLUMNS,
             whereClause,
             whereArgs,
             null,
@@ -437,8 +631,9 @@ public class MessageRepository {
         
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(0, message); // Add to beginning to maintain ASC order
                     }
@@ -447,11 +642,119 @@ public class MessageRepository {
                 cursor.close();
             }
         }
+        loadReactions(db, messages);
+        loadAttachments(db, messages);
         
-        db.close();
         return messages;
     }
     
+    /**
+     * Search stored messages by content and sender name (works offline).
+     *
+     * @param query Free text; every word must match, the last one as a prefix
+     * @param chatId Restrict to one chat, or null for all chats
+     */
+    public List<SearchResult> search(String query, String chatId) {
+        return search(query, chatId, DEFAULT_SEARCH_PAGE_SIZE, 0);
+    }
+
+    /**
+     * Ranked, paged full-text search over messages_fts. FTS5 databases rank by bm25
+     * (content weighted above sender name, newer first on ties); the FTS4 fallback
+     * orders by recency.
+     *
+     * @param query Free text; every word must match, the last one as a prefix
+     * @param chatId Restrict to one chat, or null for all chats
+     * @param limit Page size
+     * @param offset Number of hits to skip
+     * @return Hits for the requested page, best first
+     */
+    public List<SearchResult> search(String query, String chatId, int limit, int offset) {
+        List<SearchResult> results = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        if (searchUsesFts5 == null) {
+            searchUsesFts5 = DatabaseHelper.isMessageSearchFts5(db);
+        }
+        boolean fts5 = searchUsesFts5;
+        String match = buildMatchExpression(query, fts5);
+        if (match == null) {
+            return results;
+        }
+
+        String fts = DatabaseHelper.TABLE_MESSAGES_FTS;
+        String markers = "char(" + (int) MATCH_START + "), char(" + (int) MATCH_END + ")";
+        String snippet = fts5
+                ? "snippet(" + fts + ", 0, " + markers + ", '…', " + SNIPPET_TOKENS + ")"
+                : "snippet(" + fts + ", " + markers + ", '…', 0, " + SNIPPET_TOKENS + ")";
+        // Hits only render a preview, so read the narrow projection and skip reactions
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String column : MessageRowMapper.PREVIEW_COLUMNS) {
+            sql.append("m.").append(column).append(", ");
+        }
+        sql.append(snippet).append(" AS search_snippet")
+                .append(" FROM ").append(fts)
+                .append(" JOIN ").append(DatabaseHelper.TABLE_MESSAGES).append(" m ON m.rowid = ")
+                .append(fts).append(fts5 ? ".rowid" : ".docid")
+                .append(" WHERE ").append(fts).append(" MATCH ?")
+                .append(" AND m.").append(DatabaseHelper.COL_MSG_IS_DELETED).append(" = 0");
+        List<String> args = new ArrayList<>();
+        args.add(match);
+        if (chatId != null && !chatId.isEmpty()) {
+            sql.append(" AND m.").append(DatabaseHelper.COL_MSG_CHAT_ID).append(" = ?");
+            args.add(chatId);
+        }
+        sql.append(" ORDER BY ");
+        if (fts5) {
+            sql.append("bm25(").append(fts).append(", 1.0, 0.5), ");
+        }
+        sql.append("m.").append(DatabaseHelper.COL_MSG_TIMESTAMP).append(" DESC")
+                .append(" LIMIT ").append(Math.max(1, limit))
+                .append(" OFFSET ").append(Math.max(0, offset));
+
+        try (Cursor cursor = db.rawQuery(sql.toString(), args.toArray(new String[0]))) {
+            int snippetIndex = cursor.getColumnIndex("search_snippet");
+            MessageRowMapper mapper = new MessageRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                Message message = mapper.map(cursor);
+                if (message != null) {
+                    String text = snippetIndex >= 0 ? cursor.getString(snippetIndex) : null;
+                    results.add(new SearchResult(message, text));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error searching messages: " + e.getMessage(), e);
+        }
+        return results;
+    }
+
+    /**
+     * Turn user input into a safe MATCH expression: each word becomes a quoted
+     * term (so FTS operators in the input are treated as text), the last one a prefix.
+     */
+    private static String buildMatchExpression(String query, boolean fts5) {
+        if (query == null) {
+            return null;
+        }
+        String[] words = query.replace("\"", " ").trim().split("\\s+");
+        StringBuilder match = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (word.isEmpty()) {
+                continue;
+            }
+            boolean prefix = i == words.length - 1;
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            if (fts5) {
+                match.append('"').append(word).append('"').append(prefix ? "*" : "");
+            } else {
+                match.append('"').append(word).append(prefix ? "*" : "").append('"');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+    
     /**
      * Get all pending messages that need to be synced
      * 
@@ -463,7 +766,7 @@ public class MessageRepository {
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_MESSAGES,
-            null,
+            MessageRowMapper.COLUMNS,
             DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?",
             new String[]{SYNC_STATUS_PENDING},
             null,
@@ -474,8 +777,9 @@ public class MessageRepository {
         
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(message);
                     }
@@ -485,7 +789,6 @@ public class MessageRepository {
             }
         }
         
-        db.close();
         Log.d(TAG, "Found " + messages.size() + " pending messages");
         return messages;
     }
@@ -501,7 +804,7 @@ public class MessageRepository {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = db.query(
                 DatabaseHelper.TABLE_MESSAGES,
-                null,
+                MessageRowMapper.COLUMNS,
                 DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND "
                         + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?",
                 new String[]{chatId, SYNC_STATUS_PENDING},
@@ -512,8 +815,9 @@ public class MessageRepository {
         );
         if (cursor != null) {
             try {
+                MessageRowMapper mapper = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = mapper.map(cursor);
                     if (message != null) {
                         messages.add(message);
                     }
@@ -553,7 +857,7 @@ public class MessageRepository {
             String senderId = pending.getSenderId() != null ? pending.getSenderId() : "";
             Cursor cursor = db.query(
                     DatabaseHelper.TABLE_MESSAGES,
-                    null,
+                    MessageRowMapper.COLUMNS,
                     DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND "
                             + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ? AND "
                             + DatabaseHelper.COL_MSG_SENDER_ID + " = ? AND "
@@ -576,8 +880,9 @@ public class MessageRepository {
                 try {
                     Message best = null;
                     long bestDelta = Long.MAX_VALUE;
+                    MessageRowMapper mapper = new MessageRowMapper(cursor);
                     while (cursor.moveToNext()) {
-                        Message candidate = cursorToMessage(cursor);
+                        Message candidate = mapper.map(cursor);
                         if (candidate == null || isPlaceholderId(candidate.getId())) {
                             continue;
                         }
@@ -651,7 +956,7 @@ public class MessageRepository {
     private Message querySyncedMessage(SQLiteDatabase db, String where, String[] args) {
         Cursor cursor = db.query(
                 DatabaseHelper.TABLE_MESSAGES,
-                null,
+                MessageRowMapper.COLUMNS,
                 where,
                 args,
                 null,
@@ -662,7 +967,7 @@ public class MessageRepository {
         if (cursor != null) {
             try {
                 if (cursor.moveToFirst()) {
-                    Message message = cursorToMessage(cursor);
+                    Message message = new MessageRowMapper(cursor).map(cursor);
                     if (message != null && !isPlaceholderId(message.getId())) {
                         return message;
                     }
@@ -843,11 +1148,45 @@ public class MessageRepository {
             
         } catch (Exception e) {
             Log.e(TAG, "Error updating sync status: " + e.getMessage(), e);
-        } finally {
-            db.close();
         }
     }
     
+    /**
+     * Apply the results of a batched send in one transaction: acked messages move to
+     * their server ID as synced, failed ones count an attempt and stay pending with their
+     * next try scheduled by {@code backoff}, until its attempts run out and they are marked failed.
+     */
+    public void applySendOutcomes(List<SendOutcome> outcomes, RetryBackoff backoff) {
+        if (outcomes == null || outcomes.isEmpty()) return;
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            try {
+                for (SendOutcome outcome : outcomes) {
+                    if (outcome.isAcked()) {
+                        updateSyncStatus(outcome.tempId, outcome.serverId, SYNC_STATUS_SYNCED, null);
+                        continue;
+                    }
+                    outcome.attempts = incrementSyncAttempts(outcome.tempId);
+                    if (backoff.isExhausted(outcome.attempts)) {
+                        outcome.gaveUp = true;
+                        markMessageAsFailed(outcome.tempId, outcome.error);
+                    } else {
+                        markMessageAsPending(outcome.tempId, outcome.error,
+                                System.currentTimeMillis() + backoff.delayAfter(outcome.attempts));
+                    }
+                }
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Applied " + outcomes.size() + " send outcomes");
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying send outcomes: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Increment sync attempt counter; returns new attempt count.
      */
@@ -885,8 +1224,6 @@ public class MessageRepository {
         } catch (Exception e) {
             Log.e(TAG, "Error incrementing sync attempts: " + e.getMessage(), e);
             return 0;
-        } finally {
-            db.close();
         }
     }
 
@@ -894,6 +1231,14 @@ public class MessageRepository {
      * Mark an existing message as pending (e.g. after a failed send). Does not create a new row.
      */
     public void markMessageAsPending(String messageId, String error) {
+        markMessageAsPending(messageId, error, 0);
+    }
+
+    /**
+     * Mark an existing message as pending, not to be re-sent before {@code nextAttemptAt}
+     * (0 = as soon as possible).
+     */
+    public void markMessageAsPending(String messageId, String error, long nextAttemptAt) {
         if (messageId == null || messageId.isEmpty()) {
             return;
         }
@@ -901,6 +1246,7 @@ public class MessageRepository {
         try {
             ContentValues values = new ContentValues();
             values.put(DatabaseHelper.COL_MSG_SYNC_STATUS, SYNC_STATUS_PENDING);
+            values.put(DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT, nextAttemptAt);
             if (error != null) {
                 values.put(DatabaseHelper.COL_MSG_SYNC_ERROR, error);
             } else {
@@ -915,11 +1261,116 @@ public class MessageRepository {
             Log.d(TAG, "Marked message as pending: " + messageId);
         } catch (Exception e) {
             Log.e(TAG, "Error marking message pending: " + e.getMessage(), e);
-        } finally {
-            db.close();
         }
     }
 
+    /**
+     * Put a failed message back in the outbox with a fresh attempt budget (user tapped retry).
+     */
+    public void markMessageForRetry(String messageId) {
+        if (messageId == null || messageId.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MSG_SYNC_STATUS, SYNC_STATUS_PENDING);
+            values.put(DatabaseHelper.COL_MSG_SYNC_ATTEMPTS, 0);
+            values.put(DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT, 0);
+            values.putNull(DatabaseHelper.COL_MSG_SYNC_ERROR);
+            db.update(
+                DatabaseHelper.TABLE_MESSAGES,
+                values,
+                DatabaseHelper.COL_MSG_ID + " = ?",
+                new String[]{messageId}
+            );
+            Log.d(TAG, "Queued message for retry: " + messageId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error queueing message for retry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Push a pending message's next send to no earlier than {@code notBefore}.
+     * An already later schedule is kept.
+     */
+    public void deferRetryUntil(String messageId, long notBefore) {
+        if (messageId == null || messageId.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_MESSAGES
+                    + " SET " + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT
+                    + " = MAX(IFNULL(" + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + ", 0), ?)"
+                    + " WHERE " + DatabaseHelper.COL_MSG_ID + " = ? AND " + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?",
+                    new Object[]{notBefore, messageId, SYNC_STATUS_PENDING});
+        } catch (Exception e) {
+            Log.e(TAG, "Error deferring retry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Bring every pending retry scheduled after {@code notLaterThan} forward to it
+     * (connectivity came back, so waiting out the backoff no longer helps).
+     */
+    public int pullRetriesForward(long notLaterThan) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT, notLaterThan);
+            return db.update(
+                DatabaseHelper.TABLE_MESSAGES,
+                values,
+                DatabaseHelper.COL_MSG_SYNC_STATUS + " = ? AND " + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + " > ?",
+                new String[]{SYNC_STATUS_PENDING, String.valueOf(notLaterThan)}
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "Error pulling retries forward: " + e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Pending messages that are not due yet, with the time each may be re-sent.
+     */
+    public Map<String, Long> getScheduledRetries(long now) {
+        Map<String, Long> schedule = new HashMap<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.query(
+                DatabaseHelper.TABLE_MESSAGES,
+                new String[]{DatabaseHelper.COL_MSG_ID, DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT},
+                DatabaseHelper.COL_MSG_SYNC_STATUS + " = ? AND " + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + " > ?",
+                new String[]{SYNC_STATUS_PENDING, String.valueOf(now)},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                schedule.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading retry schedule: " + e.getMessage(), e);
+        }
+        return schedule;
+    }
+
+    /**
+     * Earliest future retry among pending messages, or 0 if none is scheduled.
+     */
+    public long getNextScheduledRetry(long now) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT MIN(" + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + ") FROM " + DatabaseHelper.TABLE_MESSAGES
+                        + " WHERE " + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ? AND "
+                        + DatabaseHelper.COL_MSG_NEXT_ATTEMPT_AT + " > ?",
+                new String[]{SYNC_STATUS_PENDING, String.valueOf(now)})) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading next retry: " + e.getMessage(), e);
+        }
+        return 0;
+    }
+
     /**
      * Mark a message as failed to send (user can tap to retry).
      */
@@ -945,8 +1396,49 @@ public class MessageRepository {
             Log.d(TAG, "Marked message as failed: " + messageId);
         } catch (Exception e) {
             Log.e(TAG, "Error marking message failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Mark every message of a chat up to (timestamp, messageId) as read with one ranged
+     * UPDATE, then set the conversation's unread count to what is left after the marker,
+     * in the same transaction. A null messageId covers the whole millisecond.
+     *
+     * @return the derived unread count
+     */
+    public int applyReadWatermark(String chatId, long timestamp, String messageId, String currentUserId) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String ts = String.valueOf(timestamp);
+            if (messageId != null) {
+                db.execSQL("UPDATE " + DatabaseHelper.TABLE_MESSAGES + " SET " + DatabaseHelper.COL_MSG_IS_READ + " = 1"
+                        + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " + DatabaseHelper.COL_MSG_IS_READ + " = 0"
+                        + " AND (" + DatabaseHelper.COL_MSG_TIMESTAMP + " < ? OR (" + DatabaseHelper.COL_MSG_TIMESTAMP
+                        + " = ? AND " + DatabaseHelper.COL_MSG_ID + " <= ?))",
+                        new Object[]{chatId, ts, ts, messageId});
+            } else {
+                db.execSQL("UPDATE " + DatabaseHelper.TABLE_MESSAGES + " SET " + DatabaseHelper.COL_MSG_IS_READ + " = 1"
+                        + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " + DatabaseHelper.COL_MSG_IS_READ + " = 0"
+                        + " AND " + DatabaseHelper.COL_MSG_TIMESTAMP + " <= ?",
+                        new Object[]{chatId, ts});
+            }
+            int unread = (int) android.database.DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_MESSAGES
+                            + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ? AND " + DatabaseHelper.COL_MSG_IS_READ + " = 0"
+                            + " AND " + DatabaseHelper.COL_MSG_IS_DELETED + " = 0"
+                            + " AND " + DatabaseHelper.COL_MSG_SENDER_ID + " != ?",
+                    new String[]{chatId, currentUserId != null ? currentUserId : ""});
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COL_CONV_UNREAD_COUNT, unread);
+            values.put(DatabaseHelper.COL_CONV_UPDATED_AT, System.currentTimeMillis());
+            values.putNull(DatabaseHelper.COL_CONV_CONTENT_HASH);
+            db.update(DatabaseHelper.TABLE_CONVERSATIONS, values,
+                    DatabaseHelper.COL_CONV_ID + " = ?", new String[]{chatId});
+            db.setTransactionSuccessful();
+            return unread;
         } finally {
-            db.close();
+            db.endTransaction();
         }
     }
 
@@ -964,8 +1456,6 @@ public class MessageRepository {
             DatabaseHelper.COL_MSG_ID + " = ?",
             new String[]{messageId}
         );
-        
-        db.close();
     }
     
     /**
@@ -982,31 +1472,30 @@ public class MessageRepository {
             DatabaseHelper.COL_MSG_ID + " = ?",
             new String[]{messageId}
         );
-        
-        db.close();
     }
 
     /**
-     * Update only the reactions column for a message (realtime socket sync).
+     * Replace only the reaction rows for a message (realtime socket sync).
      */
     public void updateMessageReactions(String messageId, String reactionsRaw) {
         if (messageId == null || messageId.isEmpty()) {
             return;
         }
+        Message parsed = new Message();
+        parsed.setReactionsRaw(reactionsRaw);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         try {
-            ContentValues values = new ContentValues();
-            values.put(DatabaseHelper.COL_MSG_REACTIONS, reactionsRaw != null ? reactionsRaw : "[]");
-            db.update(
-                DatabaseHelper.TABLE_MESSAGES,
-                values,
-                DatabaseHelper.COL_MSG_ID + " = ?",
-                new String[]{messageId}
-            );
+            db.beginTransaction();
+            ChildRowWriter children = new ChildRowWriter(db);
+            try {
+                children.writeReactions(messageId, parsed.getReactionList());
+                db.setTransactionSuccessful();
+            } finally {
+                children.close();
+                db.endTransaction();
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error updating reactions for message: " + messageId, e);
-        } finally {
-            db.close();
         }
     }
 
@@ -1029,8 +1518,6 @@ public class MessageRepository {
             );
         } catch (Exception e) {
             Log.e(TAG, "Error updating sender avatar for user: " + userId, e);
-        } finally {
-            db.close();
         }
     }
 
@@ -1059,104 +1546,213 @@ public class MessageRepository {
             Log.d(TAG, "Deleted " + deleted + " messages for chat: " + chatId);
         } catch (Exception e) {
             Log.e(TAG, "Error deleting messages for chat: " + chatId, e);
-        } finally {
-            db.close();
         }
     }
     
     /**
-     * Convert Cursor to Message object
+     * Rewrite the reaction and attachment rows of one message. Used by the v10 migration
+     * backfill; the caller owns the transaction.
      */
-    private Message cursorToMessage(Cursor cursor) {
+    static void writeChildRows(SQLiteDatabase db, String messageId, List<Message.Reaction> reactions,
+                               List<Message.Attachment> attachments) {
+        ChildRowWriter children = new ChildRowWriter(db);
         try {
-            Message message = new Message();
-            
-            int idIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ID);
-            int chatIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_ID);
-            int senderIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_ID);
-            int senderNameIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_NAME);
-            int senderAvatarIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_AVATAR);
-            int contentIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CONTENT);
-            int typeIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TYPE);
-            int chatTypeIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_TYPE);
-            int timestampIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TIMESTAMP);
-            int isReadIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_READ);
-            int isDeletedIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_DELETED);
-            int attachmentsIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ATTACHMENTS);
-            int localImageUriIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI);
-            int replyToIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_ID);
-            int replyToContentIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT);
-            int replyToSenderIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_SENDER);
-            int editedIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED);
-            int editedAtIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED_AT);
-            int reactionsIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REACTIONS);
-            int clientNonceIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CLIENT_NONCE);
-            int syncStatusIndex = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SYNC_STATUS);
-            
-            if (idIndex >= 0) message.setId(cursor.getString(idIndex));
-            if (chatIdIndex >= 0) message.setChatId(cursor.getString(chatIdIndex));
-            if (senderIdIndex >= 0) message.setSenderId(cursor.getString(senderIdIndex));
-            if (senderNameIndex >= 0) message.setSenderDisplayName(cursor.getString(senderNameIndex));
-            if (senderAvatarIndex >= 0) message.setSenderAvatarUrl(cursor.getString(senderAvatarIndex));
-            if (contentIndex >= 0) message.setContent(cursor.getString(contentIndex));
-            if (typeIndex >= 0) message.setType(cursor.getString(typeIndex));
-            if (chatTypeIndex >= 0) message.setChatType(cursor.getString(chatTypeIndex));
-            if (timestampIndex >= 0) message.setTimestamp(cursor.getLong(timestampIndex));
-            if (isReadIndex >= 0) {
-                int isRead = cursor.getInt(isReadIndex);
-                message.setRead(isRead == 1);
+            children.writeReactions(messageId, reactions);
+            children.writeAttachments(messageId, attachments);
+        } finally {
+            children.close();
+        }
+    }
+
+    /** Replace only a message's attachment rows. */
+    static void writeAttachmentRows(SQLiteDatabase db, String messageId, List<Message.Attachment> attachments) {
+        ChildRowWriter children = new ChildRowWriter(db);
+        try {
+            children.writeAttachments(messageId, attachments);
+        } finally {
+            children.close();
+        }
+    }
+
+    /**
+     * Compiled statements for replacing a message's child rows, reused across a batch.
+     * Existing rows are deleted first so a shorter list never leaves stale positions behind.
+     */
+    private static final class ChildRowWriter {
+        private final SQLiteDatabase db;
+        private final SQLiteStatement insertReaction;
+        private final SQLiteStatement insertAttachment;
+
+        ChildRowWriter(SQLiteDatabase db) {
+            this.db = db;
+            this.insertReaction = db.compileStatement(INSERT_REACTION_SQL);
+            this.insertAttachment = db.compileStatement(INSERT_ATTACHMENT_SQL);
+        }
+
+        void writeReactions(String messageId, List<Message.Reaction> reactions) {
+            if (messageId == null) {
+                return;
             }
-            if (isDeletedIndex >= 0) {
-                int isDeleted = cursor.getInt(isDeletedIndex);
-                message.setDeleted(isDeleted == 1);
+            db.delete(DatabaseHelper.TABLE_MESSAGE_REACTIONS,
+                    DatabaseHelper.COL_REACT_MESSAGE_ID + " = ?", new String[]{messageId});
+            if (reactions == null) {
+                return;
             }
-            if (attachmentsIndex >= 0) {
-                String attachments = cursor.getString(attachmentsIndex);
-                if (attachments != null) {
-                    try {
-                        java.lang.reflect.Field attField = Message.class.getDeclaredField("attachments");
-                        attField.setAccessible(true);
-                        attField.set(message, attachments);
-                    } catch (Exception e) {
-                        Log.w(TAG, "Could not set attachments field");
-                    }
+            int position = 0;
+            for (Message.Reaction reaction : reactions) {
+                if (reaction.emoji == null || reaction.emoji.isEmpty()) {
+                    continue;
                 }
+                insertReaction.clearBindings();
+                insertReaction.bindString(1, messageId);
+                insertReaction.bindLong(2, position++);
+                bindNullable(insertReaction, 3, reaction.userId);
+                bindNullable(insertReaction, 4, reaction.username);
+                insertReaction.bindString(5, reaction.emoji);
+                insertReaction.executeInsert();
             }
-            if (localImageUriIndex >= 0) message.setLocalImageUri(cursor.getString(localImageUriIndex));
-            if (replyToIdIndex >= 0) message.setReplyToMessageId(cursor.getString(replyToIdIndex));
-            if (replyToContentIndex >= 0) message.setReplyToContent(cursor.getString(replyToContentIndex));
-            if (replyToSenderIndex >= 0) message.setReplyToSenderName(cursor.getString(replyToSenderIndex));
-            if (editedIndex >= 0) {
-                int edited = cursor.getInt(editedIndex);
-                message.setEdited(edited == 1);
+        }
+
+        void writeAttachments(String messageId, List<Message.Attachment> attachments) {
+            if (messageId == null) {
+                return;
             }
-            if (editedAtIndex >= 0) {
-                message.setEditedAt(cursor.getLong(editedAtIndex));
+            db.delete(DatabaseHelper.TABLE_MESSAGE_ATTACHMENTS,
+                    DatabaseHelper.COL_ATT_MESSAGE_ID + " = ?", new String[]{messageId});
+            if (attachments == null) {
+                return;
             }
-            if (message.isEdited() && message.getEditedAt() <= 0) {
-                message.setEdited(false);
+            int position = 0;
+            for (Message.Attachment attachment : attachments) {
+                insertAttachment.clearBindings();
+                insertAttachment.bindString(1, messageId);
+                insertAttachment.bindLong(2, position++);
+                bindNullable(insertAttachment, 3, attachment.url);
+                bindNullable(insertAttachment, 4, attachment.mimeType);
+                bindNullable(insertAttachment, 5, attachment.name);
+                bindNullable(insertAttachment, 6, attachment.filename);
+                insertAttachment.bindLong(7, attachment.size);
+                bindNullable(insertAttachment, 8, attachment.thumbnail);
+                insertAttachment.executeInsert();
             }
-            if (reactionsIndex >= 0) {
-                String reactions = cursor.getString(reactionsIndex);
-                message.setReactionsRaw(reactions);
+        }
+
+        void close() {
+            insertReaction.close();
+            insertAttachment.close();
+        }
+    }
+
+    /**
+     * Attach reactions to a page of messages with one IN (...) lookup per chunk instead
+     * of parsing a JSON column per row.
+     */
+    private static void loadReactions(SQLiteDatabase db, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<String, List<Message.Reaction>> byMessage = new HashMap<>();
+        for (int start = 0; start < messages.size(); start += CHILD_QUERY_CHUNK) {
+            int end = Math.min(messages.size(), start + CHILD_QUERY_CHUNK);
+            String[] ids = new String[end - start];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                ids[i - start] = messages.get(i).getId();
+                placeholders.append(i == start ? "?" : ",?");
             }
-            if (clientNonceIndex >= 0) message.setClientNonce(cursor.getString(clientNonceIndex));
-            if (syncStatusIndex >= 0) {
-                String status = cursor.getString(syncStatusIndex);
-                if (status != null && !status.isEmpty()) {
-                    message.setSyncStatus(status);
+            try (Cursor cursor = db.query(
+                    DatabaseHelper.TABLE_MESSAGE_REACTIONS,
+                    new String[]{
+                            DatabaseHelper.COL_REACT_MESSAGE_ID,
+                            DatabaseHelper.COL_REACT_USER_ID,
+                            DatabaseHelper.COL_REACT_USERNAME,
+                            DatabaseHelper.COL_REACT_EMOJI
+                    },
+                    DatabaseHelper.COL_REACT_MESSAGE_ID + " IN (" + placeholders + ")",
+                    ids,
+                    null, null,
+                    DatabaseHelper.COL_REACT_MESSAGE_ID + ", " + DatabaseHelper.COL_REACT_POSITION)) {
+                while (cursor.moveToNext()) {
+                    List<Message.Reaction> list = byMessage.get(cursor.getString(0));
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        byMessage.put(cursor.getString(0), list);
+                    }
+                    list.add(new Message.Reaction(cursor.getString(1), cursor.getString(2), cursor.getString(3)));
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading reactions: " + e.getMessage(), e);
             }
-            message.inferSyncStatusIfNeeded();
-            
-            return message;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting cursor to message: " + e.getMessage(), e);
-            return null;
+        }
+        for (Message message : messages) {
+            message.setReactionList(byMessage.get(message.getId()));
         }
     }
-    
+
+    /**
+     * Attach decoded attachments to a page of messages the same way, so binding a row
+     * never parses messages.attachments. Messages without attachments are not looked up.
+     */
+    private static void loadAttachments(SQLiteDatabase db, List<Message> messages) {
+        List<Message> withAttachments = new ArrayList<>();
+        for (Message message : messages) {
+            String json = message.getAttachments();
+            if (json == null || json.isEmpty() || "[]".equals(json)) {
+                message.setAttachmentList(null);
+            } else {
+                withAttachments.add(message);
+            }
+        }
+        if (withAttachments.isEmpty()) {
+            return;
+        }
+        Map<String, List<Message.Attachment>> byMessage = new HashMap<>();
+        for (int start = 0; start < withAttachments.size(); start += CHILD_QUERY_CHUNK) {
+            int end = Math.min(withAttachments.size(), start + CHILD_QUERY_CHUNK);
+            String[] ids = new String[end - start];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                ids[i - start] = withAttachments.get(i).getId();
+                placeholders.append(i == start ? "?" : ",?");
+            }
+            try (Cursor cursor = db.query(
+                    DatabaseHelper.TABLE_MESSAGE_ATTACHMENTS,
+                    new String[]{
+                            DatabaseHelper.COL_ATT_MESSAGE_ID,
+                            DatabaseHelper.COL_ATT_URL,
+                            DatabaseHelper.COL_ATT_MIME_TYPE,
+                            DatabaseHelper.COL_ATT_NAME,
+                            DatabaseHelper.COL_ATT_FILENAME,
+                            DatabaseHelper.COL_ATT_SIZE,
+                            DatabaseHelper.COL_ATT_THUMBNAIL
+                    },
+                    DatabaseHelper.COL_ATT_MESSAGE_ID + " IN (" + placeholders + ")",
+                    ids,
+                    null, null,
+                    DatabaseHelper.COL_ATT_MESSAGE_ID + ", " + DatabaseHelper.COL_ATT_POSITION)) {
+                while (cursor.moveToNext()) {
+                    List<Message.Attachment> list = byMessage.get(cursor.getString(0));
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        byMessage.put(cursor.getString(0), list);
+                    }
+                    list.add(new Message.Attachment(cursor.getString(1), cursor.getString(2),
+                            cursor.getString(3), cursor.getString(4), cursor.getLong(5), cursor.getString(6)));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading attachments: " + e.getMessage(), e);
+                return;
+            }
+        }
+        for (Message message : withAttachments) {
+            // No rows for a message with JSON (written before its rows existed): parse on first use
+            List<Message.Attachment> rows = byMessage.get(message.getId());
+            if (rows != null) {
+                message.setAttachmentList(rows);
+            }
+        }
+    }
+
     /**
      * Get count of pending messages
      */
@@ -1173,7 +1769,6 @@ public class MessageRepository {
             count = cursor.getInt(0);
             cursor.close();
         }
-        db.close();
         return count;
     }
     
@@ -1203,7 +1798,6 @@ public class MessageRepository {
             isPending = cursor.getCount() > 0;
             cursor.close();
         }
-        db.close();
         return isPending;
     }
 }
@@ -0,0 +1,136 @@
+package com.example.chatappjava.utils;
+
+import android.database.Cursor;
+
+import com.example.chatappjava.models.Message;
+
+/**
+ * Maps rows of the messages table to Message objects.
+ * Column indexes are resolved once per cursor; columns missing from a narrow
+ * projection are skipped and leave the model defaults in place.
+ */
+final class MessageRowMapper {
+
+    /** Every column the model is built from (legacy reactions JSON and sync bookkeeping excluded). */
+    static final String[] COLUMNS = {
+        DatabaseHelper.COL_MSG_ID,
+        DatabaseHelper.COL_MSG_CHAT_ID,
+        DatabaseHelper.COL_MSG_SENDER_ID,
+        DatabaseHelper.COL_MSG_SENDER_NAME,
+        DatabaseHelper.COL_MSG_SENDER_AVATAR,
+        DatabaseHelper.COL_MSG_CONTENT,
+        DatabaseHelper.COL_MSG_TYPE,
+        DatabaseHelper.COL_MSG_CHAT_TYPE,
+        DatabaseHelper.COL_MSG_TIMESTAMP,
+        DatabaseHelper.COL_MSG_IS_READ,
+        DatabaseHelper.COL_MSG_IS_DELETED,
+        DatabaseHelper.COL_MSG_ATTACHMENTS,
+        DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI,
+        DatabaseHelper.COL_MSG_REPLY_TO_ID,
+        DatabaseHelper.COL_MSG_REPLY_TO_CONTENT,
+        DatabaseHelper.COL_MSG_REPLY_TO_SENDER,
+        DatabaseHelper.COL_MSG_EDITED,
+        DatabaseHelper.COL_MSG_EDITED_AT,
+        DatabaseHelper.COL_MSG_CLIENT_NONCE,
+        DatabaseHelper.COL_MSG_SYNC_STATUS,
+        DatabaseHelper.COL_MSG_SEQ
+    };
+
+    /** Enough to render a one-line preview (search hits) and open the message's chat. */
+    static final String[] PREVIEW_COLUMNS = {
+        DatabaseHelper.COL_MSG_ID,
+        DatabaseHelper.COL_MSG_CHAT_ID,
+        DatabaseHelper.COL_MSG_SENDER_ID,
+        DatabaseHelper.COL_MSG_SENDER_NAME,
+        DatabaseHelper.COL_MSG_SENDER_AVATAR,
+        DatabaseHelper.COL_MSG_CONTENT,
+        DatabaseHelper.COL_MSG_TYPE,
+        DatabaseHelper.COL_MSG_CHAT_TYPE,
+        DatabaseHelper.COL_MSG_TIMESTAMP,
+        DatabaseHelper.COL_MSG_SYNC_STATUS
+    };
+
+    private final int id;
+    private final int chatId;
+    private final int senderId;
+    private final int senderName;
+    private final int senderAvatar;
+    private final int content;
+    private final int type;
+    private final int chatType;
+    private final int timestamp;
+    private final int isRead;
+    private final int isDeleted;
+    private final int attachments;
+    private final int localImageUri;
+    private final int replyToId;
+    private final int replyToContent;
+    private final int replyToSender;
+    private final int edited;
+    private final int editedAt;
+    private final int clientNonce;
+    private final int syncStatus;
+    private final int seq;
+
+    MessageRowMapper(Cursor cursor) {
+        id = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ID);
+        chatId = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_ID);
+        senderId = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_ID);
+        senderName = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_NAME);
+        senderAvatar = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SENDER_AVATAR);
+        content = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CONTENT);
+        type = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TYPE);
+        chatType = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CHAT_TYPE);
+        timestamp = cursor.getColumnIndex(DatabaseHelper.COL_MSG_TIMESTAMP);
+        isRead = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_READ);
+        isDeleted = cursor.getColumnIndex(DatabaseHelper.COL_MSG_IS_DELETED);
+        attachments = cursor.getColumnIndex(DatabaseHelper.COL_MSG_ATTACHMENTS);
+        localImageUri = cursor.getColumnIndex(DatabaseHelper.COL_MSG_LOCAL_IMAGE_URI);
+        replyToId = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_ID);
+        replyToContent = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_CONTENT);
+        replyToSender = cursor.getColumnIndex(DatabaseHelper.COL_MSG_REPLY_TO_SENDER);
+        edited = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED);
+        editedAt = cursor.getColumnIndex(DatabaseHelper.COL_MSG_EDITED_AT);
+        clientNonce = cursor.getColumnIndex(DatabaseHelper.COL_MSG_CLIENT_NONCE);
+        syncStatus = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SYNC_STATUS);
+        seq = cursor.getColumnIndex(DatabaseHelper.COL_MSG_SEQ);
+    }
+
+    /**
+     * Build a Message from the cursor's current row.
+     */
+    Message map(Cursor cursor) {
+        Message message = new Message();
+        if (id >= 0) message.setId(cursor.getString(id));
+        if (chatId >= 0) message.setChatId(cursor.getString(chatId));
+        if (senderId >= 0) message.setSenderId(cursor.getString(senderId));
+        if (senderName >= 0) message.setSenderDisplayName(cursor.getString(senderName));
+        if (senderAvatar >= 0) message.setSenderAvatarUrl(cursor.getString(senderAvatar));
+        if (content >= 0) message.setContent(cursor.getString(content));
+        if (type >= 0) message.setType(cursor.getString(type));
+        if (chatType >= 0) message.setChatType(cursor.getString(chatType));
+        if (timestamp >= 0) message.setTimestamp(cursor.getLong(timestamp));
+        if (isRead >= 0) message.setRead(cursor.getInt(isRead) == 1);
+        if (isDeleted >= 0) message.setDeleted(cursor.getInt(isDeleted) == 1);
+        if (attachments >= 0 && !cursor.isNull(attachments)) message.setAttachments(cursor.getString(attachments));
+        if (localImageUri >= 0) message.setLocalImageUri(cursor.getString(localImageUri));
+        if (replyToId >= 0) message.setReplyToMessageId(cursor.getString(replyToId));
+        if (replyToContent >= 0) message.setReplyToContent(cursor.getString(replyToContent));
+        if (replyToSender >= 0) message.setReplyToSenderName(cursor.getString(replyToSender));
+        if (edited >= 0) message.setEdited(cursor.getInt(edited) == 1);
+        if (editedAt >= 0) message.setEditedAt(cursor.getLong(editedAt));
+        if (message.isEdited() && message.getEditedAt() <= 0) {
+            message.setEdited(false);
+        }
+        if (clientNonce >= 0) message.setClientNonce(cursor.getString(clientNonce));
+        if (syncStatus >= 0) {
+            String status = cursor.getString(syncStatus);
+            if (status != null && !status.isEmpty()) {
+                message.setSyncStatus(status);
+            }
+        }
+        if (seq >= 0 && !cursor.isNull(seq)) message.setSeq(cursor.getLong(seq));
+        message.inferSyncStatusIfNeeded();
+        return message;
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.chatappjava.models.Message;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-chat message sequence watermarks and gap detection.
+ *
+ * The server numbers each chat's messages 1, 2, 3... For every chat this keeps the highest
+ * number up to which nothing is missing, plus the numbers seen beyond it. Socket events and
+ * send acks feed it; a hole that is still open after {@link #GAP_GRACE_MS} (events can
+ * overtake each other) is fetched as exactly that range. After a reconnect,
+ * {@link SyncManager} compares each chat's latest number with the watermark and fetches
+ * only what is behind. Watermarks are stored in chat_sequences and survive restarts.
+ */
+public class MessageSequenceTracker {
+    private static final String TAG = "MessageSequenceTracker";
+
+    /** How long a hole may stay open before its range is fetched. */
+    private static final long GAP_GRACE_MS = 2000;
+
+    // Never moves a stored watermark backwards
+    private static final String UPSERT_WATERMARK_SQL =
+        "INSERT INTO " + DatabaseHelper.TABLE_CHAT_SEQUENCES + " (" +
+        DatabaseHelper.COL_SEQ_CHAT_ID + ", " + DatabaseHelper.COL_SEQ_CONTIGUOUS + ") VALUES (?, ?)" +
+        " ON CONFLICT(" + DatabaseHelper.COL_SEQ_CHAT_ID + ") DO UPDATE SET " +
+        DatabaseHelper.COL_SEQ_CONTIGUOUS + " = MAX(" + DatabaseHelper.COL_SEQ_CONTIGUOUS +
+        ", excluded." + DatabaseHelper.COL_SEQ_CONTIGUOUS + ")";
+
+    private static MessageSequenceTracker instance;
+
+    /** Callbacks run on the main thread. */
+    public interface Listener {
+        /**
+         * Messages that were missing have been fetched and saved. They may be older than
+         * messages already on screen.
+         */
+        void onMessagesRecovered(String chatId, List<Message> messages);
+    }
+
+    /** Missing messages of one chat: afterSeq &lt; seq &lt;= upToSeq. */
+    static final class Range {
+        final String chatId;
+        final long afterSeq;
+        final long upToSeq;
+
+        Range(String chatId, long afterSeq, long upToSeq) {
+            this.chatId = chatId;
+            this.afterSeq = afterSeq;
+            this.upToSeq = upToSeq;
+        }
+    }
+
+    private static final class ChatState {
+        long contiguous;
+        // Numbers received beyond contiguous + 1
+        final TreeSet<Long> ahead = new TreeSet<>();
+        boolean filling;
+        boolean checkScheduled;
+    }
+
+    private final Context context;
+    private final DatabaseHelper dbHelper;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private final Map<String, ChatState> chats = new HashMap<>();
+    private boolean loaded;
+
+    private MessageSequenceTracker(Context context) {
+        this.context = context;
+        this.dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public static synchronized MessageSequenceTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageSequenceTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** A private_message / group_message payload arrived over the socket. */
+    public void onRealtimeMessage(JSONObject message) {
+        if (message == null) {
+            return;
+        }
+        String chatId = message.optString("chat", "");
+        if (chatId.isEmpty()) {
+            chatId = message.optString("chatId", "");
+        }
+        observeAsync(chatId, message.optLong("seq", 0));
+    }
+
+    /** The server accepted one of our sends. The sender gets no socket echo, so the ack closes its number. */
+    public void onMessageAcked(Message serverMessage) {
+        if (serverMessage != null) {
+            observeAsync(serverMessage.getChatId(), serverMessage.getSeq());
+        }
+    }
+
+    private void observeAsync(String chatId, long seq) {
+        if (chatId == null || chatId.isEmpty() || seq <= 0) {
+            // No number: server without sequence support, nothing to track
+            return;
+        }
+        DatabaseExecutor.getInstance().executeRead(() -> observe(chatId, seq));
+    }
+
+    private void observe(String chatId, long seq) {
+        boolean scheduleCheck;
+        synchronized (this) {
+            ensureLoaded();
+            ChatState state = chats.get(chatId);
+            if (state == null) {
+                // First sighting: older history comes from the chat's own page loads
+                track(chatId, seq);
+                return;
+            }
+            if (seq <= state.contiguous) {
+                return;
+            }
+            state.ahead.add(seq);
+            advance(chatId, state);
+            scheduleCheck = !state.ahead.isEmpty() && !state.filling && !state.checkScheduled;
+            if (scheduleCheck) {
+                state.checkScheduled = true;
+            }
+        }
+        if (scheduleCheck) {
+            mainHandler.postDelayed(() -> checkGap(chatId), GAP_GRACE_MS);
+        }
+    }
+
+    private void checkGap(String chatId) {
+        String token = new DatabaseManager(context).getToken();
+        Range range;
+        synchronized (this) {
+            ChatState state = chats.get(chatId);
+            if (state == null) {
+                return;
+            }
+            state.checkScheduled = false;
+            if (state.filling || state.ahead.isEmpty() || token == null || token.isEmpty()) {
+                return;
+            }
+            state.filling = true;
+            range = new Range(chatId, state.contiguous, state.ahead.first() - 1);
+        }
+        Log.d(TAG, "Gap in chat " + chatId + ": fetching " + (range.afterSeq + 1) + ".." + range.upToSeq);
+        SyncManager.getInstance(context).fetchMessageRange(token, range, null);
+    }
+
+    /**
+     * Compare the server's latest number per chat with the watermarks and return what is
+     * missing. A chat seen for the first time starts at the newest message stored for it,
+     * or at the server's latest when nothing is stored, so its old history is not pulled.
+     */
+    List<Range> rangesBehind(Map<String, Long> latest) {
+        List<Range> ranges = new ArrayList<>();
+        synchronized (this) {
+            ensureLoaded();
+            for (Map.Entry<String, Long> entry : latest.entrySet()) {
+                String chatId = entry.getKey();
+                long lastSeq = entry.getValue();
+                if (lastSeq <= 0) {
+                    continue;
+                }
+                ChatState state = chats.get(chatId);
+                if (state == null) {
+                    long stored = localMaxSeq(chatId);
+                    state = track(chatId, stored > 0 ? Math.min(stored, lastSeq) : lastSeq);
+                }
+                if (lastSeq > state.contiguous) {
+                    state.filling = true;
+                    ranges.add(new Range(chatId, state.contiguous, lastSeq));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * The server answered for (afterSeq, coveredSeq]: every number in it either came back
+     * in messages (already saved) or no longer exists.
+     */
+    void onRangeCovered(String chatId, long afterSeq, long coveredSeq, List<Message> messages) {
+        synchronized (this) {
+            ensureLoaded();
+            ChatState state = chats.get(chatId);
+            if (state == null) {
+                track(chatId, coveredSeq);
+            } else if (afterSeq <= state.contiguous && coveredSeq > state.contiguous) {
+                state.contiguous = coveredSeq;
+                state.ahead.headSet(coveredSeq, true).clear();
+                advance(chatId, state);
+                persist(chatId, state.contiguous);
+            }
+        }
+        if (messages != null && !messages.isEmpty() && !listeners.isEmpty()) {
+            mainHandler.post(() -> {
+                for (Listener listener : listeners) {
+                    listener.onMessagesRecovered(chatId, messages);
+                }
+            });
+        }
+    }
+
+    /**
+     * A range fetch is over. A hole that is still open (numbers arrived meanwhile) is
+     * checked again; after a failure the next reconnect catch-up picks it up instead.
+     */
+    void onFillFinished(String chatId, boolean success) {
+        boolean again;
+        synchronized (this) {
+            ChatState state = chats.get(chatId);
+            if (state == null) {
+                return;
+            }
+            state.filling = false;
+            again = success && !state.ahead.isEmpty() && !state.checkScheduled;
+            if (again) {
+                state.checkScheduled = true;
+            }
+        }
+        if (again) {
+            mainHandler.post(() -> checkGap(chatId));
+        }
+    }
+
+    /** Start tracking a chat at the given watermark. Caller holds the lock. */
+    private ChatState track(String chatId, long contiguous) {
+        ChatState state = new ChatState();
+        state.contiguous = contiguous;
+        chats.put(chatId, state);
+        persist(chatId, contiguous);
+        return state;
+    }
+
+    /** Move the watermark over consecutive numbers. Caller holds the lock. */
+    private void advance(String chatId, ChatState state) {
+        long before = state.contiguous;
+        while (!state.ahead.isEmpty() && state.ahead.first() <= state.contiguous + 1) {
+            state.contiguous = Math.max(state.contiguous, state.ahead.pollFirst());
+        }
+        if (state.contiguous != before) {
+            persist(chatId, state.contiguous);
+        }
+    }
+
+    private void persist(String chatId, long contiguous) {
+        DatabaseExecutor.getInstance().executeWrite(() ->
+                dbHelper.getWritableDatabase().execSQL(UPSERT_WATERMARK_SQL, new Object[]{chatId, contiguous}));
+    }
+
+    /** Read the stored watermarks once. Caller holds the lock; never called on the main thread. */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_CHAT_SEQUENCES,
+                new String[]{DatabaseHelper.COL_SEQ_CHAT_ID, DatabaseHelper.COL_SEQ_CONTIGUOUS},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                ChatState state = new ChatState();
+                state.contiguous = cursor.getLong(1);
+                chats.put(cursor.getString(0), state);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading sequence watermarks: " + e.getMessage());
+        }
+    }
+
+    private long localMaxSeq(String chatId) {
+        try {
+            return DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                    "SELECT IFNULL(MAX(" + DatabaseHelper.COL_MSG_SEQ + "), 0) FROM " + DatabaseHelper.TABLE_MESSAGES
+                            + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ?",
+                    new String[]{chatId});
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading local sequence for " + chatId + ": " + e.getMessage());
+            return 0;
+        }
+    }
+}
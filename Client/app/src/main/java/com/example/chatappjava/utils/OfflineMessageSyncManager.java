@@ -1,18 +1,31 @@
 package com.example.chatappjava.utils;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import com.example.chatappjava.models.Message;
 import com.example.chatappjava.network.ApiClient;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Response;
@@ -23,10 +36,17 @@ import okhttp3.Response;
  */
 public class OfflineMessageSyncManager {
     private static final String TAG = "OfflineMessageSync";
-    private static final int MAX_SYNC_ATTEMPTS = 3;
+    /** Backoff between failed sends; the schedule is stored per message in next_attempt_at. */
+    private static final RetryBackoff RETRY_POLICY = RetryBackoff.OUTBOX;
     private static final long SYNC_DEBOUNCE_MS = 2000; // Prevent duplicate syncs within 2 seconds
     /** Defer POST retry after HTTP timeout so delta sync can reconcile first. */
     private static final long SEND_TIMEOUT_GRACE_MS = 12000;
+    /** When the network returns, backed-off retries are spread over this window instead of all firing at once. */
+    private static final long RECONNECT_SPREAD_MS = 5000;
+    /** Chats with a POST outstanding at once during a flush; messages within a chat stay sequential. */
+    private static final int MAX_CHATS_IN_FLIGHT = 4;
+    /** Messages per request in batch mode; the server accepts up to 50. */
+    private static final int SEND_BATCH_SIZE = 50;
 
     private static volatile OfflineMessageSyncManager instance;
     private static final Object INSTANCE_LOCK = new Object();
@@ -38,10 +58,12 @@ public class OfflineMessageSyncManager {
     private volatile boolean isSyncing = false;
     private long lastSyncTime = 0;
     private final Object syncLock = new Object();
-    private final ConcurrentHashMap<String, Long> sendTimeoutGraceUntil = new ConcurrentHashMap<>();
+    /** Cleared when the server has no batch endpoint; flushes then fall back to one POST per message. */
+    private volatile boolean batchSendSupported = true;
     /** Prevent parallel POST for the same client nonce across activity instances. */
     private final ConcurrentHashMap<String, Boolean> inFlightNonces = new ConcurrentHashMap<>();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable retryWakeup = this::syncPendingMessages;
     private PendingSyncListener pendingSyncListener;
 
     public interface PendingSyncListener {
@@ -50,6 +72,14 @@ public class OfflineMessageSyncManager {
         default void onMessageSyncFailed(String tempMessageId, String error) {
             // optional
         }
+
+        /**
+         * A flush settled more messages ({@code completed} of {@code total}); messages held behind
+         * a failure count as settled for this flush. Called off the main thread.
+         */
+        default void onSyncProgress(int completed, int total) {
+            // optional
+        }
     }
 
     public static OfflineMessageSyncManager getInstance(Context context) {
@@ -75,27 +105,52 @@ public class OfflineMessageSyncManager {
         if (tempMessageId == null || tempMessageId.isEmpty()) {
             return;
         }
-        sendTimeoutGraceUntil.put(tempMessageId, System.currentTimeMillis() + SEND_TIMEOUT_GRACE_MS);
-        Log.d(TAG, "Send timeout grace started for " + tempMessageId);
-        mainHandler.postDelayed(this::syncPendingMessages, SEND_TIMEOUT_GRACE_MS + 500);
+        long notBefore = System.currentTimeMillis() + SEND_TIMEOUT_GRACE_MS;
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            messageRepository.deferRetryUntil(tempMessageId, notBefore);
+            Log.d(TAG, "Send timeout grace started for " + tempMessageId);
+            scheduleNextRetry();
+        });
     }
 
-    public void clearSendTimeoutGrace(String tempMessageId) {
-        if (tempMessageId != null) {
-            sendTimeoutGraceUntil.remove(tempMessageId);
-        }
+    /**
+     * Connectivity is back: retries still waiting out their backoff are due now, spread
+     * over a short random window so a fleet of reconnecting clients does not hit the
+     * server in the same instant.
+     */
+    public void onNetworkRestored() {
+        long dueBy = System.currentTimeMillis() + RetryBackoff.jitter(RECONNECT_SPREAD_MS);
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            int pulled = messageRepository.pullRetriesForward(dueBy);
+            if (pulled > 0) {
+                Log.d(TAG, "Network restored, " + pulled + " backed-off messages due in "
+                        + Math.max(0, dueBy - System.currentTimeMillis()) + "ms");
+            }
+            scheduleNextRetry();
+        });
     }
 
-    private boolean isInSendTimeoutGrace(String tempMessageId) {
-        Long until = sendTimeoutGraceUntil.get(tempMessageId);
-        if (until == null) {
-            return false;
-        }
-        if (System.currentTimeMillis() >= until) {
-            sendTimeoutGraceUntil.remove(tempMessageId);
-            return false;
-        }
-        return true;
+    /**
+     * Arm the in-process wakeup for the earliest stored retry. The schedule itself lives in
+     * the messages table, so after process death the next start re-arms it from there.
+     */
+    public void scheduleNextRetry() {
+        DatabaseExecutor.getInstance().executeRead(() -> {
+            long now = System.currentTimeMillis();
+            long next = messageRepository.getNextScheduledRetry(now);
+            mainHandler.removeCallbacks(retryWakeup);
+            if (next <= 0) {
+                return;
+            }
+            long notBefore;
+            synchronized (syncLock) {
+                // A wakeup inside the debounce window would be dropped
+                notBefore = lastSyncTime + SYNC_DEBOUNCE_MS + 100;
+            }
+            long delay = Math.max(next, notBefore) - now;
+            Log.d(TAG, "Next outbox retry in " + Math.max(0, delay) + "ms");
+            mainHandler.postDelayed(retryWakeup, Math.max(0, delay));
+        });
     }
 
     private static boolean isTimeoutError(String error) {
@@ -117,23 +172,7 @@ public class OfflineMessageSyncManager {
      * Check if device has network connectivity
      */
     public boolean isNetworkAvailable() {
-        ConnectivityManager cm =
-            (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null) {
-            return false;
-        }
-        android.net.Network network = cm.getActiveNetwork();
-        if (network == null) {
-            return false;
-        }
-        android.net.NetworkCapabilities caps = cm.getNetworkCapabilities(network);
-        if (caps == null) {
-            return false;
-        }
-        return caps.hasCapability(android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET)
-                && (caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_WIFI)
-                || caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_CELLULAR)
-                || caps.hasTransport(android.net.NetworkCapabilities.TRANSPORT_ETHERNET));
+        return SyncOrchestrator.getInstance(context).isNetworkAvailable();
     }
     
     /**
@@ -161,145 +200,515 @@ public class OfflineMessageSyncManager {
                 return;
             }
             
-            // Get pending messages and filter out any that might have been synced already
-            List<Message> pendingMessages = messageRepository.getPendingMessages();
-            if (pendingMessages.isEmpty()) {
-                Log.d(TAG, "No pending messages to sync");
-                return;
+            isSyncing = true;
+            lastSyncTime = currentTime;
+        }
+        // Read the outbox off the caller's thread; sends go out from the OkHttp callbacks
+        DatabaseExecutor.getInstance().executeRead(this::startOutboxRun);
+    }
+
+    private void startOutboxRun() {
+        List<Message> pendingMessages;
+        Map<String, Long> notDue;
+        try {
+            pendingMessages = messageRepository.getPendingMessages();
+            notDue = messageRepository.getScheduledRetries(System.currentTimeMillis());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read pending messages: " + e.getMessage(), e);
+            finishSync();
+            return;
+        }
+        
+        // One lane per chat, in send (timestamp) order. Lanes run in parallel; each lane
+        // sends its messages strictly one after another so a chat never sees reordering.
+        Map<String, Deque<Message>> lanesByChat = new LinkedHashMap<>();
+        Set<String> waitingChats = new HashSet<>();
+        int total = 0;
+        boolean allHaveNonce = true;
+        for (Message msg : pendingMessages) {
+            if (msg.getId() != null && !msg.getId().startsWith("temp_")) {
+                // Message has server ID, might already be synced - skip
+                Log.d(TAG, "Skipping message with server ID: " + msg.getId());
+                continue;
             }
-            
-            // Double-check: verify messages are still pending before starting sync
-            // This prevents race condition where status was updated between getPendingMessages() and now
-            List<Message> stillPending = new java.util.ArrayList<>();
-            for (Message msg : pendingMessages) {
-                // Re-check status to ensure message is still pending
-                // We'll rely on the database query, but add extra safety
-                if (msg.getId() != null && !msg.getId().startsWith("temp_")) {
-                    // Message has server ID, might already be synced - skip
-                    Log.d(TAG, "Skipping message with server ID: " + msg.getId());
-                    continue;
-                }
-                stillPending.add(msg);
+            if (waitingChats.contains(msg.getChatId())) {
+                continue;
             }
-            
-            if (stillPending.isEmpty()) {
-                Log.d(TAG, "No messages to sync after filtering");
-                return;
+            if (notDue.containsKey(msg.getId())) {
+                // Still backing off; the rest of its chat waits with it to keep order
+                waitingChats.add(msg.getChatId());
+                continue;
             }
-            
-            for (Message msg : stillPending) {
-                Log.d(TAG, "SYNC_PENDING id=" + msg.getId()
-                        + " nonce=" + msg.getClientNonce()
-                        + " content=" + msg.getContent());
+            Log.d(TAG, "SYNC_PENDING id=" + msg.getId()
+                    + " nonce=" + msg.getClientNonce()
+                    + " content=" + msg.getContent());
+            Deque<Message> lane = lanesByChat.get(msg.getChatId());
+            if (lane == null) {
+                lane = new ArrayDeque<>();
+                lanesByChat.put(msg.getChatId(), lane);
             }
+            lane.add(msg);
+            total++;
+            if (msg.getClientNonce() == null || msg.getClientNonce().isEmpty()) {
+                allHaveNonce = false;
+            }
+        }
+        
+        if (lanesByChat.isEmpty()) {
+            Log.d(TAG, "No pending messages to sync");
+            finishSync();
+            return;
+        }
+        
+        Log.d(TAG, "Starting sync for " + total + " pending messages in " + lanesByChat.size() + " chats");
+        // Batch results are matched by client nonce, so older rows without one go out singly
+        if (batchSendSupported && allHaveNonce) {
+            new BatchRun(lanesByChat.values(), total).start();
+        } else {
+            new OutboxRun(lanesByChat.values(), total).start();
+        }
+    }
 
-            Log.d(TAG, "Starting sync for " + stillPending.size() + " pending messages");
-            isSyncing = true;
-            lastSyncTime = currentTime;
-            
-            // Start sync in background to avoid blocking
-            new Thread(() -> {
-                syncMessagesSequentially(stillPending, 0);
-            }).start();
+    private void finishSync() {
+        synchronized (syncLock) {
+            isSyncing = false;
         }
+        scheduleNextRetry();
     }
-    
+
     /**
-     * Sync messages one by one to avoid overwhelming the server
+     * One flush of the outbox. Up to {@link #MAX_CHATS_IN_FLIGHT} chat lanes have a POST
+     * outstanding at a time; when a lane empties (or stops on a failure) its slot picks up the
+     * next waiting lane. Flush time therefore grows with the number of chats, not messages.
      */
-    private void syncMessagesSequentially(List<Message> messages, int index) {
-        if (index >= messages.size()) {
-            synchronized (syncLock) {
-                isSyncing = false;
+    private final class OutboxRun {
+        private final Queue<Deque<Message>> waitingLanes;
+        private final AtomicInteger activeLanes = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final int total;
+
+        OutboxRun(Collection<Deque<Message>> lanes, int total) {
+            this.waitingLanes = new ConcurrentLinkedQueue<>(lanes);
+            this.total = total;
+        }
+
+        void start() {
+            int slots = Math.min(MAX_CHATS_IN_FLIGHT, waitingLanes.size());
+            activeLanes.set(slots);
+            for (int i = 0; i < slots; i++) {
+                nextLane();
             }
-            Log.d(TAG, "Finished syncing all messages");
-            return;
         }
-        
-        Message message = messages.get(index);
-        
-        // Double-check message is still pending before syncing
-        // This prevents duplicate syncs if status was updated by another thread
-        if (!messageRepository.isMessagePending(message.getId())) {
-            Log.d(TAG, "Message " + message.getId() + " is no longer pending, skipping");
-            syncMessagesSequentially(messages, index + 1);
-            return;
+
+        private void nextLane() {
+            Deque<Message> lane = waitingLanes.poll();
+            if (lane == null) {
+                if (activeLanes.decrementAndGet() == 0) {
+                    finishSync();
+                    Log.d(TAG, "Finished syncing all messages");
+                }
+                return;
+            }
+            drainLane(lane);
         }
 
-        final String tempMessageId = message.getId();
-        if (isInSendTimeoutGrace(tempMessageId)) {
-            Log.d(TAG, "Deferring POST retry during timeout grace: " + tempMessageId);
-            syncMessagesSequentially(messages, index + 1);
-            return;
+        /**
+         * Work through a lane until a POST is started (its callback resumes the lane) or the
+         * lane is done. Skips loop here instead of recursing.
+         */
+        private void drainLane(Deque<Message> lane) {
+            Message message;
+            while ((message = lane.poll()) != null) {
+                LaneStep step = sendNext(message, lane);
+                if (step == LaneStep.SENT) {
+                    return;
+                }
+                if (step == LaneStep.BLOCKED) {
+                    // Anything behind this message would overtake it; leave the rest for the next flush
+                    Log.d(TAG, "Holding " + lane.size() + " queued messages behind " + message.getId());
+                    reportProgress(1 + lane.size());
+                    break;
+                }
+                reportProgress(1);
+            }
+            nextLane();
         }
 
-        final String nonce = message.getClientNonce();
-        if (nonce != null && !nonce.isEmpty() && inFlightNonces.putIfAbsent(nonce, Boolean.TRUE) != null) {
-            Log.d(TAG, "POST already in flight for nonce=" + nonce + ", skipping duplicate");
-            syncMessagesSequentially(messages, index + 1);
-            return;
+        private LaneStep sendNext(Message message, Deque<Message> lane) {
+            LaneStep claim = claimForSend(message);
+            if (claim != LaneStep.READY) {
+                return claim;
+            }
+            final String tempMessageId = message.getId();
+            final String nonce = message.getClientNonce();
+
+            syncSingleMessage(message, new SyncCallback() {
+                @Override
+                public void onSuccess(String newMessageId, Message serverMessage) {
+                    releaseInFlightNonce(nonce);
+                    synchronized (syncLock) {
+                        messageRepository.updateSyncStatus(
+                            tempMessageId,
+                            newMessageId,
+                            "synced",
+                            null
+                        );
+                    }
+
+                    Log.d(TAG, "Successfully synced message: " + tempMessageId + " -> " + newMessageId);
+                    MessageSequenceTracker.getInstance(context).onMessageAcked(serverMessage);
+
+                    if (pendingSyncListener != null && serverMessage != null) {
+                        pendingSyncListener.onMessageSynced(tempMessageId, serverMessage);
+                    }
+
+                    reportProgress(1);
+                    drainLane(lane);
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    releaseInFlightNonce(nonce);
+                    int attempts = messageRepository.incrementSyncAttempts(tempMessageId);
+                    boolean gaveUp = RETRY_POLICY.isExhausted(attempts);
+                    synchronized (syncLock) {
+                        if (gaveUp) {
+                            messageRepository.markMessageAsFailed(tempMessageId, error);
+                            if (pendingSyncListener != null) {
+                                pendingSyncListener.onMessageSyncFailed(tempMessageId, error);
+                            }
+                        } else {
+                            messageRepository.markMessageAsPending(tempMessageId, error,
+                                    System.currentTimeMillis() + RETRY_POLICY.delayAfter(attempts));
+                        }
+                    }
+
+                    Log.e(TAG, "Failed to sync message: " + tempMessageId + " - " + error
+                            + " (attempt " + attempts + "/" + RETRY_POLICY.getMaxAttempts() + ")");
+                    if (isTimeoutError(error) && !gaveUp) {
+                        markSendTimeout(tempMessageId);
+                    }
+                    if (gaveUp) {
+                        // Given up on this one; the rest of the chat may go
+                        reportProgress(1);
+                        drainLane(lane);
+                    } else {
+                        // Still pending: the rest of the chat waits for its retry to keep order
+                        Log.d(TAG, "Holding " + lane.size() + " queued messages behind " + tempMessageId);
+                        reportProgress(1 + lane.size());
+                        nextLane();
+                    }
+                }
+            });
+            return LaneStep.SENT;
         }
 
-        Message existingServer = messageRepository.findMatchingServerMessage(message);
-        if (existingServer != null) {
-            Log.d(TAG, "SKIP_POST already synced temp=" + tempMessageId
-                    + " real=" + existingServer.getId());
-            messageRepository.resolvePendingWithServerMessage(tempMessageId, existingServer);
-            clearSendTimeoutGrace(tempMessageId);
-            if (pendingSyncListener != null) {
-                pendingSyncListener.onMessageSynced(tempMessageId, existingServer);
+        /** Held messages count as settled once their lane stops, so the last report is total of total. */
+        private void reportProgress(int settled) {
+            int done = completed.addAndGet(settled);
+            PendingSyncListener listener = pendingSyncListener;
+            if (listener != null) {
+                listener.onSyncProgress(done, total);
             }
-            syncMessagesSequentially(messages, index + 1);
-            return;
+        }
+    }
+
+    /**
+     * One flush of the outbox over the batch endpoint. Lanes are packed in order into requests
+     * of up to {@link #SEND_BATCH_SIZE} messages, sent one after another. Per-item results come
+     * back keyed by client nonce and each request's results are applied in one transaction.
+     * The server holds later items of a chat behind a failed one, and a chat with a failure is
+     * dropped from the rest of the flush, so ordering within a chat matches lane mode.
+     */
+    private final class BatchRun {
+        private final Deque<Deque<Message>> lanes;
+        private final int total;
+        private int completed;
+
+        BatchRun(Collection<Deque<Message>> lanes, int total) {
+            this.lanes = new ArrayDeque<>(lanes);
+            this.total = total;
+        }
+
+        void start() {
+            sendNextBatch();
+        }
+
+        private void sendNextBatch() {
+            List<Message> batch = new ArrayList<>();
+            while (batch.size() < SEND_BATCH_SIZE && !lanes.isEmpty()) {
+                Deque<Message> lane = lanes.peekFirst();
+                Message message = lane.poll();
+                if (message == null) {
+                    lanes.pollFirst();
+                    continue;
+                }
+                LaneStep step = claimForSend(message);
+                if (step == LaneStep.READY) {
+                    batch.add(message);
+                } else if (step == LaneStep.BLOCKED) {
+                    Log.d(TAG, "Holding " + lane.size() + " queued messages behind " + message.getId());
+                    reportProgress(1 + lane.size());
+                    lanes.pollFirst();
+                } else {
+                    reportProgress(1);
+                }
+            }
+            if (batch.isEmpty()) {
+                finishSync();
+                Log.d(TAG, "Finished syncing all messages");
+                return;
+            }
+            postBatch(batch);
         }
 
-        syncSingleMessage(message, new SyncCallback() {
-            @Override
-            public void onSuccess(String newMessageId, Message serverMessage) {
-                releaseInFlightNonce(nonce);
-                synchronized (syncLock) {
-                    messageRepository.updateSyncStatus(
-                        tempMessageId,
-                        newMessageId,
-                        "synced",
-                        null
-                    );
+        private void postBatch(List<Message> batch) {
+            String token = databaseManager.getToken();
+            if (token == null || token.isEmpty()) {
+                settle(batch, null, "No authentication token", OfflineMessageSyncManager.this::finishSync);
+                return;
+            }
+            JSONArray items = new JSONArray();
+            try {
+                for (Message message : batch) {
+                    items.put(toSendJson(message));
                 }
+            } catch (JSONException e) {
+                Log.e(TAG, "Error preparing batch for sync: " + e.getMessage());
+                settle(batch, null, "JSON error: " + e.getMessage(), OfflineMessageSyncManager.this::finishSync);
+                return;
+            }
 
-                Log.d(TAG, "Successfully synced message: " + tempMessageId + " -> " + newMessageId);
+            Log.d(TAG, "Sending batch of " + batch.size() + " messages");
+            apiClient.sendMessagesBatch(token, items, new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.e(TAG, "Failed to sync batch: " + e.getMessage());
+                    // Connection trouble; the rest of the outbox waits for the next flush
+                    settle(batch, null, e.getMessage(), OfflineMessageSyncManager.this::finishSync);
+                }
 
-                clearSendTimeoutGrace(tempMessageId);
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    String responseBody = response.body() != null ? response.body().string() : "";
 
-                if (pendingSyncListener != null && serverMessage != null) {
-                    pendingSyncListener.onMessageSynced(tempMessageId, serverMessage);
+                    // 404: no batch endpoint on this server; single sends from now on. Any other
+                    // error, 400 included, fails this request only and the next flush batches again.
+                    if (response.code() == 404) {
+                        Log.w(TAG, "Batch send not supported (HTTP 404), falling back to single sends");
+                        batchSendSupported = false;
+                        for (Message message : batch) {
+                            releaseInFlightNonce(message.getClientNonce());
+                        }
+                        synchronized (syncLock) {
+                            isSyncing = false;
+                            lastSyncTime = 0;
+                        }
+                        syncPendingMessages();
+                        return;
+                    }
+                    if (!response.isSuccessful()) {
+                        Log.e(TAG, "Batch sync failed with status: " + response.code());
+                        settle(batch, null, "HTTP " + response.code(), OfflineMessageSyncManager.this::finishSync);
+                        return;
+                    }
+
+                    Map<String, JSONObject> results = new HashMap<>();
+                    try {
+                        JSONObject jsonResponse = new JSONObject(responseBody);
+                        JSONObject data = jsonResponse.optJSONObject("data");
+                        JSONArray list = data != null ? data.optJSONArray("results") : null;
+                        if (list != null) {
+                            for (int i = 0; i < list.length(); i++) {
+                                JSONObject result = list.optJSONObject(i);
+                                if (result != null) {
+                                    results.put(result.optString("clientNonce", ""), result);
+                                }
+                            }
+                        }
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error parsing batch response: " + e.getMessage());
+                        settle(batch, null, "Parse error: " + e.getMessage(), OfflineMessageSyncManager.this::finishSync);
+                        return;
+                    }
+                    settle(batch, results, "Invalid server response", BatchRun.this::sendNextBatch);
                 }
+            });
+        }
 
-                syncMessagesSequentially(messages, index + 1);
+        /**
+         * Turn per-item results into send outcomes, store them in one transaction on the
+         * database writer, notify, then run {@code then} there. Without {@code results} the
+         * request failed as a whole: every message in it fails with {@code error}, and so does
+         * the first message of each lane the flush never reached, with the rest of those lanes
+         * held behind it. Nothing is left unreported when the flush stops early.
+         */
+        private void settle(List<Message> batch, Map<String, JSONObject> results, String error, Runnable then) {
+            List<MessageRepository.SendOutcome> outcomes = new ArrayList<>();
+            Map<String, Message> byTempId = new HashMap<>();
+            Map<String, Message> serverMessages = new HashMap<>();
+            Set<String> heldChats = new HashSet<>();
+            int held = 0;
+
+            for (Message message : batch) {
+                byTempId.put(message.getId(), message);
+                JSONObject result = results != null ? results.get(message.getClientNonce()) : null;
+                String status = result != null ? result.optString("status", "") : "";
+                if ("held".equals(status)) {
+                    // Never attempted: stays pending behind its chat's failed message
+                    heldChats.add(message.getChatId());
+                    held++;
+                    continue;
+                }
+                if ("ok".equals(status)) {
+                    Message serverMessage = parseServerMessage(result.optJSONObject("message"), message);
+                    if (serverMessage != null) {
+                        serverMessages.put(message.getId(), serverMessage);
+                        outcomes.add(MessageRepository.SendOutcome.acked(message.getId(), serverMessage.getId()));
+                        continue;
+                    }
+                }
+                String itemError = result != null ? result.optString("error", error) : error;
+                outcomes.add(MessageRepository.SendOutcome.failed(message.getId(), itemError));
             }
+            if (results == null) {
+                // The lanes not reached would have met the same failure
+                for (Deque<Message> lane : lanes) {
+                    Message next = lane.poll();
+                    if (next != null) {
+                        byTempId.put(next.getId(), next);
+                        outcomes.add(MessageRepository.SendOutcome.failed(next.getId(), error));
+                    }
+                }
+            }
+            final int heldInBatch = held;
 
-            @Override
-            public void onFailure(String error) {
-                releaseInFlightNonce(nonce);
-                int attempts = messageRepository.incrementSyncAttempts(tempMessageId);
-                synchronized (syncLock) {
-                    if (attempts >= MAX_SYNC_ATTEMPTS) {
-                        messageRepository.markMessageAsFailed(tempMessageId, error);
-                        if (pendingSyncListener != null) {
-                            pendingSyncListener.onMessageSyncFailed(tempMessageId, error);
+            // Off the OkHttp thread, queued behind any other write instead of blocking on syncLock
+            DatabaseExecutor.getInstance().executeWrite(() -> {
+                messageRepository.applySendOutcomes(outcomes, RETRY_POLICY);
+                for (Message message : batch) {
+                    releaseInFlightNonce(message.getClientNonce());
+                }
+                report(outcomes, byTempId, serverMessages, heldChats, heldInBatch);
+                if (results == null) {
+                    int waiting = 0;
+                    for (Deque<Message> lane : lanes) {
+                        waiting += lane.size();
+                    }
+                    lanes.clear();
+                    if (waiting > 0) {
+                        reportProgress(waiting);
+                    }
+                }
+                then.run();
+            });
+        }
+
+        private void report(List<MessageRepository.SendOutcome> outcomes, Map<String, Message> byTempId,
+                            Map<String, Message> serverMessages, Set<String> heldChats, int held) {
+            PendingSyncListener listener = pendingSyncListener;
+            for (MessageRepository.SendOutcome outcome : outcomes) {
+                if (outcome.isAcked()) {
+                    Log.d(TAG, "Successfully synced message: " + outcome.tempId + " -> " + outcome.serverId);
+                    MessageSequenceTracker.getInstance(context).onMessageAcked(serverMessages.get(outcome.tempId));
+                    if (listener != null) {
+                        listener.onMessageSynced(outcome.tempId, serverMessages.get(outcome.tempId));
+                    }
+                } else {
+                    Log.e(TAG, "Failed to sync message: " + outcome.tempId + " - " + outcome.error
+                            + " (attempt " + outcome.getAttempts() + "/" + RETRY_POLICY.getMaxAttempts() + ")");
+                    if (outcome.isGaveUp()) {
+                        if (listener != null) {
+                            listener.onMessageSyncFailed(outcome.tempId, outcome.error);
                         }
                     } else {
-                        messageRepository.markMessageAsPending(tempMessageId, error);
+                        // Still pending: the rest of the chat waits for its retry to keep order
+                        heldChats.add(byTempId.get(outcome.tempId).getChatId());
+                        if (isTimeoutError(outcome.error)) {
+                            markSendTimeout(outcome.tempId);
+                        }
                     }
                 }
+                reportProgress(1);
+            }
 
-                Log.e(TAG, "Failed to sync message: " + tempMessageId + " - " + error
-                        + " (attempt " + attempts + "/" + MAX_SYNC_ATTEMPTS + ")");
-                if (isTimeoutError(error) && attempts < MAX_SYNC_ATTEMPTS) {
-                    markSendTimeout(tempMessageId);
+            if (!heldChats.isEmpty()) {
+                Iterator<Deque<Message>> it = lanes.iterator();
+                while (it.hasNext()) {
+                    Deque<Message> lane = it.next();
+                    if (!lane.isEmpty() && heldChats.contains(lane.peekFirst().getChatId())) {
+                        held += lane.size();
+                        it.remove();
+                    }
                 }
-                syncMessagesSequentially(messages, index + 1);
             }
-        });
+            if (held > 0) {
+                reportProgress(held);
+            }
+        }
+
+        private Message parseServerMessage(JSONObject msgJson, Message pending) {
+            if (msgJson == null || msgJson.optString("_id", "").isEmpty()) {
+                return null;
+            }
+            try {
+                Message serverMessage = Message.fromJson(msgJson);
+                if ((serverMessage.getClientNonce() == null || serverMessage.getClientNonce().isEmpty())
+                        && pending.getClientNonce() != null) {
+                    serverMessage.setClientNonce(pending.getClientNonce());
+                }
+                return serverMessage;
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing synced message: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /** Held messages count as settled once their chat drops out of the flush. */
+        private void reportProgress(int settled) {
+            completed += settled;
+            PendingSyncListener listener = pendingSyncListener;
+            if (listener != null) {
+                listener.onSyncProgress(completed, total);
+            }
+        }
+    }
+
+    /** READY means the message passed the pre-send checks and its nonce is now claimed. */
+    private enum LaneStep { READY, SENT, SKIPPED, BLOCKED }
+
+    /**
+     * Pre-send checks shared by both flush modes: the message must still be pending, not
+     * already in flight, and not already on the server (in which case it is resolved locally
+     * and skipped). Messages still backing off never reach this point.
+     */
+    private LaneStep claimForSend(Message message) {
+        // Double-check message is still pending before syncing
+        // This prevents duplicate syncs if status was updated by another thread
+        if (!messageRepository.isMessagePending(message.getId())) {
+            Log.d(TAG, "Message " + message.getId() + " is no longer pending, skipping");
+            return LaneStep.SKIPPED;
+        }
+
+        final String tempMessageId = message.getId();
+        final String nonce = message.getClientNonce();
+        if (nonce != null && !nonce.isEmpty() && inFlightNonces.putIfAbsent(nonce, Boolean.TRUE) != null) {
+            Log.d(TAG, "POST already in flight for nonce=" + nonce + ", skipping duplicate");
+            return LaneStep.BLOCKED;
+        }
+
+        Message existingServer = messageRepository.findMatchingServerMessage(message);
+        if (existingServer != null) {
+            releaseInFlightNonce(nonce);
+            Log.d(TAG, "SKIP_POST already synced temp=" + tempMessageId
+                    + " real=" + existingServer.getId());
+            messageRepository.resolvePendingWithServerMessage(tempMessageId, existingServer);
+            if (pendingSyncListener != null) {
+                pendingSyncListener.onMessageSynced(tempMessageId, existingServer);
+            }
+            return LaneStep.SKIPPED;
+        }
+        return LaneStep.READY;
     }
 
     private void releaseInFlightNonce(String nonce) {
@@ -319,26 +728,7 @@ public class OfflineMessageSyncManager {
         }
         
         try {
-            // Prepare message JSON for API
-            JSONObject messageJson = new JSONObject();
-            messageJson.put("chatId", message.getChatId());
-            messageJson.put("content", message.getContent());
-            messageJson.put("type", message.getType());
-            messageJson.put("timestamp", message.getTimestamp());
-            
-            if (message.getReplyToMessageId() != null && !message.getReplyToMessageId().isEmpty()) {
-                messageJson.put("replyTo", message.getReplyToMessageId());
-            }
-            
-            if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
-                // Attachments should already be in JSON format
-                messageJson.put("attachments", new org.json.JSONArray(message.getAttachments()));
-            }
-            
-            // Add clientNonce for deduplication
-            if (message.getClientNonce() != null && !message.getClientNonce().isEmpty()) {
-                messageJson.put("clientNonce", message.getClientNonce());
-            }
+            JSONObject messageJson = toSendJson(message);
             
             // Send message via API
             apiClient.sendMessage(token, messageJson, new Callback() {
@@ -393,6 +783,32 @@ public class OfflineMessageSyncManager {
         }
     }
     
+    /**
+     * Prepare message JSON for the send API
+     */
+    private static JSONObject toSendJson(Message message) throws JSONException {
+        JSONObject messageJson = new JSONObject();
+        messageJson.put("chatId", message.getChatId());
+        messageJson.put("content", message.getContent());
+        messageJson.put("type", message.getType());
+        messageJson.put("timestamp", message.getTimestamp());
+        
+        if (message.getReplyToMessageId() != null && !message.getReplyToMessageId().isEmpty()) {
+            messageJson.put("replyTo", message.getReplyToMessageId());
+        }
+        
+        if (message.getAttachments() != null && !message.getAttachments().isEmpty()) {
+            // Attachments should already be in JSON format
+            messageJson.put("attachments", new JSONArray(message.getAttachments()));
+        }
+        
+        // Add clientNonce for deduplication
+        if (message.getClientNonce() != null && !message.getClientNonce().isEmpty()) {
+            messageJson.put("clientNonce", message.getClientNonce());
+        }
+        return messageJson;
+    }
+
     /**
      * Callback interface for sync operations
      */
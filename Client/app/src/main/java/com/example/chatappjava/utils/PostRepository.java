@@ -11,7 +11,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Repository class for managing posts in SQLite database
@@ -21,13 +23,18 @@ import java.util.List;
 public class PostRepository {
     private static final String TAG = "PostRepository";
     private static final int MAX_POSTS = 50;
+    public static final int FEED_PAGE_SIZE = 20;
+
+    // (timestamp, id) order matches idx_posts_ts; id breaks ties within one millisecond
+    private static final String FEED_ORDER =
+        DatabaseHelper.COL_POST_TIMESTAMP + " DESC, " + DatabaseHelper.COL_POST_ID + " DESC";
     
     private final DatabaseHelper dbHelper;
     private final Context context;
     
     public PostRepository(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
     }
     
     /**
@@ -38,6 +45,7 @@ public class PostRepository {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         try {
+            db.beginTransaction();
             // Preserve existing author info and shared post if new values are empty
             // Only preserve if server returned empty values AND existing post has valid values
             // This prevents preserving null/empty values from cache when server has valid data
@@ -109,16 +117,8 @@ public class PostRepository {
                 values.putNull(DatabaseHelper.COL_POST_SHARED_POST);
             }
             
-            // Serialize media URLs to JSON
-            if (post.getMediaUrls() != null && !post.getMediaUrls().isEmpty()) {
-                JSONArray mediaArray = new JSONArray();
-                for (String url : post.getMediaUrls()) {
-                    mediaArray.put(url);
-                }
-                values.put(DatabaseHelper.COL_POST_MEDIA_URLS, mediaArray.toString());
-            } else {
-                values.putNull(DatabaseHelper.COL_POST_MEDIA_URLS);
-            }
+            // Media URLs live in post_media
+            values.putNull(DatabaseHelper.COL_POST_MEDIA_URLS);
             
             // Serialize tagged users to JSON
             if (post.getTaggedUsers() != null && !post.getTaggedUsers().isEmpty()) {
@@ -142,24 +142,30 @@ public class PostRepository {
                 values,
                 SQLiteDatabase.CONFLICT_REPLACE
             );
+            writeMediaRows(db, post.getId(), post.getMediaUrls());
             
             // Keep only MAX_POSTS most recent posts
             keepOnlyRecentPosts(db);
             
+            db.setTransactionSuccessful();
             Log.d(TAG, "Post saved: " + post.getId());
             
         } catch (Exception e) {
             Log.e(TAG, "Error saving post: " + e.getMessage(), e);
         } finally {
-            db.close();
+            if (db.inTransaction()) {
+                db.endTransaction();
+            }
         }
     }
     
     /**
      * Save multiple posts to local database
      * If there are more than MAX_POSTS, delete the oldest ones
+     *
+     * @return false when the posts could not be written (nothing was saved)
      */
-    public void savePosts(List<Post> posts) {
+    public boolean savePosts(List<Post> posts) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         try {
@@ -237,16 +243,8 @@ public class PostRepository {
                     values.putNull(DatabaseHelper.COL_POST_SHARED_POST);
                 }
                 
-                // Serialize media URLs to JSON
-                if (post.getMediaUrls() != null && !post.getMediaUrls().isEmpty()) {
-                    JSONArray mediaArray = new JSONArray();
-                    for (String url : post.getMediaUrls()) {
-                        mediaArray.put(url);
-                    }
-                    values.put(DatabaseHelper.COL_POST_MEDIA_URLS, mediaArray.toString());
-                } else {
-                    values.putNull(DatabaseHelper.COL_POST_MEDIA_URLS);
-                }
+                // Media URLs live in post_media
+                values.putNull(DatabaseHelper.COL_POST_MEDIA_URLS);
                 
                 // Serialize tagged users to JSON
                 if (post.getTaggedUsers() != null && !post.getTaggedUsers().isEmpty()) {
@@ -269,6 +267,7 @@ public class PostRepository {
                     values,
                     SQLiteDatabase.CONFLICT_REPLACE
                 );
+                writeMediaRows(db, post.getId(), post.getMediaUrls());
             }
             
             // Keep only MAX_POSTS most recent posts
@@ -276,12 +275,12 @@ public class PostRepository {
             
             db.setTransactionSuccessful();
             Log.d(TAG, "Saved " + posts.size() + " posts");
-            
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Error saving posts: " + e.getMessage(), e);
+            return false;
         } finally {
             db.endTransaction();
-            db.close();
         }
     }
     
@@ -290,37 +289,61 @@ public class PostRepository {
      * Limited to MAX_POSTS
      */
     public List<Post> getAllPosts() {
+        return getRecentPosts(MAX_POSTS);
+    }
+
+    /**
+     * First window of the cached feed, newest first.
+     */
+    public List<Post> getRecentPosts(int limit) {
+        return queryFeedPage(null, null, limit);
+    }
+
+    /**
+     * Keyset page of the cached feed: posts strictly older than (beforeTimestamp, beforeId)
+     * in (timestamp, id) order, newest first. Reads only the requested window, so the cost
+     * does not depend on how many posts are cached.
+     */
+    public List<Post> getPostsBefore(long beforeTimestamp, String beforeId, int limit) {
+        String ts = String.valueOf(beforeTimestamp);
+        if (beforeId == null || beforeId.isEmpty()) {
+            return queryFeedPage(DatabaseHelper.COL_POST_TIMESTAMP + " < ?", new String[]{ts}, limit);
+        }
+        return queryFeedPage(
+            DatabaseHelper.COL_POST_TIMESTAMP + " < ? OR (" +
+                DatabaseHelper.COL_POST_TIMESTAMP + " = ? AND " + DatabaseHelper.COL_POST_ID + " < ?)",
+            new String[]{ts, ts, beforeId},
+            limit
+        );
+    }
+
+    private List<Post> queryFeedPage(String selection, String[] selectionArgs, int limit) {
         List<Post> posts = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String orderBy = DatabaseHelper.COL_POST_TIMESTAMP + " DESC";
-        String limitStr = String.valueOf(MAX_POSTS);
-        
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_POSTS,
+            PostRowMapper.COLUMNS,
+            selection,
+            selectionArgs,
             null,
             null,
-            null,
-            null,
-            null,
-            orderBy,
-            limitStr
+            FEED_ORDER,
+            String.valueOf(Math.max(1, limit))
         );
         
         if (cursor != null) {
             try {
+                PostRowMapper mapper = new PostRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    Post post = cursorToPost(cursor);
-                    if (post != null) {
-                        posts.add(post);
-                    }
+                    posts.add(mapper.map(cursor));
                 }
             } finally {
                 cursor.close();
             }
         }
+        loadMedia(db, posts);
         
-        db.close();
         Log.d(TAG, "Retrieved " + posts.size() + " posts");
         return posts;
     }
@@ -328,17 +351,15 @@ public class PostRepository {
     /**
      * Get a post by ID from local database
      * @param postId The post ID to retrieve
-     * @param db Optional existing database connection. If null, a new connection will be opened and closed.
+     * @param db Optional existing database connection (e.g. inside a transaction). If null, the shared connection is used.
      */
     public Post getPostById(String postId, SQLiteDatabase db) {
         if (postId == null || postId.isEmpty()) {
             return null;
         }
         
-        boolean shouldClose = false;
         if (db == null) {
             db = dbHelper.getReadableDatabase();
-            shouldClose = true;
         }
         
         Post post = null;
@@ -348,7 +369,7 @@ public class PostRepository {
         
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_POSTS,
-            null,
+            PostRowMapper.COLUMNS,
             selection,
             selectionArgs,
             null,
@@ -360,21 +381,23 @@ public class PostRepository {
         if (cursor != null) {
             try {
                 if (cursor.moveToFirst()) {
-                    post = cursorToPost(cursor);
+                    post = new PostRowMapper(cursor).map(cursor);
                 }
             } finally {
                 cursor.close();
             }
         }
-        
-        if (shouldClose) {
-            db.close();
+        if (post != null) {
+            List<Post> single = new ArrayList<>(1);
+            single.add(post);
+            loadMedia(db, single);
         }
+        
         return post;
     }
     
     /**
-     * Get a post by ID from local database (opens and closes its own connection)
+     * Get a post by ID from local database
      */
     public Post getPostById(String postId) {
         return getPostById(postId, null);
@@ -395,8 +418,6 @@ public class PostRepository {
             Log.d(TAG, "Deleted post: " + postId + " (count: " + deleted + ")");
         } catch (Exception e) {
             Log.e(TAG, "Error deleting post: " + e.getMessage(), e);
-        } finally {
-            db.close();
         }
     }
     
@@ -407,11 +428,72 @@ public class PostRepository {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         try {
             int deleted = db.delete(DatabaseHelper.TABLE_POSTS, null, null);
+            db.delete(DatabaseHelper.TABLE_POST_MEDIA, null, null);
             Log.d(TAG, "Deleted " + deleted + " posts");
         } catch (Exception e) {
             Log.e(TAG, "Error deleting posts: " + e.getMessage(), e);
-        } finally {
-            db.close();
+        }
+    }
+    
+    /**
+     * Rewrite the media rows of one post in display order. The caller owns the transaction.
+     */
+    static void writeMediaRows(SQLiteDatabase db, String postId, List<String> mediaUrls) {
+        if (postId == null) {
+            return;
+        }
+        db.delete(DatabaseHelper.TABLE_POST_MEDIA, DatabaseHelper.COL_MEDIA_POST_ID + " = ?", new String[]{postId});
+        if (mediaUrls == null) {
+            return;
+        }
+        int position = 0;
+        for (String url : mediaUrls) {
+            if (url == null || url.isEmpty()) {
+                continue;
+            }
+            ContentValues row = new ContentValues();
+            row.put(DatabaseHelper.COL_MEDIA_POST_ID, postId);
+            row.put(DatabaseHelper.COL_MEDIA_POSITION, position++);
+            row.put(DatabaseHelper.COL_MEDIA_URL, url);
+            db.insertWithOnConflict(DatabaseHelper.TABLE_POST_MEDIA, null, row, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * Attach media URLs to a page of posts with a single IN (...) lookup (pages are at most MAX_POSTS).
+     */
+    private static void loadMedia(SQLiteDatabase db, List<Post> posts) {
+        if (posts.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> byPost = new HashMap<>();
+        String[] ids = new String[posts.size()];
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < posts.size(); i++) {
+            ids[i] = posts.get(i).getId();
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        try (Cursor cursor = db.query(
+                DatabaseHelper.TABLE_POST_MEDIA,
+                new String[]{DatabaseHelper.COL_MEDIA_POST_ID, DatabaseHelper.COL_MEDIA_URL},
+                DatabaseHelper.COL_MEDIA_POST_ID + " IN (" + placeholders + ")",
+                ids,
+                null, null,
+                DatabaseHelper.COL_MEDIA_POST_ID + ", " + DatabaseHelper.COL_MEDIA_POSITION)) {
+            while (cursor.moveToNext()) {
+                List<String> urls = byPost.get(cursor.getString(0));
+                if (urls == null) {
+                    urls = new ArrayList<>();
+                    byPost.put(cursor.getString(0), urls);
+                }
+                urls.add(cursor.getString(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading post media: " + e.getMessage(), e);
+        }
+        for (Post post : posts) {
+            List<String> urls = byPost.get(post.getId());
+            post.setMediaUrls(urls != null ? urls : new ArrayList<>());
         }
     }
     
@@ -449,137 +531,4 @@ public class PostRepository {
             Log.e(TAG, "Error keeping only recent posts: " + e.getMessage(), e);
         }
     }
-    
-    /**
-     * Convert Cursor to Post object
-     */
-    private Post cursorToPost(Cursor cursor) {
-        try {
-            JSONObject postJson = new JSONObject();
-            
-            int idIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_ID);
-            int authorIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_ID);
-            int authorUsernameIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_USERNAME);
-            int authorAvatarIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_AVATAR);
-            int contentIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_CONTENT);
-            int mediaUrlsIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_MEDIA_URLS);
-            int mediaTypeIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_MEDIA_TYPE);
-            int timestampIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_TIMESTAMP);
-            int likesCountIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_LIKES_COUNT);
-            int commentsCountIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_COMMENTS_COUNT);
-            int sharesCountIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARES_COUNT);
-            int isLikedIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_IS_LIKED);
-            int reactionTypeIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_REACTION_TYPE);
-            int sharedPostIdIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARED_POST_ID);
-            int sharedPostIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARED_POST);
-            int taggedUsersIndex = cursor.getColumnIndex(DatabaseHelper.COL_POST_TAGGED_USERS);
-            
-            if (idIndex >= 0 && !cursor.isNull(idIndex)) {
-                postJson.put("_id", cursor.getString(idIndex));
-            }
-            if (authorIdIndex >= 0 && !cursor.isNull(authorIdIndex)) {
-                JSONObject userIdObj = new JSONObject();
-                userIdObj.put("_id", cursor.getString(authorIdIndex));
-                if (authorUsernameIndex >= 0 && !cursor.isNull(authorUsernameIndex)) {
-                    userIdObj.put("username", cursor.getString(authorUsernameIndex));
-                }
-                if (authorAvatarIndex >= 0 && !cursor.isNull(authorAvatarIndex)) {
-                    userIdObj.put("avatar", cursor.getString(authorAvatarIndex));
-                }
-                postJson.put("userId", userIdObj);
-            }
-            if (contentIndex >= 0 && !cursor.isNull(contentIndex)) {
-                postJson.put("content", cursor.getString(contentIndex));
-            }
-            if (timestampIndex >= 0 && !cursor.isNull(timestampIndex)) {
-                postJson.put("createdAt", cursor.getLong(timestampIndex));
-            }
-            if (likesCountIndex >= 0 && !cursor.isNull(likesCountIndex)) {
-                postJson.put("likesCount", cursor.getInt(likesCountIndex));
-            }
-            if (commentsCountIndex >= 0 && !cursor.isNull(commentsCountIndex)) {
-                postJson.put("commentsCount", cursor.getInt(commentsCountIndex));
-            }
-            if (sharesCountIndex >= 0 && !cursor.isNull(sharesCountIndex)) {
-                postJson.put("sharesCount", cursor.getInt(sharesCountIndex));
-            }
-            if (isLikedIndex >= 0 && !cursor.isNull(isLikedIndex)) {
-                postJson.put("isLiked", cursor.getInt(isLikedIndex) == 1);
-            }
-            if (reactionTypeIndex >= 0 && !cursor.isNull(reactionTypeIndex)) {
-                postJson.put("reactionType", cursor.getString(reactionTypeIndex));
-            }
-            // Handle shared post - prefer the complete object if available, otherwise use ID
-            if (sharedPostIndex >= 0 && !cursor.isNull(sharedPostIndex)) {
-                // Load complete shared post object from JSON
-                String sharedPostJsonStr = cursor.getString(sharedPostIndex);
-                if (sharedPostJsonStr != null && !sharedPostJsonStr.isEmpty()) {
-                    try {
-                        JSONObject sharedPostJsonObj = new JSONObject(sharedPostJsonStr);
-                        // Put as populated object (same format as backend)
-                        postJson.put("sharedPostId", sharedPostJsonObj);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing shared post JSON: " + e.getMessage());
-                        // Fallback to ID if JSON parsing fails
-                        if (sharedPostIdIndex >= 0 && !cursor.isNull(sharedPostIdIndex)) {
-                            postJson.put("sharedPostId", cursor.getString(sharedPostIdIndex));
-                        }
-                    }
-                } else if (sharedPostIdIndex >= 0 && !cursor.isNull(sharedPostIdIndex)) {
-                    // Fallback to ID if shared post JSON is empty
-                    postJson.put("sharedPostId", cursor.getString(sharedPostIdIndex));
-                }
-            } else if (sharedPostIdIndex >= 0 && !cursor.isNull(sharedPostIdIndex)) {
-                // Only ID available (old data)
-                postJson.put("sharedPostId", cursor.getString(sharedPostIdIndex));
-            }
-            
-            // Parse media URLs
-            if (mediaUrlsIndex >= 0 && !cursor.isNull(mediaUrlsIndex)) {
-                String mediaUrlsJson = cursor.getString(mediaUrlsIndex);
-                if (mediaUrlsJson != null && !mediaUrlsJson.isEmpty()) {
-                    try {
-                        JSONArray mediaArray = new JSONArray(mediaUrlsJson);
-                        postJson.put("images", mediaArray);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing media URLs: " + e.getMessage());
-                        postJson.put("images", new JSONArray());
-                    }
-                } else {
-                    postJson.put("images", new JSONArray());
-                }
-            } else {
-                postJson.put("images", new JSONArray());
-            }
-            
-            if (mediaTypeIndex >= 0 && !cursor.isNull(mediaTypeIndex)) {
-                postJson.put("mediaType", cursor.getString(mediaTypeIndex));
-            }
-            
-            // Parse tagged users
-            if (taggedUsersIndex >= 0 && !cursor.isNull(taggedUsersIndex)) {
-                String taggedUsersJson = cursor.getString(taggedUsersIndex);
-                if (taggedUsersJson != null && !taggedUsersJson.isEmpty()) {
-                    try {
-                        JSONArray taggedArray = new JSONArray(taggedUsersJson);
-                        postJson.put("tags", taggedArray);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing tagged users: " + e.getMessage());
-                        postJson.put("tags", new JSONArray());
-                    }
-                } else {
-                    postJson.put("tags", new JSONArray());
-                }
-            } else {
-                postJson.put("tags", new JSONArray());
-            }
-            
-            return Post.fromJson(postJson);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting cursor to post: " + e.getMessage(), e);
-            return null;
-        }
-    }
 }
-
@@ -0,0 +1,107 @@
+package com.example.chatappjava.utils;
+
+import android.database.Cursor;
+
+import com.example.chatappjava.models.Post;
+
+/**
+ * Maps rows of the posts table straight to Post objects.
+ * Column indexes are resolved once per cursor. The shared post and tagged users
+ * stay as their stored JSON until the UI asks for them; media URLs are attached
+ * afterwards from post_media.
+ */
+final class PostRowMapper {
+
+    /** Every column the model is built from (legacy media_urls JSON excluded). */
+    static final String[] COLUMNS = {
+        DatabaseHelper.COL_POST_ID,
+        DatabaseHelper.COL_POST_AUTHOR_ID,
+        DatabaseHelper.COL_POST_AUTHOR_USERNAME,
+        DatabaseHelper.COL_POST_AUTHOR_AVATAR,
+        DatabaseHelper.COL_POST_CONTENT,
+        DatabaseHelper.COL_POST_MEDIA_TYPE,
+        DatabaseHelper.COL_POST_TIMESTAMP,
+        DatabaseHelper.COL_POST_LIKES_COUNT,
+        DatabaseHelper.COL_POST_COMMENTS_COUNT,
+        DatabaseHelper.COL_POST_SHARES_COUNT,
+        DatabaseHelper.COL_POST_IS_LIKED,
+        DatabaseHelper.COL_POST_REACTION_TYPE,
+        DatabaseHelper.COL_POST_SHARED_POST_ID,
+        DatabaseHelper.COL_POST_SHARED_POST,
+        DatabaseHelper.COL_POST_TAGGED_USERS
+    };
+
+    private final int id;
+    private final int authorId;
+    private final int authorUsername;
+    private final int authorAvatar;
+    private final int content;
+    private final int mediaType;
+    private final int timestamp;
+    private final int likesCount;
+    private final int commentsCount;
+    private final int sharesCount;
+    private final int isLiked;
+    private final int reactionType;
+    private final int sharedPostId;
+    private final int sharedPost;
+    private final int taggedUsers;
+
+    PostRowMapper(Cursor cursor) {
+        id = cursor.getColumnIndex(DatabaseHelper.COL_POST_ID);
+        authorId = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_ID);
+        authorUsername = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_USERNAME);
+        authorAvatar = cursor.getColumnIndex(DatabaseHelper.COL_POST_AUTHOR_AVATAR);
+        content = cursor.getColumnIndex(DatabaseHelper.COL_POST_CONTENT);
+        mediaType = cursor.getColumnIndex(DatabaseHelper.COL_POST_MEDIA_TYPE);
+        timestamp = cursor.getColumnIndex(DatabaseHelper.COL_POST_TIMESTAMP);
+        likesCount = cursor.getColumnIndex(DatabaseHelper.COL_POST_LIKES_COUNT);
+        commentsCount = cursor.getColumnIndex(DatabaseHelper.COL_POST_COMMENTS_COUNT);
+        sharesCount = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARES_COUNT);
+        isLiked = cursor.getColumnIndex(DatabaseHelper.COL_POST_IS_LIKED);
+        reactionType = cursor.getColumnIndex(DatabaseHelper.COL_POST_REACTION_TYPE);
+        sharedPostId = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARED_POST_ID);
+        sharedPost = cursor.getColumnIndex(DatabaseHelper.COL_POST_SHARED_POST);
+        taggedUsers = cursor.getColumnIndex(DatabaseHelper.COL_POST_TAGGED_USERS);
+    }
+
+    /**
+     * Build a Post from the cursor's current row.
+     */
+    Post map(Cursor cursor) {
+        Post post = new Post();
+        if (id >= 0) post.setId(cursor.getString(id));
+        if (authorId >= 0) post.setAuthorId(cursor.getString(authorId));
+        post.setAuthorUsername(stringOrEmpty(cursor, authorUsername));
+        post.setAuthorAvatar(stringOrEmpty(cursor, authorAvatar));
+        post.setContent(stringOrEmpty(cursor, content));
+        post.setMediaType(mediaType >= 0 && !cursor.isNull(mediaType) ? cursor.getString(mediaType) : "none");
+        if (timestamp >= 0) post.setTimestamp(cursor.getLong(timestamp));
+        if (likesCount >= 0) post.setLikesCount(cursor.getInt(likesCount));
+        if (commentsCount >= 0) post.setCommentsCount(cursor.getInt(commentsCount));
+        if (sharesCount >= 0) post.setSharesCount(cursor.getInt(sharesCount));
+        if (isLiked >= 0) post.setLiked(cursor.getInt(isLiked) == 1);
+        if (reactionType >= 0) post.setReactionType(cursor.getString(reactionType));
+        if (sharedPostId >= 0 && !cursor.isNull(sharedPostId)) post.setSharedPostId(cursor.getString(sharedPostId));
+        if (sharedPost >= 0 && !cursor.isNull(sharedPost)) {
+            String json = cursor.getString(sharedPost);
+            if (!json.isEmpty()) {
+                post.setSharedPostJson(json);
+            }
+        }
+        if (taggedUsers >= 0 && !cursor.isNull(taggedUsers)) {
+            String json = cursor.getString(taggedUsers);
+            if (!json.isEmpty() && !"[]".equals(json)) {
+                post.setTaggedUsersJson(json);
+            }
+        }
+        return post;
+    }
+
+    private static String stringOrEmpty(Cursor cursor, int index) {
+        if (index < 0 || cursor.isNull(index)) {
+            return "";
+        }
+        return cursor.getString(index);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.chatappjava.models.Message;
+import com.example.chatappjava.network.ApiClient;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Per-chat "read up to (timestamp, id)" watermark.
+ *
+ * Marking something read only moves the chat's watermark forward in memory. Once per
+ * {@link #DEBOUNCE_MS} window the newest watermark is applied locally as one ranged UPDATE
+ * over the chat's messages, with the unread count derived from what is left after it, and
+ * sent to the server as one read marker. A busy chat scrolling past fifty messages costs one
+ * write and one request instead of fifty of each.
+ */
+public class ReadStateTracker {
+    private static final String TAG = "ReadStateTracker";
+
+    private static final long DEBOUNCE_MS = 1000;
+
+    private static ReadStateTracker instance;
+
+    /** A read marker; a null messageId covers the whole millisecond. */
+    private static final class Watermark {
+        final long timestamp;
+        final String messageId;
+
+        Watermark(long timestamp, String messageId) {
+            this.timestamp = timestamp;
+            this.messageId = messageId;
+        }
+
+        /** Same (timestamp, id) order as the local keyset queries; a null id sorts after any id. */
+        boolean isAfter(Watermark other) {
+            if (other == null || timestamp != other.timestamp) {
+                return other == null || timestamp > other.timestamp;
+            }
+            if (messageId == null || other.messageId == null) {
+                return messageId == null && other.messageId != null;
+            }
+            return messageId.compareTo(other.messageId) > 0;
+        }
+    }
+
+    private final DatabaseManager databaseManager;
+    private final MessageRepository messageRepository;
+    private final ApiClient apiClient;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    private final Map<String, Watermark> applied = new HashMap<>();
+    private final Map<String, Watermark> pending = new HashMap<>();
+
+    private ReadStateTracker(Context context) {
+        this.databaseManager = new DatabaseManager(context);
+        this.messageRepository = new MessageRepository(context);
+        this.apiClient = new ApiClient();
+    }
+
+    public static synchronized ReadStateTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReadStateTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** The user has seen this message, and therefore everything before it in its chat. */
+    public void markReadUpTo(Message message) {
+        if (message == null || message.getChatId() == null || message.getTimestamp() <= 0) {
+            return;
+        }
+        String id = message.getId();
+        markReadUpTo(message.getChatId(), message.getTimestamp(), isServerId(id) ? id : null);
+    }
+
+    /**
+     * The chat was opened: everything in it so far counts as read. lastMessageTime is the
+     * newest server timestamp in the chat; the device clock is never used, since a clock
+     * ahead of the server would mark messages read before they arrive.
+     */
+    public void markChatRead(String chatId, long lastMessageTime) {
+        if (chatId == null || chatId.isEmpty() || lastMessageTime <= 0) {
+            return;
+        }
+        markReadUpTo(chatId, lastMessageTime, null);
+    }
+
+    private void markReadUpTo(String chatId, long timestamp, String messageId) {
+        Watermark mark = new Watermark(timestamp, messageId);
+        synchronized (this) {
+            Watermark queued = pending.get(chatId);
+            Watermark current = queued != null ? queued : applied.get(chatId);
+            if (!mark.isAfter(current)) {
+                return;
+            }
+            pending.put(chatId, mark);
+            if (queued != null) {
+                // A flush for this chat is already scheduled; it picks up the newer mark
+                return;
+            }
+        }
+        mainHandler.postDelayed(() -> flush(chatId), DEBOUNCE_MS);
+    }
+
+    private void flush(String chatId) {
+        Watermark mark;
+        synchronized (this) {
+            mark = pending.remove(chatId);
+            if (mark == null) {
+                return;
+            }
+            applied.put(chatId, mark);
+        }
+        String userId = databaseManager.getUserId();
+        DatabaseExecutor.getInstance().executeWrite(() -> {
+            int unread = messageRepository.applyReadWatermark(chatId, mark.timestamp, mark.messageId, userId);
+            Log.d(TAG, "Read up to " + mark.timestamp + " in " + chatId + ", " + unread + " unread left");
+        });
+        sendMarker(chatId, mark);
+    }
+
+    private void sendMarker(String chatId, Watermark mark) {
+        String token = databaseManager.getToken();
+        if (token == null || token.isEmpty() || !isServerId(chatId)) {
+            return;
+        }
+        JSONObject body = new JSONObject();
+        try {
+            body.put("upToTimestamp", mark.timestamp);
+            if (mark.messageId != null) {
+                body.put("upToMessageId", mark.messageId);
+            }
+        } catch (JSONException e) {
+            return;
+        }
+        apiClient.markChatRead(token, chatId, body, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "Read marker for " + chatId + " not sent: " + e.getMessage());
+                requeue(chatId, mark);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response ignored = response) {
+                    if (!response.isSuccessful() && response.code() >= 500) {
+                        requeue(chatId, mark);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Let a marker that did not reach the server go out with the next one. Nothing is
+     * scheduled here; the next mark in the chat re-sends the newest watermark anyway.
+     */
+    private synchronized void requeue(String chatId, Watermark mark) {
+        if (applied.get(chatId) == mark) {
+            applied.remove(chatId);
+        }
+    }
+
+    private static boolean isServerId(String id) {
+        return id != null && id.matches("[0-9a-fA-F]{24}");
+    }
+}
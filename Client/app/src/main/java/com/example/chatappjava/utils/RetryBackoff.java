@@ -0,0 +1,48 @@
+package com.example.chatappjava.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry schedule for outbox sends: exponential backoff with a cap and "equal jitter".
+ * Each delay is half the exponential step plus a random share of the other half, so
+ * retries keep growing but clients that failed together do not come back together.
+ */
+public final class RetryBackoff {
+
+    /** Outbox policy: roughly an hour of retries before a message is marked failed. */
+    public static final RetryBackoff OUTBOX = new RetryBackoff(12, 5_000L, 15 * 60_000L);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public RetryBackoff(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /** True once {@code attempts} failures use up the budget. */
+    public boolean isExhausted(int attempts) {
+        return attempts >= maxAttempts;
+    }
+
+    /**
+     * Delay before the next try after {@code attempts} failures (1 = first failure).
+     */
+    public long delayAfter(int attempts) {
+        int shift = Math.max(0, Math.min(attempts - 1, 30));
+        long step = Math.min(maxDelayMs, baseDelayMs << shift);
+        long half = step / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /** Random offset in [0, windowMs], used to spread a burst of wakeups. */
+    public static long jitter(long windowMs) {
+        return windowMs > 0 ? ThreadLocalRandom.current().nextLong(windowMs + 1) : 0;
+    }
+}
@@ -11,6 +11,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chatappjava.R;
 import com.example.chatappjava.config.ServerConfig;
+import com.example.chatappjava.network.HttpEngine;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -86,6 +87,7 @@ public final class ServerConfigDialogHelper {
             databaseManager.setOverrideServerPort(port);
             databaseManager.setOverrideUseHttps(cbUseHttps.isChecked());
             databaseManager.setOverrideUseWss(cbUseWss.isChecked());
+            ServerConfig.invalidate();
 
             Toast.makeText(
                     activity,
@@ -136,10 +138,7 @@ public final class ServerConfigDialogHelper {
         EXECUTOR.execute(() -> {
             String resultMessage;
             boolean success = false;
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(8, java.util.concurrent.TimeUnit.SECONDS)
-                    .readTimeout(8, java.util.concurrent.TimeUnit.SECONDS)
-                    .build();
+            OkHttpClient client = HttpEngine.withTimeouts(8, 8, 8);
             Request request = new Request.Builder().url(testUrl).get().build();
 
             try (Response response = client.newCall(request).execute()) {
@@ -501,6 +501,7 @@ public final class SettingsActionsHelper {
             databaseManager.setOverrideServerPort(port);
             databaseManager.setOverrideUseHttps(useHttps);
             databaseManager.setOverrideUseWss(useWss);
+            ServerConfig.invalidate();
 
             Toast.makeText(context, context.getString(R.string.server_settings_saved), Toast.LENGTH_LONG).show();
             dialog.dismiss();
@@ -535,10 +536,7 @@ public final class SettingsActionsHelper {
             Switch switchSound,
             Switch switchVibrate
     ) {
-        databaseManager.setOverrideServerIp(null);
-        databaseManager.setOverrideServerPort(-1);
-        databaseManager.setOverrideUseHttps(false);
-        databaseManager.setOverrideUseWss(false);
+        databaseManager.clearServerOverrides();
         NotificationSettingsHelper.resetToDefaults(databaseManager, switchPush, switchSound, switchVibrate);
         Toast.makeText(context, context.getString(R.string.settings_reset_success), Toast.LENGTH_LONG).show();
     }
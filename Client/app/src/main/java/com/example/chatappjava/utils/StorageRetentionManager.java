@@ -0,0 +1,319 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps the local database bounded: the newest N messages per chat, an age cap on
+ * cached posts and call history, and a total byte budget over everything.
+ * Pending and failed messages are never removed, so unsent work survives any cap.
+ *
+ * A pass runs only in idle windows (app in background) and at most once per
+ * {@link #MIN_INTERVAL_MS}. Deletes are cut into small chunks, each queued as its own
+ * writer task, so a foreground write waits behind at most one chunk. Freed pages are
+ * returned to the file system with incremental_vacuum; child rows and the search index
+ * follow their parents through the existing triggers.
+ *
+ * A database file created before auto_vacuum was configured needs one full VACUUM (plus
+ * a search index rebuild) to switch to incremental mode. That runs as a single writer task
+ * that takes time proportional to the whole file. Every foreground write waits behind it,
+ * and {@link #cancel()} cannot stop it. It is therefore only done once at least
+ * {@link #CONVERT_MIN_FREE_RATIO} of the file is free pages. Until then SQLite reuses the
+ * free pages for new rows.
+ */
+public class StorageRetentionManager {
+    private static final String TAG = "StorageRetention";
+
+    private static final long MIN_INTERVAL_MS = 6 * 60 * 60 * 1000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final int DELETE_CHUNK = 500;
+    // Cap how much the byte budget may delete in one pass; the rest waits for the next window
+    private static final int MAX_BUDGET_CHUNKS = 20;
+    // Only bother vacuuming once this many pages are free, and release at most this many per pass
+    private static final int VACUUM_MIN_FREE_PAGES = 256;
+    private static final int VACUUM_MAX_PAGES = 2048;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    // Share of free pages at which the one-time full VACUUM is worth blocking writes for
+    private static final double CONVERT_MIN_FREE_RATIO = 0.25;
+    private static final String SYNC_STATUS_SYNCED = "synced";
+
+    private enum Phase { CHATS, POSTS, CALLS, BUDGET, VACUUM }
+
+    private static StorageRetentionManager instance;
+
+    private final DatabaseHelper dbHelper;
+    private final DatabaseManager settings;
+
+    // The pass allowed to keep going; a stale pass sees it was replaced and stops
+    private volatile Pass current;
+
+    private StorageRetentionManager(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.settings = new DatabaseManager(context);
+    }
+
+    public static synchronized StorageRetentionManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new StorageRetentionManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Start a compaction pass unless one ran recently or is already in progress.
+     * Call when the app goes idle.
+     */
+    public synchronized void runIfDue() {
+        if (current != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - settings.getLastCompactionAt() < MIN_INTERVAL_MS) {
+            return;
+        }
+        Pass pass = new Pass(now);
+        current = pass;
+        schedule(pass);
+    }
+
+    /**
+     * Stop an in-progress pass after its current chunk (e.g. the app came back to the foreground).
+     * The next idle window starts over; everything already deleted stays deleted.
+     */
+    public synchronized void cancel() {
+        current = null;
+    }
+
+    private void schedule(Pass pass) {
+        // submitWrite always queues, so foreground writes interleave between chunks
+        DatabaseExecutor.getInstance().submitWrite(() -> {
+            step(pass);
+            return null;
+        });
+    }
+
+    private void step(Pass pass) {
+        if (current != pass) {
+            finish(pass, false);
+            return;
+        }
+        boolean more;
+        try {
+            more = pass.runChunk(dbHelper.getWritableDatabase());
+        } catch (Exception e) {
+            Log.e(TAG, "Compaction step failed in phase " + pass.phase, e);
+            finish(pass, false);
+            return;
+        }
+        if (more) {
+            schedule(pass);
+        } else {
+            finish(pass, true);
+        }
+    }
+
+    private void finish(Pass pass, boolean completed) {
+        if (completed) {
+            settings.setLastCompactionAt(pass.startedAt);
+        }
+        synchronized (this) {
+            if (current == pass) {
+                current = null;
+            }
+        }
+        Log.d(TAG, (completed ? "Compaction finished" : "Compaction stopped")
+                + ": deleted " + pass.deletedMessages + " messages, " + pass.deletedPosts + " posts, "
+                + pass.deletedCalls + " calls in " + (System.currentTimeMillis() - pass.startedAt) + "ms");
+    }
+
+    /**
+     * State of one compaction pass. Each {@link #runChunk} does a bounded amount of work
+     * and reports whether anything is left.
+     */
+    private final class Pass {
+        final long startedAt;
+        final int messagesPerChat = settings.getRetentionMessagesPerChat();
+        final int postDays = settings.getRetentionPostDays();
+        final int callDays = settings.getRetentionCallDays();
+        final long budgetBytes = settings.getStorageBudgetMb() * 1024L * 1024L;
+
+        Phase phase = Phase.CHATS;
+        Deque<String> chatsOverCap;
+        // Messages older than this in the head chat are beyond the per-chat cap
+        long chatCutoff = -1;
+        int budgetChunks;
+        int deletedMessages;
+        int deletedPosts;
+        int deletedCalls;
+
+        Pass(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        boolean runChunk(SQLiteDatabase db) {
+            switch (phase) {
+                case CHATS:
+                    if (!trimNextChat(db)) {
+                        phase = Phase.POSTS;
+                    }
+                    return true;
+                case POSTS:
+                    int posts = postDays > 0
+                            ? deleteChunk(db, DatabaseHelper.TABLE_POSTS, DatabaseHelper.COL_POST_TIMESTAMP,
+                                    startedAt - postDays * DAY_MS)
+                            : 0;
+                    deletedPosts += posts;
+                    if (posts < DELETE_CHUNK) {
+                        phase = Phase.CALLS;
+                    }
+                    return true;
+                case CALLS:
+                    int calls = callDays > 0
+                            ? deleteChunk(db, DatabaseHelper.TABLE_CALLS, DatabaseHelper.COL_CALL_STARTED_AT,
+                                    startedAt - callDays * DAY_MS)
+                            : 0;
+                    deletedCalls += calls;
+                    if (calls < DELETE_CHUNK) {
+                        phase = Phase.BUDGET;
+                    }
+                    return true;
+                case BUDGET:
+                    if (budgetBytes <= 0 || budgetChunks >= MAX_BUDGET_CHUNKS || liveBytes(db) <= budgetBytes) {
+                        phase = Phase.VACUUM;
+                        return true;
+                    }
+                    budgetChunks++;
+                    int oldest = deleteOldestSyncedMessages(db);
+                    deletedMessages += oldest;
+                    if (oldest == 0) {
+                        // Only unsent messages left; nothing more the budget may take
+                        phase = Phase.VACUUM;
+                    }
+                    return true;
+                case VACUUM:
+                default:
+                    vacuum(db);
+                    return false;
+            }
+        }
+
+        /**
+         * Delete one chunk from the chat at the head of the queue. Returns false once
+         * every chat is within the cap.
+         */
+        private boolean trimNextChat(SQLiteDatabase db) {
+            if (messagesPerChat <= 0) {
+                return false;
+            }
+            if (chatsOverCap == null) {
+                chatsOverCap = findChatsOverCap(db);
+            }
+            String chatId = chatsOverCap.peekFirst();
+            if (chatId == null) {
+                return false;
+            }
+            if (chatCutoff < 0) {
+                // Timestamp of the Nth newest message; everything strictly older goes
+                chatCutoff = DatabaseUtils.longForQuery(db,
+                        "SELECT " + DatabaseHelper.COL_MSG_TIMESTAMP + " FROM " + DatabaseHelper.TABLE_MESSAGES
+                                + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ?"
+                                + " ORDER BY " + DatabaseHelper.COL_MSG_TIMESTAMP + " DESC LIMIT 1 OFFSET ?",
+                        new String[]{chatId, String.valueOf(messagesPerChat - 1)});
+            }
+            int deleted = db.delete(DatabaseHelper.TABLE_MESSAGES, "rowid IN ("
+                    + "SELECT rowid FROM " + DatabaseHelper.TABLE_MESSAGES
+                    + " WHERE " + DatabaseHelper.COL_MSG_CHAT_ID + " = ?"
+                    + " AND " + DatabaseHelper.COL_MSG_TIMESTAMP + " < ?"
+                    + " AND " + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?"
+                    + " ORDER BY " + DatabaseHelper.COL_MSG_TIMESTAMP + " LIMIT " + DELETE_CHUNK + ")",
+                    new String[]{chatId, String.valueOf(chatCutoff), SYNC_STATUS_SYNCED});
+            deletedMessages += deleted;
+            if (deleted < DELETE_CHUNK) {
+                chatsOverCap.pollFirst();
+                chatCutoff = -1;
+            }
+            return true;
+        }
+
+        private Deque<String> findChatsOverCap(SQLiteDatabase db) {
+            Deque<String> chats = new ArrayDeque<>();
+            try (Cursor cursor = db.rawQuery(
+                    "SELECT " + DatabaseHelper.COL_MSG_CHAT_ID + " FROM " + DatabaseHelper.TABLE_MESSAGES
+                            + " GROUP BY " + DatabaseHelper.COL_MSG_CHAT_ID + " HAVING COUNT(*) > ?",
+                    new String[]{String.valueOf(messagesPerChat)})) {
+                while (cursor.moveToNext()) {
+                    chats.add(cursor.getString(0));
+                }
+            }
+            return chats;
+        }
+
+        private int deleteChunk(SQLiteDatabase db, String table, String timeColumn, long olderThan) {
+            return db.delete(table, "rowid IN ("
+                    + "SELECT rowid FROM " + table + " WHERE " + timeColumn + " < ? LIMIT " + DELETE_CHUNK + ")",
+                    new String[]{String.valueOf(olderThan)});
+        }
+
+        private int deleteOldestSyncedMessages(SQLiteDatabase db) {
+            return db.delete(DatabaseHelper.TABLE_MESSAGES, "rowid IN ("
+                    + "SELECT rowid FROM " + DatabaseHelper.TABLE_MESSAGES
+                    + " WHERE " + DatabaseHelper.COL_MSG_SYNC_STATUS + " = ?"
+                    + " ORDER BY " + DatabaseHelper.COL_MSG_TIMESTAMP + " LIMIT " + DELETE_CHUNK + ")",
+                    new String[]{SYNC_STATUS_SYNCED});
+        }
+    }
+
+    /**
+     * Bytes held by live pages; free pages are excluded since incremental_vacuum
+     * (or reuse) takes care of them.
+     */
+    private static long liveBytes(SQLiteDatabase db) {
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return (pageCount - freePages) * pageSize;
+    }
+
+    private static void vacuum(SQLiteDatabase db) {
+        long mode = DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (mode != AUTO_VACUUM_INCREMENTAL) {
+            // Files created before auto_vacuum was configured need one full VACUUM to switch
+            // modes. It rewrites the whole file while holding the writer, so it is only done
+            // once enough of the file is free to be worth it.
+            long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+            if (freePages < VACUUM_MIN_FREE_PAGES || freePages < pageCount * CONVERT_MIN_FREE_RATIO) {
+                return;
+            }
+            // VACUUM can renumber message rowids, so the search index is rebuilt right after.
+            long start = System.currentTimeMillis();
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            DatabaseHelper.rebuildMessageSearchIndex(db);
+            Log.d(TAG, "Converted database to incremental auto_vacuum in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            return;
+        }
+        if (freePages < VACUUM_MIN_FREE_PAGES) {
+            return;
+        }
+        // incremental_vacuum only runs while its result set is stepped. The transaction pins
+        // the query to the primary (writable) connection instead of a WAL reader.
+        db.beginTransaction();
+        try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_MAX_PAGES + ")", null)) {
+            while (cursor.moveToNext()) {
+                // drain
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "incremental_vacuum released up to " + Math.min(freePages, VACUUM_MAX_PAGES) + " pages");
+    }
+}
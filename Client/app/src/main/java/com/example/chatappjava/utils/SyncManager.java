@@ -14,8 +14,12 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SyncManager handles background synchronization of messages, posts, and user data
@@ -25,8 +29,10 @@ public class SyncManager {
     private static final String TAG = "SyncManager";
     private static final String PREFS_NAME = "sync_prefs";
     private static final String KEY_LAST_FOREGROUND_SYNC = "last_foreground_sync";
+    private static final String KEY_LAST_MESSAGES_DELTA = "last_messages_delta";
     private static final long FOREGROUND_SYNC_INTERVAL_MS = 30 * 1000; // fallback when socket offline
     private static final long BACKGROUND_SYNC_INTERVAL_MS = 15 * 60 * 1000; // 15 minutes
+    private static final int SYNC_BATCH_SIZE = 100; // items per transaction while streaming a delta page
     
     private static SyncManager instance;
     private final Context context;
@@ -35,7 +41,10 @@ public class SyncManager {
     private final MessageRepository messageRepository;
     private final PostRepository postRepository;
     private final ConversationRepository conversationRepository;
+    private final MessageSequenceTracker sequenceTracker;
     private final android.os.Handler mainHandler;
+    // Items this build could not decode are fetched again once a newer build is installed
+    private final long appVersion;
     
     // Sync listeners
     public interface SyncListener {
@@ -47,12 +56,22 @@ public class SyncManager {
     
     private SyncManager(Context context) {
         this.context = context;
-        this.dbHelper = new DatabaseHelper(context);
+        this.dbHelper = DatabaseHelper.getInstance(context);
         this.apiClient = new ApiClient();
         this.messageRepository = new MessageRepository(context);
         this.postRepository = new PostRepository(context);
         this.conversationRepository = new ConversationRepository(context);
+        this.sequenceTracker = MessageSequenceTracker.getInstance(context);
         this.mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+        this.appVersion = readAppVersion(context);
+    }
+
+    private static long readAppVersion(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).getLongVersionCode();
+        } catch (android.content.pm.PackageManager.NameNotFoundException e) {
+            return 0;
+        }
     }
     
     public static synchronized SyncManager getInstance(Context context) {
@@ -96,214 +115,224 @@ public class SyncManager {
     }
     
     /**
-     * Perform foreground sync (when app is active)
+     * Gap-fill every resource now, whether or not the socket is up. Driven by
+     * {@link SyncOrchestrator} after a reconnect and on its fallback ticks; also counts as the
+     * foreground sync so screens checking {@link #shouldSyncForeground()} do not repeat it.
+     *
+     * New messages are caught up by sequence number (only what was missed). The timestamp
+     * delta still runs, at most every {@link #BACKGROUND_SYNC_INTERVAL_MS}, for edits and
+     * reactions made while the socket was down. It only returns rows that are not deleted, so
+     * it does not pick up deletions.
      */
-    public void syncForeground(String token) {
+    public void catchUp(String token) {
         if (token == null || token.isEmpty()) {
-            Log.w(TAG, "Cannot sync: token is null or empty");
-            return;
-        }
-        if (isRealtimeActive()) {
-            Log.d(TAG, "Foreground sync skipped: socket connected");
             return;
         }
-
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        long lastSync = prefs.getLong(KEY_LAST_FOREGROUND_SYNC, 0);
         long now = System.currentTimeMillis();
-        
-        if ((now - lastSync) < FOREGROUND_SYNC_INTERVAL_MS) {
-            Log.d(TAG, "Foreground sync skipped: too soon since last sync");
-            return;
+        catchUpMessages(token);
+        if (now - prefs.getLong(KEY_LAST_MESSAGES_DELTA, 0) >= BACKGROUND_SYNC_INTERVAL_MS) {
+            syncMessages(token, true);
+            prefs.edit().putLong(KEY_LAST_MESSAGES_DELTA, now).apply();
         }
-        
-        Log.d(TAG, "Starting foreground sync");
-        syncAll(token, false);
-        
+        syncPosts(token, true);
+        syncConversations(token, true);
         prefs.edit().putLong(KEY_LAST_FOREGROUND_SYNC, now).apply();
     }
 
-    /** Immediate delta-sync (no debounce) — only after socket disconnect / send timeout. */
-    public void syncMessagesNow(String token) {
-        if (token == null || token.isEmpty()) {
-            return;
-        }
-        syncMessages(token, false);
-    }
-    
-    /**
-     * Perform background sync (when app is minimized)
-     */
-    public void syncBackground(String token) {
-        if (token == null || token.isEmpty()) {
-            Log.w(TAG, "Cannot sync: token is null or empty");
-            return;
-        }
-        
-        Log.d(TAG, "Starting background sync");
-        syncAll(token, true);
-    }
-    
-    /**
-     * Sync all resources (messages, posts, conversations)
-     */
-    private void syncAll(String token, boolean isBackground) {
-        syncMessages(token, isBackground);
-        syncPosts(token, isBackground);
-        syncConversations(token, isBackground);
+    /** Called once a range fetch is over. Runs on an OkHttp thread. */
+    interface RangeCallback {
+        void onFinished(boolean success, int saved);
     }
-    
+
     /**
-     * Sync messages - fetch only new messages since last sync
+     * Reconnect catch-up for messages: ask for every chat's latest sequence number and fetch
+     * only the ranges this device has not seen. A server without sequence numbers gets the
+     * timestamp delta instead. Reports "messages" once every range has landed.
      */
-    public void syncMessages(String token, boolean isBackground) {
-        if (!isBackground && isRealtimeActive()) {
-            Log.d(TAG, "Messages sync skipped: socket connected");
-            return;
-        }
-        long lastSyncTimestamp = getLastSyncTimestamp("messages");
-        
-        String endpoint = "/api/updates/messages?since=" + lastSyncTimestamp;
-        apiClient.authenticatedGet(endpoint, token, new okhttp3.Callback() {
+    private void catchUpMessages(String token) {
+        apiClient.authenticatedGet("/api/messages/sequences", token, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
-                Log.e(TAG, "Failed to sync messages: " + e.getMessage());
+                Log.e(TAG, "Failed to fetch message sequences: " + e.getMessage());
                 setLastSyncError("messages", e.getMessage());
                 notifySyncError("messages", e.getMessage());
             }
-            
+
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
-                if (response.code() == 304) {
-                    // No updates available
-                    Log.d(TAG, "Messages sync: No updates (304)");
-                    setLastSyncSuccess("messages", true);
-                    notifySyncComplete("messages", true, 0);
-                    return;
-                }
-                
-                if (!response.isSuccessful()) {
-                    String error = "HTTP " + response.code();
-                    Log.e(TAG, "Messages sync failed: " + error);
-                    setLastSyncError("messages", error);
-                    notifySyncError("messages", error);
-                    return;
-                }
-                
-                try {
-                    String body = response.body().string();
-                    JSONObject json = new JSONObject(body);
-                    
-                    if (json.optBoolean("success", false)) {
-                        JSONObject data = json.getJSONObject("data");
-                        JSONArray messages = data.optJSONArray("messages");
-                        
-                        int count = 0;
-                        if (messages != null) {
-                            for (int i = 0; i < messages.length(); i++) {
-                                JSONObject msgJson = messages.getJSONObject(i);
-                                Message message = Message.fromJson(msgJson);
-                                messageRepository.saveMessage(message);
-                                count++;
+                try (okhttp3.Response ignored = response) {
+                    // Older servers route /sequences to /:chatId, which rejects it as a bad ID (400)
+                    if (response.code() == 400 || response.code() == 404) {
+                        Log.d(TAG, "Server has no message sequences (HTTP " + response.code() + "); using timestamp delta");
+                        syncMessages(token, true);
+                        return;
+                    }
+                    if (!response.isSuccessful() || response.body() == null) {
+                        String error = "HTTP " + response.code();
+                        Log.e(TAG, "Message sequences failed: " + error);
+                        setLastSyncError("messages", error);
+                        notifySyncError("messages", error);
+                        return;
+                    }
+
+                    JSONObject json = new JSONObject(response.body().string());
+                    JSONObject data = json.optJSONObject("data");
+                    JSONArray items = data != null ? data.optJSONArray("sequences") : null;
+                    Map<String, Long> latest = new HashMap<>();
+                    if (items != null) {
+                        for (int i = 0; i < items.length(); i++) {
+                            JSONObject item = items.optJSONObject(i);
+                            if (item != null && !item.optString("chatId", "").isEmpty()) {
+                                latest.put(item.optString("chatId"), item.optLong("lastSeq", 0));
                             }
                         }
-                        
-                        long newTimestamp = data.optLong("updated_at", System.currentTimeMillis());
-                        setLastSyncTimestamp("messages", newTimestamp);
+                    }
+
+                    List<MessageSequenceTracker.Range> ranges = sequenceTracker.rangesBehind(latest);
+                    if (ranges.isEmpty()) {
+                        Log.d(TAG, "Message catch-up: nothing missed");
                         setLastSyncSuccess("messages", true);
-                        
-                        Log.d(TAG, "Messages sync complete: " + count + " messages updated");
-                        notifySyncComplete("messages", true, count);
-                    } else {
-                        String error = json.optString("message", "Unknown error");
-                        Log.e(TAG, "Messages sync failed: " + error);
-                        setLastSyncError("messages", error);
-                        notifySyncError("messages", error);
+                        notifySyncComplete("messages", true, 0);
+                        return;
+                    }
+                    Log.d(TAG, "Message catch-up: " + ranges.size() + " chats behind");
+                    AtomicInteger remaining = new AtomicInteger(ranges.size());
+                    AtomicInteger saved = new AtomicInteger();
+                    AtomicBoolean allFetched = new AtomicBoolean(true);
+                    for (MessageSequenceTracker.Range range : ranges) {
+                        fetchMessageRange(token, range, (success, count) -> {
+                            saved.addAndGet(count);
+                            if (!success) {
+                                allFetched.set(false);
+                            }
+                            if (remaining.decrementAndGet() == 0) {
+                                if (allFetched.get()) {
+                                    setLastSyncSuccess("messages", true);
+                                    notifySyncComplete("messages", true, saved.get());
+                                } else {
+                                    setLastSyncError("messages", "Some message ranges failed");
+                                    notifySyncError("messages", "Some message ranges failed");
+                                }
+                            }
+                        });
                     }
                 } catch (JSONException e) {
-                    Log.e(TAG, "Error parsing messages sync response: " + e.getMessage());
-                    setLastSyncError("messages", e.getMessage());
+                    Log.e(TAG, "Error parsing message sequences: " + e.getMessage());
                     notifySyncError("messages", e.getMessage());
                 }
             }
         });
     }
-    
+
     /**
-     * Sync posts - fetch only new posts since last sync
+     * Fetch the messages of one chat in the range, following has_more, save them and move
+     * the chat's sequence watermark over what the server answered for.
      */
-    public void syncPosts(String token, boolean isBackground) {
-        if (!isBackground && isRealtimeActive()) {
-            Log.d(TAG, "Posts sync skipped: socket connected");
-            return;
-        }
-        long lastSyncTimestamp = getLastSyncTimestamp("posts");
-        
-        String endpoint = "/api/updates/posts?since=" + lastSyncTimestamp;
+    void fetchMessageRange(String token, MessageSequenceTracker.Range range, RangeCallback callback) {
+        fetchRangePage(token, range.chatId, range.afterSeq, range.upToSeq, 0, (success, saved) -> {
+            sequenceTracker.onFillFinished(range.chatId, success);
+            if (callback != null) {
+                callback.onFinished(success, saved);
+            }
+        });
+    }
+
+    private void fetchRangePage(String token, String chatId, long afterSeq, long upToSeq, int savedSoFar,
+                                RangeCallback callback) {
+        String endpoint = "/api/messages/" + chatId + "/range?afterSeq=" + afterSeq + "&upToSeq=" + upToSeq;
         apiClient.authenticatedGet(endpoint, token, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
-                Log.e(TAG, "Failed to sync posts: " + e.getMessage());
-                setLastSyncError("posts", e.getMessage());
-                notifySyncError("posts", e.getMessage());
+                Log.e(TAG, "Failed to fetch messages " + afterSeq + ".." + upToSeq + " of " + chatId + ": " + e.getMessage());
+                callback.onFinished(false, savedSoFar);
             }
-            
+
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
-                if (response.code() == 304) {
-                    // No updates available
-                    Log.d(TAG, "Posts sync: No updates (304)");
-                    setLastSyncSuccess("posts", true);
-                    notifySyncComplete("posts", true, 0);
-                    return;
-                }
-                
-                if (!response.isSuccessful()) {
-                    String error = "HTTP " + response.code();
-                    Log.e(TAG, "Posts sync failed: " + error);
-                    setLastSyncError("posts", error);
-                    notifySyncError("posts", error);
-                    return;
-                }
-                
-                try {
-                    String body = response.body().string();
-                    JSONObject json = new JSONObject(body);
-                    
-                    if (json.optBoolean("success", false)) {
-                        JSONObject data = json.getJSONObject("data");
-                        JSONArray posts = data.optJSONArray("posts");
-                        
-                        int count = 0;
-                        if (posts != null) {
-                            for (int i = 0; i < posts.length(); i++) {
-                                JSONObject postJson = posts.getJSONObject(i);
-                                Post post = Post.fromJson(postJson);
-                                postRepository.savePost(post);
-                                count++;
+                try (okhttp3.Response ignored = response) {
+                    if (!response.isSuccessful() || response.body() == null) {
+                        Log.e(TAG, "Message range failed for " + chatId + ": HTTP " + response.code());
+                        callback.onFinished(false, savedSoFar);
+                        return;
+                    }
+                    JSONObject json = new JSONObject(response.body().string());
+                    JSONObject data = json.optJSONObject("data");
+                    if (!json.optBoolean("success", false) || data == null) {
+                        callback.onFinished(false, savedSoFar);
+                        return;
+                    }
+                    JSONArray items = data.optJSONArray("messages");
+                    List<Message> batch = new ArrayList<>();
+                    if (items != null) {
+                        for (int i = 0; i < items.length(); i++) {
+                            try {
+                                batch.add(Message.fromJson(items.getJSONObject(i)));
+                            } catch (JSONException e) {
+                                Log.w(TAG, "Skipping unreadable message in range: " + e.getMessage());
                             }
                         }
-                        
-                        long newTimestamp = data.optLong("updated_at", System.currentTimeMillis());
-                        setLastSyncTimestamp("posts", newTimestamp);
-                        setLastSyncSuccess("posts", true);
-                        
-                        Log.d(TAG, "Posts sync complete: " + count + " posts updated");
-                        notifySyncComplete("posts", true, count);
+                    }
+                    long coveredSeq = data.optLong("coveredSeq", afterSeq);
+
+                    java.util.concurrent.Future<?> commit = DatabaseExecutor.getInstance().submitWrite(() -> {
+                        if (!messageRepository.saveMessagesBatch(batch)) {
+                            // Leave the watermark alone so the range is asked for again
+                            throw new IOException("messages batch not saved");
+                        }
+                        return null;
+                    });
+                    commit.get();
+                    sequenceTracker.onRangeCovered(chatId, afterSeq, coveredSeq, batch);
+
+                    int saved = savedSoFar + batch.size();
+                    if (data.optBoolean("has_more", false) && coveredSeq > afterSeq && coveredSeq < upToSeq) {
+                        fetchRangePage(token, chatId, coveredSeq, upToSeq, saved, callback);
                     } else {
-                        String error = json.optString("message", "Unknown error");
-                        Log.e(TAG, "Posts sync failed: " + error);
-                        setLastSyncError("posts", error);
-                        notifySyncError("posts", error);
+                        callback.onFinished(true, saved);
                     }
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error parsing posts sync response: " + e.getMessage());
-                    setLastSyncError("posts", e.getMessage());
-                    notifySyncError("posts", e.getMessage());
+                } catch (JSONException | java.util.concurrent.ExecutionException e) {
+                    Log.e(TAG, "Error storing message range for " + chatId + ": " + e.getMessage());
+                    callback.onFinished(false, savedSoFar);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    callback.onFinished(false, savedSoFar);
                 }
             }
         });
     }
+
+    /**
+     * Sync messages - fetch only new messages since last sync
+     */
+    public void syncMessages(String token, boolean isBackground) {
+        if (!isBackground && isRealtimeActive()) {
+            Log.d(TAG, "Messages sync skipped: socket connected");
+            return;
+        }
+        syncResource(token, isBackground, "messages", "messages", Message::fromJson, batch -> {
+            if (!messageRepository.saveMessagesBatch(batch)) {
+                throw new IOException("messages batch not saved");
+            }
+            return batch.size();
+        });
+    }
+    
+    /**
+     * Sync posts - fetch only new posts since last sync
+     */
+    public void syncPosts(String token, boolean isBackground) {
+        if (!isBackground && isRealtimeActive()) {
+            Log.d(TAG, "Posts sync skipped: socket connected");
+            return;
+        }
+        syncResource(token, isBackground, "posts", "posts", Post::fromJson, batch -> {
+            if (!postRepository.savePosts(batch)) {
+                throw new IOException("posts batch not saved");
+            }
+            return batch.size();
+        });
+    }
     
     /**
      * Sync conversations - fetch only updated conversations since last sync
@@ -313,127 +342,225 @@ public class SyncManager {
             Log.d(TAG, "Conversations sync skipped: socket connected");
             return;
         }
-        long lastSyncTimestamp = getLastSyncTimestamp("conversations");
-        
-        String endpoint = "/api/updates/conversations?since=" + lastSyncTimestamp;
+        String currentUserId = new DatabaseManager(context).getUserId();
+        syncResource(token, isBackground, "conversations", "conversations",
+                json -> com.example.chatappjava.models.Chat.fromJson(json, currentUserId),
+                // Delta page, not the full list: nothing is removed, unchanged rows are skipped
+                batch -> {
+                    ConversationRepository.UpsertResult result = conversationRepository.upsertConversations(batch, false);
+                    if (!result.saved) {
+                        throw new IOException("conversations batch not saved");
+                    }
+                    return result.changedIds.size();
+                });
+    }
+
+    /** Turns one raw item of a delta response into its model. */
+    private interface ItemDecoder<T> {
+        T decode(JSONObject json) throws JSONException;
+    }
+
+    /**
+     * Saves one decoded batch and returns how many items it updated. Runs inside the checkpoint
+     * transaction; throws when the batch was not written, which rolls the checkpoint back with it.
+     */
+    private interface BatchStore<T> {
+        int save(List<T> batch) throws IOException;
+    }
+
+    /**
+     * Fetch one delta page for a resource and stream it into SQLite.
+     * Items are pulled from the response a batch at a time and each batch is written in
+     * the same transaction as the checkpoint that covers it, so an interrupted catch-up
+     * resumes right after the last committed batch. Follows has_more until caught up.
+     * Items that cannot be decoded do not hold the checkpoint back (they would stall every
+     * later sync); their ids are logged and the earliest one's position is kept, so a newer
+     * build starts over from there and picks them up.
+     * The checkpoint is read on the database reader thread, never the caller's.
+     */
+    private <T> void syncResource(String token, boolean isBackground, String resourceType, String itemsField,
+                                  ItemDecoder<T> decoder, BatchStore<T> store) {
+        DatabaseExecutor.getInstance().executeRead(() ->
+                fetchResource(token, isBackground, resourceType, itemsField, decoder, store,
+                        getLastSyncCheckpoint(resourceType)));
+    }
+
+    private <T> void fetchResource(String token, boolean isBackground, String resourceType, String itemsField,
+                                   ItemDecoder<T> decoder, BatchStore<T> store, DeltaSyncReader.Checkpoint since) {
+        String endpoint = "/api/updates/" + resourceType + "?since=" + since.timestamp
+                + (since.id != null ? "&sinceId=" + since.id : "");
         apiClient.authenticatedGet(endpoint, token, new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
-                Log.e(TAG, "Failed to sync conversations: " + e.getMessage());
-                setLastSyncError("conversations", e.getMessage());
-                notifySyncError("conversations", e.getMessage());
+                Log.e(TAG, "Failed to sync " + resourceType + ": " + e.getMessage());
+                setLastSyncError(resourceType, e.getMessage());
+                notifySyncError(resourceType, e.getMessage());
             }
             
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
-                if (response.code() == 304) {
-                    // No updates available
-                    Log.d(TAG, "Conversations sync: No updates (304)");
-                    setLastSyncSuccess("conversations", true);
-                    notifySyncComplete("conversations", true, 0);
-                    return;
-                }
-                
-                if (!response.isSuccessful()) {
-                    String error = "HTTP " + response.code();
-                    Log.e(TAG, "Conversations sync failed: " + error);
-                    setLastSyncError("conversations", error);
-                    notifySyncError("conversations", error);
-                    return;
-                }
-                
-                try {
-                    String body = response.body().string();
-                    JSONObject json = new JSONObject(body);
+                try (okhttp3.Response ignored = response) {
+                    if (response.code() == 304) {
+                        // No updates available
+                        Log.d(TAG, resourceType + " sync: No updates (304)");
+                        setLastSyncSuccess(resourceType, true);
+                        notifySyncComplete(resourceType, true, 0);
+                        return;
+                    }
                     
-                    if (json.optBoolean("success", false)) {
-                        JSONObject data = json.getJSONObject("data");
-                        JSONArray conversations = data.optJSONArray("conversations");
-                        
-                        int count = 0;
-                        if (conversations != null) {
-                            for (int i = 0; i < conversations.length(); i++) {
-                                JSONObject convJson = conversations.getJSONObject(i);
-                                String currentUserId = new DatabaseManager(context).getUserId();
-                                com.example.chatappjava.models.Chat chat =
-                                    com.example.chatappjava.models.Chat.fromJson(convJson, currentUserId);
-                                conversationRepository.saveConversation(chat);
-                                count++;
-                            }
-                        }
-                        
-                        long newTimestamp = data.optLong("updated_at", System.currentTimeMillis());
-                        setLastSyncTimestamp("conversations", newTimestamp);
-                        setLastSyncSuccess("conversations", true);
-                        
-                        Log.d(TAG, "Conversations sync complete: " + count + " conversations updated");
-                        notifySyncComplete("conversations", true, count);
-                    } else {
-                        String error = json.optString("message", "Unknown error");
-                        Log.e(TAG, "Conversations sync failed: " + error);
-                        setLastSyncError("conversations", error);
-                        notifySyncError("conversations", error);
+                    if (!response.isSuccessful() || response.body() == null) {
+                        String error = "HTTP " + response.code();
+                        Log.e(TAG, resourceType + " sync failed: " + error);
+                        setLastSyncError(resourceType, error);
+                        notifySyncError(resourceType, error);
+                        return;
                     }
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error parsing conversations sync response: " + e.getMessage());
-                    setLastSyncError("conversations", e.getMessage());
-                    notifySyncError("conversations", e.getMessage());
+                    
+                    int[] updated = {0};
+                    DeltaSyncReader.Result result = DeltaSyncReader.read(
+                        response.body().charStream(), itemsField, SYNC_BATCH_SIZE,
+                        (items, checkpoint) -> updated[0] += commitBatch(resourceType, items, checkpoint, decoder, store));
+                    
+                    if (!result.success) {
+                        String error = result.message != null ? result.message : "Unknown error";
+                        Log.e(TAG, resourceType + " sync failed: " + error);
+                        setLastSyncError(resourceType, error);
+                        notifySyncError(resourceType, error);
+                        return;
+                    }
+                    
+                    setLastSyncSuccess(resourceType, true);
+                    Log.d(TAG, resourceType + " sync page complete: " + result.itemCount + " items, "
+                            + updated[0] + " updated, checkpoint " + result.checkpoint.timestamp + "/" + result.checkpoint.id);
+                    notifySyncComplete(resourceType, true, updated[0]);
+                    
+                    if (result.hasMore && result.itemCount > 0) {
+                        syncResource(token, isBackground, resourceType, itemsField, decoder, store);
+                    }
+                } catch (IOException | JSONException | IllegalStateException e) {
+                    // Stop at the failed batch: the ones committed before it keep their checkpoint and
+                    // the next sync resumes there, instead of a later batch moving past the lost one
+                    Log.e(TAG, "Error streaming " + resourceType + " sync response: " + e.getMessage());
+                    setLastSyncError(resourceType, e.getMessage());
+                    notifySyncError(resourceType, e.getMessage());
                 }
             }
         });
     }
+
+    /**
+     * Decode a batch off the writer thread, then save it and advance the checkpoint in one
+     * transaction on the shared writer. Blocks until committed, which also keeps the reader
+     * from running ahead of the database.
+     */
+    private <T> int commitBatch(String resourceType, List<JSONObject> items, DeltaSyncReader.Checkpoint checkpoint,
+                                ItemDecoder<T> decoder, BatchStore<T> store) throws IOException {
+        List<T> batch = new ArrayList<>(items.size());
+        long skipped = 0;
+        for (JSONObject item : items) {
+            try {
+                batch.add(decoder.decode(item));
+            } catch (JSONException e) {
+                long updatedAt = item.optLong("updatedAt", item.optLong("timestamp", 0));
+                Log.w(TAG, "Skipping unreadable " + resourceType + " item " + item.optString("_id", "?")
+                        + " (updatedAt " + updatedAt + "): " + e.getMessage());
+                if (updatedAt > 0 && (skipped == 0 || updatedAt < skipped)) {
+                    skipped = updatedAt;
+                }
+            }
+        }
+        final long skippedSince = skipped;
+        java.util.concurrent.Future<Integer> commit = DatabaseExecutor.getInstance().submitWrite(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                // Repository batch methods join this transaction; a failure inside them rolls back the checkpoint too
+                int saved = batch.isEmpty() ? 0 : store.save(batch);
+                if (checkpoint.timestamp > 0) {
+                    setLastSyncCheckpointInternal(resourceType, checkpoint, skippedSince);
+                }
+                db.setTransactionSuccessful();
+                return saved;
+            } finally {
+                db.endTransaction();
+            }
+        });
+        try {
+            return commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving " + resourceType + " batch", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IOException("Failed to save " + resourceType + " batch", e.getCause());
+        }
+    }
     
     /**
-     * Get last sync timestamp for a resource type
+     * Get the last sync checkpoint (timestamp and id) for a resource type
      */
-    private long getLastSyncTimestamp(String resourceType) {
+    private DeltaSyncReader.Checkpoint getLastSyncCheckpoint(String resourceType) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = db.query(
             DatabaseHelper.TABLE_SYNC_METADATA,
-            new String[]{DatabaseHelper.COL_SYNC_LAST_SYNC_TIMESTAMP},
+            new String[]{DatabaseHelper.COL_SYNC_LAST_SYNC_TIMESTAMP, DatabaseHelper.COL_SYNC_LAST_SYNC_ID,
+                    DatabaseHelper.COL_SYNC_SKIPPED_SINCE, DatabaseHelper.COL_SYNC_SKIPPED_VERSION},
             DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ?",
             new String[]{resourceType},
             null, null, null
         );
         
-        long timestamp = 0;
+        DeltaSyncReader.Checkpoint checkpoint = DeltaSyncReader.Checkpoint.START;
         if (cursor.moveToFirst()) {
-            timestamp = cursor.getLong(0);
+            checkpoint = new DeltaSyncReader.Checkpoint(cursor.getLong(0), cursor.isNull(1) ? null : cursor.getString(1));
+            long skippedSince = cursor.getLong(2);
+            if (skippedSince > 0 && cursor.getLong(3) < appVersion && skippedSince <= checkpoint.timestamp) {
+                // Without an id the server sends everything from that millisecond on
+                Log.d(TAG, resourceType + " sync: re-fetching items skipped by an older build from " + skippedSince);
+                checkpoint = new DeltaSyncReader.Checkpoint(skippedSince, null);
+            }
         }
         cursor.close();
-        db.close();
         
-        return timestamp;
+        return checkpoint;
     }
     
     /**
-     * Set last sync timestamp for a resource type
+     * Set the last sync checkpoint for a resource type. Only called on the writer, inside the
+     * transaction that saved the data the checkpoint covers. A skipped position left by an
+     * older build is dropped (this sync started from it); {@code skippedSince} records the
+     * earliest item of this batch that could not be decoded, 0 for none.
      */
-    private void setLastSyncTimestamp(String resourceType, long timestamp) {
-        // Execute on main thread to avoid SQLite connection pool issues
-        if (android.os.Looper.myLooper() == android.os.Looper.getMainLooper()) {
-            setLastSyncTimestampInternal(resourceType, timestamp);
-        } else {
-            mainHandler.post(() -> setLastSyncTimestampInternal(resourceType, timestamp));
-        }
-    }
-    
-    private void setLastSyncTimestampInternal(String resourceType, long timestamp) {
+    private void setLastSyncCheckpointInternal(String resourceType, DeltaSyncReader.Checkpoint checkpoint,
+                                               long skippedSince) {
         try {
             SQLiteDatabase db = dbHelper.getWritableDatabase();
             android.content.ContentValues values = new android.content.ContentValues();
-            values.put(DatabaseHelper.COL_SYNC_RESOURCE_TYPE, resourceType);
-            values.put(DatabaseHelper.COL_SYNC_LAST_SYNC_TIMESTAMP, timestamp);
+            values.put(DatabaseHelper.COL_SYNC_LAST_SYNC_TIMESTAMP, checkpoint.timestamp);
+            values.put(DatabaseHelper.COL_SYNC_LAST_SYNC_ID, checkpoint.id);
             values.put(DatabaseHelper.COL_SYNC_LAST_SYNC_SUCCESS, 1);
             values.putNull(DatabaseHelper.COL_SYNC_LAST_SYNC_ERROR);
             
-            db.insertWithOnConflict(
-                DatabaseHelper.TABLE_SYNC_METADATA,
-                null,
-                values,
-                SQLiteDatabase.CONFLICT_REPLACE
-            );
-            db.close();
+            // Update in place so the skipped columns survive; insert on the first sync
+            String[] args = {resourceType};
+            if (db.update(DatabaseHelper.TABLE_SYNC_METADATA, values,
+                    DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ?", args) == 0) {
+                values.put(DatabaseHelper.COL_SYNC_RESOURCE_TYPE, resourceType);
+                db.insert(DatabaseHelper.TABLE_SYNC_METADATA, null, values);
+            }
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_SYNC_METADATA + " SET " +
+                    DatabaseHelper.COL_SYNC_SKIPPED_SINCE + " = 0, " + DatabaseHelper.COL_SYNC_SKIPPED_VERSION + " = 0" +
+                    " WHERE " + DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ? AND " +
+                    DatabaseHelper.COL_SYNC_SKIPPED_VERSION + " < ?",
+                    new Object[]{resourceType, appVersion});
+            if (skippedSince > 0) {
+                // Keep the earliest position this build skipped
+                db.execSQL("UPDATE " + DatabaseHelper.TABLE_SYNC_METADATA + " SET " +
+                        DatabaseHelper.COL_SYNC_SKIPPED_SINCE + " = CASE WHEN " + DatabaseHelper.COL_SYNC_SKIPPED_SINCE +
+                        " > 0 THEN MIN(" + DatabaseHelper.COL_SYNC_SKIPPED_SINCE + ", ?) ELSE ? END, " +
+                        DatabaseHelper.COL_SYNC_SKIPPED_VERSION + " = ?" +
+                        " WHERE " + DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ?",
+                        new Object[]{skippedSince, skippedSince, appVersion, resourceType});
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error setting sync timestamp: " + e.getMessage());
         }
@@ -443,12 +570,7 @@ public class SyncManager {
      * Set last sync success status
      */
     private void setLastSyncSuccess(String resourceType, boolean success) {
-        // Execute on main thread to avoid SQLite connection pool issues
-        if (android.os.Looper.myLooper() == android.os.Looper.getMainLooper()) {
-            setLastSyncSuccessInternal(resourceType, success);
-        } else {
-            mainHandler.post(() -> setLastSyncSuccessInternal(resourceType, success));
-        }
+        DatabaseExecutor.getInstance().executeWrite(() -> setLastSyncSuccessInternal(resourceType, success));
     }
     
     private void setLastSyncSuccessInternal(String resourceType, boolean success) {
@@ -466,7 +588,6 @@ public class SyncManager {
                 DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ?",
                 new String[]{resourceType}
             );
-            db.close();
         } catch (Exception e) {
             Log.e(TAG, "Error setting sync success: " + e.getMessage());
         }
@@ -476,12 +597,7 @@ public class SyncManager {
      * Set last sync error
      */
     private void setLastSyncError(String resourceType, String error) {
-        // Execute on main thread to avoid SQLite connection pool issues
-        if (android.os.Looper.myLooper() == android.os.Looper.getMainLooper()) {
-            setLastSyncErrorInternal(resourceType, error);
-        } else {
-            mainHandler.post(() -> setLastSyncErrorInternal(resourceType, error));
-        }
+        DatabaseExecutor.getInstance().executeWrite(() -> setLastSyncErrorInternal(resourceType, error));
     }
     
     private void setLastSyncErrorInternal(String resourceType, String error) {
@@ -497,7 +613,6 @@ public class SyncManager {
                 DatabaseHelper.COL_SYNC_RESOURCE_TYPE + " = ?",
                 new String[]{resourceType}
             );
-            db.close();
         } catch (Exception e) {
             Log.e(TAG, "Error setting sync error: " + e.getMessage());
         }
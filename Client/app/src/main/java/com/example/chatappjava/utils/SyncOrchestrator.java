@@ -0,0 +1,278 @@
+package com.example.chatappjava.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.example.chatappjava.network.SocketManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single place that decides when the app talks to the sync endpoints.
+ *
+ * Inputs are the system network callback, the socket connection state and app
+ * foreground/background. Triggers that arrive close together (network back + socket
+ * reconnect, several screens resuming) are merged into one pass. While the socket is
+ * connected, updates arrive as socket events, so no delta sync or polling runs at all;
+ * delta sync is used to fill the gap after a reconnect and as a slow fallback while the
+ * socket stays down in the foreground. The outbox is flushed whenever the server becomes
+ * reachable again.
+ */
+public class SyncOrchestrator {
+    private static final String TAG = "SyncOrchestrator";
+
+    /** Triggers within this window share one pass. */
+    private static final long COALESCE_MS = 750;
+    /** Foreground fallback while the socket is down. */
+    private static final long FALLBACK_INTERVAL_MS = 30 * 1000;
+    /** Let the catch-up land before the outbox posts, so already-delivered messages are reconciled, not re-sent. */
+    private static final long OUTBOX_AFTER_CATCH_UP_MS = 5000;
+
+    private static SyncOrchestrator instance;
+
+    /** Callbacks run on the main thread. */
+    public interface Listener {
+        /** The device gained or lost a usable network. */
+        default void onNetworkChanged(boolean available) {
+            // optional
+        }
+
+        /** A catch-up pass is about to start the message, conversation and post delta sync. */
+        default void onCatchUp() {
+            // optional
+        }
+    }
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final DatabaseManager databaseManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Main-thread state
+    private boolean networkAvailable;
+    private boolean socketLostSinceCatchUp;
+    private boolean foreground;
+    private boolean catchUpRequested;
+    private boolean outboxRequested;
+    private boolean passScheduled;
+
+    private final Runnable passRunnable = this::runPass;
+    private final Runnable fallbackTick = this::onFallbackTick;
+    private final Runnable outboxFlush = this::flushOutbox;
+
+    private SyncOrchestrator(Context context) {
+        this.context = context;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.databaseManager = new DatabaseManager(context);
+        this.networkAvailable = isNetworkAvailable();
+
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                    mainHandler.post(() -> onNetworkState(isUsable(caps)));
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    mainHandler.post(() -> onNetworkState(false));
+                }
+            });
+        }
+        SocketManager.getInstance().addConnectionListener(new SocketManager.ConnectionListener() {
+            @Override
+            public void onConnected() {
+                mainHandler.post(SyncOrchestrator.this::onSocketConnected);
+            }
+
+            @Override
+            public void onDisconnected() {
+                mainHandler.post(SyncOrchestrator.this::onSocketDisconnected);
+            }
+        });
+    }
+
+    public static synchronized SyncOrchestrator getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncOrchestrator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Whether the active network can reach the server. A LAN server needs no validated
+     * internet, so NET_CAPABILITY_VALIDATED is not required.
+     */
+    public boolean isNetworkAvailable() {
+        if (connectivityManager == null) {
+            return false;
+        }
+        Network network = connectivityManager.getActiveNetwork();
+        return network != null && isUsable(connectivityManager.getNetworkCapabilities(network));
+    }
+
+    private static boolean isUsable(NetworkCapabilities caps) {
+        return caps != null
+                && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
+                || caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)
+                || caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET));
+    }
+
+    private static boolean isSocketHealthy() {
+        return SocketManager.getInstance().isConnected();
+    }
+
+    /** An activity became visible after none was. */
+    public void onAppForeground() {
+        foreground = true;
+        outboxRequested = true;
+        if (!isSocketHealthy()) {
+            catchUpRequested = true;
+        }
+        schedulePass();
+        scheduleFallbackTick();
+    }
+
+    /** The last visible activity stopped. No fallback polling runs in the background. */
+    public void onAppBackground() {
+        foreground = false;
+        mainHandler.removeCallbacks(fallbackTick);
+    }
+
+    /**
+     * Ask for a delta catch-up (e.g. a screen resumed while the socket is down, or a send
+     * timed out). Merged with any other trigger in the same window.
+     */
+    public void requestCatchUp() {
+        runOnMain(() -> {
+            catchUpRequested = true;
+            schedulePass();
+        });
+    }
+
+    /** Ask for an outbox flush. */
+    public void requestOutboxFlush() {
+        runOnMain(() -> {
+            outboxRequested = true;
+            schedulePass();
+        });
+    }
+
+    private void onNetworkState(boolean available) {
+        if (available == networkAvailable) {
+            return;
+        }
+        networkAvailable = available;
+        Log.d(TAG, "Network " + (available ? "available" : "lost"));
+        for (Listener listener : listeners) {
+            listener.onNetworkChanged(available);
+        }
+        if (available) {
+            catchUpRequested = true;
+            outboxRequested = true;
+            OfflineMessageSyncManager.getInstance(context).onNetworkRestored();
+            schedulePass();
+            scheduleFallbackTick();
+        } else {
+            mainHandler.removeCallbacks(fallbackTick);
+        }
+    }
+
+    private void onSocketConnected() {
+        mainHandler.removeCallbacks(fallbackTick);
+        if (!socketLostSinceCatchUp) {
+            return;
+        }
+        // Events sent while the socket was down are only reachable through delta sync
+        socketLostSinceCatchUp = false;
+        catchUpRequested = true;
+        outboxRequested = true;
+        schedulePass();
+    }
+
+    private void onSocketDisconnected() {
+        socketLostSinceCatchUp = true;
+        scheduleFallbackTick();
+    }
+
+    private void schedulePass() {
+        if (passScheduled) {
+            return;
+        }
+        passScheduled = true;
+        mainHandler.postDelayed(passRunnable, COALESCE_MS);
+    }
+
+    private void runPass() {
+        passScheduled = false;
+        boolean catchUp = catchUpRequested;
+        boolean outbox = outboxRequested;
+        catchUpRequested = false;
+        outboxRequested = false;
+
+        if (!networkAvailable) {
+            Log.d(TAG, "Pass skipped: no network");
+            return;
+        }
+        String token = databaseManager.getToken();
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+
+        if (catchUp) {
+            Log.d(TAG, "Running catch-up" + (outbox ? " and outbox flush" : ""));
+            for (Listener listener : listeners) {
+                listener.onCatchUp();
+            }
+            SyncManager.getInstance(context).catchUp(token);
+        }
+        if (outbox) {
+            mainHandler.removeCallbacks(outboxFlush);
+            mainHandler.postDelayed(outboxFlush, catchUp ? OUTBOX_AFTER_CATCH_UP_MS : 0);
+        }
+    }
+
+    private void flushOutbox() {
+        OfflineMessageSyncManager.getInstance(context).syncPendingMessages();
+    }
+
+    private void scheduleFallbackTick() {
+        mainHandler.removeCallbacks(fallbackTick);
+        if (foreground && networkAvailable && !isSocketHealthy()) {
+            mainHandler.postDelayed(fallbackTick, FALLBACK_INTERVAL_MS);
+        }
+    }
+
+    private void onFallbackTick() {
+        if (!foreground || !networkAvailable || isSocketHealthy()) {
+            return;
+        }
+        catchUpRequested = true;
+        schedulePass();
+        scheduleFallbackTick();
+    }
+
+    private void runOnMain(Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+        } else {
+            mainHandler.post(task);
+        }
+    }
+}
@@ -25,8 +25,7 @@ public class UrlUtils {
         String path = relativePath.startsWith("/") ? relativePath : "/" + relativePath;
         
         // Construct full URL using server configuration
-        return "http://" + com.example.chatappjava.config.ServerConfig.getServerIp() + 
-               ":" + com.example.chatappjava.config.ServerConfig.getServerPort() + path;
+        return com.example.chatappjava.config.ServerConfig.getResourceBaseUrl() + path;
     }
     
     /**
@@ -57,7 +57,7 @@ async function findMessageByClientNonce(chatId, senderId, clientNonce) {
 const getMessages = async (req, res) => {
   try {
     const { chatId } = req.params;
-    const { page = 1, limit = 50 } = req.query;
+    const { page = 1, limit = 50, before, beforeId } = req.query;
 
     // Check if chat exists and user is participant
     const chat = await Chat.findById(chatId).populate('participants.user', 'username avatar status');
@@ -96,8 +96,12 @@ const getMessages = async (req, res) => {
     });
     const leftAt = userParticipant && userParticipant.leftAt ? userParticipant.leftAt : null;
     
-    // Get messages (filter by leftAt if user deleted chat before)
-    const messages = await Message.getChatMessages(chatId, parseInt(page), parseInt(limit), leftAt);
+    // Get messages (filter by leftAt if user deleted chat before).
+    // `before` (epoch ms) + optional `beforeId` selects keyset paging instead of page numbers.
+    const beforeDate = before !== undefined ? new Date(Number(before)) : null;
+    const messages = beforeDate && !isNaN(beforeDate.getTime())
+      ? await Message.getChatMessagesBefore(chatId, beforeDate, beforeId, parseInt(limit), leftAt)
+      : await Message.getChatMessages(chatId, parseInt(page), parseInt(limit), leftAt);
 
     // Mark messages as read
     await Message.markAsRead(chatId, req.user.id);
@@ -161,12 +165,13 @@ const getMessages = async (req, res) => {
   }
 };
 
-// @desc    Send a message
-// @route   POST /api/messages
+const SEQ_RANGE_LIMIT = 200;
+
+// @desc    Get the messages of a chat within a sequence range (gap fill)
+// @route   GET /api/messages/:chatId/range?afterSeq=&upToSeq=
 // @access  Private
-const sendMessage = async (req, res) => {
+const getMessageRange = async (req, res) => {
   try {
-    // Check for validation errors
     const errors = validationResult(req);
     if (!errors.isEmpty()) {
       return res.status(400).json({
@@ -176,13 +181,8 @@ const sendMessage = async (req, res) => {
       });
     }
 
-    const { chatId, content, type = 'text', replyTo, attachments, clientNonce } = req.body;
-    const normalizedNonce = clientNonce && typeof clientNonce === 'string'
-      ? clientNonce.trim()
-      : '';
-
-    // Check if chat exists and user is participant
-    const chat = await Chat.findById(chatId);
+    const { chatId } = req.params;
+    const chat = await Chat.findById(chatId).select('type participants isActive messageSeq');
     if (!chat || !chat.isActive) {
       return res.status(404).json({
         success: false,
@@ -190,160 +190,278 @@ const sendMessage = async (req, res) => {
       });
     }
 
-    const isParticipant = chat.participants.some(
-      p => p.user && p.user.toString() === req.user.id && p.isActive
+    const userParticipant = chat.participants.find(
+      p => p.isActive && p.user && p.user.toString() === req.user.id
     );
-
-    if (!isParticipant) {
+    if (!userParticipant) {
       return res.status(403).json({
         success: false,
         message: 'Access denied to this chat'
       });
     }
 
-    // Idempotent retry: return existing message without re-broadcasting
-    if (normalizedNonce) {
-      const existing = await findMessageByClientNonce(chatId, req.user.id, normalizedNonce);
-      if (existing) {
-        const messageObj = existing.toJSON();
-        return res.status(200).json({
+    const afterSeq = parseInt(req.query.afterSeq) || 0;
+    const lastSeq = chat.messageSeq || 0;
+    const requestedUpTo = req.query.upToSeq !== undefined ? parseInt(req.query.upToSeq) : lastSeq;
+    const upToSeq = Math.min(requestedUpTo, lastSeq);
+    const leftAt = userParticipant.leftAt || null;
+
+    const messages = upToSeq > afterSeq
+      ? await Message.getChatMessagesBySeq(chatId, afterSeq, upToSeq, SEQ_RANGE_LIMIT, leftAt)
+      : [];
+    const hasMore = messages.length === SEQ_RANGE_LIMIT && messages[messages.length - 1].seq < upToSeq;
+
+    res.json({
+      success: true,
+      data: {
+        messages: messages.map(message => formatMessageApiPayload(message, message.toJSON(), chat)),
+        // Everything in (afterSeq, coveredSeq] has been answered for, including numbers with no message
+        coveredSeq: hasMore ? messages[messages.length - 1].seq : Math.max(upToSeq, afterSeq),
+        lastSeq,
+        has_more: hasMore
+      }
+    });
+  } catch (error) {
+    console.error('Get message range error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while fetching messages'
+    });
+  }
+};
+
+// @desc    Latest message sequence of every chat the user is in
+// @route   GET /api/messages/sequences
+// @access  Private
+const getMessageSequences = async (req, res) => {
+  try {
+    const chats = await Chat.find({
+      participants: { $elemMatch: { user: req.user.id, isActive: true } },
+      isActive: true
+    }).select('_id messageSeq');
+
+    res.json({
+      success: true,
+      data: {
+        sequences: chats.map(chat => ({ chatId: chat._id, lastSeq: chat.messageSeq || 0 }))
+      }
+    });
+  } catch (error) {
+    console.error('Get message sequences error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while fetching message sequences'
+    });
+  }
+};
+
+/**
+ * Validate, store and fan out one outgoing message from userId.
+ * Shared by the single and batch send endpoints; resolves to the HTTP status and JSON
+ * body the single endpoint answers with.
+ */
+async function deliverMessage(io, userId, payload) {
+  const { chatId, content, type = 'text', replyTo, attachments, clientNonce } = payload;
+  const normalizedNonce = clientNonce && typeof clientNonce === 'string'
+    ? clientNonce.trim()
+    : '';
+
+  // Check if chat exists and user is participant
+  const chat = await Chat.findById(chatId);
+  if (!chat || !chat.isActive) {
+    return {
+      status: 404,
+      body: {
+        success: false,
+        message: 'Chat not found'
+      }
+    };
+  }
+
+  const isParticipant = chat.participants.some(
+    p => p.user && p.user.toString() === userId && p.isActive
+  );
+
+  if (!isParticipant) {
+    return {
+      status: 403,
+      body: {
+        success: false,
+        message: 'Access denied to this chat'
+      }
+    };
+  }
+
+  // Idempotent retry: return existing message without re-broadcasting
+  if (normalizedNonce) {
+    const existing = await findMessageByClientNonce(chatId, userId, normalizedNonce);
+    if (existing) {
+      const messageObj = existing.toJSON();
+      return {
+        status: 200,
+        body: {
           success: true,
           message: 'Message already sent',
           data: {
             message: formatMessageApiPayload(existing, messageObj, chat),
             deduplicated: true
           }
-        });
-      }
+        }
+      };
     }
+  }
 
-    // If private chat, enforce block status and reactivate inactive participant
-    if (chat.type === 'private') {
-      // Get the other participant id
-      const otherParticipant = chat.participants.find(p => p.user && p.user.toString() !== req.user.id);
-      
-      // If other participant is inactive, reactivate them (they deleted the chat but should receive new messages)
-      if (otherParticipant && !otherParticipant.isActive) {
-        await chat.addParticipant(otherParticipant.user, 'member');
-        console.log(`Reactivated participant ${otherParticipant.user} in chat ${chat._id} because they received a new message`);
-      }
-      
-      const me = await User.findById(req.user.id).select('blockedUsers');
-      const other = otherParticipant ? await User.findById(otherParticipant.user).select('blockedUsers') : null;
-      const iBlockedThem = me && me.blockedUsers && me.blockedUsers.some(id => id.toString() === otherParticipant.user.toString());
-      const theyBlockedMe = other && other.blockedUsers && other.blockedUsers.some(id => id.toString() === req.user.id);
-      if (iBlockedThem || theyBlockedMe) {
-        return res.status(403).json({ success: false, message: 'Messaging is blocked between these users' });
-      }
+  // If private chat, enforce block status and reactivate inactive participant
+  if (chat.type === 'private') {
+    // Get the other participant id
+    const otherParticipant = chat.participants.find(p => p.user && p.user.toString() !== userId);
+    
+    // If other participant is inactive, reactivate them (they deleted the chat but should receive new messages)
+    if (otherParticipant && !otherParticipant.isActive) {
+      await chat.addParticipant(otherParticipant.user, 'member');
+      console.log(`Reactivated participant ${otherParticipant.user} in chat ${chat._id} because they received a new message`);
+    }
+    
+    const me = await User.findById(userId).select('blockedUsers');
+    const other = otherParticipant ? await User.findById(otherParticipant.user).select('blockedUsers') : null;
+    const iBlockedThem = me && me.blockedUsers && me.blockedUsers.some(id => id.toString() === otherParticipant.user.toString());
+    const theyBlockedMe = other && other.blockedUsers && other.blockedUsers.some(id => id.toString() === userId);
+    if (iBlockedThem || theyBlockedMe) {
+      return { status: 403, body: { success: false, message: 'Messaging is blocked between these users' } };
     }
+  }
 
-    // Create message
-    const message = new Message({
-      content,
-      type,
-      sender: req.user.id,
-      chat: chatId,
-      replyTo: replyTo || undefined,
-      attachments: attachments || [],
-      ...(normalizedNonce ? { clientNonce: normalizedNonce } : {})
-    });
+  // Create message
+  const message = new Message({
+    content,
+    type,
+    sender: userId,
+    chat: chatId,
+    replyTo: replyTo || undefined,
+    attachments: attachments || [],
+    ...(normalizedNonce ? { clientNonce: normalizedNonce } : {})
+  });
 
-    try {
-      await message.save();
-    } catch (saveError) {
-      if (saveError.code === 11000 && normalizedNonce) {
-        const existing = await findMessageByClientNonce(chatId, req.user.id, normalizedNonce);
-        if (existing) {
-          const messageObj = existing.toJSON();
-          return res.status(200).json({
+  try {
+    await message.save();
+  } catch (saveError) {
+    if (saveError.code === 11000 && normalizedNonce) {
+      const existing = await findMessageByClientNonce(chatId, userId, normalizedNonce);
+      if (existing) {
+        const messageObj = existing.toJSON();
+        return {
+          status: 200,
+          body: {
             success: true,
             message: 'Message already sent',
             data: {
               message: formatMessageApiPayload(existing, messageObj, chat),
               deduplicated: true
             }
-          });
-        }
+          }
+        };
       }
-      throw saveError;
     }
+    throw saveError;
+  }
 
-    // Update chat's last message and activity
-    chat.lastMessage = message._id;
-    await chat.updateLastActivity();
+  // Update chat's last message and activity
+  chat.lastMessage = message._id;
+  await chat.updateLastActivity();
 
-    // Populate message for response
-    await message.populate(MESSAGE_POPULATE);
+  // Populate message for response
+  await message.populate(MESSAGE_POPULATE);
 
-    // Get message object for notification (before async call)
-    const messageObj = message.toJSON();
+  // Get message object for notification (before async call)
+  const messageObj = message.toJSON();
 
-    // Send push notifications to other participants (async, don't wait)
-    (async () => {
-      try {
-        // Get all active participants except the sender
-        const recipientIds = chat.participants
-          .filter(p => p.isActive && p.user && p.user.toString() !== req.user.id)
-          .map(p => p.user.toString());
-
-        if (recipientIds.length > 0) {
-          // Get sender info for notification
-          const sender = await User.findById(req.user.id).select('username avatar profile');
-          
-          // Get recipients with FCM tokens
-          const recipients = await User.find({ 
-            _id: { $in: recipientIds },
-            'fcmTokens.0': { $exists: true } // Only users with FCM tokens
-          }).select('fcmTokens username avatar profile');
-
-          console.log(`[FCM] Sending push notification to ${recipients.length} recipient(s) for chat ${chatId}`);
-
-          // Send notification to each recipient
-          for (const recipient of recipients) {
-            try {
-              const result = await sendChatMessageNotification(
-                recipient,
-                sender,
-                {
-                  ...messageObj,
-                  text: content,
-                  type: type,
-                  chatName: chat.name || (chat.type === 'private' ? null : 'Group')
-                },
-                chatId,
-                chat.type
-              );
-              
-              if (result.success) {
-                console.log(`[FCM] ✓ Notification sent to user ${recipient.username} (${recipient._id})`);
-              } else {
-                console.error(`[FCM] ✗ Failed to send notification to user ${recipient.username}:`, result.error);
-              }
-            } catch (notifError) {
-              console.error(`[FCM] ✗ Error sending notification to user ${recipient._id}:`, notifError);
+  // Send push notifications to other participants (async, don't wait)
+  (async () => {
+    try {
+      // Get all active participants except the sender
+      const recipientIds = chat.participants
+        .filter(p => p.isActive && p.user && p.user.toString() !== userId)
+        .map(p => p.user.toString());
+
+      if (recipientIds.length > 0) {
+        // Get sender info for notification
+        const sender = await User.findById(userId).select('username avatar profile');
+        
+        // Get recipients with FCM tokens
+        const recipients = await User.find({ 
+          _id: { $in: recipientIds },
+          'fcmTokens.0': { $exists: true } // Only users with FCM tokens
+        }).select('fcmTokens username avatar profile');
+
+        console.log(`[FCM] Sending push notification to ${recipients.length} recipient(s) for chat ${chatId}`);
+
+        // Send notification to each recipient
+        for (const recipient of recipients) {
+          try {
+            const result = await sendChatMessageNotification(
+              recipient,
+              sender,
+              {
+                ...messageObj,
+                text: content,
+                type: type,
+                chatName: chat.name || (chat.type === 'private' ? null : 'Group')
+              },
+              chatId,
+              chat.type
+            );
+            
+            if (result.success) {
+              console.log(`[FCM] ✓ Notification sent to user ${recipient.username} (${recipient._id})`);
+            } else {
+              console.error(`[FCM] ✗ Failed to send notification to user ${recipient.username}:`, result.error);
             }
+          } catch (notifError) {
+            console.error(`[FCM] ✗ Error sending notification to user ${recipient._id}:`, notifError);
           }
-        } else {
-          console.log(`[FCM] No recipients found for chat ${chatId}`);
         }
-      } catch (error) {
-        console.error('[FCM] Error sending push notifications:', error);
-        // Don't fail the request if notification fails
+      } else {
+        console.log(`[FCM] No recipients found for chat ${chatId}`);
       }
-    })();
-
-    const io = req.app.get('io');
-    if (io) {
-      broadcastChatMessage(io, chat, req.user.id, message, messageObj);
+    } catch (error) {
+      console.error('[FCM] Error sending push notifications:', error);
+      // Don't fail the request if notification fails
     }
+  })();
 
-    res.status(201).json({
+  if (io) {
+    broadcastChatMessage(io, chat, userId, message, messageObj);
+  }
+
+  return {
+    status: 201,
+    body: {
       success: true,
       message: 'Message sent successfully',
       data: {
         message: formatMessageApiPayload(message, messageObj, chat)
       }
-    });
+    }
+  };
+}
+
+// @desc    Send a message
+// @route   POST /api/messages
+// @access  Private
+const sendMessage = async (req, res) => {
+  try {
+    // Check for validation errors
+    const errors = validationResult(req);
+    if (!errors.isEmpty()) {
+      return res.status(400).json({
+        success: false,
+        message: 'Validation failed',
+        errors: errors.array()
+      });
+    }
+
+    const result = await deliverMessage(req.app.get('io'), req.user.id, req.body);
+    res.status(result.status).json(result.body);
 
   } catch (error) {
     console.error('Send message error:', error);
@@ -354,6 +472,80 @@ const sendMessage = async (req, res) => {
   }
 };
 
+// @desc    Send several queued messages in one request (offline outbox flush)
+// @route   POST /api/messages/batch
+// @access  Private
+const sendMessagesBatch = async (req, res) => {
+  try {
+    const errors = validationResult(req);
+    if (!errors.isEmpty()) {
+      return res.status(400).json({
+        success: false,
+        message: 'Validation failed',
+        errors: errors.array()
+      });
+    }
+
+    const io = req.app.get('io');
+    const results = [];
+    // Per-item validation from the route; an invalid item fails on its own
+    const itemErrors = req.batchItemErrors || [];
+    // Chats with a failed item; later items of that chat are held so they cannot overtake it
+    const heldChats = new Set();
+    // One at a time and in request order, so messages of the same chat keep their sequence.
+    // Each item is acked, failed or held on its own, keyed by clientNonce.
+    for (const [index, rawItem] of req.body.messages.entries()) {
+      const item = rawItem && typeof rawItem === 'object' ? rawItem : {};
+      const clientNonce = typeof item.clientNonce === 'string' ? item.clientNonce.trim() : '';
+      if (heldChats.has(item.chatId)) {
+        results.push({ clientNonce, status: 'held' });
+        continue;
+      }
+      if (itemErrors[index]) {
+        heldChats.add(item.chatId);
+        results.push({
+          clientNonce,
+          status: 'failed',
+          code: 400,
+          error: itemErrors[index][0].msg,
+          errors: itemErrors[index]
+        });
+        continue;
+      }
+      try {
+        const { status, body } = await deliverMessage(io, req.user.id, item);
+        if (status < 300 && body.data && body.data.message) {
+          results.push({
+            clientNonce,
+            status: 'ok',
+            deduplicated: !!body.data.deduplicated,
+            message: body.data.message
+          });
+        } else {
+          heldChats.add(item.chatId);
+          results.push({ clientNonce, status: 'failed', code: status, error: body.message });
+        }
+      } catch (error) {
+        console.error('Batch send item error:', error);
+        heldChats.add(item.chatId);
+        results.push({ clientNonce, status: 'failed', code: 500, error: 'Server error while sending message' });
+      }
+    }
+
+    res.json({
+      success: true,
+      data: { results }
+    });
+
+  } catch (error) {
+    console.error('Batch send error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while sending messages'
+    });
+  }
+};
+
 // @desc    Edit a message
 // @route   PUT /api/messages/:id
 // @access  Private
@@ -636,8 +828,17 @@ const removeReaction = async (req, res) => {
 // @access  Private
 const markAsRead = async (req, res) => {
   try {
+    const errors = validationResult(req);
+    if (!errors.isEmpty()) {
+      return res.status(400).json({
+        success: false,
+        message: 'Validation failed',
+        errors: errors.array()
+      });
+    }
+
     const { chatId } = req.params;
-    const { messageIds } = req.body;
+    const { messageIds, upToTimestamp, upToMessageId } = req.body;
 
     // Check if user has access to the chat
     const chat = await Chat.findById(chatId);
@@ -659,8 +860,12 @@ const markAsRead = async (req, res) => {
       });
     }
 
-    // Mark messages as read
-    await Message.markAsRead(chatId, req.user.id, messageIds);
+    // Mark messages as read: a read marker covers everything up to it in one update
+    if (upToTimestamp !== undefined) {
+      await Message.markAsReadUpTo(chatId, req.user.id, new Date(Number(upToTimestamp)), upToMessageId || null);
+    } else {
+      await Message.markAsRead(chatId, req.user.id, messageIds);
+    }
 
     res.json({
       success: true,
@@ -947,8 +1152,11 @@ const summarizeChat = async (req, res) => {
 
 module.exports = {
   getMessages,
+  getMessageRange,
+  getMessageSequences,
   getAllMessages,
   sendMessage,
+  sendMessagesBatch,
   editMessage,
   deleteMessage,
   addReaction,
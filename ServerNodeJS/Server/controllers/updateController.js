@@ -1,8 +1,16 @@
 const Message = require('../models/Message');
 const Post = require('../models/Post');
 const Chat = require('../models/Chat');
+const mongoose = require('mongoose');
 const { validationResult } = require('express-validator');
 
+// Page sizes for delta sync; a full page sets has_more so the client asks again from its new checkpoint.
+// Pages follow the (updatedAt, _id) order: one updateMany can stamp hundreds of rows with the same
+// millisecond, so a timestamp alone cannot say where a page ended.
+const MESSAGES_PAGE_LIMIT = 200;
+const POSTS_PAGE_LIMIT = 50;
+const CONVERSATIONS_PAGE_LIMIT = 50;
+
 function toId(value) {
   if (!value) return null;
   if (typeof value === 'string') return value;
@@ -10,6 +18,34 @@ function toId(value) {
   return value.toString();
 }
 
+/**
+ * Filter for rows after the client's checkpoint (since, sinceId) in (updatedAt, _id) order.
+ * Without sinceId (first sync, older clients) rows at exactly `since` are sent again; the
+ * client upserts, so a repeat costs nothing while a skipped row would be lost for good.
+ */
+function changedAfter(req) {
+  const since = new Date(parseInt(req.query.since) || 0);
+  const sinceId = req.query.sinceId;
+  if (!sinceId) {
+    return since.getTime() > 0 ? { updatedAt: { $gte: since } } : {};
+  }
+  return {
+    $or: [
+      { updatedAt: { $gt: since } },
+      { updatedAt: since, _id: { $gt: new mongoose.Types.ObjectId(sinceId) } }
+    ]
+  };
+}
+
+// Checkpoint of a page: the last row in (updatedAt, _id) order
+function pageCursor(rows) {
+  const last = rows[rows.length - 1];
+  return {
+    updated_at: last.updatedAt?.getTime() || last.createdAt?.getTime() || 0,
+    since_id: last._id.toString()
+  };
+}
+
 function formatUserRef(user) {
   if (!user) {
     return {
@@ -29,7 +65,7 @@ function formatUserRef(user) {
 
 /**
  * Get messages updated/created after a timestamp
- * @route GET /api/updates/messages?since=timestamp
+ * @route GET /api/updates/messages?since=timestamp&sinceId=id
  * @access Private
  */
 const getMessagesUpdates = async (req, res) => {
@@ -44,11 +80,10 @@ const getMessagesUpdates = async (req, res) => {
     }
 
     const userId = req.user.id;
-    const since = parseInt(req.query.since) || 0;
 
     // Find messages that:
     // 1. Belong to chats where user is a participant
-    // 2. Were created or updated after the 'since' timestamp
+    // 2. Changed after the client's checkpoint
     // 3. Are not deleted
     const chats = await Chat.find({
       $or: [
@@ -61,16 +96,14 @@ const getMessagesUpdates = async (req, res) => {
 
     const messages = await Message.find({
       chat: { $in: chatIds },
-      $or: [
-        { createdAt: { $gt: new Date(since) } },
-        { updatedAt: { $gt: new Date(since) } }
-      ],
+      ...changedAfter(req),
       isDeleted: false
     })
       .populate('sender', 'username avatar profile.firstName profile.lastName')
       .populate('chat', 'name type participants')
-      .sort({ createdAt: -1 })
-      .limit(100); // Limit to prevent huge responses
+      // Oldest change first so clients can checkpoint after every batch and page with has_more
+      .sort({ updatedAt: 1, _id: 1 })
+      .limit(MESSAGES_PAGE_LIMIT);
 
     // If no updates, return 304 Not Modified
     if (messages.length === 0) {
@@ -80,11 +113,6 @@ const getMessagesUpdates = async (req, res) => {
       });
     }
 
-    // Get the latest updated_at timestamp from the messages
-    const latestTimestamp = messages.length > 0 
-      ? Math.max(...messages.map(m => m.updatedAt?.getTime() || m.createdAt?.getTime() || 0))
-      : since;
-
     res.json({
       success: true,
       data: {
@@ -115,7 +143,8 @@ const getMessagesUpdates = async (req, res) => {
               : {})
           };
         }),
-        updated_at: latestTimestamp
+        ...pageCursor(messages),
+        has_more: messages.length === MESSAGES_PAGE_LIMIT
       }
     });
 
@@ -130,7 +159,7 @@ const getMessagesUpdates = async (req, res) => {
 
 /**
  * Get posts updated/created after a timestamp
- * @route GET /api/updates/posts?since=timestamp
+ * @route GET /api/updates/posts?since=timestamp&sinceId=id
  * @access Private
  */
 const getPostsUpdates = async (req, res) => {
@@ -145,11 +174,10 @@ const getPostsUpdates = async (req, res) => {
     }
 
     const userId = req.user.id;
-    const since = parseInt(req.query.since) || 0;
 
     // Find posts that:
     // 1. Are active and not deleted
-    // 2. Were created or updated after the 'since' timestamp
+    // 2. Changed after the client's checkpoint
     // 3. Are public, or friends-only and user is a friend, or user is the author
     const user = await require('../models/User').findById(userId).select('friends');
     const userFriends = user?.friends || [];
@@ -158,12 +186,7 @@ const getPostsUpdates = async (req, res) => {
       isActive: true,
       isDeleted: false,
       $and: [
-        {
-          $or: [
-            { createdAt: { $gt: new Date(since) } },
-            { updatedAt: { $gt: new Date(since) } }
-          ]
-        },
+        changedAfter(req),
         {
           $or: [
             { privacySetting: 'public' },
@@ -180,8 +203,8 @@ const getPostsUpdates = async (req, res) => {
       .populate('tags', 'username avatar profile.firstName profile.lastName')
       .populate('likes.user', 'username avatar')
       .populate('shares.user', 'username avatar')
-      .sort({ createdAt: -1 })
-      .limit(50); // Limit to prevent huge responses
+      .sort({ updatedAt: 1, _id: 1 })
+      .limit(POSTS_PAGE_LIMIT);
 
     // If no updates, return 304 Not Modified
     if (posts.length === 0) {
@@ -191,11 +214,6 @@ const getPostsUpdates = async (req, res) => {
       });
     }
 
-    // Get the latest updated_at timestamp from the posts
-    const latestTimestamp = posts.length > 0 
-      ? Math.max(...posts.map(p => p.updatedAt?.getTime() || p.createdAt?.getTime() || 0))
-      : since;
-
     res.json({
       success: true,
       data: {
@@ -219,7 +237,8 @@ const getPostsUpdates = async (req, res) => {
             sharedPostId: post.sharedPostId
           };
         }),
-        updated_at: latestTimestamp
+        ...pageCursor(posts),
+        has_more: posts.length === POSTS_PAGE_LIMIT
       }
     });
 
@@ -234,7 +253,7 @@ const getPostsUpdates = async (req, res) => {
 
 /**
  * Get conversations updated after a timestamp
- * @route GET /api/updates/conversations?since=timestamp
+ * @route GET /api/updates/conversations?since=timestamp&sinceId=id
  * @access Private
  */
 const getConversationsUpdates = async (req, res) => {
@@ -249,11 +268,10 @@ const getConversationsUpdates = async (req, res) => {
     }
 
     const userId = req.user.id;
-    const since = parseInt(req.query.since) || 0;
 
     // Find conversations that:
     // 1. User is a participant
-    // 2. Were created or updated after the 'since' timestamp
+    // 2. Changed after the client's checkpoint
     // 3. Are active
     const conversations = await Chat.find({
       $and: [
@@ -263,19 +281,14 @@ const getConversationsUpdates = async (req, res) => {
             { createdBy: userId }
           ]
         },
-        {
-          $or: [
-            { createdAt: { $gt: new Date(since) } },
-            { updatedAt: { $gt: new Date(since) } }
-          ]
-        }
+        changedAfter(req)
       ],
       isActive: true
     })
       .populate('participants.user', 'username avatar profile.firstName profile.lastName')
       .populate('createdBy', 'username avatar')
-      .sort({ updatedAt: -1 })
-      .limit(50); // Limit to prevent huge responses
+      .sort({ updatedAt: 1, _id: 1 })
+      .limit(CONVERSATIONS_PAGE_LIMIT);
 
     // If no updates, return 304 Not Modified
     if (conversations.length === 0) {
@@ -285,11 +298,6 @@ const getConversationsUpdates = async (req, res) => {
       });
     }
 
-    // Get the latest updated_at timestamp from the conversations
-    const latestTimestamp = conversations.length > 0 
-      ? Math.max(...conversations.map(c => c.updatedAt?.getTime() || c.createdAt?.getTime() || 0))
-      : since;
-
     res.json({
       success: true,
       data: {
@@ -307,7 +315,8 @@ const getConversationsUpdates = async (req, res) => {
           isPublic: chat.isPublic,
           visibility: chat.visibility
         })),
-        updated_at: latestTimestamp
+        ...pageCursor(conversations),
+        has_more: conversations.length === CONVERSATIONS_PAGE_LIMIT
       }
     });
 
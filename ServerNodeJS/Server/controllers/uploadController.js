@@ -1,6 +1,39 @@
 const multer = require('multer');
 const path = require('path');
 const fs = require('fs');
+const crypto = require('crypto');
+const { validationResult } = require('express-validator');
+const UploadSession = require('../models/UploadSession');
+const MediaBlob = require('../models/MediaBlob');
+
+// PDF, TXT, DOC, DOCX, XLS, XLSX, PPT, PPTX, and audio files for voice messages
+const chatFileTypes = [
+  'application/pdf',
+  'text/plain',
+  'application/msword',
+  'application/vnd.openxmlformats-officedocument.wordprocessingml.document',
+  'application/vnd.ms-excel',
+  'application/vnd.openxmlformats-officedocument.spreadsheetml.sheet',
+  'application/vnd.ms-powerpoint',
+  'application/vnd.openxmlformats-officedocument.presentationml.presentation',
+  // Audio file types for voice messages
+  'audio/mp4',
+  'audio/mpeg',
+  'audio/mp3',
+  'audio/wav',
+  'audio/wave',
+  'audio/x-wav',
+  'audio/aac',
+  'audio/ogg',
+  'audio/webm',
+  'audio/3gpp',
+  'audio/amr',
+  'audio/x-m4a'
+];
+
+// Also allow if mime type starts with 'audio/' for other audio formats
+const isChatFileType = (mimetype) => chatFileTypes.includes(mimetype) || mimetype.startsWith('audio/');
+const isImageType = (mimetype) => mimetype.startsWith('image/');
 
 // Configure multer for chat image uploads
 const imageStorage = multer.diskStorage({
@@ -135,33 +168,7 @@ const fileUpload = multer({
     fileSize: 50 * 1024 * 1024 // 50MB limit for files
   },
   fileFilter: function (req, file, cb) {
-    // Allow PDF, TXT, DOC, DOCX, XLS, XLSX, PPT, PPTX, and audio files for voice messages
-    const allowedTypes = [
-      'application/pdf',
-      'text/plain',
-      'application/msword',
-      'application/vnd.openxmlformats-officedocument.wordprocessingml.document',
-      'application/vnd.ms-excel',
-      'application/vnd.openxmlformats-officedocument.spreadsheetml.sheet',
-      'application/vnd.ms-powerpoint',
-      'application/vnd.openxmlformats-officedocument.presentationml.presentation',
-      // Audio file types for voice messages
-      'audio/mp4',
-      'audio/mpeg',
-      'audio/mp3',
-      'audio/wav',
-      'audio/wave',
-      'audio/x-wav',
-      'audio/aac',
-      'audio/ogg',
-      'audio/webm',
-      'audio/3gpp',
-      'audio/amr',
-      'audio/x-m4a'
-    ];
-    
-    // Also allow if mime type starts with 'audio/' for other audio formats
-    if (allowedTypes.includes(file.mimetype) || file.mimetype.startsWith('audio/')) {
+    if (isChatFileType(file.mimetype)) {
       cb(null, true);
     } else {
       cb(new Error('Only PDF, TXT, DOC, DOCX, XLS, XLSX, PPT, PPTX, and audio files are allowed'), false);
@@ -196,6 +203,7 @@ const uploadChatImage = async (req, res) => {
       
       // Construct the image URL path
       const imageUrl = `/uploads/chat/${chatId}/${fileName}`;
+      recordMediaBlob(req.user._id, 'chat-image', req.file.path, imageUrl, req.file.size, req.file.mimetype);
       
       res.json({
         success: true,
@@ -382,6 +390,7 @@ const uploadPostImage = async (req, res) => {
 
       const fileName = req.file.filename;
       const imageUrl = `/uploads/posts/${fileName}`;
+      recordMediaBlob(req.user._id, 'post-image', req.file.path, imageUrl, req.file.size, req.file.mimetype);
       
       res.json({
         success: true,
@@ -439,11 +448,447 @@ const uploadCommentImage = async (req, res) => {
   }
 };
 
+// ===== Resumable uploads =====
+// POST a session, then PUT the bytes in chunks at the offset the server reports. A dropped
+// connection costs at most the chunk in flight: the client asks for the offset (GET) and
+// continues from there. The finished file lands where the matching multipart endpoint
+// would have put it and the last PUT answers with the same fields.
+
+const UPLOAD_SESSION_TTL_MS = 24 * 60 * 60 * 1000;
+const MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+// Outside uploads/, which is served statically
+const tmpUploadPath = path.join(__dirname, '../temp/uploads');
+
+const resumableKinds = {
+  'chat-image': {
+    maxSize: 10 * 1024 * 1024,
+    accepts: isImageType,
+    folder: (session) => path.join('chat', String(session.chat)),
+    prefix: 'image-',
+    urlField: 'imageUrl'
+  },
+  'chat-file': {
+    // Arrives chunk by chunk, so no request ever holds more than MAX_CHUNK_SIZE
+    maxSize: 200 * 1024 * 1024,
+    accepts: isChatFileType,
+    folder: (session) => path.join('files', String(session.chat)),
+    prefix: 'file-',
+    urlField: 'fileUrl'
+  },
+  'post-image': {
+    maxSize: 10 * 1024 * 1024,
+    accepts: isImageType,
+    folder: () => 'posts',
+    prefix: 'post-image-',
+    urlField: 'imageUrl'
+  }
+};
+
+// Sessions with a PUT being written; a second PUT for one of them is refused
+const activeChunkWrites = new Set();
+
+const partFilePath = (sessionId) => path.join(tmpUploadPath, `${sessionId}.part`);
+
+const receivedBytes = async (sessionId) => {
+  try {
+    return (await fs.promises.stat(partFilePath(sessionId))).size;
+  } catch (error) {
+    return 0;
+  }
+};
+
+// Drop .part files whose session has expired
+const sweepStalePartFiles = async () => {
+  try {
+    const cutoff = Date.now() - UPLOAD_SESSION_TTL_MS;
+    for (const name of await fs.promises.readdir(tmpUploadPath)) {
+      const filePath = path.join(tmpUploadPath, name);
+      const stats = await fs.promises.stat(filePath);
+      if (stats.mtimeMs < cutoff) {
+        await fs.promises.unlink(filePath);
+      }
+    }
+  } catch (error) {
+    console.error('Sweep upload parts error:', error.message);
+  }
+};
+
+const findOwnSession = (req) => UploadSession.findOne({ _id: req.params.uploadId, user: req.user._id });
+
+// Answers 400 and returns true when the route's validators rejected the request
+const rejectInvalid = (req, res) => {
+  const errors = validationResult(req);
+  if (errors.isEmpty()) {
+    return false;
+  }
+  res.status(400).json({
+    success: false,
+    message: 'Validation failed',
+    errors: errors.array()
+  });
+  return true;
+};
+
+// @desc    Start a resumable upload
+// @route   POST /api/upload/sessions
+// @access  Private
+const createUploadSession = async (req, res) => {
+  try {
+    if (rejectInvalid(req, res)) {
+      return;
+    }
+
+    const { kind, chatId, fileName, mimeType, size } = req.body;
+    const config = resumableKinds[kind];
+    if (kind !== 'post-image' && !chatId) {
+      return res.status(400).json({
+        success: false,
+        message: 'Chat ID is required'
+      });
+    }
+    if (!config.accepts(mimeType)) {
+      return res.status(400).json({
+        success: false,
+        message: 'File type not allowed'
+      });
+    }
+    if (size > config.maxSize) {
+      return res.status(413).json({
+        success: false,
+        message: `File too large (max ${config.maxSize} bytes)`
+      });
+    }
+
+    await fs.promises.mkdir(tmpUploadPath, { recursive: true });
+    const session = await UploadSession.create({
+      user: req.user._id,
+      kind,
+      chat: kind === 'post-image' ? null : chatId,
+      originalName: fileName,
+      mimeType,
+      size,
+      expiresAt: new Date(Date.now() + UPLOAD_SESSION_TTL_MS)
+    });
+    await fs.promises.writeFile(partFilePath(session._id), Buffer.alloc(0));
+    sweepStalePartFiles();
+
+    res.status(201).json({
+      success: true,
+      uploadId: session._id,
+      offset: 0,
+      size: session.size,
+      chunkSize: MAX_CHUNK_SIZE
+    });
+  } catch (error) {
+    console.error('Create upload session error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while starting upload'
+    });
+  }
+};
+
+// @desc    How many bytes of a resumable upload have arrived
+// @route   GET /api/upload/sessions/:uploadId
+// @access  Private
+const getUploadSession = async (req, res) => {
+  try {
+    if (rejectInvalid(req, res)) {
+      return;
+    }
+    const session = await findOwnSession(req);
+    if (!session) {
+      return res.status(404).json({
+        success: false,
+        message: 'Upload session not found'
+      });
+    }
+
+    res.json({
+      success: true,
+      uploadId: session._id,
+      offset: await receivedBytes(session._id),
+      size: session.size,
+      chunkSize: MAX_CHUNK_SIZE
+    });
+  } catch (error) {
+    console.error('Get upload session error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while reading upload'
+    });
+  }
+};
+
+const completeUpload = async (session) => {
+  const config = resumableKinds[session.kind];
+  const folder = config.folder(session);
+  const uploadPath = path.join(__dirname, '../uploads', folder);
+  await fs.promises.mkdir(uploadPath, { recursive: true });
+
+  const uniqueSuffix = Date.now() + '-' + Math.round(Math.random() * 1E9);
+  const fileName = config.prefix + uniqueSuffix + path.extname(session.originalName);
+  const target = path.join(uploadPath, fileName);
+  try {
+    await fs.promises.rename(partFilePath(session._id), target);
+  } catch (error) {
+    if (error.code !== 'EXDEV') {
+      throw error;
+    }
+    // uploads/ mounted as its own volume
+    await fs.promises.copyFile(partFilePath(session._id), target);
+    await fs.promises.unlink(partFilePath(session._id));
+  }
+  await session.deleteOne();
+
+  const url = `/uploads/${folder.split(path.sep).join('/')}/${fileName}`;
+  if (dedupKinds.includes(session.kind)) {
+    recordMediaBlob(session.user, session.kind, target, url, session.size, session.mimeType);
+  }
+
+  return {
+    success: true,
+    message: 'Upload completed',
+    complete: true,
+    offset: session.size,
+    [config.urlField]: url,
+    fileName,
+    originalName: session.originalName,
+    fileSize: session.size,
+    mimeType: session.mimeType
+  };
+};
+
+// @desc    Append a chunk at Upload-Offset (raw body)
+// @route   PUT /api/upload/sessions/:uploadId
+// @access  Private
+const putUploadChunk = async (req, res) => {
+  const uploadId = req.params.uploadId;
+  try {
+    if (rejectInvalid(req, res)) {
+      return;
+    }
+    const session = await findOwnSession(req);
+    if (!session) {
+      return res.status(404).json({
+        success: false,
+        message: 'Upload session not found'
+      });
+    }
+
+    const offset = await receivedBytes(session._id);
+    const clientOffset = Number(req.get('Upload-Offset'));
+    if (activeChunkWrites.has(uploadId) || clientOffset !== offset) {
+      // Not where we are: tell the client where to continue from
+      return res.status(409).json({
+        success: false,
+        message: 'Offset mismatch',
+        offset
+      });
+    }
+
+    const length = Number(req.get('Content-Length'));
+    if (!Number.isInteger(length) || length <= 0 || length > MAX_CHUNK_SIZE || offset + length > session.size) {
+      return res.status(400).json({
+        success: false,
+        message: `Chunk must be 1..${MAX_CHUNK_SIZE} bytes and stay within the file`,
+        offset
+      });
+    }
+
+    activeChunkWrites.add(uploadId);
+    let written = 0;
+    let failed = false;
+    const out = fs.createWriteStream(partFilePath(session._id), { flags: 'a' });
+    // Bytes of an interrupted chunk stay on disk and count towards the offset
+    const fail = () => {
+      if (!failed) {
+        failed = true;
+        req.unpipe(out);
+        out.end();
+      }
+    };
+    out.on('close', () => {
+      if (failed) {
+        activeChunkWrites.delete(uploadId);
+      }
+    });
+
+    req.on('data', (data) => {
+      written += data.length;
+      if (written > length && !failed) {
+        // More than announced: keep none of it
+        fail();
+        out.once('close', () => fs.promises.truncate(partFilePath(session._id), offset).catch(() => {}));
+        req.destroy();
+      }
+    });
+    req.on('aborted', fail);
+    req.on('error', fail);
+    out.on('error', (error) => {
+      const alreadyFailed = failed;
+      console.error('Write upload chunk error:', error.message);
+      fail();
+      if (!alreadyFailed && !res.headersSent) {
+        res.status(500).json({
+          success: false,
+          message: 'Server error while storing chunk'
+        });
+      }
+    });
+    out.on('finish', async () => {
+      if (failed) {
+        return;
+      }
+      try {
+        const received = await receivedBytes(session._id);
+        if (received >= session.size) {
+          return res.json(await completeUpload(session));
+        }
+        session.expiresAt = new Date(Date.now() + UPLOAD_SESSION_TTL_MS);
+        await session.save();
+        res.json({
+          success: true,
+          complete: false,
+          offset: received
+        });
+      } catch (error) {
+        console.error('Finish upload chunk error:', error);
+        res.status(500).json({
+          success: false,
+          message: 'Server error while storing chunk'
+        });
+      } finally {
+        activeChunkWrites.delete(uploadId);
+      }
+    });
+    req.pipe(out);
+  } catch (error) {
+    activeChunkWrites.delete(uploadId);
+    console.error('Put upload chunk error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while storing chunk'
+    });
+  }
+};
+
+// @desc    Abandon a resumable upload
+// @route   DELETE /api/upload/sessions/:uploadId
+// @access  Private
+const deleteUploadSession = async (req, res) => {
+  try {
+    if (rejectInvalid(req, res)) {
+      return;
+    }
+    const session = await findOwnSession(req);
+    if (!session) {
+      return res.status(404).json({
+        success: false,
+        message: 'Upload session not found'
+      });
+    }
+
+    await session.deleteOne();
+    await fs.promises.unlink(partFilePath(session._id)).catch(() => {});
+    res.json({
+      success: true,
+      message: 'Upload cancelled'
+    });
+  } catch (error) {
+    console.error('Delete upload session error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error while cancelling upload'
+    });
+  }
+};
+
+// ===== Upload deduplication =====
+// Every stored chat or post image is recorded under the SHA-256 of its bytes. Before
+// uploading an image the client asks whether it already sent those bytes and, if so,
+// reuses the earlier URL. Chat files are left out: they are downloaded through their chat.
+
+const dedupKinds = ['chat-image', 'post-image'];
+
+const hashFile = (filePath) => new Promise((resolve, reject) => {
+  const hash = crypto.createHash('sha256');
+  fs.createReadStream(filePath)
+    .on('error', reject)
+    .on('data', (chunk) => hash.update(chunk))
+    .on('end', () => resolve(hash.digest('hex')));
+});
+
+// Not awaited by the upload handlers; a failure only costs a later upload its shortcut
+const recordMediaBlob = async (userId, kind, filePath, url, size, mimeType) => {
+  try {
+    const sha256 = await hashFile(filePath);
+    await MediaBlob.findOneAndUpdate(
+      { user: userId, kind, sha256 },
+      { url, fileName: path.basename(filePath), size, mimeType },
+      { upsert: true, setDefaultsOnInsert: true }
+    );
+  } catch (error) {
+    console.error('Record media hash error:', error);
+  }
+};
+
+// @desc    Find an image this user already uploaded, by content hash
+// @route   POST /api/upload/lookup
+// @access  Private
+const lookupMedia = async (req, res) => {
+  try {
+    if (rejectInvalid(req, res)) {
+      return;
+    }
+
+    const { sha256, kind } = req.body;
+    const blob = await MediaBlob.findOne({ user: req.user._id, kind, sha256 });
+    if (blob) {
+      try {
+        await fs.promises.access(path.join(__dirname, '..', blob.url));
+      } catch (error) {
+        // The file is gone; forget it so the client uploads again
+        await blob.deleteOne();
+        return res.status(404).json({
+          success: false,
+          message: 'Media not found'
+        });
+      }
+      return res.json({
+        success: true,
+        message: 'Already uploaded',
+        deduplicated: true,
+        imageUrl: blob.url,
+        fileName: blob.fileName,
+        fileSize: blob.size,
+        mimeType: blob.mimeType
+      });
+    }
+
+    res.status(404).json({
+      success: false,
+      message: 'Media not found'
+    });
+  } catch (error) {
+    console.error('Lookup media error:', error);
+    res.status(500).json({
+      success: false,
+      message: 'Server error during media lookup'
+    });
+  }
+};
+
 module.exports = {
   uploadChatImage,
   uploadChatFile,
   uploadPostImage,
   uploadCommentImage,
   downloadFile,
-  getFilePreview
+  getFilePreview,
+  createUploadSession,
+  getUploadSession,
+  putUploadChunk,
+  deleteUploadSession,
+  lookupMedia
 };
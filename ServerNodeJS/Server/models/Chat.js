@@ -82,6 +82,11 @@ const chatSchema = new mongoose.Schema({
   lastSummarizedTimestamp: {
     type: Date,
     default: null
+  },
+  /** Last per-chat message sequence number handed out; see Message.seq. */
+  messageSeq: {
+    type: Number,
+    default: 0
   }
 }, {
   timestamps: true,
@@ -0,0 +1,44 @@
+const mongoose = require('mongoose');
+
+// Where an image a user uploaded was stored, by the SHA-256 of its bytes, so sending the
+// same image again (another chat, a new post) can reuse the file instead of uploading it.
+// Scoped to the uploader: knowing a hash must not reveal someone else's upload.
+const mediaBlobSchema = new mongoose.Schema({
+  user: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'User',
+    required: true
+  },
+  kind: {
+    type: String,
+    enum: ['chat-image', 'post-image'],
+    required: true
+  },
+  sha256: {
+    type: String,
+    required: true,
+    match: /^[a-f0-9]{64}$/
+  },
+  url: {
+    type: String,
+    required: true
+  },
+  fileName: {
+    type: String,
+    required: true
+  },
+  size: {
+    type: Number,
+    required: true
+  },
+  mimeType: {
+    type: String,
+    required: true
+  }
+}, {
+  timestamps: true
+});
+
+mediaBlobSchema.index({ user: 1, kind: 1, sha256: 1 }, { unique: true });
+
+module.exports = mongoose.model('MediaBlob', mediaBlobSchema);
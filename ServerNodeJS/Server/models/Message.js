@@ -128,6 +128,14 @@ const messageSchema = new mongoose.Schema({
     type: String,
     trim: true,
     maxlength: 128
+  },
+  /**
+   * Position in the chat, 1, 2, 3... in creation order. Lets clients spot missed
+   * messages and fetch exactly those. Numbers can be skipped (failed insert, hard delete),
+   * so a gap is closed once the server has answered for it, not once it is filled.
+   */
+  seq: {
+    type: Number
   }
 }, {
   timestamps: true,
@@ -142,7 +150,8 @@ messageSchema.path('readBy').default(function() { return []; });
 messageSchema.path('editHistory').default(function() { return []; });
 
 // Indexes for better performance
-messageSchema.index({ chat: 1, createdAt: -1 });
+// _id as tie-breaker serves keyset paging by (createdAt, _id); the (chat, createdAt) prefix still covers page queries
+messageSchema.index({ chat: 1, createdAt: -1, _id: -1 });
 messageSchema.index({ sender: 1 });
 messageSchema.index({ type: 1 });
 messageSchema.index({ isDeleted: 1 });
@@ -151,6 +160,9 @@ messageSchema.index(
   { chat: 1, sender: 1, clientNonce: 1 },
   { unique: true, sparse: true }
 );
+messageSchema.index({ chat: 1, seq: 1 });
+// Delta sync pages by (updatedAt, _id)
+messageSchema.index({ chat: 1, updatedAt: 1, _id: 1 });
 
 // Virtual for unread status (computed per user)
 messageSchema.virtual('isRead').get(function() {
@@ -172,6 +184,19 @@ messageSchema.virtual('reactionSummary').get(function() {
   return summary;
 });
 
+// Assign the next per-chat sequence number to new messages
+messageSchema.pre('save', async function() {
+  if (!this.isNew || this.seq != null) return;
+  const chat = await mongoose.model('Chat').findByIdAndUpdate(
+    this.chat,
+    { $inc: { messageSeq: 1 } },
+    { new: true, select: 'messageSeq' }
+  );
+  if (chat) {
+    this.seq = chat.messageSeq;
+  }
+});
+
 // Pre-save middleware
 messageSchema.pre('save', function(next) {
   // Set delivered timestamp for new messages
@@ -216,6 +241,55 @@ messageSchema.statics.getChatMessages = function(chatId, page = 1, limit = 50, a
   .limit(limit);
 };
 
+// Static method to get a keyset page of messages strictly before (beforeDate, beforeId).
+// Cost does not depend on how deep the page is, and new messages cannot shift it.
+messageSchema.statics.getChatMessagesBefore = function(chatId, beforeDate, beforeId = null, limit = 50, afterTimestamp = null) {
+  const query = {
+    chat: chatId,
+    isDeleted: false
+  };
+
+  if (beforeId && mongoose.Types.ObjectId.isValid(beforeId)) {
+    query.$or = [
+      { createdAt: { $lt: beforeDate } },
+      { createdAt: beforeDate, _id: { $lt: new mongoose.Types.ObjectId(beforeId) } }
+    ];
+  } else {
+    query.createdAt = { $lt: beforeDate };
+  }
+
+  if (afterTimestamp) {
+    query.$and = [{ createdAt: { $gt: afterTimestamp } }];
+  }
+
+  return this.find(query)
+  .populate('sender', 'username avatar status')
+  .populate('replyTo', 'content sender type')
+  .populate('reactions.user', 'username')
+  .sort({ createdAt: -1, _id: -1 })
+  .limit(limit);
+};
+
+// Static method to get the messages of a chat with afterSeq < seq <= upToSeq, oldest first
+messageSchema.statics.getChatMessagesBySeq = function(chatId, afterSeq, upToSeq, limit = 200, afterTimestamp = null) {
+  const query = {
+    chat: chatId,
+    seq: { $gt: afterSeq, $lte: upToSeq },
+    isDeleted: false
+  };
+
+  if (afterTimestamp) {
+    query.createdAt = { $gt: afterTimestamp };
+  }
+
+  return this.find(query)
+  .populate('sender', 'username avatar status')
+  .populate('replyTo', 'content sender type')
+  .populate('reactions.user', 'username')
+  .sort({ seq: 1 })
+  .limit(limit);
+};
+
 // Static method to mark messages as read
 messageSchema.statics.markAsRead = function(chatId, userId, messageIds = []) {
   const query = {
@@ -238,6 +312,34 @@ messageSchema.statics.markAsRead = function(chatId, userId, messageIds = []) {
   });
 };
 
+// Static method to mark everything up to a read marker as read: created before upTo, or
+// at exactly upTo with an _id not after upToMessageId (ties within one millisecond)
+messageSchema.statics.markAsReadUpTo = function(chatId, userId, upTo, upToMessageId = null) {
+  const query = {
+    chat: chatId,
+    'readBy.user': { $ne: userId },
+    isDeleted: false
+  };
+
+  if (upToMessageId) {
+    query.$or = [
+      { createdAt: { $lt: upTo } },
+      { createdAt: upTo, _id: { $lte: upToMessageId } }
+    ];
+  } else {
+    query.createdAt = { $lte: upTo };
+  }
+
+  return this.updateMany(query, {
+    $push: {
+      readBy: {
+        user: userId,
+        readAt: new Date()
+      }
+    }
+  });
+};
+
 // Method to add reaction
 messageSchema.methods.addReaction = function(userId, emoji) {
   // Remove existing reaction from this user
@@ -0,0 +1,47 @@
+const mongoose = require('mongoose');
+
+// A resumable upload in progress. The bytes live in temp/uploads/<_id>.part; how many of
+// them arrived is the size of that file, so the session only records what the finished
+// upload should become.
+const uploadSessionSchema = new mongoose.Schema({
+  user: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'User',
+    required: true,
+    index: true
+  },
+  kind: {
+    type: String,
+    enum: ['chat-image', 'chat-file', 'post-image'],
+    required: true
+  },
+  chat: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'Chat',
+    default: null
+  },
+  originalName: {
+    type: String,
+    required: true
+  },
+  mimeType: {
+    type: String,
+    required: true
+  },
+  size: {
+    type: Number,
+    required: true,
+    min: 1
+  },
+  // Abandoned sessions are dropped by the TTL index; their .part files by the sweep in the controller
+  expiresAt: {
+    type: Date,
+    required: true
+  }
+}, {
+  timestamps: true
+});
+
+uploadSessionSchema.index({ expiresAt: 1 }, { expireAfterSeconds: 0 });
+
+module.exports = mongoose.model('UploadSession', uploadSessionSchema);
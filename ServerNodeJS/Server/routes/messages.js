@@ -1,9 +1,12 @@
 const express = require('express');
-const { body, param, query } = require('express-validator');
+const { body, param, query, validationResult } = require('express-validator');
 const {
   getMessages,
+  getMessageRange,
+  getMessageSequences,
   getAllMessages,
   sendMessage,
+  sendMessagesBatch,
   editMessage,
   deleteMessage,
   addReaction,
@@ -83,6 +86,39 @@ const sendMessageValidation = [
     .withMessage('clientNonce must be 8-128 characters')
 ];
 
+// Only the envelope is checked for the whole request; a bad item must not reject the others
+const sendMessagesBatchValidation = [
+  body('messages')
+    .isArray({ min: 1, max: 50 })
+    .withMessage('Messages must be an array of 1-50 items')
+];
+
+// Batch items carry the same fields as a single send; clientNonce is required so every
+// item can be acknowledged individually
+const batchItemValidation = [
+  ...sendMessageValidation,
+  body('clientNonce')
+    .exists()
+    .withMessage('clientNonce is required')
+];
+
+// Run the single-send rules on every item on its own. req.batchItemErrors[i] holds item i's
+// errors (null when valid); the controller fails just those items and sends the rest.
+const validateBatchItems = async (req, res, next) => {
+  try {
+    const items = Array.isArray(req.body.messages) ? req.body.messages : [];
+    req.batchItemErrors = await Promise.all(items.map(async (item) => {
+      const itemReq = { body: item && typeof item === 'object' ? item : {} };
+      await Promise.all(batchItemValidation.map(rule => rule.run(itemReq)));
+      const errors = validationResult(itemReq);
+      return errors.isEmpty() ? null : errors.array();
+    }));
+    next();
+  } catch (error) {
+    next(error);
+  }
+};
+
 const editMessageValidation = [
   param('id')
     .isMongoId()
@@ -114,11 +150,32 @@ const markAsReadValidation = [
     .isArray()
     .withMessage('Message IDs must be an array'),
   body('messageIds.*')
+    .optional()
+    .isMongoId()
+    .withMessage('Invalid message ID format'),
+  body('upToTimestamp')
+    .optional()
+    .isInt({ min: 0 })
+    .withMessage('upToTimestamp must be a non-negative integer'),
+  body('upToMessageId')
     .optional()
     .isMongoId()
     .withMessage('Invalid message ID format')
 ];
 
+const messageRangeValidation = [
+  param('chatId')
+    .isMongoId()
+    .withMessage('Invalid chat ID format'),
+  query('afterSeq')
+    .isInt({ min: 0 })
+    .withMessage('afterSeq must be a non-negative integer'),
+  query('upToSeq')
+    .optional()
+    .isInt({ min: 0 })
+    .withMessage('upToSeq must be a non-negative integer')
+];
+
 const searchValidation = [
   param('chatId')
     .isMongoId()
@@ -136,9 +193,15 @@ router.get('/admin', getAllMessages);
 // Get message statistics (admin only)
 router.get('/stats', adminOnly, getMessageStats);
 
+// Latest sequence number per chat, for reconnect catch-up (must be before /:chatId route)
+router.get('/sequences', getMessageSequences);
+
 // Summarize chat messages (must be before /:chatId route)
 router.get('/:chatId/summarize', chatIdValidation, summarizeChat);
 
+// Messages in a sequence range, for gap fill (must be before /:chatId route)
+router.get('/:chatId/range', messageRangeValidation, getMessageRange);
+
 // Search messages in a chat (must be before /:chatId route)
 router.get('/:chatId/search', searchValidation, searchMessages);
 
@@ -148,6 +211,9 @@ router.get('/:chatId', chatIdValidation, getMessages);
 // Send message
 router.post('/', sendMessageValidation, sendMessage);
 
+// Send queued messages in one round trip
+router.post('/batch', sendMessagesBatchValidation, validateBatchItems, sendMessagesBatch);
+
 // Mark messages as read
 router.put('/:chatId/read', markAsReadValidation, markAsRead);
 
@@ -17,18 +17,22 @@ const sinceValidation = [
   query('since')
     .optional()
     .isInt({ min: 0 })
-    .withMessage('Since timestamp must be a non-negative integer')
+    .withMessage('Since timestamp must be a non-negative integer'),
+  query('sinceId')
+    .optional()
+    .isMongoId()
+    .withMessage('Since id must be a valid id')
 ];
 
-// GET /api/updates/messages?since=timestamp
+// GET /api/updates/messages?since=timestamp&sinceId=id
 // Returns only messages updated/created after the timestamp
 router.get('/messages', sinceValidation, getMessagesUpdates);
 
-// GET /api/updates/posts?since=timestamp
+// GET /api/updates/posts?since=timestamp&sinceId=id
 // Returns only posts updated/created after the timestamp
 router.get('/posts', sinceValidation, getPostsUpdates);
 
-// GET /api/updates/conversations?since=timestamp
+// GET /api/updates/conversations?since=timestamp&sinceId=id
 // Returns only conversations updated after the timestamp
 router.get('/conversations', sinceValidation, getConversationsUpdates);
 
@@ -1,9 +1,62 @@
 const express = require('express');
-const { uploadChatImage, uploadChatFile, uploadPostImage, uploadCommentImage, downloadFile, getFilePreview } = require('../controllers/uploadController');
+const { body, param } = require('express-validator');
+const {
+  uploadChatImage,
+  uploadChatFile,
+  uploadPostImage,
+  uploadCommentImage,
+  downloadFile,
+  getFilePreview,
+  createUploadSession,
+  getUploadSession,
+  putUploadChunk,
+  deleteUploadSession,
+  lookupMedia
+} = require('../controllers/uploadController');
 const { authMiddleware } = require('../middleware/authMiddleware');
 
 const router = express.Router();
 
+const createUploadSessionValidation = [
+  body('kind')
+    .isIn(['chat-image', 'chat-file', 'post-image'])
+    .withMessage('Kind must be chat-image, chat-file or post-image'),
+  body('chatId')
+    .optional({ nullable: true })
+    .isMongoId()
+    .withMessage('Invalid chat ID format'),
+  body('fileName')
+    .isString()
+    .trim()
+    .isLength({ min: 1, max: 255 })
+    .withMessage('File name must be 1-255 characters'),
+  body('mimeType')
+    .isString()
+    .notEmpty()
+    .withMessage('MIME type is required'),
+  body('size')
+    .isInt({ min: 1 })
+    .withMessage('Size must be a positive integer')
+    .toInt()
+];
+
+const lookupMediaValidation = [
+  body('sha256')
+    .isString()
+    .matches(/^[a-fA-F0-9]{64}$/)
+    .withMessage('sha256 must be a hex SHA-256 digest')
+    .customSanitizer((value) => value.toLowerCase()),
+  body('kind')
+    .isIn(['chat-image', 'post-image'])
+    .withMessage('Kind must be chat-image or post-image')
+];
+
+const uploadIdValidation = [
+  param('uploadId')
+    .isMongoId()
+    .withMessage('Invalid upload ID format')
+];
+
 // Upload chat image
 router.post('/chat/:chatId/image', authMiddleware, uploadChatImage);
 
@@ -16,6 +69,15 @@ router.post('/posts/image', authMiddleware, uploadPostImage);
 // Upload comment media (image/GIF)
 router.post('/comments/image', authMiddleware, uploadCommentImage);
 
+// Resumable uploads: start, read offset, append chunk, cancel
+router.post('/sessions', authMiddleware, createUploadSessionValidation, createUploadSession);
+router.get('/sessions/:uploadId', authMiddleware, uploadIdValidation, getUploadSession);
+router.put('/sessions/:uploadId', authMiddleware, uploadIdValidation, putUploadChunk);
+router.delete('/sessions/:uploadId', authMiddleware, uploadIdValidation, deleteUploadSession);
+
+// Reuse an image this user already uploaded (content-addressed by SHA-256)
+router.post('/lookup', authMiddleware, lookupMediaValidation, lookupMedia);
+
 // Download file
 router.get('/download/:chatId/:fileName', authMiddleware, downloadFile);
 
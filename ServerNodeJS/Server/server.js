@@ -267,6 +267,19 @@ app.use('/uploads', (req, res, next) => {
 // Serve static files (uploaded avatars)
 app.use('/uploads', express.static('uploads'));
 
+// API reads: clients may keep responses but treat them as stale at once, so every use is
+// revalidated. Express answers a matching If-None-Match with 304 from its ETag, so an
+// unchanged list costs no body. (no-cache would also forbid showing the stale copy while
+// the revalidation runs.)
+// Delta endpoints already page by timestamp and are never stored.
+app.use('/api', (req, res, next) => {
+  if (req.method === 'GET') {
+    res.set('Cache-Control', req.path.startsWith('/updates') ? 'no-store' : 'private, max-age=0');
+    res.vary('Authorization');
+  }
+  next();
+});
+
 // Routes
 app.use('/api/auth', authRoutes);
 app.use('/api/users', userRoutes);